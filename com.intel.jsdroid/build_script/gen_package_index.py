@@ -0,0 +1,232 @@
+'''
+Write the package index (packages.json) of the applications in bin/apps.
+
+At boot the runtime reads the index instead of listing bin/apps and parsing
+the manifest of every application, see android.content.pm.PackageManager. A
+manifest is parsed the first time one of its components may be needed: the
+index tells, for each application, which intent actions its components
+filter on, which content provider authorities it declares and whether it
+has instrumentation.
+
+The activities that filter on android.intent.action.MAIN without data, as
+the launcher queries them, are indexed in full: their categories, labels and
+icons. That query is answered from the index without parsing any manifest.
+
+usage: gen_package_index.py <apps dir>
+'''
+#-*- coding: UTF-8 -*-
+
+import json
+import os
+import struct
+import sys
+
+INDEX = 'packages.json'
+MANIFEST = 'AndroidManifest.xml'
+
+RES_STRING_POOL_TYPE = 0x0001
+RES_XML_START_ELEMENT_TYPE = 0x0102
+RES_XML_END_ELEMENT_TYPE = 0x0103
+RES_XML_RESOURCE_MAP_TYPE = 0x0180
+UTF8_FLAG = 0x100
+TYPE_REFERENCE = 0x01
+TYPE_STRING = 0x03
+TYPE_FIRST_INT = 0x10
+TYPE_INT_BOOLEAN = 0x12
+TYPE_LAST_INT = 0x1f
+NO_INDEX = 0xFFFFFFFF
+
+# android.R.attr ids, for attributes whose name is left out of the pool
+ATTR_NAMES = {0x01010001: 'label', 0x01010002: 'icon', 0x01010003: 'name',
+              0x01010018: 'authorities', 0x01010202: 'targetActivity',
+              0x0101001c: 'priority'}
+
+ACTION_MAIN = 'android.intent.action.MAIN'
+
+def readStringPool(data, start):
+    (stringCount, styleCount, flags, stringsStart,
+     stylesStart) = struct.unpack_from('<5I', data, start + 8)
+    offsets = struct.unpack_from('<%dI' % stringCount, data, start + 28)
+    base = start + stringsStart
+    strings = []
+    for offset in offsets:
+        pos = base + offset
+        if flags & UTF8_FLAG:
+            # the length in UTF-16 units, then in bytes
+            for i in range(2):
+                length = data[pos]
+                pos += 1
+                if length & 0x80:
+                    length = ((length & 0x7F) << 8) | data[pos]
+                    pos += 1
+            strings.append(data[pos:pos + length].decode('utf-8', 'replace'))
+        else:
+            length = struct.unpack_from('<H', data, pos)[0]
+            pos += 2
+            if length & 0x8000:
+                length = ((length & 0x7FFF) << 16) | struct.unpack_from('<H', data, pos)[0]
+                pos += 2
+            strings.append(data[pos:pos + length * 2].decode('utf-16-le', 'replace'))
+    return strings
+
+def readManifest(path):
+    '''Return the elements of a binary XML file as (depth, tag, attributes).'''
+    with open(path, 'rb') as f:
+        data = bytearray(f.read())
+    strings = []
+    resourceIds = []
+    elements = []
+    depth = 0
+    pos = struct.unpack_from('<H', data, 2)[0]
+    while pos + 8 <= len(data):
+        chunkType, headerSize, size = struct.unpack_from('<HHI', data, pos)
+        if size == 0:
+            break
+        if chunkType == RES_STRING_POOL_TYPE:
+            strings = readStringPool(data, pos)
+        elif chunkType == RES_XML_RESOURCE_MAP_TYPE:
+            count = (size - headerSize) // 4
+            resourceIds = struct.unpack_from('<%dI' % count, data, pos + headerSize)
+        elif chunkType == RES_XML_START_ELEMENT_TYPE:
+            ext = pos + headerSize
+            (ns, name, attributeStart, attributeSize,
+             attributeCount) = struct.unpack_from('<IIHHH', data, ext)
+            attrs = {}
+            for i in range(attributeCount):
+                attr = ext + attributeStart + i * attributeSize
+                (attrNs, attrName, rawValue, valueSize, res0, dataType,
+                 value) = struct.unpack_from('<IIIHBBI', data, attr)
+                key = strings[attrName] if attrName < len(strings) else ''
+                if not key and attrName < len(resourceIds):
+                    key = ATTR_NAMES.get(resourceIds[attrName], '')
+                if rawValue != NO_INDEX:
+                    attrs[key] = strings[rawValue]
+                elif dataType == TYPE_STRING:
+                    attrs[key] = strings[value]
+                elif dataType == TYPE_REFERENCE:
+                    attrs[key] = value
+                elif dataType == TYPE_INT_BOOLEAN:
+                    attrs[key] = value != 0
+                elif TYPE_FIRST_INT <= dataType <= TYPE_LAST_INT:
+                    attrs[key] = struct.unpack('<i', struct.pack('<I', value))[0]
+            elements.append((depth, strings[name], attrs))
+            depth += 1
+        elif chunkType == RES_XML_END_ELEMENT_TYPE:
+            depth -= 1
+        pos += size
+    return elements
+
+def className(package, name):
+    '''Return the full class name of a component, as PackageParser does.'''
+    if name.startswith('.'):
+        return package + name
+    if '.' not in name:
+        return package + '.' + name
+    return name
+
+def addLabel(entry, attrs):
+    '''Copy a label and an icon, either a string or a resource id.'''
+    label = attrs.get('label')
+    if isinstance(label, int) and not isinstance(label, bool):
+        entry['labelRes'] = label
+    elif label:
+        entry['label'] = label
+    icon = attrs.get('icon')
+    if isinstance(icon, int) and not isinstance(icon, bool):
+        entry['icon'] = icon
+
+def mainActivities(package, components):
+    '''
+    Return an entry for each filter on ACTION_MAIN without data, with the
+    activity's name, label and icon, the filter's categories and priority.
+    An activity-alias without a label or an icon takes its target's.
+    '''
+    activities = {}
+    for tag, attrs, filters in components:
+        if tag == 'activity' and attrs.get('name'):
+            activities[className(package, attrs['name'])] = attrs
+    result = []
+    for tag, attrs, filters in components:
+        if not attrs.get('name'):
+            continue
+        if tag == 'activity-alias':
+            target = activities.get(className(package,
+                    attrs.get('targetActivity') or ''))
+            if target is None:
+                continue
+            attrs = dict(target, **attrs)
+        for intentFilter in filters:
+            if ACTION_MAIN not in intentFilter['actions'] or intentFilter['data']:
+                continue
+            entry = {'name': className(package, attrs['name']),
+                     'categories': intentFilter['categories']}
+            addLabel(entry, attrs)
+            if intentFilter['priority']:
+                entry['priority'] = intentFilter['priority']
+            result.append(entry)
+    return result
+
+def indexEntry(appDir, name):
+    package = None
+    application = {}
+    actions = []
+    authorities = []
+    instrumentation = False
+    # (tag, attributes, intent filters) of the activities and aliases
+    components = []
+    component = None
+    intentFilter = None
+    for depth, tag, attrs in readManifest(os.path.join(appDir, MANIFEST)):
+        if component is not None and depth <= component[0]:
+            component = None
+        if intentFilter is not None and depth <= intentFilter[0]:
+            intentFilter = None
+        if tag == 'manifest':
+            package = attrs.get('package')
+        elif tag == 'application':
+            application = attrs
+        elif tag in ('activity', 'activity-alias'):
+            component = (depth, (tag, attrs, []))
+            components.append(component[1])
+        elif tag == 'intent-filter' and component is not None:
+            intentFilter = (depth, {'actions': [], 'categories': [], 'data': False,
+                                    'priority': attrs.get('priority', 0)})
+            component[1][2].append(intentFilter[1])
+        elif tag == 'category' and intentFilter is not None and attrs.get('name'):
+            intentFilter[1]['categories'].append(attrs['name'])
+        elif tag == 'data' and intentFilter is not None:
+            intentFilter[1]['data'] = True
+
+        if tag == 'action' and attrs.get('name'):
+            if attrs['name'] not in actions:
+                actions.append(attrs['name'])
+            if intentFilter is not None:
+                intentFilter[1]['actions'].append(attrs['name'])
+        elif tag == 'provider' and attrs.get('authorities'):
+            authorities += attrs['authorities'].split(';')
+        elif tag == 'instrumentation':
+            instrumentation = True
+    entry = {
+        'name': name,
+        'package': package or name,
+        'actions': actions,
+        'authorities': authorities,
+        'instrumentation': instrumentation,
+        'activities': mainActivities(package or name, components),
+    }
+    addLabel(entry, application)
+    return entry
+
+def writeIndex(appsDir):
+    entries = []
+    for name in sorted(os.listdir(appsDir)):
+        appDir = os.path.join(appsDir, name)
+        if os.path.isfile(os.path.join(appDir, MANIFEST)):
+            entries.append(indexEntry(appDir, name))
+    with open(os.path.join(appsDir, INDEX), 'w') as index:
+        json.dump(entries, index, indent=1, sort_keys=True)
+    return entries
+
+if __name__ == "__main__":
+    for entry in writeIndex(sys.argv[1]):
+        print('%s: %d actions' % (entry['package'], len(entry['actions'])))
@@ -0,0 +1,62 @@
+'''
+Write the prefetch manifest (prefetch.json) of the applications in bin/apps.
+
+The runtime fetches the files a manifest lists in parallel before launching
+the application, see android.content.res.AssetLoader. A manifest lists the
+resource table, then the layouts, then the drawables, until the byte budget
+is spent.
+
+usage: gen_prefetch_manifest.py <apps dir> [budget in KB]
+'''
+#-*- coding: UTF-8 -*-
+
+import json
+import os
+import sys
+
+MANIFEST = 'prefetch.json'
+DEFAULT_BUDGET_KB = 2048
+# files above this size are left to be read when they are needed
+MAX_FILE_SIZE = 256 * 1024
+
+def resourceFiles(appDir, prefix):
+    files = []
+    resDir = os.path.join(appDir, 'res')
+    if not os.path.isdir(resDir):
+        return files
+    for name in sorted(os.listdir(resDir)):
+        if name != prefix and not name.startswith(prefix + '-'):
+            continue
+        for root, dirs, names in os.walk(os.path.join(resDir, name)):
+            dirs.sort()
+            for fileName in sorted(names):
+                files.append(os.path.relpath(os.path.join(root, fileName), appDir))
+    return files
+
+def writeManifest(appDir, budget):
+    candidates = ['resources.arsc']
+    candidates += resourceFiles(appDir, 'layout')
+    candidates += resourceFiles(appDir, 'drawable')
+    files = []
+    for fileName in candidates:
+        path = os.path.join(appDir, fileName)
+        if not os.path.isfile(path):
+            continue
+        size = os.path.getsize(path)
+        if size > MAX_FILE_SIZE or size > budget:
+            continue
+        budget -= size
+        # the runtime joins the names to the application URL
+        files.append(fileName.replace(os.sep, '/'))
+    with open(os.path.join(appDir, MANIFEST), 'w') as manifest:
+        json.dump(files, manifest, indent=0)
+    return len(files)
+
+if __name__ == "__main__":
+    appsDir = sys.argv[1]
+    budget = (int(sys.argv[2]) if len(sys.argv) > 2 else DEFAULT_BUDGET_KB) * 1024
+    for app in sorted(os.listdir(appsDir)):
+        appDir = os.path.join(appsDir, app)
+        if os.path.isdir(appDir):
+            count = writeManifest(appDir, budget)
+            print('%s: %d files' % (app, count))
@@ -36,6 +36,7 @@ import android.content.res.Configuration;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Parcel;
@@ -816,6 +817,12 @@ public class ActivityManager {
 	private static final boolean DEBUG_BROADCAST = true;
 	private static final boolean DEBUG_BROADCAST_LIGHT = false;
 	private static final int BROADCAST_SUCCESS = 0;
+
+	/**
+	 * How long one batch of broadcasts may run on the main thread before the
+	 * rest of the queue waits for the next message.
+	 */
+	private static final long BROADCAST_BATCH_MILLIS = 8;
 	final ArrayList<TaskRecord> mRecentTasks = new ArrayList<TaskRecord>();
 	public ActivityRecord mFocusedActivity;
 
@@ -944,49 +951,137 @@ public class ActivityManager {
 
 	private final void deliverToRegisteredReceiverLocked(BroadcastRecord r,
             BroadcastFilter filter, boolean ordered) {
+		if (mRegisteredReceivers.get(filter.receiverList.receiver) != filter.receiverList) {
+			// Unregistered since the broadcast was queued
+			if (DEBUG_BROADCAST)
+				Log.i(TAG, "Skipping unregistered receiver: " + filter);
+			return;
+		}
 		Context context=filter.receiverList.receiver.mOuterContext;
 		Intent intent=r.intent;
 		filter.receiverList.receiver.receiver.onReceive(context, intent);
 	}
 
-	private final void processNextBroadcast(Intent intent) {
+	private final void deliverToManifestReceiverLocked(BroadcastRecord r,
+			ResolveInfo target) {
+		// A receiver object is only valid for one call to onReceive(), so a
+		// new one is made each time; the class lookup is what is kept.
+		String className = target.activityInfo.name;
+		BroadcastReceiver receiver = null;
+		try {
+			Class<?> cls = mReceiverClasses.get(className);
+			if (cls == null) {
+				cls = Class.forName(className);
+				mReceiverClasses.put(className, cls);
+			}
+			receiver = (BroadcastReceiver) cls.newInstance();
+		} catch (Exception e) {
+			Log.i(TAG, "Create broadrecerver error");
+			return;
+		}
+		receiver.onReceive(Context.mOuterContext, r.intent);
+	}
+
+	/**
+	 * Deliver the broadcasts queued so far, until BROADCAST_BATCH_MILLIS is
+	 * spent. Broadcasts sent by the receivers wait for the next batch.
+	 */
+	private final void processNextBroadcast() {
+		mBroadcastsScheduled = false;
+		final long start = SystemClock.uptimeMillis();
+		int numParallel = mParallelBroadcasts.size();
+		int numOrdered = mOrderedBroadcasts.size();
+
 		// First, deliver any non-serialized broadcasts right away.
-		if (mParallelBroadcasts.size() > 0) {
-			BroadcastRecord r=mParallelBroadcasts.remove(0);
+		while (numParallel > 0) {
+			BroadcastRecord r = mParallelBroadcasts.remove(0);
+			numParallel--;
 			r.dispatchTime = SystemClock.uptimeMillis();
 			final int N = r.receivers.size();
+			if (DEBUG_BROADCAST)
+				Log.i(TAG, "receivers size:" + N);
 			for (int i = 0; i < N; i++) {
 				Object target = r.receivers.get(i);
-				if (DEBUG_BROADCAST)
-					Log.i(TAG, "receivers size:" + N);
 				deliverToRegisteredReceiverLocked(r, (BroadcastFilter) target,
 						false);
 			}
+			if (SystemClock.uptimeMillis() - start >= BROADCAST_BATCH_MILLIS) {
+				scheduleBroadcastsLocked();
+				return;
+			}
 		}
-		if (mOrderedBroadcasts.size() > 0) {
-			BroadcastRecord r=mOrderedBroadcasts.remove(0);
+		while (numOrdered > 0) {
+			BroadcastRecord r = mOrderedBroadcasts.remove(0);
+			numOrdered--;
 			r.dispatchTime = SystemClock.uptimeMillis();
 			final int N = r.receivers.size();
+			if (DEBUG_BROADCAST)
+				Log.i(TAG, "package receivers size:" + N);
 			for (int i = 0; i < N; i++) {
-				ResolveInfo target = (ResolveInfo)r.receivers.get(i);
-				if (DEBUG_BROADCAST)
-					Log.i(TAG, "package receivers size:" + N);
-
-				BroadcastReceiver receiver = null;
-		        try {
-		            receiver = (BroadcastReceiver)Class.forName(target.activityInfo.name).newInstance();
-		        } catch (Exception e) {
-		        	Log.i(TAG, "Create broadrecerver error");
-		        }
-		        receiver.onReceive(Context.mOuterContext, intent);
+				deliverToManifestReceiverLocked(r,
+						(ResolveInfo) r.receivers.get(i));
 			}
+			if (SystemClock.uptimeMillis() - start >= BROADCAST_BATCH_MILLIS) {
+				scheduleBroadcastsLocked();
+				return;
+			}
+		}
+		if (mParallelBroadcasts.size() > 0 || mOrderedBroadcasts.size() > 0) {
+			scheduleBroadcastsLocked();
 		}
 	}
 
-	private final void scheduleBroadcastsLocked(Intent intent) {
-		processNextBroadcast(intent);
+	/**
+	 * MayLoon: broadcasts used to be delivered from inside sendBroadcast(),
+	 * on the sender's time. They are delivered from the main looper instead,
+	 * the way a broadcast from another process would arrive.
+	 */
+	private final void scheduleBroadcastsLocked() {
+		if (mBroadcastsScheduled) {
+			return;
+		}
+		if (mBroadcastHandler == null) {
+			mBroadcastHandler = new Handler();
+		}
+		mBroadcastHandler.post(mProcessBroadcasts);
+		mBroadcastsScheduled = true;
 	}
 
+	/**
+	 * Queue the given broadcast. If replace is set and a broadcast of the
+	 * same intent is still waiting in the queue, it takes that one's place
+	 * instead: its receivers only get to see the latest one.
+	 */
+	private final void enqueueBroadcastLocked(ArrayList<BroadcastRecord> queue,
+			BroadcastRecord r, boolean replace) {
+		if (replace) {
+			for (int i = queue.size() - 1; i >= 0; i--) {
+				if (r.intent.filterEquals(queue.get(i).intent)) {
+					if (DEBUG_BROADCAST)
+						Log.i(TAG, "***** DROPPING PENDING: " + r.intent);
+					queue.set(i, r);
+					return;
+				}
+			}
+		}
+		queue.add(r);
+	}
+
+	private final Runnable mProcessBroadcasts = new Runnable() {
+		public void run() {
+			processNextBroadcast();
+		}
+	};
+
+	private Handler mBroadcastHandler;
+	private boolean mBroadcastsScheduled;
+
+	/**
+	 * Manifest receiver classes, by class name.
+	 */
+	private final HashMap<String, Class<?>> mReceiverClasses
+			= new HashMap<String, Class<?>>();
+
 
 	final ArrayList<BroadcastRecord> mParallelBroadcasts
     = new ArrayList<BroadcastRecord>();
@@ -998,6 +1093,8 @@ public class ActivityManager {
 			String resolvedType, IIntentReceiver resultTo, int resultCode,
 			String resultData, Bundle map, String requiredPermission,
 			boolean ordered, boolean sticky) {
+		// The broadcast is delivered later, keep it from the caller's changes
+		intent = new Intent(intent);
 
 		final ProcessRecord callerApp = getRecordForAppLocked(caller);
 
@@ -1018,7 +1115,10 @@ public class ActivityManager {
 		registeredReceivers = mReceiverResolver.queryIntent(intent,
 				resolvedType, false);
 
-		final boolean replacePending = (intent.getFlags() & Intent.FLAG_RECEIVER_REPLACE_PENDING) != 0;
+		// A sticky broadcast stands for the current state of things, so
+		// only the latest one is worth delivering.
+		final boolean replacePending = sticky
+				|| (intent.getFlags() & Intent.FLAG_RECEIVER_REPLACE_PENDING) != 0;
 
 
 		Log.i(TAG, "ComponentNamename:"+intent.getComponent());
@@ -1044,7 +1144,7 @@ public class ActivityManager {
 			}
 		}
 
-		Log.i(TAG, "package receiver size is:"+String.valueOf(receivers.size()));
+		Log.i(TAG, "package receiver size is:"+String.valueOf(receivers != null ? receivers.size() : 0));
 		int NR = registeredReceivers != null ? registeredReceivers.size() : 0;
 		if (!ordered && NR > 0) {
 			// If we are not serializing this broadcast, then send the
@@ -1055,17 +1155,19 @@ public class ActivityManager {
 					registeredReceivers, resultCode, resultData, map, ordered,
 					sticky, false);
 
-			mParallelBroadcasts.add(r);
+			enqueueBroadcastLocked(mParallelBroadcasts, r, replacePending);
 			registeredReceivers = null;
 			NR = 0;
 		}
 
-		BroadcastRecord s = new BroadcastRecord(intent, callerApp,
-				null, 0, 0, requiredPermission,
-				receivers, resultCode, resultData, map, ordered,
-				sticky, false);
-		mOrderedBroadcasts.add(s);
-		scheduleBroadcastsLocked(intent);
+		if (receivers != null && receivers.size() > 0) {
+			BroadcastRecord s = new BroadcastRecord(intent, callerApp,
+					null, 0, 0, requiredPermission,
+					receivers, resultCode, resultData, map, ordered,
+					sticky, false);
+			enqueueBroadcastLocked(mOrderedBroadcasts, s, replacePending);
+		}
+		scheduleBroadcastsLocked();
 
 		return BROADCAST_SUCCESS;
 	}
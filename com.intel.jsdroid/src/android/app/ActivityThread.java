@@ -17,6 +17,7 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ProviderInfo;
+import android.content.res.AssetLoader;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.os.Binder;
@@ -550,8 +551,20 @@ public class ActivityThread {
                 Slog.v(TAG, ">>> handling: " + msg.what);
             switch (msg.what) {
                 case LAUNCH_ACTIVITY: {
-                    ActivityClientRecord r = (ActivityClientRecord) msg.obj;
-
+                    final ActivityClientRecord r = (ActivityClientRecord) msg.obj;
+
+                    // MayLoon: fetch what the application's prefetch manifest
+                    // lists in parallel, and launch once it is in, rather
+                    // than have the launch read the files one by one
+                    final H h = this;
+                    if (AssetLoader.warmUp("bin/apps/" + r.activityInfo.packageName + "/",
+                            new Runnable() {
+                                public void run() {
+                                    h.sendMessage(h.obtainMessage(LAUNCH_ACTIVITY, r));
+                                }
+                            })) {
+                        break;
+                    }
                     r.packageInfo = getPackageInfoNoCheck(
                             r.activityInfo.applicationInfo);
                     handleLaunchActivity(r, null);
@@ -18,6 +18,7 @@ package android.content.pm;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -27,7 +28,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import android.net.Uri;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.PrintWriterPrinter;
 import android.util.LogPrinter;
 import android.util.Printer;
@@ -45,6 +48,11 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
     final private static boolean DEBUG = false;
     final private static boolean localLOGV = DEBUG || Config.LOGV;
 
+    /**
+     * The number of recent queries whose matching filters are remembered.
+     */
+    private static final int MAX_CACHED_QUERIES = 64;
+
     public void addFilter(F f) {
         if (localLOGV) {
             System.out.println(TAG + "Adding filter: " + f);
@@ -53,6 +61,7 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
         }
 
         mFilters.add(f);
+        mQueryCache.evictAll();
         int numS = register_intent_filter(f, f.schemesIterator(),
                 mSchemeToFilter, "      Scheme: ");
         int numT = register_mime_types(f, "      Type: ");
@@ -78,6 +87,7 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
             System.out.println(TAG + "    Cleaning Lookup Maps:");
         }
 
+        mQueryCache.evictAll();
         int numS = unregister_intent_filter(f, f.schemesIterator(),
                 mSchemeToFilter, "      Scheme: ");
         int numT = unregister_mime_types(f, "      Type: ");
@@ -210,7 +220,7 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
         int N = listCut.size();
         for (int i = 0; i < N; ++i) {
             buildResolveList(intent, debug, defaultOnly,
-                             resolvedType, scheme, listCut.get(i), resultList);
+                             resolvedType, scheme, listCut.get(i), resultList, null);
         }
         sortResults(resultList);
         return resultList;
@@ -228,6 +238,31 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
             TAG, "Resolving type " + resolvedType + " scheme " + scheme
             + " of intent " + intent);
 
+        // MayLoon: applications fire the same broadcasts and start the same
+        // activities over and over. The filters that matched a query are kept
+        // until a filter is added or removed, and the results are made again
+        // from them: results are built from the resolver's current flags, and
+        // callers are free to change them.
+        final String cacheKey = debug ? null : queryKey(intent, resolvedType, defaultOnly);
+        if (cacheKey != null) {
+            CachedQuery<F> cached = mQueryCache.get(cacheKey);
+            if (cached != null) {
+                final int N = cached.filters.size();
+                for (int i=0; i<N; i++) {
+                    F filter = cached.filters.get(i);
+                    if (allowFilterResult(filter, finalList)) {
+                        final R oneResult = newResult(filter, cached.matches[i]);
+                        if (oneResult != null) {
+                            finalList.add(oneResult);
+                        }
+                    }
+                }
+                sortResults(finalList);
+                return finalList;
+            }
+        }
+        final CachedQuery<F> query = cacheKey != null ? new CachedQuery<F>() : null;
+
         ArrayList<F> firstTypeCut = null;
         ArrayList<F> secondTypeCut = null;
         ArrayList<F> thirdTypeCut = null;
@@ -273,7 +308,6 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
         // the filters that match its scheme (we will further refine matches
         // on the authority and path by directly matching each resulting filter).
         if (scheme != null) {
-        	System.out.println("mSchemeToFilter:"+mSchemeToFilter.size()+mSchemeToFilter);
             schemeCut = mSchemeToFilter.get(scheme);
             if (debug) Slog.v(TAG, "Scheme list: " + schemeCut);
         }
@@ -288,19 +322,22 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
 
         if (firstTypeCut != null) {
             buildResolveList(intent, debug, defaultOnly,
-                    resolvedType, scheme, firstTypeCut, finalList);
+                    resolvedType, scheme, firstTypeCut, finalList, query);
         }
         if (secondTypeCut != null) {
             buildResolveList(intent, debug, defaultOnly,
-                    resolvedType, scheme, secondTypeCut, finalList);
+                    resolvedType, scheme, secondTypeCut, finalList, query);
         }
         if (thirdTypeCut != null) {
             buildResolveList(intent, debug, defaultOnly,
-                    resolvedType, scheme, thirdTypeCut, finalList);
+                    resolvedType, scheme, thirdTypeCut, finalList, query);
         }
         if (schemeCut != null) {
             buildResolveList(intent, debug, defaultOnly,
-                    resolvedType, scheme, schemeCut, finalList);
+                    resolvedType, scheme, schemeCut, finalList, query);
+        }
+        if (query != null) {
+            mQueryCache.put(cacheKey, query);
         }
         sortResults(finalList);
 
@@ -478,8 +515,34 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
         return false;
     }
 
+    /**
+     * Returns the key of the given query in the query cache: everything
+     * IntentFilter.match looks at. The scheme, authority and path all come
+     * from the data URI.
+     */
+    private static String queryKey(Intent intent, String resolvedType, boolean defaultOnly) {
+        StringBuilder key = new StringBuilder();
+        key.append(defaultOnly ? 'D' : '-');
+        key.append(intent.getAction()).append('\n');
+        key.append(resolvedType).append('\n');
+        Uri data = intent.getData();
+        key.append(data != null ? data.toString() : null);
+        Set<String> categories = intent.getCategories();
+        if (categories != null) {
+            String[] sorted = categories.toArray(new String[categories.size()]);
+            if (sorted.length > 1) {
+                Arrays.sort(sorted);
+            }
+            for (int i=0; i<sorted.length; i++) {
+                key.append('\n').append(sorted[i]);
+            }
+        }
+        return key.toString();
+    }
+
     private void buildResolveList(Intent intent, boolean debug, boolean defaultOnly,
-            String resolvedType, String scheme, List<F> src, List<R> dest) {
+            String resolvedType, String scheme, List<F> src, List<R> dest,
+            CachedQuery<F> query) {
         Set<String> categories = intent.getCategories();
 
         final int N = src != null ? src.size() : 0;
@@ -504,6 +567,9 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
                 if (debug) Slog.v(TAG, "  Filter matched!  match=0x" +
                         Integer.toHexString(match));
                 if (!defaultOnly || filter.hasCategory(Intent.CATEGORY_DEFAULT)) {
+                    if (query != null) {
+                        query.add(filter, match);
+                    }
                     final R oneResult = newResult(filter, match);
                     if (oneResult != null) {
                         dest.add(oneResult);
@@ -540,6 +606,33 @@ public class IntentResolver<F extends IntentFilter, R extends Object> {
         }
     };
 
+    /**
+     * The filters that matched a query, in the order they were matched,
+     * and what IntentFilter.match returned for each.
+     */
+    private static final class CachedQuery<F> {
+        final ArrayList<F> filters = new ArrayList<F>(4);
+        int[] matches = new int[4];
+
+        void add(F filter, int match) {
+            final int N = filters.size();
+            if (N == matches.length) {
+                int[] newMatches = new int[N * 2];
+                System.arraycopy(matches, 0, newMatches, 0, N);
+                matches = newMatches;
+            }
+            matches[N] = match;
+            filters.add(filter);
+        }
+    }
+
+    /**
+     * Recent queries, by queryKey. Cleared whenever a filter is added or
+     * removed.
+     */
+    private final LruCache<String, CachedQuery<F>> mQueryCache
+            = new LruCache<String, CachedQuery<F>>(MAX_CACHED_QUERIES);
+
     /**
      * All filters that have been registered.
      */
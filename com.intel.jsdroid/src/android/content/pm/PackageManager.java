@@ -9,6 +9,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import com.intel.mpt.annotation.MayloonStubAnnotation;
 
@@ -18,8 +19,10 @@ import android.content.ComponentName;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageParser.Activity;
 import android.content.pm.PackageParser.ActivityIntentInfo;
+import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
 import android.graphics.drawable.Drawable;
@@ -1020,6 +1023,28 @@ public class PackageManager {
         Log.w(TAG, "PackageManager begin to install packages at time:" + start);
         
         String appsDir = "bin/apps/";
+        ArrayList<String> blackList = new ArrayList<String>();
+        // blackList.add("com.m2m.chess");
+        // blackList.add("com.intel.jsdroid.calculator2");
+        // blackList.add("com.example.android.snake");
+        blackList.add("com.test");
+        blackList.add("com.intel.jsdroid.sample");
+        blackList.add("com.intel.jsdroid.provider.test");
+        blackList.add("com.intel.llf.hellobroadcast");
+        blackList.add("com.intel.jsdroid.sample.service");
+        blackList.add("com.intel.jsdroid.jsMemo");
+        bootStartTime = SystemClock.uptimeMillis();
+
+        // MayLoon: read the index of the packages written at build time, and
+        // parse the manifest of a package once one of its components may be
+        // needed, rather than all of them now.
+        if (loadPackageIndex(appsDir, blackList)) {
+            long end = System.currentTimeMillis();
+            Log.w(TAG, "PackageManager indexed " + mUnparsedPackages.size()
+                    + " packages, used time:" + (end - start) + "ms");
+            return;
+        }
+
         ArrayList<String> apps = new ArrayList<String>();
 
 		/**
@@ -1108,17 +1133,6 @@ public class PackageManager {
 		}
 		/**/
 
-        ArrayList<String> blackList = new ArrayList<String>();
-        // blackList.add("com.m2m.chess");
-        // blackList.add("com.intel.jsdroid.calculator2");
-        // blackList.add("com.example.android.snake");
-        blackList.add("com.test");
-        blackList.add("com.intel.jsdroid.sample");
-        blackList.add("com.intel.jsdroid.provider.test");
-        blackList.add("com.intel.llf.hellobroadcast");
-        blackList.add("com.intel.jsdroid.sample.service");
-        blackList.add("com.intel.jsdroid.jsMemo");
-        bootStartTime = SystemClock.uptimeMillis();
         for (String appName : apps) {
             if (blackList.indexOf(appName) < 0)
                 installPackage(appName);
@@ -1133,6 +1147,329 @@ public class PackageManager {
         return bootStartTime;
     }
 
+    /**
+     * The name of the package index in the applications directory
+     */
+    private static final String PACKAGE_INDEX = "packages.json";
+
+    /**
+     * What the package index tells about a package whose manifest is not
+     * parsed yet.
+     */
+    private static final class PackageIndexEntry {
+        // The directory of the package in the applications directory
+        final String name;
+        final String packageName;
+        // The intent actions the components of the package filter on
+        final String[] actions;
+        // The authorities of the content providers of the package
+        final String[] authorities;
+        final boolean hasInstrumentation;
+        // The label and icon of the application
+        final String label;
+        final int labelRes;
+        final int icon;
+        // The activities filtering on ACTION_MAIN without data
+        final ArrayList<IndexedActivity> activities = new ArrayList<IndexedActivity>();
+        // Made the first time an indexed activity is listed
+        ApplicationInfo applicationInfo;
+        // The resource table alone, loaded to draw an icon
+        Resources resources;
+
+        PackageIndexEntry(String name, String packageName, String[] actions,
+                String[] authorities, boolean hasInstrumentation, String label,
+                int labelRes, int icon) {
+            this.name = name;
+            this.packageName = packageName;
+            this.actions = actions;
+            this.authorities = authorities;
+            this.hasInstrumentation = hasInstrumentation;
+            this.label = label;
+            this.labelRes = labelRes;
+            this.icon = icon;
+        }
+
+        boolean hasAction(String action) {
+            for (int i = 0; i < actions.length; i++) {
+                if (action.equals(actions[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean hasAuthority(String authority) {
+            for (int i = 0; i < authorities.length; i++) {
+                if (authority.equals(authorities[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * What the package index tells about an intent filter on ACTION_MAIN
+     * without data, and the activity it belongs to.
+     */
+    private static final class IndexedActivity {
+        final String name;
+        final String[] categories;
+        final String label;
+        final int labelRes;
+        final int icon;
+        final int priority;
+
+        IndexedActivity(String name, String[] categories, String label,
+                int labelRes, int icon, int priority) {
+            this.name = name;
+            this.categories = categories;
+            this.label = label;
+            this.labelRes = labelRes;
+            this.icon = icon;
+            this.priority = priority;
+        }
+
+        boolean hasCategory(String category) {
+            for (int i = 0; i < categories.length; i++) {
+                if (category.equals(categories[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matches(Set<String> intentCategories, boolean defaultOnly) {
+            if (defaultOnly && !hasCategory(Intent.CATEGORY_DEFAULT)) {
+                return false;
+            }
+            if (intentCategories != null) {
+                for (String category : intentCategories) {
+                    if (!hasCategory(category)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    // The indexed packages whose manifests are not parsed yet, by package name
+    private final HashMap<String, PackageIndexEntry> mUnparsedPackages =
+            new HashMap<String, PackageIndexEntry>();
+
+    /**
+     * Read the package index in the given directory, written at build time
+     * by build_script/gen_package_index.py.
+     *
+     * @return false if there is no index, in which case the directory has to
+     *         be listed and every package in it installed.
+     */
+    private boolean loadPackageIndex(String appsDir, ArrayList<String> blackList) {
+        String indexFile = appsDir + PACKAGE_INDEX;
+        boolean found = false;
+        /**
+         * @j2sNative
+         * try {
+         *     var xhr = new XMLHttpRequest();
+         *     xhr.open("GET", indexFile, false);
+         *     xhr.send(null);
+         *     if ((xhr.status == 200 || xhr.status == 0) && xhr.responseText) {
+         *         var entries = JSON.parse(xhr.responseText);
+         *         if (entries instanceof Array) {
+         *             for (var i = 0; i < entries.length; i++) {
+         *                 var entry = entries[i];
+         *                 this.addIndexedPackage(entry["name"], entry["package"],
+         *                         entry["actions"] || [], entry["authorities"] || [],
+         *                         !!entry["instrumentation"], entry["label"] || null,
+         *                         entry["labelRes"] || 0, entry["icon"] || 0, blackList);
+         *                 var activities = entry["activities"] || [];
+         *                 for (var j = 0; j < activities.length; j++) {
+         *                     var activity = activities[j];
+         *                     this.addIndexedActivity(entry["package"], activity["name"],
+         *                             activity["categories"] || [], activity["label"] || null,
+         *                             activity["labelRes"] || 0, activity["icon"] || 0,
+         *                             activity["priority"] || 0);
+         *                 }
+         *             }
+         *             found = true;
+         *         }
+         *     }
+         * } catch (e) {
+         *     console.log("Unable to read " + indexFile + ": " + e);
+         * }
+         */{}
+        return found;
+    }
+
+    /* package */ void addIndexedPackage(String name, String packageName,
+            String[] actions, String[] authorities, boolean hasInstrumentation,
+            String label, int labelRes, int icon, ArrayList<String> blackList) {
+        if (blackList.indexOf(name) < 0) {
+            mUnparsedPackages.put(packageName, new PackageIndexEntry(name,
+                    packageName, actions, authorities, hasInstrumentation, label,
+                    labelRes, icon));
+        }
+    }
+
+    /* package */ void addIndexedActivity(String packageName, String name,
+            String[] categories, String label, int labelRes, int icon,
+            int priority) {
+        PackageIndexEntry entry = mUnparsedPackages.get(packageName);
+        if (entry != null) {
+            entry.activities.add(new IndexedActivity(name, categories, label,
+                    labelRes, icon, priority));
+        }
+    }
+
+    /**
+     * Whether the activities the given intent resolves to are all in the
+     * package index: it asks for ACTION_MAIN without data, like the launcher.
+     */
+    private static boolean isIndexedQuery(Intent intent, String resolvedType) {
+        return Intent.ACTION_MAIN.equals(intent.getAction())
+                && intent.getComponent() == null && intent.getPackage() == null
+                && intent.getData() == null && intent.getType() == null
+                && resolvedType == null;
+    }
+
+    /**
+     * Resolve an intent for which {@link #isIndexedQuery} holds: the parsed
+     * packages are queried as usual, and the others answered from the index.
+     */
+    private List<ResolveInfo> queryIndexedActivities(Intent intent,
+            String resolvedType, int flags) {
+        List<ResolveInfo> list = mActivities.queryIntent(intent, resolvedType, flags);
+        if (mUnparsedPackages.isEmpty()) {
+            return list;
+        }
+        final boolean defaultOnly = (flags & MATCH_DEFAULT_ONLY) != 0;
+        final Set<String> categories = intent.getCategories();
+        for (PackageIndexEntry entry : mUnparsedPackages.values()) {
+            for (int i = 0; i < entry.activities.size(); i++) {
+                IndexedActivity activity = entry.activities.get(i);
+                if (activity.matches(categories, defaultOnly)) {
+                    list.add(newIndexedResult(entry, activity));
+                }
+            }
+        }
+        Collections.sort(list, mResolvePrioritySorter);
+        return list;
+    }
+
+    private ResolveInfo newIndexedResult(PackageIndexEntry entry,
+            IndexedActivity activity) {
+        final String packageName = entry.packageName;
+        if (entry.applicationInfo == null) {
+            ApplicationInfo ai = new ApplicationInfo();
+            ai.packageName = packageName;
+            ai.processName = packageName;
+            ai.nonLocalizedLabel = entry.label;
+            ai.labelRes = entry.labelRes;
+            ai.icon = entry.icon;
+            ai.enabled = true;
+            entry.applicationInfo = ai;
+        }
+        ActivityInfo info = new ActivityInfo();
+        info.applicationInfo = entry.applicationInfo;
+        info.packageName = packageName;
+        info.processName = packageName;
+        info.name = activity.name;
+        info.nonLocalizedLabel = activity.label;
+        info.labelRes = activity.labelRes;
+        info.icon = activity.icon;
+        info.enabled = true;
+        info.exported = true;
+
+        ResolveInfo res = new ResolveInfo();
+        res.activityInfo = info;
+        res.priority = activity.priority;
+        res.isDefault = activity.hasCategory(Intent.CATEGORY_DEFAULT);
+        res.match = IntentFilter.MATCH_CATEGORY_EMPTY
+                + IntentFilter.MATCH_ADJUSTMENT_NORMAL;
+        return res;
+    }
+
+    /**
+     * Return the given package, parsing its manifest first if it was only
+     * indexed so far.
+     */
+    private PackageParser.Package getPackage(String packageName) {
+        if (packageName != null && !mUnparsedPackages.isEmpty()) {
+            PackageIndexEntry entry = mUnparsedPackages.remove(packageName);
+            if (entry != null) {
+                installPackage(entry.name);
+            }
+        }
+        return mPackages.get(packageName);
+    }
+
+    /**
+     * Parse the manifests of the packages with components that may match
+     * the given intent.
+     */
+    private void loadPackagesForIntent(Intent intent) {
+        if (mUnparsedPackages.isEmpty()) {
+            return;
+        }
+        ComponentName comp = intent.getComponent();
+        if (comp != null) {
+            getPackage(comp.getPackageName());
+            return;
+        }
+        if (intent.getPackage() != null) {
+            getPackage(intent.getPackage());
+            return;
+        }
+        // A filter never matches an intent whose action it doesn't list
+        String action = intent.getAction();
+        ArrayList<String> packages = new ArrayList<String>();
+        for (String packageName : mUnparsedPackages.keySet()) {
+            if (action == null || mUnparsedPackages.get(packageName).hasAction(action)) {
+                packages.add(packageName);
+            }
+        }
+        for (int i = 0; i < packages.size(); i++) {
+            getPackage(packages.get(i));
+        }
+    }
+
+    private static final int LOAD_PROVIDERS = 1;
+    private static final int LOAD_INSTRUMENTATION = 2;
+
+    /**
+     * Parse the manifests of the packages with content providers, or with
+     * instrumentation.
+     */
+    private void loadPackagesWith(int what) {
+        if (mUnparsedPackages.isEmpty()) {
+            return;
+        }
+        ArrayList<String> packages = new ArrayList<String>();
+        for (String packageName : mUnparsedPackages.keySet()) {
+            PackageIndexEntry entry = mUnparsedPackages.get(packageName);
+            if (what == LOAD_PROVIDERS ? entry.authorities.length > 0
+                    : entry.hasInstrumentation) {
+                packages.add(packageName);
+            }
+        }
+        for (int i = 0; i < packages.size(); i++) {
+            getPackage(packages.get(i));
+        }
+    }
+
+    private void loadPackageForAuthority(String authority) {
+        if (authority == null || mUnparsedPackages.isEmpty()) {
+            return;
+        }
+        for (String packageName : mUnparsedPackages.keySet()) {
+            if (mUnparsedPackages.get(packageName).hasAuthority(authority)) {
+                getPackage(packageName);
+                return;
+            }
+        }
+    }
+
 	/**
 	* This exception is thrown when a given package, application, or component
 	* name can not be found.
@@ -1149,7 +1486,7 @@ public class PackageManager {
 
 	// SIYU: for test
 	public String[] getAllActivities(String packageName) {
-		PackageParser.Package p = mPackages.get(packageName);
+		PackageParser.Package p = getPackage(packageName);
 		if (p != null) {
 			//			System.out.println("package installed");
 		} else {
@@ -1164,7 +1501,7 @@ public class PackageManager {
 	}
 
 	public String getLauncherActivity(String packageName) {
-		PackageParser.Package p = mPackages.get(packageName);
+		PackageParser.Package p = getPackage(packageName);
 		if (p != null) {
 			//			System.out.println("package installed");
 		} else {
@@ -1398,7 +1735,20 @@ public class PackageManager {
 	private HashMap<ComponentName, PackageParser.Instrumentation> mInstrumentation = new HashMap<ComponentName, PackageParser.Instrumentation>();
 
 	public Resources getPackageResources(String packageName) {
-		return mPackages.get(packageName).mResource;
+		// MayLoon: the icon of a package that is only indexed needs its
+		// resource table, not its manifest
+		PackageIndexEntry entry = mUnparsedPackages.get(packageName);
+		if (entry != null) {
+			if (entry.resources == null) {
+				AssetManager assets = new AssetManager();
+				assets.addAssetPath("bin/apps/" + entry.name + "/");
+				DisplayMetrics dm = new DisplayMetrics();
+				dm.setToDefaults();
+				entry.resources = new Resources(assets, dm, null);
+			}
+			return entry.resources;
+		}
+		return getPackage(packageName).mResource;
 	}
 	
 	public Drawable getActivityIcon(ComponentName activityName)
@@ -1437,7 +1787,7 @@ public class PackageManager {
 
 	public PackageInfo getPackageInfo(String packageName, int flags) {
 		PackageInfo pi = null;
-		PackageParser.Package pkg = mPackages.get(packageName);
+		PackageParser.Package pkg = getPackage(packageName);
 		if (pkg != null) {
 			pi = new PackageInfo();
 			pi.packageName = pkg.packageName;
@@ -1451,7 +1801,7 @@ public class PackageManager {
 
 	public ApplicationInfo getApplicationInfo(String packageName, int flags)
 			throws NameNotFoundException {
-		PackageParser.Package p = mPackages.get(packageName);
+		PackageParser.Package p = getPackage(packageName);
 		if (Config.LOGV)
 			Log.v(TAG, "getApplicationInfo " + packageName + ": " + p);
 		if (p != null) {
@@ -1469,6 +1819,7 @@ public class PackageManager {
         /**
          * @Mayloon update Remove synchronized
          */
+        getPackage(name.getPackageName());
         final PackageParser.Instrumentation i = mInstrumentation.get(name);
         return PackageParser.generateInstrumentationInfo(i, flags);
     }
@@ -1476,7 +1827,7 @@ public class PackageManager {
     public ActivityInfo getActivityInfo(ComponentName cmpName, int flags)
             throws NameNotFoundException {
         String cls = cmpName.getClassName();
-        PackageParser.Package pkg = mPackages.get(cmpName.getPackageName());
+        PackageParser.Package pkg = getPackage(cmpName.getPackageName());
         ActivityInfo activityinfo = new ActivityInfo();
         if (pkg != null) {
             for (int i = 0; i < pkg.activities.size(); ++i) {
@@ -1493,7 +1844,7 @@ public class PackageManager {
 
     public ServiceInfo getServiceInfo(ComponentName cmpName, int flags) throws NameNotFoundException {
         	String cls = cmpName.getClassName();
-    		PackageParser.Package pkg = mPackages.get(cmpName.getPackageName());
+    		PackageParser.Package pkg = getPackage(cmpName.getPackageName());
     		if (pkg != null) {
     			for (int i = 0; i < pkg.services.size(); ++i) {
     				if (pkg.services.get(i).className.equals(cls))
@@ -1654,6 +2005,10 @@ public class PackageManager {
 
 	public List<ResolveInfo> queryIntentActivities(Intent intent,
 			String resolvedType, int flags) {
+		if (isIndexedQuery(intent, resolvedType)) {
+			return queryIndexedActivities(intent, resolvedType, flags);
+		}
+		loadPackagesForIntent(intent);
 		ComponentName comp = intent.getComponent();
 		if (comp != null) {
 			List<ResolveInfo> list = new ArrayList<ResolveInfo>(1);
@@ -1691,6 +2046,7 @@ public class PackageManager {
      }
 
 	public List<ResolveInfo> queryIntentServices(Intent intent, String resolvedType, int flags) {
+        loadPackagesForIntent(intent);
         final ComponentName comp = intent.getComponent();
         if (comp != null) {
             final List<ResolveInfo> list = new ArrayList<ResolveInfo>(1);
@@ -1731,6 +2087,7 @@ public class PackageManager {
 	}
 
 	public ProviderInfo resolveContentProvider(String name, int flags){
+		loadPackageForAuthority(name);
 		final PackageParser.Provider provider = mProviders.get(name);
 		return provider != null
         ? PackageParser.generateProviderInfo(provider, flags)
@@ -1741,6 +2098,7 @@ public class PackageManager {
             int uid, int flags) {
         ArrayList<ProviderInfo> finalList = null;
 
+        loadPackagesWith(LOAD_PROVIDERS);
         synchronized (mPackages) {
             Iterator<PackageParser.Provider> i = mProvidersByComponent.values().iterator();
             while (i.hasNext()) {
@@ -1770,6 +2128,7 @@ public class PackageManager {
         ArrayList<InstrumentationInfo> finalList =
             new ArrayList<InstrumentationInfo>();
 
+        loadPackagesWith(LOAD_INSTRUMENTATION);
         synchronized (mPackages) {
             Iterator<PackageParser.Instrumentation> i = mInstrumentation.values().iterator();
             while (i.hasNext()) {
@@ -1790,6 +2149,7 @@ public class PackageManager {
             new ActivityIntentResolver();
 
 	public ActivityInfo getReceiverInfo(ComponentName component, int flags) {
+        getPackage(component.getPackageName());
         synchronized (mPackages) {
             PackageParser.Activity a = mReceivers.mActivities.get(component);
             if (a != null ) {
@@ -1806,6 +2166,7 @@ public class PackageManager {
 
 	public List<ResolveInfo> queryIntentReceivers(Intent intent,
             String resolvedType, int flags) {
+        loadPackagesForIntent(intent);
         ComponentName comp = intent.getComponent();
         if (comp != null) {
             List<ResolveInfo> list = new ArrayList<ResolveInfo>(1);
@@ -0,0 +1,186 @@
+package android.content.res;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import android.util.Log;
+
+/**
+ * Fetches asset files in the background, ahead of the time they are opened.
+ *
+ * MayLoon: assets are opened synchronously, and each one used to cost a
+ * synchronous XMLHttpRequest. The loader keeps up to MAX_PARALLEL_FETCHES
+ * asynchronous requests in flight and holds what they return until
+ * _FileAsset opens the file, which then costs no request at all. A file that
+ * is opened before its fetch completes is still read synchronously, and the
+ * late response is dropped.
+ *
+ * What to fetch comes from the prefetch manifest of an application: a JSON
+ * array of file names relative to the application directory, written at
+ * build time by build_script/gen_prefetch_manifest.py.
+ *
+ * @hide
+ */
+public final class AssetLoader {
+    private static final String TAG = "AssetLoader";
+    private static final boolean DEBUG = false;
+
+    /** The name of the prefetch manifest in the application directory */
+    public static final String PREFETCH_MANIFEST = "prefetch.json";
+
+    private static final int MAX_PARALLEL_FETCHES = 6;
+
+    // The contents of fetched files, by file name, until they are opened
+    private static final HashMap<String, Object> sFetched = new HashMap<String, Object>();
+    // Files waiting for a free fetch, in order
+    private static final LinkedList<String> sQueue = new LinkedList<String>();
+    // Files queued or being fetched whose contents are still wanted
+    private static final HashSet<String> sPending = new HashSet<String>();
+    private static int sInFlight = 0;
+
+    // Application directories whose warm up completed
+    private static final HashSet<String> sWarmApps = new HashSet<String>();
+    // Application directories whose warm up is running
+    private static final HashSet<String> sWarmingApps = new HashSet<String>();
+    // Called once nothing is queued or in flight any more
+    private static final ArrayList<Runnable> sIdleCallbacks = new ArrayList<Runnable>();
+
+    private AssetLoader() {
+    }
+
+    /**
+     * Fetch the files listed in the prefetch manifest of the application in
+     * the given directory.
+     *
+     * @param appDir The application directory, ending with a slash.
+     * @param onReady Run once the files are fetched, or failed to be.
+     * @return false if the application was already warmed up, in which case
+     *         onReady is not run.
+     */
+    public static boolean warmUp(String appDir, Runnable onReady) {
+        if (sWarmApps.contains(appDir)) {
+            return false;
+        }
+        sIdleCallbacks.add(onReady);
+        if (sWarmingApps.add(appDir)) {
+            sInFlight++;
+            fetchManifest(appDir);
+        }
+        return true;
+    }
+
+    /**
+     * Fetch the given files in the background.
+     */
+    public static void prefetch(String[] fileNames) {
+        for (int i = 0; i < fileNames.length; i++) {
+            String fileName = fileNames[i];
+            if (!sFetched.containsKey(fileName) && sPending.add(fileName)) {
+                sQueue.add(fileName);
+            }
+        }
+        pump();
+    }
+
+    /**
+     * Return the contents of the given file if it was prefetched, as a
+     * Uint8Array, and forget them. Return null if the file has to be read.
+     */
+    /* package */ static Object take(String fileName) {
+        Object data = sFetched.remove(fileName);
+        if (data == null && sPending.remove(fileName)) {
+            // Read now, the fetch isn't worth waiting for any more
+            sQueue.remove(fileName);
+        }
+        return data;
+    }
+
+    private static void pump() {
+        while (sInFlight < MAX_PARALLEL_FETCHES && !sQueue.isEmpty()) {
+            sInFlight++;
+            fetch(sQueue.removeFirst());
+        }
+        if (sInFlight == 0 && !sIdleCallbacks.isEmpty()) {
+            sWarmApps.addAll(sWarmingApps);
+            sWarmingApps.clear();
+            Runnable[] callbacks = sIdleCallbacks.toArray(new Runnable[sIdleCallbacks.size()]);
+            sIdleCallbacks.clear();
+            for (int i = 0; i < callbacks.length; i++) {
+                callbacks[i].run();
+            }
+        }
+    }
+
+    private static void fetch(String fileName) {
+        /**
+         * @j2sNative
+         * var xhr = new XMLHttpRequest();
+         * xhr.open("GET", fileName, true);
+         * xhr.responseType = "arraybuffer";
+         * xhr.onload = function() {
+         *     var data = null;
+         *     if ((xhr.status == 200 || xhr.status == 0) && xhr.response) {
+         *         data = new Uint8Array(xhr.response);
+         *     }
+         *     android.content.res.AssetLoader.onFetched(fileName, data);
+         * };
+         * xhr.onerror = function() {
+         *     android.content.res.AssetLoader.onFetched(fileName, null);
+         * };
+         * xhr.send(null);
+         */{}
+    }
+
+    /* package */ static void onFetched(String fileName, Object data) {
+        sInFlight--;
+        if (sPending.remove(fileName) && data != null) {
+            sFetched.put(fileName, data);
+        }
+        if (DEBUG) Log.d(TAG, "fetched " + fileName + (data != null ? "" : " (failed)"));
+        pump();
+    }
+
+    private static void fetchManifest(String appDir) {
+        String manifest = appDir + PREFETCH_MANIFEST;
+        /**
+         * @j2sNative
+         * var xhr = new XMLHttpRequest();
+         * xhr.open("GET", manifest, true);
+         * xhr.onload = function() {
+         *     var files = null;
+         *     if ((xhr.status == 200 || xhr.status == 0) && xhr.responseText) {
+         *         try {
+         *             files = JSON.parse(xhr.responseText);
+         *         } catch (e) {
+         *             android.util.Log.w(android.content.res.AssetLoader.TAG,
+         *                     "Ignoring malformed " + manifest);
+         *         }
+         *     }
+         *     if (!(files instanceof Array)) {
+         *         files = null;
+         *     }
+         *     android.content.res.AssetLoader.onManifestFetched(appDir, files);
+         * };
+         * xhr.onerror = function() {
+         *     android.content.res.AssetLoader.onManifestFetched(appDir, null);
+         * };
+         * xhr.send(null);
+         */{}
+    }
+
+    /* package */ static void onManifestFetched(String appDir, String[] files) {
+        sInFlight--;
+        if (files != null) {
+            String[] fileNames = new String[files.length];
+            for (int i = 0; i < files.length; i++) {
+                fileNames[i] = appDir + files[i];
+            }
+            Log.i(TAG, "Prefetching " + fileNames.length + " files of " + appDir);
+            prefetch(fileNames);
+        } else {
+            pump();
+        }
+    }
+}
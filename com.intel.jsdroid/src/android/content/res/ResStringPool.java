@@ -1,6 +1,7 @@
 package android.content.res;
 
 import java.io.IOException;
+import java.util.HashMap;
 
 import android.content.res.ResourceTypes.*;
 import android.util.Errors;
@@ -25,6 +26,12 @@ public class ResStringPool {
 	private ResStringPool_header mHeader = null;
 	@SuppressWarnings("unused")
 	private int mSize = -1;
+	// The strings stringAt() decoded so far, by index
+	private String[] mStringCache = null;
+	// The index of each string, built by the first indexOfString()
+	private HashMap<String, Integer> mStringIndex = null;
+	// Whether a string appears more than once in the pool
+	private boolean mHasDuplicates = false;
 
 	public ResStringPool(byte[] data, int offset, int size, boolean copyData)
 			throws IOException {
@@ -53,6 +60,7 @@ public class ResStringPool {
 //			mEntries = reader.readIntArray(mHeader.stringCount);
 
 			mEntries = new IntArray(reader.getData(), reader.getPosition(), mHeader.stringCount);
+			mStringCache = new String[mHeader.stringCount];
 			mStringsOffset = mHeader.header.pointer.offset
 					+ mHeader.stringsStart;
 			reader.setPosition(mStringsOffset);
@@ -95,6 +103,20 @@ public class ResStringPool {
 		if (index < 0 || this.mEntries == null || index >= this.mEntries.length) {
 			return null;
 		}
+		// MayLoon: decoding goes through an IntReader per character, so
+		// each string is decoded once and kept until uninit()
+		if (mStringCache == null) {
+			return decodeString(index);
+		}
+		String string = mStringCache[index];
+		if (string == null) {
+			string = decodeString(index);
+			mStringCache[index] = string;
+		}
+		return string;
+	}
+
+	private String decodeString(int index) {
 		boolean isUTF8 = (mHeader.flags & ResStringPool_header.UTF8_FLAG) != 0;
 //		int offset = this.mEntries[index];
 		int offset = mEntries.getEntry(index);
@@ -187,35 +209,21 @@ public class ResStringPool {
 	 * Returns -1 if the string was not found.
 	 */
 	public int indexOfString(String string) {
-		if (string == null) {
+		if (string == null || this.mEntries == null) {
 			return -1;
 		}
-		for (int i = 0; i != this.mEntries.length; ++i) {
-//			int offset = this.mEntries[i];
-			int offset = mEntries.getEntry(i);
-			int length = getShort(mStrings, offset);
-			if (length != string.length()) {
-				continue;
-			}
-			int j = 0;
-			for (; j != length; ++j) {
-				offset += 2;
-				if (string.charAt(j) != getShort(mStrings, offset)) {
-					break;
-				}
-			}
-			if (j == length) {
-				return i;
-			}
-		}
-		return -1;
+		Integer index = getStringIndex().get(string);
+		return index != null ? index.intValue() : -1;
 	}
 
     public int indexOfString(String str , int length) {
-        int len;
-        // TODO optimize searching for UTF-8 strings taking into account
-        // the cache fill to determine when to convert the searched-for
-        // string key to UTF-8.
+        if (str == null || this.mEntries == null) {
+            return -1;
+        }
+        if (!mHasDuplicates) {
+            Integer index = getStringIndex().get(str);
+            return index != null ? index.intValue() : -1;
+        }
 
         // It is unusual to get the ID from an unsorted string block...
         // most often this happens because we want to get IDs for style
@@ -231,6 +239,25 @@ public class ResStringPool {
         return -1;
     }
 
+    /**
+     * Returns the index of every string in the pool, by string. A string
+     * that appears more than once maps to its first index.
+     */
+    private HashMap<String, Integer> getStringIndex() {
+        if (mStringIndex == null) {
+            int count = mHeader.stringCount;
+            HashMap<String, Integer> stringIndex = new HashMap<String, Integer>(count * 2);
+            for (int i = count - 1; i >= 0; i--) {
+                String s = stringAt(i);
+                if (s != null && stringIndex.put(s, i) != null) {
+                    mHasDuplicates = true;
+                }
+            }
+            mStringIndex = stringIndex;
+        }
+        return mStringIndex;
+    }
+
 	///////////////////////////////////////////// implementation
 
 	public ResStringPool() {
@@ -314,6 +341,9 @@ public class ResStringPool {
 
 	public void uninit() {
 		mError = Errors.NO_INIT;
+		mStringCache = null;
+		mStringIndex = null;
+		mHasDuplicates = false;
 	}
 
 	public int getError() {
@@ -39,12 +39,14 @@ public class ResTable {
 	public ResTable() {
 		for (int i = 0; i < 256; ++i)
 			mPackageMap[i] = 0;
+		mFlags.add(0);
 	}
 
 	public ResTable(byte[] data, int offset, int size, int cookie,
 			boolean copyData) {
 		for (int i = 0; i < 256; ++i)
 			mPackageMap[i] = 0;
+		mFlags.add(0);
 	}
 
 	public int getTableCount() {
@@ -321,6 +323,7 @@ public class ResTable {
 						type.resPointers = new ResPointers(reader.getPosition(), data);
 
 						t.configs.add(type);
+						t.resolvedSeq = -1;
 					}
 					//					}
 				} else {
@@ -470,16 +473,13 @@ public class ResTable {
         int ip = grp.packages.size();
         if (ip > 0) {
             Package curPackage = grp.packages.get(0);
-            ArrayList<ResTable_type> type = new ArrayList<ResTable_type>();
-            ArrayList<ResTable_entry> entry = new ArrayList<ResTable_entry>();
-            int offset = getEntry(curPackage, t, e, null, type, entry,
-                    null);
+            int offset = getEntry(curPackage, t, e, mEntry);
             if (offset <= 0) {
                 return false;
             }
             outName.mPackage = getTrimString(grp.name);
             outName.mType = getTrimString(grp.basePackage.typeStrings.stringAt(t));
-            outName.mName = getTrimString(grp.basePackage.keyStrings.stringAt(entry.get(0).key.index));
+            outName.mName = getTrimString(grp.basePackage.keyStrings.stringAt(mEntry.entry.key.index));
             return true;
         }
         return false;
@@ -590,7 +590,7 @@ public class ResTable {
 
 		Res_value bestValue = null;
 		Package bestPackage = null;
-		ResTable_config bestItem = new ResTable_config();
+		ResTable_config bestItem = null;
 
 		if (outSpecFlags != null)
 			outSpecFlags.set(0, new Integer(0));
@@ -603,34 +603,32 @@ public class ResTable {
 			ip--;
 
 			Package curPackage = grp.packages.get(ip);
-			ArrayList<ResTable_type> type = new ArrayList<ResTable_type>();
-			ArrayList<ResTable_entry> entry = new ArrayList<ResTable_entry>();
-			ArrayList<Type> typeClass = new ArrayList<Type>();
-			int offset = getEntry(curPackage, t, e, mParams, type, entry,
-					typeClass);
+			int offset = getEntry(curPackage, t, e, mEntry);
 			if (offset <= 0) {
 				if (offset < 0)
 					return offset;
 				continue;
 			}
+			ResTable_type type = mEntry.type;
+			ResTable_entry entry = mEntry.entry;
+			Type typeClass = mEntry.typeClass;
 
-			if ((entry.get(0).flags & ResTable_entry.FLAG_COMPLEX) != 0) {
+			if ((entry.flags & ResTable_entry.FLAG_COMPLEX) != 0) {
 				//				System.out.println("Requesting resource " + resID
 				//						+ "failed because it is complex.");
 				continue;
 			}
 
-			if (offset > (type.get(0).header.size - Res_value.sizeof()))
+			if (offset > (type.header.size - Res_value.sizeof()))
 				return Errors.BAD_TYPE;
 
-			Res_value item = ((ResTable_value_entry) entry.get(0)).value;
-			ResTable_config thisConfig = type.get(0).config;
+			Res_value item = ((ResTable_value_entry) entry).value;
+			ResTable_config thisConfig = type.config;
 
 			if (outSpecFlags != null) {
-				if (typeClass.get(0).typeSpecFlags != null) {
+				if (typeClass.specFlags != null) {
 					int old = outSpecFlags.get(0);
-					outSpecFlags
-							.set(0, old | typeClass.get(0).typeSpecFlags.getEntry(e));
+					outSpecFlags.set(0, old | typeClass.specFlags[e]);
 				} else {
 					outSpecFlags.set(0, -1);
 				}
@@ -693,8 +691,11 @@ public class ResTable {
 			if (outLastRef != null) {
 				outLastRef.set(0, new Integer(value.data));
 			}
-			ArrayList<Integer> newFlags = new ArrayList<Integer>();
-			newFlags.add(new Integer(0));
+			ArrayList<Integer> newFlags = null;
+			if (inoutTypeSpecFlags != null) {
+				newFlags = mFlags;
+				newFlags.set(0, 0);
+			}
 			int newIndex = getResource(value.data, value, true, newFlags,
 					outConfig);
 			if (newIndex == Errors.BAD_INDEX)
@@ -793,35 +794,33 @@ public class ResTable {
 			ip--;
 
 			Package _package = grp.packages.get(ip);
-			// TODO heavy class had better to use ArrayList? don't need to copy
-			ArrayList<ResTable_type> type = new ArrayList<ResTable_type>();
-			ArrayList<ResTable_entry> entry = new ArrayList<ResTable_entry>();
-			ArrayList<Type> typeClass = new ArrayList<Type>();
 			// entry               ResTable_entry                        
-			int offset = getEntry(_package, t, e, mParams, type, entry,
-					typeClass);
+			int offset = getEntry(_package, t, e, mEntry);
 			if (offset <= 0) {
 				if (offset < 0)
 					return offset;
 				continue;
 			}
-			if ((entry.get(0).flags & ResTable_entry.FLAG_COMPLEX) == 0)
+			// mEntry is reused by the lookup of the parent below
+			ResTable_type type = mEntry.type;
+			ResTable_entry entry = mEntry.entry;
+			Type typeClass = mEntry.typeClass;
+			if ((entry.flags & ResTable_entry.FLAG_COMPLEX) == 0)
 				continue;
 			//                      size                     
-			int entrySize = entry.get(0).size;
+			int entrySize = entry.size;
 			//                sizeof            instance_sizeof         entry         map_entry
-			int parent = entrySize >= ResTable_map_entry.sizeof() ? ((ResTable_map_entry) entry
-					.get(0)).parent.ident : 0;
-			int count = entrySize >= ResTable_map_entry.sizeof() ? ((ResTable_map_entry) entry
-					.get(0)).count : 0;
+			int parent = entrySize >= ResTable_map_entry.sizeof() ? ((ResTable_map_entry) entry).parent.ident
+					: 0;
+			int count = entrySize >= ResTable_map_entry.sizeof() ? ((ResTable_map_entry) entry).count
+					: 0;
 			int N = count;
 			if (set == null) {
 				if (parent != 0) {
-					ArrayList<bag_entry> parentBag = new ArrayList<bag_entry>();
-					ArrayList<Integer> parentTypeSpecFlags = new ArrayList<Integer>();
-					parentTypeSpecFlags.add(new Integer(0));
-					int NP = getBagLocked(parent, parentBag,
-							parentTypeSpecFlags);
+					int NP = getBagLocked(parent, null, null);
+					Bag parentBag = NP >= 0 ? getCachedBag(parent) : null;
+					if (parentBag == null)
+						NP = 0;
 					int NT = ((NP >= 0) ? NP : 0) + N;
 					set = new Bag();
 					set.mBagEntries = new ArrayList<bag_entry>(NT);
@@ -829,14 +828,15 @@ public class ResTable {
 						set.mBagEntries.add(new bag_entry());
 					if (NP > 0) {
 						for (int i = 0; i < NP; ++i) {
-                            set.mBagEntries.set(i, new bag_entry(parentBag.get(i)));
+                            set.mBagEntries.set(i, new bag_entry(parentBag.mBagEntries.get(i)));
 						}
 						set.mBagHeader.numAttrs = NP;
 					} else {
 						set.mBagHeader.numAttrs = 0;
 					}
 					set.mBagHeader.availAttrs = NT;
-					set.mBagHeader.typeSpecFlags = parentTypeSpecFlags.get(0);
+					set.mBagHeader.typeSpecFlags = parentBag != null ? parentBag.mBagHeader.typeSpecFlags
+							: 0;
 				} else {
 					set = new Bag();
 					set.mBagEntries = new ArrayList<bag_entry>(N);
@@ -846,8 +846,8 @@ public class ResTable {
 				}
 			}
 
-			if (typeClass.get(0).typeSpecFlags != null) {
-				set.mBagHeader.typeSpecFlags |= typeClass.get(0).typeSpecFlags.getEntry(e);
+			if (typeClass.specFlags != null) {
+				set.mBagHeader.typeSpecFlags |= typeClass.specFlags[e];
 			} else {
 				set.mBagHeader.typeSpecFlags = -1;
 			}
@@ -859,11 +859,11 @@ public class ResTable {
 			int curEntry = 0;
 			int pos = 0;
 			while (pos < count) {
-				if (curOff > (type.get(0).header.size - ResTable_map.sizeof())) {
+				if (curOff > (type.header.size - ResTable_map.sizeof())) {
 					return Errors.BAD_TYPE;
 				}
 				// TODO need to test
-				map = ((ResTable_map_entry) entry.get(0)).entries[pos];
+				map = ((ResTable_map_entry) entry).entries[pos];
 				N++;
 				int newName = map.name.ident;
 				boolean isInside;
@@ -926,6 +926,8 @@ public class ResTable {
     public void setParameters(ResTable_config params)
     {
         mParams = params;
+        // The params may be the same object, changed in place
+        mParamsSeq = ++sParamsSeq;
         for (int i = 0; i < mPackageGroups.size(); i++) {
             Log.i(TAG, "CLEARING BAGS FOR GROUP" + i + "!");
             mPackageGroups.get(i).clearBagCache();
@@ -937,9 +939,15 @@ public class ResTable {
         params = mParams;
     }
 
-    public int getEntry(Package _package, int typeIndex, int entryIndex,
-            ResTable_config config, ArrayList<ResTable_type> outType,
-            ArrayList<ResTable_entry> outEntry, ArrayList<Type> outTypeClass) {
+    /**
+     * Look up an entry in the given package for the table parameters.
+     *
+     * @return The offset of the end of the entry in its type chunk, 0 if the
+     *         package has no such type, or an error. On success the type
+     *         chunk, the entry and the type are returned in outEntry.
+     */
+    private int getEntry(Package _package, int typeIndex, int entryIndex,
+            Entry outEntry) {
         // ResTable_package pkg = _package.mPackage;
         Type allTypes = _package.getType(typeIndex);
         if (allTypes == null)
@@ -947,53 +955,15 @@ public class ResTable {
         if (entryIndex >= allTypes.entryCount)
             return Errors.BAD_TYPE;
 
-        ResTable_type type = null;
-        int offset = ResTable_type.NO_ENTRY;
-        ResTable_config bestConfig = new ResTable_config();
-        int NT = allTypes.configs.size();
-        for (int i = 0; i < NT; ++i) {
-            ResTable_type thisType = allTypes.configs.get(i);
-            if (thisType == null)
-                continue;
-            ResTable_config thisConfig = thisType.config;
-
-            // Check to make sure this one is valid for the current parameters.
-//            if (config && !thisConfig.match(*config)) {
-//                Log.i(TAG, "Does not match config!");
-//                continue;
-//            }
-
-            // Check if there is the desired entry in this type.
-            int thisOffset = ResTable_type.NO_ENTRY;
-            if (thisType.entryOffsets != null)
-                thisOffset = thisType.entryOffsets.getEntry(entryIndex);
-            if (thisOffset == ResTable_type.NO_ENTRY) {
-//                Log.i(TAG, "Skipping because it is not defined!");
-                continue;
-            }
-
-            if (type != null) {
-                // Check if this one is less specific than the last found.  If so,
-                // we will skip it.  We check starting with things we most care
-                // about to those we least care about.
-                if (!thisConfig.isBetterThan(bestConfig, config)) {
-                    Log.i(TAG, "This config is worse than last!");
-                    continue;
-                }
-            }
-
-            type = thisType;
-            offset = thisOffset;
-            bestConfig = thisConfig;
-//            Log.i(TAG, "Best entry so far -- using it!");
-            if (config == null)
-                break;
-        }
-
-        if (type == null) {
+        if (allTypes.resolvedSeq != mParamsSeq)
+            resolveType(allTypes);
+        int best = allTypes.bestConfigs[entryIndex];
+        if (best < 0) {
             Log.e(TAG, "No value found for requested entry!");
             return Errors.BAD_INDEX;
         }
+        ResTable_type type = allTypes.configs.get(best);
+        int offset = allTypes.bestOffsets[entryIndex];
 
         ResTable_entry entry = type.resources.get(offset);
         if (entry == null) {
@@ -1043,15 +1013,88 @@ public class ResTable {
             }
         }
 
-        outType.add(type);
-        outEntry.add(entry);
-        if (outTypeClass != null) {
-            outTypeClass.add(allTypes);
-        }
+        outEntry.type = type;
+        outEntry.entry = entry;
+        outEntry.typeClass = allTypes;
 
         return offset + entry.size;
     }
 
+    /**
+     * Build the lookup index of a type for the table parameters: for each
+     * entry, the config that is the best match among those defining it, and
+     * the offset of the entry in that config.
+     *
+     * MayLoon: getEntry() used to compare all the configs of the type on
+     * every lookup. The index is built the first time the type is looked up,
+     * and again after setParameters().
+     */
+    private void resolveType(Type allTypes) {
+        final int NE = allTypes.entryCount;
+        int[] bestConfigs = allTypes.bestConfigs;
+        int[] bestOffsets = allTypes.bestOffsets;
+        if (bestConfigs == null) {
+            bestConfigs = allTypes.bestConfigs = new int[NE];
+            bestOffsets = allTypes.bestOffsets = new int[NE];
+        }
+        for (int e = 0; e < NE; ++e) {
+            bestConfigs[e] = -1;
+        }
+
+        ResTable_config config = mParams;
+        int NT = allTypes.configs.size();
+        for (int i = 0; i < NT; ++i) {
+            ResTable_type thisType = allTypes.configs.get(i);
+            if (thisType == null || thisType.entryOffsets == null)
+                continue;
+            ResTable_config thisConfig = thisType.config;
+
+            for (int e = 0; e < NE; ++e) {
+                // Check if there is the desired entry in this type.
+                int thisOffset = thisType.entryOffsets.getEntry(e);
+                if (thisOffset == ResTable_type.NO_ENTRY)
+                    continue;
+
+                // Check if this one is less specific than the last found.
+                int best = bestConfigs[e];
+                if (best >= 0
+                        && !thisConfig.isBetterThan(allTypes.configs.get(best).config, config))
+                    continue;
+
+                bestConfigs[e] = i;
+                bestOffsets[e] = thisOffset;
+            }
+        }
+
+        if (allTypes.specFlags == null && allTypes.typeSpecFlags != null) {
+            int[] specFlags = new int[NE];
+            for (int e = 0; e < NE; ++e) {
+                specFlags[e] = allTypes.typeSpecFlags.getEntry(e);
+            }
+            allTypes.specFlags = specFlags;
+        }
+        allTypes.resolvedSeq = mParamsSeq;
+    }
+
+    /**
+     * Return the bag getBagLocked() built for the given resource, or null.
+     */
+    private Bag getCachedBag(int resID) {
+        int p = getResourcePackageIndex(resID);
+        int t = Res_GETTYPE(resID);
+        int e = Res_GETENTRY(resID);
+        if (p < 0 || t < 0)
+            return null;
+        PackageGroup grp = mPackageGroups.get(p);
+        if (grp == null || grp.bags == null || t >= grp.bags.length)
+            return null;
+        Bag[] typeSet = grp.bags[t];
+        if (typeSet == null || e >= typeSet.length)
+            return null;
+        Bag set = typeSet[e];
+        return (set != null && !set.isFFFFFFFF) ? set : null;
+    }
+
 	public static final class resource_name {
 		public String mPackage;
 		public String mType;
@@ -1071,6 +1114,15 @@ public class ResTable {
 	private static final int Res_MAXPACKAGE = 255;
 	public int[] mPackageMap = new int[MAX_PACKAGE_NUM];
 	public ResTable_config mParams = new ResTable_config();
+	// Set by setParameters(), outdating the lookup index of every type. Types
+	// are shared with the tables add() merges, so the sequence is global:
+	// two tables never have the same value.
+	private static int sParamsSeq = 0;
+	private int mParamsSeq = ++sParamsSeq;
+	// Returned by getEntry(), reused across lookups
+	private final Entry mEntry = new Entry();
+	// The type spec flags resolveReference() asks getResource() for
+	private final ArrayList<Integer> mFlags = new ArrayList<Integer>(1);
 
 	static int Res_GETPACKAGE(int id) {
 		return ((id >> 24) - 1);
@@ -1098,14 +1150,15 @@ public class ResTable {
 		}
 
 		public int applyStyle(int resID, boolean force) {
-			// true list
-			ArrayList<bag_entry> bag = new ArrayList<bag_entry>();
-			// fake list, almost every Integer ArrayList is a fake one here
-			ArrayList<Integer> bagTypeSpecFlags = new ArrayList<Integer>();
-			bagTypeSpecFlags.add(new Integer(0));
-			int N = mTable.getBagLocked(resID, bag, bagTypeSpecFlags);
+			// Read the cached bag in place rather than copying it out
+			int N = mTable.getBagLocked(resID, null, null);
 			if (N < 0)
 				return N;
+			Bag set = mTable.getCachedBag(resID);
+			if (set == null)
+				return Errors.BAD_INDEX;
+			ArrayList<bag_entry> bag = set.mBagEntries;
+			int bagTypeSpecFlags = set.mBagHeader.typeSpecFlags;
 
 			int curPackage = 0xffffffff;
 			int curPackageIndex = 0;
@@ -1170,7 +1223,7 @@ public class ResTable {
 				theme_entry curEntry = curEntries[e];
 				if (force || curEntry.value.dataType == TypedValue.TYPE_NULL) {
 					curEntry.stringBlock = bag.get(i).stringBlock;
-					curEntry.typeSpecFlags |= bagTypeSpecFlags.get(0);
+					curEntry.typeSpecFlags |= bagTypeSpecFlags;
 					curEntry.value.copyFrom(bag.get(i).map.value);
 				}
 
@@ -1374,6 +1427,14 @@ public class ResTable {
 		public int entryCount;
 		public IntArray typeSpecFlags;
 		public ArrayList<ResTable_type> configs = new ArrayList<ResTable_type>();
+		// The lookup index, see resolveType(): the position in configs of
+		// the config of each entry, or -1, and the offset of the entry in it
+		int[] bestConfigs = null;
+		int[] bestOffsets = null;
+		// typeSpecFlags, read once
+		int[] specFlags = null;
+		// The mParamsSeq of the table the index was built for
+		int resolvedSeq = -1;
 
 		public Type(Header _header, Package _package, int count) {
 			entryCount = count;
@@ -1432,6 +1493,12 @@ public class ResTable {
 		public boolean isFFFFFFFF = false;
 	}
 
+	private static final class Entry {
+		ResTable_type type;
+		ResTable_entry entry;
+		Type typeClass;
+	}
+
 	private static final class PackageGroup {
 		public String name;
 		public int id;
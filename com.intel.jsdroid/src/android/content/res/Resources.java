@@ -2,8 +2,6 @@ package android.content.res;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
-import java.util.HashMap;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -20,7 +18,7 @@ import android.os.Build.VERSION;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
-import android.util.SparseArray;
+import android.util.LruCache;
 import android.util.TypedValue;
 
 public class Resources {
@@ -32,11 +30,35 @@ public class Resources {
     private static final int sSdkVersion = VERSION.SDK_INT
             + ("REL".equals(VERSION.CODENAME) ? 0 : 1);
 
+    /**
+     * The default of {@link #setDrawableCacheBudget(int)}, in bytes.
+     */
+    private static final int DEFAULT_DRAWABLE_CACHE_BUDGET = 16 * 1024 * 1024;
+    private static final int MAX_CACHED_COLOR_STATE_LISTS = 128;
+
     // These are protected by the mTmpValue lock.
-    private static final HashMap<String, WeakReference<Drawable.ConstantState> > mDrawableCache
-            = new HashMap<String, WeakReference<Drawable.ConstantState> >();
-    private final SparseArray<WeakReference<ColorStateList> > mColorStateListCache
-    = new SparseArray<WeakReference<ColorStateList> >();
+    // MayLoon: WeakReference never lets go of its referent here, so the
+    // caches are bounded LRUs rather than maps of weak references. Drawable
+    // states are weighed by the memory they hold, see
+    // Drawable.ConstantState.getCacheByteCount().
+    private static final LruCache<String, Drawable.ConstantState> mDrawableCache
+            = new LruCache<String, Drawable.ConstantState>(DEFAULT_DRAWABLE_CACHE_BUDGET) {
+        @Override
+        protected int sizeOf(String key, Drawable.ConstantState state) {
+            return state.getCacheByteCount();
+        }
+    };
+    private final LruCache<Integer, ColorStateList> mColorStateListCache
+            = new LruCache<Integer, ColorStateList>(MAX_CACHED_COLOR_STATE_LISTS);
+
+    /**
+     * Set how many bytes of drawables the drawable cache holds on to.
+     *
+     * @hide
+     */
+    public static void setDrawableCacheBudget(int bytes) {
+        mDrawableCache.resize(bytes);
+    }
     
     /**
      * This exception is thrown by the resource APIs when a requested resource
@@ -362,7 +384,7 @@ public class Resources {
 //            clearDrawableCache(mDrawableCache, configChanges);
 //            clearDrawableCache(mColorDrawableCache, configChanges);
 //
-            mColorStateListCache.clear();
+            mColorStateListCache.evictAll();
 //
 //
 //            flushLayoutCache();
@@ -619,7 +641,7 @@ public class Resources {
                         //Log.i(TAG, "Saving cached drawable @ #" +
                         //        Integer.toHexString(key.intValue())
                         //        + " in " + this + ": " + cs);
-                        mDrawableCache.put(key, new WeakReference<Drawable.ConstantState> (cs));
+                        mDrawableCache.put(key, cs);
                     }
                 }
             }
@@ -630,18 +652,15 @@ public class Resources {
 
     private Drawable getCachedDrawable(String key) {
         synchronized (mTmpValue) {
-            WeakReference<Drawable.ConstantState> wr = mDrawableCache.get(key);
-            if (wr != null) {   // we have the key
-                Drawable.ConstantState entry = wr.get();
-                if (entry != null) {
-                    //Log.i(TAG, "Returning cached drawable @ #" +
-                    //        Integer.toHexString(((Integer)key).intValue())
-                    //        + " in " + this + ": " + entry);
-                    return entry.newDrawable(this);
-                }
-                else {  // our entry has been purged
-                    //mDrawableCache.remove(key);
-                }
+            if (key == null) {
+                return null;
+            }
+            Drawable.ConstantState entry = mDrawableCache.get(key);
+            if (entry != null) {
+                //Log.i(TAG, "Returning cached drawable @ #" +
+                //        Integer.toHexString(((Integer)key).intValue())
+                //        + " in " + this + ": " + entry);
+                return entry.newDrawable(this);
             }
         }
         return null;
@@ -757,8 +776,7 @@ public class Resources {
                 // Log.i(TAG, "Saving cached color state list @ #" +
                 // Integer.toHexString(key.intValue())
                 // + " in " + this + ": " + csl);
-                mColorStateListCache.put(
-                        key, new WeakReference<ColorStateList>(csl));
+                mColorStateListCache.put(key, csl);
             }
         }
 
@@ -767,18 +785,12 @@ public class Resources {
     
     private ColorStateList getCachedColorStateList(int key) {
         synchronized (mTmpValue) {
-            WeakReference<ColorStateList> wr = mColorStateListCache.get(key);
-            if (wr != null) {   // we have the key
-                ColorStateList entry = wr.get();
-                if (entry != null) {
-                    //Log.i(TAG, "Returning cached color state list @ #" +
-                    //        Integer.toHexString(((Integer)key).intValue())
-                    //        + " in " + this + ": " + entry);
-                    return entry;
-                }
-                else {  // our entry has been purged
-                    mColorStateListCache.delete(key);
-                }
+            ColorStateList entry = mColorStateListCache.get(key);
+            if (entry != null) {
+                //Log.i(TAG, "Returning cached color state list @ #" +
+                //        Integer.toHexString(((Integer)key).intValue())
+                //        + " in " + this + ": " + entry);
+                return entry;
             }
         }
         return null;
@@ -22,22 +22,25 @@ class _FileAsset extends Asset {
 	public int openChunk(String fileName, int offset, int length) {
 		int fileLength = -1;
 		if(DEBUG)System.out.println("openChunk>>>File: " + fileName);
+		// a prefetched file costs no request
+		Object data = AssetLoader.take(fileName);
 		/**
 		 @j2sNative
-		     var xmlhttp;
-		     if (window.XMLHttpRequest) {// code for IE7+, Firefox, Chrome, Opera, Safari
-		         xmlhttp=new XMLHttpRequest();
-		     }
-		     else  {// code for IE6, IE5
-		         xmlhttp=new ActiveXObject("Microsoft.XMLHTTP");
-		     }
+		     if (data == null) {
+		         var xmlhttp;
+		         if (window.XMLHttpRequest) {// code for IE7+, Firefox, Chrome, Opera, Safari
+		             xmlhttp=new XMLHttpRequest();
+		         }
+		         else  {// code for IE6, IE5
+		             xmlhttp=new ActiveXObject("Microsoft.XMLHTTP");
+		         }
 
-		     xmlhttp.open("GET", fileName, false);
-		     xmlhttp.responseType = "arraybuffer";
-		     xmlhttp.send(null);
-		     var data = null;
-		     if (xmlhttp.response || xmlhttp.mozResponseArrayBuffer) {
-		         data = new Uint8Array(xmlhttp.response || xmlhttp.mozResponseArrayBuffer);
+		         xmlhttp.open("GET", fileName, false);
+		         xmlhttp.responseType = "arraybuffer";
+		         xmlhttp.send(null);
+		         if (xmlhttp.response || xmlhttp.mozResponseArrayBuffer) {
+		             data = new Uint8Array(xmlhttp.response || xmlhttp.mozResponseArrayBuffer);
+		         }
 		     }
 		     if (data != null) {
 		         var fileLength = data.length;
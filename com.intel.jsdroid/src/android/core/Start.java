@@ -5,12 +5,13 @@ package android.core;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.database.sqlite.SQLitePageStore;
 import android.util.Log;
 import android.util.Time;
 
 class Start {
 	public static void main(String[] args) {
-		Thread mainThread = new Thread(){
+		final Thread mainThread = new Thread(){
 			@Override
 			public void run(){
                 /**
@@ -49,7 +50,12 @@ class Start {
 				
 			}
 		};
-		mainThread.start();
+		// databases are opened synchronously, so their store loads first
+		SQLitePageStore.installDefault(new Runnable() {
+			public void run() {
+				mainThread.start();
+			}
+		});
 	
 	}
 }
\ No newline at end of file
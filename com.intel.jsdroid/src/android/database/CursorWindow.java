@@ -17,6 +17,7 @@
 package android.database;
 
 import android.database.sqlite.SQLiteClosable;
+import android.database.sqlite.SQLiteException;
 import android.os.IBinder;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -24,6 +25,11 @@ import android.util.Base64;
 
 /**
  * A buffer containing multiple cursor rows.
+ *
+ * MayLoon: like the native window, a window holds a bounded number of bytes
+ * and a cursor pages rows in and out of it. Fields are stored by column in
+ * typed arrays: a type per field, integers and floats in a Float64Array, and
+ * a table of the strings and blobs referenced by field slot.
  */
 public class CursorWindow extends SQLiteClosable implements Parcelable {
     /** The pointer to the native window class */
@@ -34,11 +40,35 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
     
     int colNum = 0;
     int rowNum = 0;
-    
-    /**
-     * @j2sNative
-     * this.QueryResult = null;
-     */{}
+
+    /** The number of bytes a window holds, the same as the native windows */
+    private static final int WINDOW_SIZE = 2 * 1024 * 1024;
+
+    /** The bytes accounted for each field: a number slot and its type */
+    private static final int FIELD_SIZE = 9;
+
+    private static final int INITIAL_FIELD_CAPACITY = 256;
+
+    private static final int FIELD_TYPE_NULL = 0;
+    private static final int FIELD_TYPE_INTEGER = 1;
+    private static final int FIELD_TYPE_FLOAT = 2;
+    private static final int FIELD_TYPE_STRING = 3;
+    private static final int FIELD_TYPE_BLOB = 4;
+
+    /** The number of bytes in use */
+    private int mSize;
+
+    /** The number of fields the arrays below have room for */
+    private int mFieldCapacity;
+
+    /** A Uint8Array of FIELD_TYPE_*, one per field, row by row */
+    private Object mTypes;
+
+    /** A Float64Array with the value of the INTEGER and FLOAT fields */
+    private Object mNumbers;
+
+    /** The strings and blobs of the STRING and BLOB fields, by field slot */
+    private Object mObjects;
 
     /**
      * Creates a new empty window.
@@ -120,7 +150,45 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
         }
     }
     
-    private native boolean allocRow_native();    
+    private boolean allocRow_native() {
+        if (colNum <= 0) {
+            return false;
+        }
+        int rowSize = colNum * FIELD_SIZE;
+        // the first row always fits, a window must be able to hold one row
+        if (rowNum > 0 && mSize + rowSize > WINDOW_SIZE) {
+            return false;
+        }
+        int start = rowNum * colNum;
+        int end = start + colNum;
+        if (end > mFieldCapacity) {
+            int capacity = Math.max(mFieldCapacity * 2, Math.max(end, INITIAL_FIELD_CAPACITY));
+            Object types = mTypes;
+            Object numbers = mNumbers;
+            /**
+             * @j2sNative
+             * this.mTypes = new Uint8Array(capacity);
+             * this.mNumbers = new Float64Array(capacity);
+             * if (types != null) {
+             *     this.mTypes.set(types);
+             *     this.mNumbers.set(numbers);
+             * } else {
+             *     this.mObjects = [];
+             * }
+             */{}
+            mFieldCapacity = capacity;
+        }
+        /**
+         * @j2sNative
+         * for (var slot = start; slot < end; slot++) {
+         *     this.mTypes[slot] = 0;//FIELD_TYPE_NULL
+         *     this.mObjects[slot] = null;
+         * }
+         */{}
+        rowNum++;
+        mSize += rowSize;
+        return true;
+    }
     
     /**
      * Free the last row
@@ -134,7 +202,84 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
         }
     }
     
-    private native void freeLastRow_native();
+    private void freeLastRow_native() {
+        if (rowNum <= 0) {
+            return;
+        }
+        rowNum--;
+        for (int col = 0; col < colNum; col++) {
+            releaseField(rowNum * colNum + col);
+        }
+        mSize -= colNum * FIELD_SIZE;
+    }
+
+    /**
+     * Returns the slot of the field, or throws if it is not in the window.
+     */
+    private int slotOf(int row, int col) {
+        if (row <= -1 || row >= rowNum) {
+            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
+        } else if (col <= -1 || col >= colNum) {
+            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
+        }
+        return row * colNum + col;
+    }
+
+    private int typeOf(int slot) {
+        int type = FIELD_TYPE_NULL;
+        /**
+         * @j2sNative
+         * type = this.mTypes[slot];
+         */{}
+        return type;
+    }
+
+    /**
+     * Drops the string or blob held by the field and sets it to NULL.
+     */
+    private void releaseField(int slot) {
+        int type = typeOf(slot);
+        int size = 0;
+        /**
+         * @j2sNative
+         * if (type == 3) {//FIELD_TYPE_STRING
+         *     size = this.mObjects[slot].length * 2;
+         * } else if (type == 4) {//FIELD_TYPE_BLOB
+         *     size = this.mObjects[slot].length;
+         * }
+         * this.mObjects[slot] = null;
+         * this.mTypes[slot] = 0;//FIELD_TYPE_NULL
+         */{}
+        mSize -= size;
+    }
+
+    /**
+     * Stores a string or blob of the given size in the field. Returns false if
+     * the window is full, unless this is the only row.
+     */
+    private boolean putObject(int slot, int type, Object value, int size) {
+        releaseField(slot);
+        if (rowNum > 1 && mSize + size > WINDOW_SIZE) {
+            return false;
+        }
+        mSize += size;
+        /**
+         * @j2sNative
+         * this.mObjects[slot] = value;
+         * this.mTypes[slot] = type;
+         */{}
+        return true;
+    }
+
+    private boolean putNumber(int slot, int type, double value) {
+        releaseField(slot);
+        /**
+         * @j2sNative
+         * this.mNumbers[slot] = value;
+         * this.mTypes[slot] = type;
+         */{}
+        return true;
+    }
 
     /**
      * copy byte array to cursor window
@@ -153,18 +298,7 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
     }
 
     private boolean putBlob_native(byte[] value, int row, int col) {
-        String temp = Base64.encodeToString(value, Base64.DEFAULT);
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            /**
-             * @j2sNative
-             * this.QueryResult[row][col].value = temp;
-             */{}
-             return true;
-        }
+        return putObject(slotOf(row, col), FIELD_TYPE_BLOB, value, value.length);
     }
 
     /**
@@ -184,17 +318,12 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
     }
 
     private boolean putString_native(String value, int row, int col) {
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            /**
-             * @j2sNative
-             * this.QueryResult[row][col].value = value;
-             */{}
+        int slot = slotOf(row, col);
+        if (value == null) {
+            releaseField(slot);
             return true;
         }
+        return putObject(slot, FIELD_TYPE_STRING, value, value.length() * 2);
     }
     
     /**
@@ -214,17 +343,7 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
     }
 
     private boolean putLong_native(long value, int row, int col) {
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            /**
-             * @j2sNative
-             * this.QueryResult[row][col].value = value;
-             */{}
-            return true;
-        }
+        return putNumber(slotOf(row, col), FIELD_TYPE_INTEGER, value);
     }
 
     /**
@@ -244,17 +363,7 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
     }
 
     private boolean putDouble_native(double value, int row, int col) {
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            /**
-             * @j2sNative
-             * this.QueryResult[row][col].value = value;
-             */{}
-            return true;
-        }
+        return putNumber(slotOf(row, col), FIELD_TYPE_FLOAT, value);
     }
 
     /**
@@ -273,17 +382,8 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
     }
 
     private boolean putNull_native(int row, int col) {
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            /**
-             * @j2sNative
-             * this.QueryResult[row][col].value = null;
-             */{}
-            return true;
-        }
+        releaseField(slotOf(row, col));
+        return true;
     }
 
     /**
@@ -303,19 +403,7 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
     }
 
     private boolean isNull_native(int row, int col) {
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            boolean flag = false;
-            /**
-             * @j2sNative
-             * if (this.QueryResult[row][col].value == undefined)
-             *     flag = true;
-             */{}
-            return flag;
-        }
+        return typeOf(slotOf(row, col)) == FIELD_TYPE_NULL;
     }
 
     /**
@@ -344,23 +432,32 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
      * then an {@link SQLiteException} is thrown.
      */
     private byte[] getBlob_native(int row, int col) {
+        int slot = slotOf(row, col);
+        int type = typeOf(slot);
         byte[] value = null;
-        String temp = null;
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
+        if (type == FIELD_TYPE_BLOB) {
             /**
              * @j2sNative
-             * var temp = this.QueryResult[row][col].value;
-             * if (temp != null && !temp.equals('(null)')) {
-             *     temp = decodeURI(temp);
-             *     value = android.util.Base64.decode(temp, android.util.Base64.DEFAULT);
-             * }
+             * value = this.mObjects[slot];
              */{}
-            return value;
+        } else if (type == FIELD_TYPE_STRING) {
+            // blobs come back from sql.js as base64 text
+            String temp = null;
+            /**
+             * @j2sNative
+             * temp = this.mObjects[slot];
+             */{}
+            if (!temp.equals("(null)")) {
+                /**
+                 * @j2sNative
+                 * temp = decodeURI(temp);
+                 */{}
+                value = Base64.decode(temp, Base64.DEFAULT);
+            }
+        } else if (type != FIELD_TYPE_NULL) {
+            throw new SQLiteException("INTEGER data in getBlob_native ");
         }
+        return value;
     }
 
     /**
@@ -427,10 +524,23 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
         }
     }
 
-    private native boolean isBlob_native(int row, int col);
-    private native boolean isString_native(int row, int col);
-    private native boolean isInteger_native(int row, int col);
-    private native boolean isFloat_native(int row, int col);
+    private boolean isBlob_native(int row, int col) {
+        int type = typeOf(slotOf(row, col));
+        return type == FIELD_TYPE_BLOB || type == FIELD_TYPE_NULL;
+    }
+
+    private boolean isString_native(int row, int col) {
+        int type = typeOf(slotOf(row, col));
+        return type == FIELD_TYPE_STRING || type == FIELD_TYPE_NULL;
+    }
+
+    private boolean isInteger_native(int row, int col) {
+        return typeOf(slotOf(row, col)) == FIELD_TYPE_INTEGER;
+    }
+
+    private boolean isFloat_native(int row, int col) {
+        return typeOf(slotOf(row, col)) == FIELD_TYPE_FLOAT;
+    }
 
     /**
      * Returns a String for the given field.
@@ -462,19 +572,23 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
      * {@link SQLiteException} is thrown.
      */
     private String getString_native(int row, int col) {
+        int slot = slotOf(row, col);
+        int type = typeOf(slot);
         String value = null;
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
+        if (type == FIELD_TYPE_STRING) {
+            /**
+             * @j2sNative
+             * value = decodeURI(this.mObjects[slot]);
+             */{}
+        } else if (type == FIELD_TYPE_INTEGER || type == FIELD_TYPE_FLOAT) {
             /**
              * @j2sNative
-             * value = this.QueryResult[row][col].value;
-             * value = decodeURI(value);
+             * value = "" + this.mNumbers[slot];
              */{}
-             return value;
+        } else if (type == FIELD_TYPE_BLOB) {
+            throw new SQLiteException("Unable to convert BLOB to string");
         }
+        return value;
     }
 
     /**
@@ -506,8 +620,21 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
         }
     }
     
-    private native char[] copyStringToBuffer_native(
-            int row, int col, int bufferSize, CharArrayBuffer buffer);
+    private char[] copyStringToBuffer_native(
+            int row, int col, int bufferSize, CharArrayBuffer buffer) {
+        String value = getString_native(row, col);
+        if (value == null) {
+            buffer.sizeCopied = 0;
+            return null;
+        }
+        int length = value.length();
+        buffer.sizeCopied = length;
+        if (length > bufferSize) {
+            return value.toCharArray();
+        }
+        value.getChars(0, length, buffer.data, 0);
+        return null;
+    }
     
     /**
      * Returns a long for the given field.
@@ -538,19 +665,25 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
      * {@link SQLiteException} is thrown.
      */
     private long getLong_native(int row, int col) {
-        int value = 0;
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            /**
-             * @j2sNative
-             * var temp = this.QueryResult[row][col].value;
-             * value = parseInt(temp);
-             */{}
-            return (long) value;
+        int slot = slotOf(row, col);
+        int type = typeOf(slot);
+        long value = 0;
+        if (type == FIELD_TYPE_BLOB) {
+            throw new SQLiteException("Unable to convert BLOB to long");
         }
+        /**
+         * @j2sNative
+         * if (type == 1 || type == 2) {//FIELD_TYPE_INTEGER, FIELD_TYPE_FLOAT
+         *     var number = this.mNumbers[slot];
+         *     value = number < 0 ? Math.ceil(number) : Math.floor(number);
+         * } else if (type == 3) {//FIELD_TYPE_STRING
+         *     value = parseInt(this.mObjects[slot]);
+         *     if (isNaN(value)) {
+         *         value = 0;
+         *     }
+         * }
+         */{}
+        return value;
     }
 
     /**
@@ -582,19 +715,24 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
      * {@link SQLiteException} is thrown.
      */
     private double getDouble_native(int row, int col) {
+        int slot = slotOf(row, col);
+        int type = typeOf(slot);
         double value = 0;
-        if (row <= -1 || row >= rowNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else if (col <= -1 || col >= colNum) {
-            throw new IllegalArgumentException("CurrentPosiztion doesn't point to the Query result");
-        } else {
-            /**
-             * @j2sNative
-             * var temp = this.QueryResult[row][col].value;
-             * value = parseFloat(temp);
-             */{}
-            return value;
+        if (type == FIELD_TYPE_BLOB) {
+            throw new SQLiteException("Unable to convert BLOB to double");
         }
+        /**
+         * @j2sNative
+         * if (type == 1 || type == 2) {//FIELD_TYPE_INTEGER, FIELD_TYPE_FLOAT
+         *     value = this.mNumbers[slot];
+         * } else if (type == 3) {//FIELD_TYPE_STRING
+         *     value = parseFloat(this.mObjects[slot]);
+         *     if (isNaN(value)) {
+         *         value = 0;
+         *     }
+         * }
+         */{}
+        return value;
     }
 
     /**
@@ -664,9 +802,14 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
 
     /** Clears out the native side of things */
     private void native_clear() {
+        // keep the arrays, the window is likely to be filled again right away
+        rowNum = 0;
+        mSize = 0;
         /**
          * @j2sNative
-         * this.QueryResult = null;
+         * if (this.mObjects != null) {
+         *     this.mObjects.length = 0;
+         * }
          */{}
     }
 
@@ -679,7 +822,11 @@ public class CursorWindow extends SQLiteClosable implements Parcelable {
 
 //    private native void close_native();
     private void close_native() {
-        //close();
+        native_clear();
+        mTypes = null;
+        mNumbers = null;
+        mObjects = null;
+        mFieldCapacity = 0;
     }
 
     @Override
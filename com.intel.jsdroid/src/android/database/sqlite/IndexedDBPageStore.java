@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.util.Log;
+
+import java.util.HashSet;
+
+/**
+ * A {@link SQLitePageStore} on IndexedDB. Pages are stored as binary records
+ * keyed by database and page number.
+ * <p>
+ * IndexedDB can only be read asynchronously, so the stored pages are read
+ * into memory once when the store is created and served from there. Writes
+ * update the memory copy right away and reach IndexedDB in the background,
+ * each in one transaction. If a transaction fails, the next write of that
+ * database stores all of its pages again.
+ * <p>
+ * Databases that an earlier version kept in localStorage are moved over
+ * while loading. Install the store with {@link SQLitePageStore#setDefault}
+ * once it is ready, before opening any database; see
+ * {@link SQLitePageStore#installDefault}.
+ *
+ * @hide
+ */
+public class IndexedDBPageStore extends MemoryPageStore {
+    private static final String TAG = "IndexedDBPageStore";
+
+    private static final String DB_NAME = "mayloon_sqlite";
+    private static final String STORE_NAME = "pages";
+    private static final String META = "meta";
+
+    private Object mIDB;
+    private boolean mReady;
+
+    /** databases whose last write didn't reach IndexedDB */
+    private final HashSet<String> mUnsaved = new HashSet<String>();
+
+    /** databases moved from localStorage, removed there once stored here */
+    private final HashSet<String> mImported = new HashSet<String>();
+
+    /**
+     * Returns whether the browser has IndexedDB.
+     */
+    public static boolean isSupported() {
+        boolean supported = false;
+        /**
+         * @j2sNative
+         * supported = !!window.indexedDB;
+         */{}
+        return supported;
+    }
+
+    /**
+     * Opens the IndexedDB database and starts loading the stored pages.
+     *
+     * @param onReady run once all pages are loaded, or once it turned out
+     *            IndexedDB can't be used. May be null.
+     */
+    public IndexedDBPageStore(final Runnable onReady) {
+        String dbName = DB_NAME;
+        String storeName = STORE_NAME;
+        String meta = META;
+        /**
+         * @j2sNative
+         * var self = this;
+         * var done = function (idb) {
+         *     self.loaded(idb);
+         *     if (onReady != null) {
+         *         onReady.run();
+         *     }
+         * };
+         * if (!window.indexedDB) {
+         *     done(null);
+         *     return;
+         * }
+         * var request;
+         * try {
+         *     request = window.indexedDB.open(dbName, 1);
+         * } catch (e) {
+         *     // e.g. a SecurityError where storage is disabled
+         *     done(null);
+         *     return;
+         * }
+         * request.onupgradeneeded = function () {
+         *     request.result.createObjectStore(storeName);
+         * };
+         * request.onerror = function () {
+         *     done(null);
+         * };
+         * request.onsuccess = function () {
+         *     var idb = request.result;
+         *     var cursorRequest = idb.transaction(storeName, "readonly")
+         *             .objectStore(storeName).openCursor();
+         *     cursorRequest.onsuccess = function () {
+         *         var cursor = cursorRequest.result;
+         *         if (cursor == null) {
+         *             done(idb);
+         *             return;
+         *         }
+         *         // keys are [database, page number] or [database, "meta"]
+         *         var key = cursor.key;
+         *         var value = cursor.value;
+         *         if (key[1] == meta) {
+         *             self.loadGeometry(key[0], value.pageSize, value.pageCount);
+         *         } else {
+         *             self.loadPage(key[0], key[1], value);
+         *         }
+         *         cursor["continue"]();
+         *     };
+         *     cursorRequest.onerror = function () {
+         *         done(null);
+         *     };
+         * };
+         */{}
+    }
+
+    /* package */ void loaded(Object idb) {
+        if (idb == null) {
+            Log.w(TAG, "IndexedDB can't be opened");
+        }
+        mIDB = idb;
+        mReady = true;
+        if (idb != null) {
+            importLocalStorage();
+        }
+    }
+
+    /**
+     * Moves the databases kept in localStorage that aren't stored here yet.
+     */
+    private void importLocalStorage() {
+        LocalStoragePageStore local = new LocalStoragePageStore();
+        String[] databases = LocalStoragePageStore.listDatabases();
+        for (int i = 0; i < databases.length; i++) {
+            String database = databases[i];
+            if (getPageCount(database) > 0) {
+                // moved before, but the tab closed before localStorage was cleared
+                local.delete(database);
+                continue;
+            }
+            int pageSize = local.getPageSize(database);
+            int pageCount = local.getPageCount(database);
+            int[] pageNos = new int[pageCount];
+            Object[] pages = new Object[pageCount];
+            boolean complete = true;
+            for (int pageNo = 0; pageNo < pageCount && complete; pageNo++) {
+                pageNos[pageNo] = pageNo;
+                pages[pageNo] = local.readPage(database, pageNo);
+                complete = pages[pageNo] != null;
+            }
+            if (!complete) {
+                Log.w(TAG, "Database " + database + " is incomplete in localStorage");
+                continue;
+            }
+            synchronized (this) {
+                mImported.add(database);
+            }
+            writePages(database, pageSize, pageCount, pageNos, pages);
+        }
+    }
+
+    /**
+     * Returns whether all stored pages are loaded.
+     */
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /**
+     * Returns whether pages are persisted, false if IndexedDB couldn't be
+     * opened and they are only kept in memory.
+     */
+    public boolean isPersistent() {
+        return mIDB != null;
+    }
+
+    @Override
+    public synchronized void writePages(String database, int pageSize, int pageCount,
+            int[] pageNos, Object[] pages) {
+        super.writePages(database, pageSize, pageCount, pageNos, pages);
+        if (mIDB == null) {
+            return;
+        }
+        if (mUnsaved.remove(database)) {
+            // IndexedDB may still hold any older version, store all of it
+            pageNos = new int[pageCount];
+            for (int pageNo = 0; pageNo < pageCount; pageNo++) {
+                pageNos[pageNo] = pageNo;
+            }
+        }
+        String storeName = STORE_NAME;
+        String meta = META;
+        /**
+         * @j2sNative
+         * var self = this;
+         * var tx = this.mIDB.transaction(storeName, "readwrite");
+         * var store = tx.objectStore(storeName);
+         * for (var i = 0; i < pageNos.length; i++) {
+         *     store.put(this.readPage(database, pageNos[i]), [database, pageNos[i]]);
+         * }
+         * // numbers sort before strings, so this leaves the meta record alone
+         * store["delete"](IDBKeyRange.bound([database, pageCount], [database, Infinity]));
+         * store.put({pageSize: pageSize, pageCount: pageCount}, [database, meta]);
+         * tx.oncomplete = function () {
+         *     self.committed(database);
+         * };
+         * tx.onabort = function () {
+         *     self.failed(database, tx.error != null ? "" + tx.error : "aborted");
+         * };
+         */{}
+    }
+
+    /* package */ synchronized void committed(String database) {
+        if (mImported.remove(database)) {
+            new LocalStoragePageStore().delete(database);
+        }
+    }
+
+    /* package */ synchronized void failed(String database, String error) {
+        // most likely over quota, the next write retries with all pages
+        Log.e(TAG, "Can't persist database " + database + ": " + error);
+        mUnsaved.add(database);
+    }
+
+    @Override
+    public synchronized void delete(String database) {
+        super.delete(database);
+        mUnsaved.remove(database);
+        if (mIDB == null) {
+            return;
+        }
+        String storeName = STORE_NAME;
+        String meta = META;
+        /**
+         * @j2sNative
+         * var tx = this.mIDB.transaction(storeName, "readwrite");
+         * var store = tx.objectStore(storeName);
+         * // numbers sort before strings, so this covers the pages and the meta record
+         * store["delete"](IDBKeyRange.bound([database, 0], [database, meta]));
+         */{}
+    }
+}
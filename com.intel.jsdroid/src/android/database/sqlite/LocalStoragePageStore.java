@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.util.Log;
+
+import java.util.HashMap;
+
+/**
+ * A {@link SQLitePageStore} on window.localStorage. localStorage only holds
+ * strings, so every page is kept base64 encoded under its own key, next to a
+ * meta key holding the page size and count of the database.
+ * <p>
+ * Each page has two slots, and the meta key tells which one holds the page.
+ * A write puts the changed pages in their other slot and then switches the
+ * slots in the meta key with one setItem(), so the stored database is either
+ * the old one or the new one. If localStorage runs out of space, the pages
+ * written so far are removed and the old database stays as it was.
+ * <p>
+ * This is the fallback for browsers without IndexedDB: base64 pages in two
+ * slots fill the few megabytes localStorage has quickly.
+ *
+ * @hide
+ */
+public class LocalStoragePageStore extends SQLitePageStore {
+    private static final String TAG = "LocalStoragePageStore";
+
+    private static final String KEY_PREFIX = "sqlite/";
+
+    private static String metaKey(String database) {
+        return KEY_PREFIX + database + "/meta";
+    }
+
+    private static String pageKey(String database, int pageNo, char slot) {
+        return KEY_PREFIX + database + "/" + pageNo + (slot == '1' ? "'" : "");
+    }
+
+    /**
+     * The slots of each database as last read from or written to its meta key,
+     * so that reading the pages of a database doesn't parse it again per page.
+     */
+    private final HashMap<String, String> mSlots = new HashMap<String, String>();
+
+    /**
+     * Returns the names of the databases stored in localStorage.
+     */
+    /* package */ static String[] listDatabases() {
+        String prefix = KEY_PREFIX;
+        String[] databases = null;
+        /**
+         * @j2sNative
+         * var storage = window.localStorage;
+         * databases = [];
+         * for (var i = 0; i < storage.length; i++) {
+         *     var key = storage.key(i);
+         *     if (key.indexOf(prefix) == 0
+         *             && key.lastIndexOf("/meta") == key.length - 5) {
+         *         databases.push(key.substring(prefix.length, key.length - 5));
+         *     }
+         * }
+         */{}
+        return databases;
+    }
+
+    /**
+     * Returns the slot of each page, '0' or '1', as a string of pageCount
+     * characters, and remembers it for {@link #readPage}. Pages stored before
+     * there were slots are in slot 0.
+     */
+    private synchronized String readSlots(String database) {
+        String key = metaKey(database);
+        String slots = "";
+        /**
+         * @j2sNative
+         * var meta = window.localStorage.getItem(key);
+         * if (meta != null) {
+         *     var fields = meta.split(",");
+         *     var pageCount = parseInt(fields[1]);
+         *     slots = fields.length > 2 ? fields[2] : "";
+         *     while (slots.length < pageCount) {
+         *         slots += "0";
+         *     }
+         * }
+         */{}
+        mSlots.put(database, slots);
+        return slots;
+    }
+
+    @Override
+    public int getPageCount(String database) {
+        return readMeta(database, 1);
+    }
+
+    @Override
+    public int getPageSize(String database) {
+        // a database is opened by asking for its size, take the slots afresh
+        readSlots(database);
+        return readMeta(database, 0);
+    }
+
+    private int readMeta(String database, int field) {
+        String key = metaKey(database);
+        int value = 0;
+        /**
+         * @j2sNative
+         * var meta = window.localStorage.getItem(key);
+         * if (meta != null) {
+         *     value = parseInt(meta.split(",")[field]);
+         * }
+         */{}
+        return value;
+    }
+
+    @Override
+    public Object readPage(String database, int pageNo) {
+        String slots;
+        synchronized (this) {
+            slots = mSlots.get(database);
+        }
+        if (slots == null) {
+            slots = readSlots(database);
+        }
+        if (pageNo >= slots.length()) {
+            return null;
+        }
+        String key = pageKey(database, pageNo, slots.charAt(pageNo));
+        Object page = null;
+        /**
+         * @j2sNative
+         * var encoded = window.localStorage.getItem(key);
+         * if (encoded != null) {
+         *     var decoded = atob(encoded);
+         *     page = new Uint8Array(decoded.length);
+         *     for (var i = 0; i < decoded.length; i++) {
+         *         page[i] = decoded.charCodeAt(i);
+         *     }
+         * }
+         */{}
+        return page;
+    }
+
+    @Override
+    public void writePages(String database, int pageSize, int pageCount,
+            int[] pageNos, Object[] pages) {
+        String oldSlots = readSlots(database);
+        StringBuilder slots = new StringBuilder(pageCount);
+        for (int pageNo = 0; pageNo < pageCount; pageNo++) {
+            slots.append(pageNo < oldSlots.length() ? oldSlots.charAt(pageNo) : '0');
+        }
+        // the keys written so far, removed again if the write fails
+        String[] written = new String[pageNos.length];
+        String error = null;
+        for (int i = 0; i < pageNos.length && error == null; i++) {
+            int pageNo = pageNos[i];
+            char slot = slots.charAt(pageNo) == '0' ? '1' : '0';
+            slots.setCharAt(pageNo, slot);
+            String key = pageKey(database, pageNo, slot);
+            error = setPage(key, pages[i]);
+            if (error == null) {
+                written[i] = key;
+            }
+        }
+        if (error == null) {
+            // the commit point: from here on the new pages are the database
+            error = setItem(metaKey(database), pageSize + "," + pageCount + "," + slots);
+        }
+        if (error != null) {
+            for (int i = 0; i < written.length; i++) {
+                if (written[i] != null) {
+                    removeItem(written[i]);
+                }
+            }
+            // most likely over quota
+            Log.e(TAG, "Can't persist database " + database + ": " + error);
+            throw new SQLiteException("can't persist database " + database + ": " + error);
+        }
+        synchronized (this) {
+            mSlots.put(database, slots.toString());
+        }
+
+        // drop the pages that were replaced, and those past the end
+        for (int i = 0; i < pageNos.length; i++) {
+            int pageNo = pageNos[i];
+            if (pageNo < oldSlots.length()) {
+                removeItem(pageKey(database, pageNo, oldSlots.charAt(pageNo)));
+            }
+        }
+        for (int pageNo = pageCount; pageNo < oldSlots.length(); pageNo++) {
+            removeItem(pageKey(database, pageNo, oldSlots.charAt(pageNo)));
+        }
+    }
+
+    /**
+     * Stores a page base64 encoded. Returns the error if it couldn't be.
+     */
+    private static String setPage(String key, Object page) {
+        String error = null;
+        /**
+         * @j2sNative
+         * // String.fromCharCode.apply() runs out of stack on large pages
+         * var encoded = "";
+         * for (var off = 0; off < page.length; off += 8192) {
+         *     encoded += String.fromCharCode.apply(null,
+         *             page.subarray(off, Math.min(off + 8192, page.length)));
+         * }
+         * try {
+         *     window.localStorage.setItem(key, btoa(encoded));
+         * } catch (e) {
+         *     error = "" + e;
+         * }
+         */{}
+        return error;
+    }
+
+    @Override
+    public void delete(String database) {
+        String slots = readSlots(database);
+        for (int pageNo = 0; pageNo < slots.length(); pageNo++) {
+            // a failed write may have left the other slot behind
+            removeItem(pageKey(database, pageNo, '0'));
+            removeItem(pageKey(database, pageNo, '1'));
+        }
+        removeItem(metaKey(database));
+        synchronized (this) {
+            mSlots.remove(database);
+        }
+    }
+
+    private static String setItem(String key, String value) {
+        String error = null;
+        /**
+         * @j2sNative
+         * try {
+         *     window.localStorage.setItem(key, value);
+         * } catch (e) {
+         *     error = "" + e;
+         * }
+         */{}
+        return error;
+    }
+
+    private static void removeItem(String key) {
+        /**
+         * @j2sNative
+         * window.localStorage.removeItem(key);
+         */{}
+    }
+}
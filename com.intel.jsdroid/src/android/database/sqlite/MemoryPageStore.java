@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import java.util.HashMap;
+
+/**
+ * A {@link SQLitePageStore} that keeps the pages in memory, so nothing
+ * outlives the page. Useful for tests and as the read cache of stores that
+ * can't be read synchronously.
+ *
+ * @hide
+ */
+public class MemoryPageStore extends SQLitePageStore {
+
+    private static final class Database {
+        int pageSize;
+        int pageCount;
+        final HashMap<Integer, Object> pages = new HashMap<Integer, Object>();
+    }
+
+    private final HashMap<String, Database> mDatabases = new HashMap<String, Database>();
+
+    @Override
+    public synchronized int getPageCount(String database) {
+        Database db = mDatabases.get(database);
+        return db == null ? 0 : db.pageCount;
+    }
+
+    @Override
+    public synchronized int getPageSize(String database) {
+        Database db = mDatabases.get(database);
+        return db == null ? 0 : db.pageSize;
+    }
+
+    @Override
+    public synchronized Object readPage(String database, int pageNo) {
+        Database db = mDatabases.get(database);
+        return db == null ? null : db.pages.get(Integer.valueOf(pageNo));
+    }
+
+    @Override
+    public synchronized void writePages(String database, int pageSize, int pageCount,
+            int[] pageNos, Object[] pages) {
+        Database db = obtain(database);
+        for (int pageNo = pageCount; pageNo < db.pageCount; pageNo++) {
+            db.pages.remove(Integer.valueOf(pageNo));
+        }
+        db.pageSize = pageSize;
+        db.pageCount = pageCount;
+        for (int i = 0; i < pageNos.length; i++) {
+            putPage(db, pageNos[i], pages[i]);
+        }
+    }
+
+    /**
+     * Puts a page that is already persisted elsewhere, for stores that read
+     * through this one.
+     */
+    protected synchronized void loadPage(String database, int pageNo, Object page) {
+        putPage(obtain(database), pageNo, page);
+    }
+
+    /**
+     * Sets the size of a database that is already persisted elsewhere.
+     */
+    protected synchronized void loadGeometry(String database, int pageSize, int pageCount) {
+        Database db = obtain(database);
+        db.pageSize = pageSize;
+        db.pageCount = pageCount;
+    }
+
+    @Override
+    public synchronized void delete(String database) {
+        mDatabases.remove(database);
+    }
+
+    private Database obtain(String database) {
+        Database db = mDatabases.get(database);
+        if (db == null) {
+            db = new Database();
+            mDatabases.put(database, db);
+        }
+        return db;
+    }
+
+    private static void putPage(Database db, int pageNo, Object page) {
+        Object copy = null;
+        /**
+         * @j2sNative
+         * // the caller may hand over a view into a larger buffer
+         * copy = new Uint8Array(page);
+         */{}
+        db.pages.put(Integer.valueOf(pageNo), copy);
+    }
+}
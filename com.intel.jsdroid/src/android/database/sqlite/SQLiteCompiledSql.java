@@ -16,6 +16,8 @@
 
 package android.database.sqlite;
 
+import java.util.ArrayList;
+
 //tqi3 import android.os.StrictMode;
 import android.util.Log;
 
@@ -26,6 +28,10 @@ import android.util.Log;
  * 1. when {@link SQLiteDatabase} object is closed.
  * 2. if this is not cached in {@link SQLiteDatabase}, {@link android.database.Cursor#close()}
  * releaases this obj.
+ *
+ * MayLoon: the bundled sql.js only exposes sqlite3_exec(), so there is no native
+ * statement to prepare. Compiling splits the SQL once at its parameters, and binding renders each
+ * value as a literal of its own type, quoted and escaped, in place of its parameter.
  */
 /* package */ class SQLiteCompiledSql {
 
@@ -54,6 +60,27 @@ import android.util.Log;
     /** when in cache and is in use, this member is set */
     private boolean mInUse = false;
 
+    /** source of the ids handed out in nStatement */
+    private static int sNextStatementId = 1;
+
+    /** the SQL text around the parameters, one more than there are parameters */
+    private String[] mSegments;
+
+    /** the 1-based index of the bind argument for each parameter */
+    private int[] mParameterIndices;
+
+    /** the number of bind arguments the statement takes */
+    private int mNumParameters;
+
+    /**
+     * Column names of the last non-empty result. sqlite3_exec() reports no columns
+     * for an empty result, so these are kept for the next time that happens.
+     */
+    /* package */ String[] mColumnNames;
+
+    /** set once the statement has been put in the cache of its database */
+    /* package */ boolean mShared;
+
     /* package */ SQLiteCompiledSql(SQLiteDatabase db, String sql) {
         if (!db.isOpen()) {
             throw new IllegalStateException("database " + db.getPath() + " already closed");
@@ -90,12 +117,287 @@ import android.util.Log;
                 // Note that the native_compile() takes care of destroying any previously
                 // existing programs before it compiles.
                 //native_compile(sql);
+                parse(sql);
+                nStatement = sNextStatementId++;
             } finally {
               //  mDatabase.unlock();
             }
         }
     }
 
+    /**
+     * Splits sql at its parameters, "?" and "?NNN". Question marks inside string
+     * literals, quoted identifiers and comments are left alone.
+     */
+    private void parse(String sql) {
+        ArrayList<String> segments = new ArrayList<String>();
+        ArrayList<Integer> indices = new ArrayList<Integer>();
+        int numParameters = 0;
+        int start = 0;
+        int len = sql.length();
+        for (int i = 0; i < len; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                // a doubled quote just opens the next literal right away
+                i = skipTo(sql, i + 1, String.valueOf(c));
+            } else if (c == '[') {
+                i = skipTo(sql, i + 1, "]");
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                i = skipTo(sql, i + 2, "\n");
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                i = skipTo(sql, i + 2, "*/");
+            } else if (c == '?') {
+                segments.add(sql.substring(start, i));
+                int end = i + 1;
+                while (end < len && Character.isDigit(sql.charAt(end))) {
+                    end++;
+                }
+                int index = end > i + 1
+                        ? Integer.parseInt(sql.substring(i + 1, end)) : numParameters + 1;
+                if (index < 1) {
+                    throw new SQLiteException("bad parameter index " + index + " in: " + sql);
+                }
+                indices.add(Integer.valueOf(index));
+                numParameters = Math.max(numParameters, index);
+                start = end;
+                i = end - 1;
+            }
+        }
+        segments.add(sql.substring(start));
+
+        mSegments = segments.toArray(new String[segments.size()]);
+        mParameterIndices = new int[indices.size()];
+        for (int i = 0; i < mParameterIndices.length; i++) {
+            mParameterIndices[i] = indices.get(i).intValue();
+        }
+        mNumParameters = numParameters;
+    }
+
+    /**
+     * Returns the index of the last char of the first occurrence of terminator at
+     * or after from, or the end of sql if there is none.
+     */
+    private static int skipTo(String sql, int from, String terminator) {
+        int end = sql.indexOf(terminator, from);
+        return end < 0 ? sql.length() - 1 : end + terminator.length() - 1;
+    }
+
+    /**
+     * Returns the number of bind arguments this statement takes.
+     */
+    /* package */ int getParameterCount() {
+        return mNumParameters;
+    }
+
+    /**
+     * Returns the SQL with each parameter replaced by the literal for its bind
+     * argument. Missing arguments are bound as NULL.
+     *
+     * @param bindArgs the arguments, bindArgs[0] is parameter 1. May be null.
+     */
+    /* package */ String bind(Object[] bindArgs) {
+        if (mSegments == null) {
+            throw new IllegalStateException("statement already released: " + mSqlStmt);
+        }
+        int numArgs = bindArgs == null ? 0 : bindArgs.length;
+        if (numArgs > mNumParameters) {
+            throw new IllegalArgumentException("Too many bind arguments.  " + numArgs
+                    + " arguments were provided but the statement needs "
+                    + mNumParameters + " arguments.");
+        }
+        if (mParameterIndices.length == 0) {
+            return mSqlStmt;
+        }
+        StringBuilder sql = new StringBuilder(mSqlStmt.length() + 16 * mParameterIndices.length);
+        for (int i = 0; i < mParameterIndices.length; i++) {
+            sql.append(mSegments[i]);
+            int index = mParameterIndices[i];
+            appendLiteral(sql, index <= numArgs ? bindArgs[index - 1] : null);
+        }
+        sql.append(mSegments[mParameterIndices.length]);
+        return sql.toString();
+    }
+
+    /**
+     * Appends value to sql as an SQLite literal: NULL, a number, a blob or a
+     * quoted string.
+     */
+    /* package */ static void appendLiteral(StringBuilder sql, Object value) {
+        if (value == null) {
+            sql.append("NULL");
+        } else if (value instanceof String) {
+            appendQuoted(sql, (String) value);
+        } else if (value instanceof Number) {
+            sql.append(value.toString());
+        } else if (value instanceof Boolean) {
+            sql.append(((Boolean) value).booleanValue() ? "1" : "0");
+        } else if (value instanceof byte[]) {
+            byte[] blob = (byte[]) value;
+            sql.append("X'");
+            for (int i = 0; i < blob.length; i++) {
+                int b = blob[i] & 0xff;
+                sql.append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0xf]);
+            }
+            sql.append('\'');
+        } else {
+            appendQuoted(sql, value.toString());
+        }
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static void appendQuoted(StringBuilder sql, String value) {
+        sql.append('\'');
+        if (value.indexOf('\'') < 0) {
+            sql.append(value);
+        } else {
+            int len = value.length();
+            for (int i = 0; i < len; i++) {
+                char c = value.charAt(i);
+                if (c == '\'') {
+                    sql.append('\'');
+                }
+                sql.append(c);
+            }
+        }
+        sql.append('\'');
+    }
+
+    /**
+     * Binds bindArgs and runs the statement, returning the rows as sql.js reports
+     * them: an array of rows, each an array of {column, value} with NULL values
+     * as null.
+     *
+     * @throws SQLiteException if SQLite fails to run the statement
+     */
+    /* package */ Object execute(Object[] bindArgs) {
+        return execute(bindArgs, null, null);
+    }
+
+    /**
+     * Like {@link #execute(Object[])}, with the bound statement wrapped in the
+     * given SQL, for running it as a subquery or with a LIMIT added.
+     *
+     * @param prefix SQL to put before the statement, may be null
+     * @param suffix SQL to put after the statement, may be null
+     */
+    /* package */ Object execute(Object[] bindArgs, String prefix, String suffix) {
+        String sql = wrap(bindArgs, prefix, suffix);
+        // wrapped in a subquery the result no longer has the statement's columns
+        boolean ownColumns = prefix == null;
+        Object db = mDatabase.getSQLDB();
+        Object rows = null;
+        String error = null;
+        /**
+         * @j2sNative
+         * try {
+         *     rows = db.exec(sql);
+         * } catch (e) {
+         *     error = (e && e.message) ? e.message : ("" + e);
+         * }
+         * if (ownColumns && rows != null && rows.length > 0) {
+         *     var names = new Array(rows[0].length);
+         *     for (var i = 0; i < names.length; i++) {
+         *         names[i] = rows[0][i].column;
+         *     }
+         *     this.mColumnNames = names;
+         * }
+         */{}
+        if (error != null) {
+            throw new SQLiteException(error);
+        }
+        return rows;
+    }
+
+    /**
+     * Runs the statement as a query, with suffix appended, returning the rows like
+     * {@link #execute(Object[])} but with each value of its own storage class:
+     * INTEGER and REAL as numbers, TEXT as strings, BLOB as a Uint8Array and NULL
+     * as null. The types come from the same run that produces the values.
+     *
+     * @param suffix SQL to put after the statement, e.g. a LIMIT, may be null
+     * @throws SQLiteException if SQLite fails to run the statement
+     */
+    /* package */ Object executeQuery(Object[] bindArgs, String suffix) {
+        String sql = wrap(bindArgs, null, suffix);
+        Object db = mDatabase.getSQLDB();
+        Object rows = null;
+        String error = null;
+        /**
+         * @j2sNative
+         * try {
+         *     if (typeof db.prepare == "function") {
+         *         // a build with statements: get() hands back typed values
+         *         var stmt = db.prepare(sql);
+         *         try {
+         *             var names = stmt.getColumnNames();
+         *             rows = [];
+         *             while (stmt.step()) {
+         *                 var values = stmt.get();
+         *                 var row = new Array(values.length);
+         *                 for (var i = 0; i < values.length; i++) {
+         *                     row[i] = {column: names[i], value: values[i]};
+         *                 }
+         *                 rows.push(row);
+         *             }
+         *             this.mColumnNames = names;
+         *         } finally {
+         *             stmt.free();
+         *         }
+         *     } else {
+         *         // sqlite3_exec() hands back text, a number is the value whose
+         *         // text is exactly what SQLite prints for it
+         *         rows = db.exec(sql);
+         *         for (var r = 0; r < rows.length; r++) {
+         *             var row = rows[r];
+         *             for (var i = 0; i < row.length; i++) {
+         *                 var value = row[i].value;
+         *                 if (value != null && value.length > 0 && value.length < 24) {
+         *                     var number = +value;
+         *                     if (isFinite(number) && String(number) === value) {
+         *                         row[i].value = number;
+         *                     }
+         *                 }
+         *             }
+         *         }
+         *         if (rows.length > 0) {
+         *             var names = new Array(rows[0].length);
+         *             for (var i = 0; i < names.length; i++) {
+         *                 names[i] = rows[0][i].column;
+         *             }
+         *             this.mColumnNames = names;
+         *         }
+         *     }
+         * } catch (e) {
+         *     error = (e && e.message) ? e.message : ("" + e);
+         * }
+         */{}
+        if (error != null) {
+            throw new SQLiteException(error);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the bound statement with prefix put before it and suffix after it,
+     * dropping any trailing semicolon so that the suffix applies to the statement.
+     */
+    private String wrap(Object[] bindArgs, String prefix, String suffix) {
+        String sql = bind(bindArgs);
+        if (prefix != null) {
+            sql = prefix + sql;
+        }
+        if (suffix != null) {
+            int end = sql.length();
+            while (end > 0 && (sql.charAt(end - 1) == ';'
+                    || Character.isWhitespace(sql.charAt(end - 1)))) {
+                end--;
+            }
+            sql = sql.substring(0, end) + suffix;
+        }
+        return sql;
+    }
+
     /* package */ void releaseSqlStatement() {
         // Note that native_finalize() checks to make sure that nStatement is
         // non-null before destroying it.
@@ -106,7 +408,10 @@ import android.util.Log;
             try {
           //      mDatabase.lock();
           //      native_finalize();
-          //      nStatement = 0;
+                mSegments = null;
+                mParameterIndices = null;
+                mColumnNames = null;
+                nStatement = 0;
             } finally {
            //     mDatabase.unlock();
             }
@@ -253,7 +253,17 @@ public class SQLiteCursor extends AbstractWindowedCursor {
         // Make sure the row at newPosition is present in the window
         if (mWindow == null || newPosition < mWindow.getStartPosition() ||
                 newPosition >= (mWindow.getStartPosition() + mWindow.getNumRows())) {
-            fillWindow(newPosition);
+            int startPos = newPosition;
+            if (mWindow != null && newPosition < mWindow.getStartPosition()) {
+                // moving backwards, keep most of the window before newPosition
+                startPos = Math.max(newPosition - mWindow.getNumRows() * 2 / 3, 0);
+            }
+            fillWindow(startPos);
+            if (newPosition >= mWindow.getStartPosition() + mWindow.getNumRows()
+                    && newPosition < mCount) {
+                // fewer rows fit this time
+                fillWindow(newPosition);
+            }
         }
 
         return true;
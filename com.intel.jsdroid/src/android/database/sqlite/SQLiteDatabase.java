@@ -21,6 +21,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
@@ -58,10 +59,11 @@ public class SQLiteDatabase extends SQLiteClosable {
     private static final int EVENT_DB_CORRUPT = 75004;
     public static HashMap sqlDBList = new HashMap();
     public static int sqlDBsize;
+    /** the files of the databases in sqlDBList, by name */
+    private static HashMap<String, SQLitePageFile> sPageFiles = new HashMap<String, SQLitePageFile>();
     /**
      * @j2sNative
      * var sqlDB = null;
-     * var storage = null;
      */{}
     public static String mName ;  // used to construct indexedDB
     /**
@@ -180,6 +182,12 @@ public class SQLiteDatabase extends SQLiteClosable {
      */
     private boolean mTransactionIsSuccessful;
 
+    /** Set between beginTransaction and endTransaction, writes are flushed at the end. */
+    private boolean mInTransaction;
+
+    /** The file of this database, persisted page by page. */
+    private SQLitePageFile mPageFile;
+
     /**
      * Valid during the life of a transaction.
      */
@@ -264,7 +272,27 @@ public class SQLiteDatabase extends SQLiteClosable {
      * most of the apps don't use "?" syntax in their sql, caching is not useful for them.
      */
     // tqi3
-    /* package */ Map<String, SQLiteCompiledSql> mCompiledQueries = new HashMap<String, SQLiteCompiledSql>();
+    /* package */ Map<String, SQLiteCompiledSql> mCompiledQueries =
+            new LinkedHashMap<String, SQLiteCompiledSql>(16, 0.75f, true) {
+        /*
+         * MayLoon: the least recently used statement is dropped once the cache
+         * grows past mMaxSqlCacheSize. It is not released here since programs
+         * may still be using it, see SQLiteProgram#releaseCompiledSqlIfNotInCache.
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteCompiledSql> eldest) {
+            if (size() <= mMaxSqlCacheSize) {
+                return false;
+            }
+            if (++mCacheFullWarnings <= MAX_WARNINGS_ON_CACHESIZE_CONDITION) {
+                Log.w(TAG, "Reached MAX size for compiled-sql statement cache for database "
+                        + getPath() + "; i.e., NO space for this sql statement in cache: "
+                        + eldest.getKey() + ". Please change your sql statements to use '?' "
+                        + "for bindargs, instead of using actual values");
+            }
+            return true;
+        }
+    };
     /**
      * @hide
      */
@@ -363,16 +391,19 @@ public class SQLiteDatabase extends SQLiteClosable {
                 if (sqlDBsize == 1) {
                     sqlDBsize = 0;
                     mNativeHandle = 0;
-                    /**
-                     * @j2sNative
-                     * var data = this.sqlDB.exportData();
-                     * this.sqlDB.close();
-                     * if (this.mName != null) {
-                     *     this.sqlDBList.remove(this.mName);
-                     *     this.storage.removeItem(this.mName);
-                     *     this.storage.setItem(this.mName, JSON.stringify(data));
-                     * }
-                     */{}
+                    deallocCachedSqlStatements();
+                    sPageFiles.remove(mName);
+                    try {
+                        mPageFile.close();
+                    } finally {
+                        /**
+                         * @j2sNative
+                         * this.sqlDB.close();
+                         * if (this.mName != null) {
+                         *     this.sqlDBList.remove(this.mName);
+                         * }
+                         */{}
+                    }
                 } else {
                     sqlDBsize--;
                 }
@@ -429,6 +460,7 @@ public class SQLiteDatabase extends SQLiteClosable {
          *     throw(e.message);
          * }
          */{}
+        markDirty();
     }
 
     /**
@@ -877,12 +909,7 @@ public class SQLiteDatabase extends SQLiteClosable {
                 needSeparator = true;
                 Map.Entry<String, Object> entry = entriesIter.next();
                 sql.append("'"+entry.getKey()+"'");
-                try {
-                    String value = URLEncoder.encode(entry.getValue().toString(), "UTF-8");
-                    values.append("'"+value+"'");
-                } catch (UnsupportedEncodingException e) {
-                    e.printStackTrace();
-                }
+                values.append('?');
             }
 
             sql.append(')');
@@ -894,21 +921,14 @@ public class SQLiteDatabase extends SQLiteClosable {
         sql.append(" VALUES (");
         sql.append(values);
         sql.append(");");
-        long insertId = 0;
-        String temp = sql.toString();
-        /**
-         * @j2sNative
-         * var notifier;
-         * try {
-         *     this.sqlDB.exec(temp);
-         *     var data = this.sqlDB.exec("SELECT LAST_INSERT_ROWID();");
-         *     notifier = data[0][0].value;
-         * } catch(e) {
-         *     notifier = -1;
-         *     throw(e.message);
-         * }
-         * insertId = parseInt(notifier);
-         */{}
+
+        SQLiteStatement statement = new SQLiteStatement(this, sql.toString());
+        long insertId;
+        try {
+            insertId = statement.executeInsert(encodeValues(entrySet));
+        } finally {
+            statement.close();
+        }
 
         Log.v("insertedId", "" + insertId);
 		return insertId;
@@ -933,23 +953,14 @@ public class SQLiteDatabase extends SQLiteClosable {
             sql += " WHERE ";
             sql += whereClause;
         }
-        if(whereArgs != null) {
-            for (int i=0; i<whereArgs.length; i++) {
-                sql = sql.replaceFirst("\\?", "'" + whereArgs[i] + "'");
-            }
+        SQLiteStatement statement = new SQLiteStatement(this, sql);
+        try {
+            statement.executeSql(whereArgs);
+            result = 1;
+        } finally {
+            statement.close();
         }
-        /**
-         * @j2sNative
-         * var notifier;
-         * try {
-         *     this.sqlDB.exec(sql);
-         *     notifier = 1;
-         * } catch(e) {
-         *     notifier = -1;
-         *     throw(e.message);
-         * }
-         * result = parseInt(notifier);
-         */{}
+        markDirty();
 		return result;
     }
 
@@ -999,12 +1010,7 @@ public class SQLiteDatabase extends SQLiteClosable {
         while (entriesIter.hasNext()) {
             Map.Entry<String, Object> entry = entriesIter.next();
             sql.append(entry.getKey());
-            try {
-                String value = URLEncoder.encode(entry.getValue().toString(), "UTF-8");
-                sql.append("='"+value+"'");
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
-            }
+            sql.append("=?");
             if (entriesIter.hasNext()) {
                 sql.append(", ");
             }
@@ -1014,25 +1020,25 @@ public class SQLiteDatabase extends SQLiteClosable {
             sql.append(" WHERE ");
             sql.append(whereClause);
         }
-        String temp = sql.toString();
-        if (whereArgs != null) {
-            for (int i=0; i<whereArgs.length; i++) {
-                temp = temp.replaceFirst("\\?", "'" + whereArgs[i] + "'");
-            }
+
+        // the values take the first parameters, the where args follow them
+        Object[] encodedValues = encodeValues(entrySet);
+        int numValues = encodedValues.length;
+        int numArgs = whereArgs == null ? 0 : whereArgs.length;
+        Object[] bindArgs = new Object[numValues + numArgs];
+        System.arraycopy(encodedValues, 0, bindArgs, 0, numValues);
+        if (numArgs > 0) {
+            System.arraycopy(whereArgs, 0, bindArgs, numValues, numArgs);
         }
-        /**
-         * @j2sNative
-         * var notifier;
-         * try {
-         *     this.sqlDB.exec(temp);
-         *     //var data = this.sqlDB.exec("SELECT change_count();");
-         *     notifier = 1;
-         * } catch(e) {
-         *     notifier = -1;
-         *     throw(e.message);
-         * }
-         * result = parseInt(notifier);
-         */{}
+        SQLiteStatement statement = new SQLiteStatement(this, sql.toString());
+        try {
+            statement.executeSql(bindArgs);
+            //var data = this.sqlDB.exec("SELECT change_count();");
+            result = 1;
+        } finally {
+            statement.close();
+        }
+        markDirty();
 
 		return result;
 
@@ -1060,6 +1066,7 @@ public class SQLiteDatabase extends SQLiteClosable {
          *     throw(e.message);
          * }
          */{}
+        markDirty();
     }
 
     /**
@@ -1075,22 +1082,95 @@ public class SQLiteDatabase extends SQLiteClosable {
     	if(DEBUG_NODB) return;
         if (bindArgs == null) {
             throw new IllegalArgumentException("Empty bindArgs");
-        } else {
-            if(bindArgs != null) {
-                for (int i=0; i<bindArgs.length; i++) {
-                    sql = sql.replaceFirst("\\?", "'" + bindArgs[i].toString() + "'");
+        }
+        SQLiteStatement statement = new SQLiteStatement(this, sql);
+        try {
+            statement.executeSql(bindArgs);
+        } finally {
+            statement.close();
+        }
+        markDirty();
+    }
+
+    /**
+     * Called after a statement that may have changed the database. Outside of
+     * a transaction the changed pages are persisted once the current script is
+     * done, inside one they are persisted when it ends.
+     */
+    /* package */ void markDirty() {
+        if (!mInTransaction && mPageFile != null) {
+            mPageFile.scheduleFlush();
+        }
+    }
+
+    /**
+     * Returns the values of a ContentValues set as bind arguments, in iteration
+     * order. Values are stored URL-encoded, the way CursorWindow reads them back,
+     * and null stays NULL.
+     */
+    private static Object[] encodeValues(Set<Map.Entry<String, Object>> entrySet) {
+        if (entrySet == null) {
+            return new Object[0];
+        }
+        Object[] values = new Object[entrySet.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : entrySet) {
+            Object value = entry.getValue();
+            if (value != null) {
+                try {
+                    value = URLEncoder.encode(value.toString(), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    e.printStackTrace();
                 }
             }
+            values[i++] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the cached compiled statement for sql, or null if there is none.
+     */
+    /* package */ SQLiteCompiledSql getCompiledStatementForSql(String sql) {
+        synchronized(mCompiledQueries) {
+            if (mMaxSqlCacheSize == 0) {
+                return null;
+            }
+            SQLiteCompiledSql compiledStatement = mCompiledQueries.get(sql);
+            if (compiledStatement == null) {
+                mNumCacheMisses++;
+                return null;
+            }
+            mNumCacheHits++;
+            return compiledStatement;
+        }
+    }
+
+    /**
+     * Adds the compiled statement for sql to the cache, possibly evicting the
+     * least recently used one.
+     */
+    /* package */ void addToCompiledQueries(String sql, SQLiteCompiledSql compiledStatement) {
+        if (mMaxSqlCacheSize == 0) {
+            return;
+        }
+        synchronized(mCompiledQueries) {
+            if (mCompiledQueries.containsKey(sql)) {
+                // already exists. nothing to do
+                return;
+            }
+            compiledStatement.mShared = true;
+            mCompiledQueries.put(sql, compiledStatement);
+        }
+    }
+
+    private void deallocCachedSqlStatements() {
+        synchronized (mCompiledQueries) {
+            for (SQLiteCompiledSql compiledSql : mCompiledQueries.values()) {
+                compiledSql.releaseSqlStatement();
+            }
+            mCompiledQueries.clear();
         }
-        /**
-         * @j2sNative
-         * try {
-         *     this.sqlDB.exec(sql);
-         * } catch(e) {
-         *     this.sqlDB.close();
-         *     throw(e.message);
-         * }
-         */{}
     }
 
     @Override
@@ -1144,23 +1224,22 @@ public class SQLiteDatabase extends SQLiteClosable {
             throw new IllegalArgumentException("Name should not be null");
     	mName = name;
 
+        boolean shared = sqlDBList.get(name) != null;
+        Object data = null;
+        if (shared) {
+            mPageFile = sPageFiles.get(name);
+        } else {
+            mPageFile = new SQLitePageFile(SQLitePageStore.getDefault(), name);
+            sPageFiles.put(name, mPageFile);
+            data = mPageFile.load();
+        }
+
         /**
          * @j2sNative
-         * this.storage = window.localStorage;
-         * if(this.sqlDBList.get(name) != null) {
+         * if(shared) {
          *     this.sqlDB = this.sqlDBList.get(name);
          *     android.database.sqlite.SQLiteDatabase.sqlDBsize += 1;
          * } else {
-         *     var temp = this.storage.getItem(this.mName);
-         *     var data;
-         *     if(temp!=null) {
-         *         data = JSON.parse(temp);
-         *         if (!data.length) {
-         *             var start = temp.lastIndexOf(",") + 1;
-         *             var stop = temp.lastIndexOf(":");
-         *             data.length = parseInt(temp.substring(start, stop).replace(/\"/g, '')) + 1;
-         *         }
-         *     }
          *     if(data!=null) {
          *         this.sqlDB = SQL.open(data);
          *     } else {
@@ -1181,6 +1260,9 @@ public class SQLiteDatabase extends SQLiteClosable {
          *     throw(e.message);
          * }
          */{}
+        if (!shared) {
+            mPageFile.attach(getSQLDB());
+        }
     }
 
     /**
@@ -1267,13 +1349,22 @@ public class SQLiteDatabase extends SQLiteClosable {
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: compileStatement");
+     * Compiles an SQL statement into a reusable pre-compiled statement object.
+     * The parameters are identical to {@link #execSQL(String)}. You may put ?s in the
+     * statement and fill in those values with {@link SQLiteProgram#bindString}
+     * and {@link SQLiteProgram#bindLong} each time you want to run the
+     * statement. Statements may not return result sets larger than 1x1.
+     *
+     * @param sql The raw SQL statement, may contain ? for unknown values to be
+     *            bound later.
+     * @return A pre-compiled {@link SQLiteStatement} object. Note that
+     * {@link SQLiteStatement}s are not synchronized, see the documentation for more details.
      */
-    @MayloonStubAnnotation()
-    public Object compileStatement(String sql) {
-        System.out.println("Stub" + " Function : compileStatement");
-        return null;
+    public SQLiteStatement compileStatement(String sql) throws SQLException {
+        if (!isOpen()) {
+            throw new IllegalStateException("database not open");
+        }
+        return new SQLiteStatement(this, sql);
     }
 
     /**
@@ -1299,6 +1390,7 @@ public class SQLiteDatabase extends SQLiteClosable {
         } else {
             mTransactionIsSuccessful = false;
         }
+        mInTransaction = false;
         if (mTransactionIsSuccessful) {
             execSQL(COMMIT_SQL);
         } else {
@@ -1425,6 +1517,7 @@ public class SQLiteDatabase extends SQLiteClosable {
 //            throw new IllegalStateException("database not open");
 //        }
         execSQL("BEGIN EXCLUSIVE;");
+        mInTransaction = true;
         mTransactionIsSuccessful = true;
         mInnerTransactionIsSuccessful = false;
     }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.util.Log;
+
+/**
+ * The in-memory file of one open sql.js database and its persisted pages.
+ * The file is assembled page by page from a {@link SQLitePageStore} when the
+ * database is opened. A flush compares the file with the pages last written
+ * and stores only the ones that changed.
+ * <p>
+ * sql.js has no hook into its file writes, so the changed pages can only be
+ * found by exporting the file. A flush first asks the connection whether
+ * anything changed since the last one, and skips the export if not.
+ */
+/* package */ final class SQLitePageFile {
+    private static final String TAG = "SQLitePageFile";
+
+    private final SQLitePageStore mStore;
+    private final String mName;
+
+    /** the sql.js database, null until opened and once closed */
+    private Object mSqlDB;
+
+    /** the file as it was last persisted, a Uint8Array */
+    private Object mPersisted;
+
+    /** the change stamp of the connection when the file was last persisted */
+    private String mPersistedStamp;
+
+    private boolean mFlushScheduled;
+
+    /** whether the file was read from an old style JSON string */
+    private boolean mLegacy;
+
+    /* package */ SQLitePageFile(SQLitePageStore store, String name) {
+        mStore = store;
+        mName = name;
+    }
+
+    /**
+     * Reads the stored file for SQL.open(), as a plain array since the file
+     * system of sql.js grows files in place. Returns null if nothing is stored.
+     * A database still saved the old way, as one JSON string in localStorage,
+     * is read from there and moved to the page store on the next flush.
+     */
+    /* package */ Object load() {
+        int pageSize = mStore.getPageSize(mName);
+        int pageCount = mStore.getPageCount(mName);
+        Object data = null;
+        if (pageCount > 0) {
+            /**
+             * @j2sNative
+             * data = new Uint8Array(pageSize * pageCount);
+             */{}
+            for (int pageNo = 0; pageNo < pageCount; pageNo++) {
+                Object page = mStore.readPage(mName, pageNo);
+                if (page == null) {
+                    throw new SQLiteDatabaseCorruptException("page " + pageNo + " of "
+                            + mName + " is missing");
+                }
+                /**
+                 * @j2sNative
+                 * data.set(page, pageNo * pageSize);
+                 */{}
+            }
+            mPersisted = data;
+            /**
+             * @j2sNative
+             * data = Array.prototype.slice.call(data);
+             */{}
+        } else {
+            String name = mName;
+            boolean legacy = false;
+            /**
+             * @j2sNative
+             * var temp = window.localStorage.getItem(name);
+             * if (temp != null) {
+             *     var json = JSON.parse(temp);
+             *     if (!json.length) {
+             *         var start = temp.lastIndexOf(",") + 1;
+             *         var stop = temp.lastIndexOf(":");
+             *         json.length = parseInt(temp.substring(start, stop).replace(/\"/g, '')) + 1;
+             *     }
+             *     data = Array.prototype.slice.call(json);
+             *     legacy = true;
+             * }
+             */{}
+            mLegacy = legacy;
+        }
+        return data;
+    }
+
+    /* package */ void attach(Object sqlDB) {
+        mSqlDB = sqlDB;
+        if (mPersisted == null) {
+            // new or legacy database, get it into the page store
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Flushes the file once the current script is done, so a burst of writes
+     * is persisted together.
+     */
+    /* package */ void scheduleFlush() {
+        if (mFlushScheduled) {
+            return;
+        }
+        mFlushScheduled = true;
+        /**
+         * @j2sNative
+         * var self = this;
+         * window.setTimeout(function () {
+         *     self.flushScheduled();
+         * }, 0);
+         */{}
+    }
+
+    /* package */ void flushScheduled() {
+        mFlushScheduled = false;
+        if (mSqlDB == null) {
+            return;
+        }
+        try {
+            flush();
+        } catch (SQLiteException e) {
+            // the dirty pages are written again by the next flush
+            Log.e(TAG, "Flush of " + mName + " failed", e);
+        }
+    }
+
+    /**
+     * Writes the pages that changed since the last flush to the store.
+     */
+    /* package */ void flush() {
+        if (mSqlDB == null) {
+            return;
+        }
+        String stamp = readChangeStamp();
+        if (stamp != null && stamp.equals(mPersistedStamp)) {
+            return;
+        }
+        Object sqlDB = mSqlDB;
+        Object old = mPersisted;
+        Object data = null;
+        int pageSize = 0;
+        int pageCount = 0;
+        int[] pageNos = null;
+        Object[] pages = null;
+        /**
+         * @j2sNative
+         * // a copy, so the next flush is compared with what this one wrote
+         * data = new Uint8Array(sqlDB.exportData());
+         * if (data.length >= 100) {
+         *     // the page size is stored big-endian at offset 16 of the header, 1 means 65536
+         *     pageSize = (data[16] << 8) | data[17];
+         *     if (pageSize == 1) {
+         *         pageSize = 65536;
+         *     }
+         *     pageCount = Math.ceil(data.length / pageSize);
+         * }
+         * var oldPageSize = (old != null && old.length >= 100) ? ((old[16] << 8) | old[17]) : 0;
+         * if (oldPageSize == 1) {
+         *     oldPageSize = 65536;
+         * }
+         * // pages are compared a word at a time, both copies start at offset 0
+         * var words = oldPageSize == pageSize && data.length % 4 == 0 && old.length % 4 == 0;
+         * var newWords = words ? new Int32Array(data.buffer, 0, data.length >> 2) : null;
+         * var oldWords = words ? new Int32Array(old.buffer, 0, old.length >> 2) : null;
+         * pageNos = [];
+         * pages = [];
+         * for (var pageNo = 0; pageNo < pageCount; pageNo++) {
+         *     var start = pageNo * pageSize;
+         *     var end = Math.min(start + pageSize, data.length);
+         *     var dirty = oldPageSize != pageSize || end > old.length;
+         *     if (newWords != null) {
+         *         for (var w = start >> 2, wEnd = end >> 2; !dirty && w < wEnd; w++) {
+         *             dirty = newWords[w] != oldWords[w];
+         *         }
+         *     } else {
+         *         for (var i = start; !dirty && i < end; i++) {
+         *             dirty = data[i] != old[i];
+         *         }
+         *     }
+         *     if (dirty) {
+         *         pageNos.push(pageNo);
+         *         pages.push(data.subarray(start, end));
+         *     }
+         * }
+         */{}
+        if (pageSize == 0) {
+            // nothing was ever written to the file
+            return;
+        }
+        int oldPageCount = mStore.getPageCount(mName);
+        if (pageNos.length > 0 || pageCount != oldPageCount) {
+            mStore.writePages(mName, pageSize, pageCount, pageNos, pages);
+        }
+        mPersisted = data;
+        mPersistedStamp = stamp;
+        if (mLegacy) {
+            String name = mName;
+            /**
+             * @j2sNative
+             * window.localStorage.removeItem(name);
+             */{}
+            mLegacy = false;
+        }
+    }
+
+    /**
+     * Flushes the file and detaches it from the closed sql.js database.
+     */
+    /* package */ void close() {
+        try {
+            flush();
+        } finally {
+            mSqlDB = null;
+            mPersisted = null;
+            mPersistedStamp = null;
+        }
+    }
+
+    /**
+     * Returns a string that changes whenever the file may have: the number of
+     * rows the connection changed, and the schema cookie, which DDL and VACUUM
+     * bump. Null if it can't be read, in which case the file is exported.
+     */
+    private String readChangeStamp() {
+        Object sqlDB = mSqlDB;
+        String stamp = null;
+        /**
+         * @j2sNative
+         * try {
+         *     var changes = sqlDB.exec("SELECT total_changes()");
+         *     var schema = sqlDB.exec("PRAGMA schema_version");
+         *     stamp = changes[0][0].value + ":" + schema[0][0].value;
+         * } catch (e) {
+         *     stamp = null;
+         * }
+         */{}
+        return stamp;
+    }
+}
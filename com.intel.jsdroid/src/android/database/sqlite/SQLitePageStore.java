@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+/**
+ * Storage backend for database files.
+ * <p>
+ * MayLoon: sql.js keeps an open database file in memory. The file is persisted
+ * page by page in a page store, and each flush writes only the pages that
+ * changed. Pages are handed over as Uint8Arrays and are numbered from 0.
+ * <p>
+ * Reads must be synchronous since databases are opened synchronously. A
+ * write must be atomic: if it fails, the store still holds the database as
+ * it was before. A store that writes in the background may report the
+ * failure later, but must then keep the database it had.
+ *
+ * @hide
+ */
+public abstract class SQLitePageStore {
+
+    private static SQLitePageStore sDefault;
+
+    /**
+     * Installs the default store and runs onReady once databases can be
+     * opened. Where the browser has IndexedDB, that is the store, and its
+     * pages are loaded first. Elsewhere, or if IndexedDB can't be opened,
+     * the default stays localStorage.
+     */
+    public static void installDefault(final Runnable onReady) {
+        if (!IndexedDBPageStore.isSupported()) {
+            onReady.run();
+            return;
+        }
+        final IndexedDBPageStore[] store = new IndexedDBPageStore[1];
+        store[0] = new IndexedDBPageStore(new Runnable() {
+            public void run() {
+                // null if the store failed before its constructor returned
+                if (store[0] != null && store[0].isPersistent()) {
+                    setDefault(store[0]);
+                }
+                onReady.run();
+            }
+        });
+    }
+
+    /**
+     * Returns the store new databases are persisted in: the one installed
+     * by {@link #installDefault} or {@link #setDefault}, localStorage if
+     * there is none.
+     */
+    public static synchronized SQLitePageStore getDefault() {
+        if (sDefault == null) {
+            sDefault = new LocalStoragePageStore();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Sets the store databases opened from now on are persisted in.
+     */
+    public static synchronized void setDefault(SQLitePageStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("store should not be null");
+        }
+        sDefault = store;
+    }
+
+    /**
+     * Returns the number of pages stored for the database, 0 if there is none.
+     */
+    public abstract int getPageCount(String database);
+
+    /**
+     * Returns the page size of the stored database, 0 if there is none.
+     */
+    public abstract int getPageSize(String database);
+
+    /**
+     * Returns the given page of the database as a Uint8Array, or null if it
+     * is not stored.
+     */
+    public abstract Object readPage(String database, int pageNo);
+
+    /**
+     * Stores the given pages and sets the size of the database. Pages past
+     * pageCount are dropped. Either all of this happens or, if an
+     * {@link SQLiteException} is thrown, none of it.
+     *
+     * @param pageNos the numbers of the pages that changed
+     * @param pages the contents of those pages, each a Uint8Array
+     */
+    public abstract void writePages(String database, int pageSize, int pageCount,
+            int[] pageNos, Object[] pages);
+
+    /**
+     * Removes all pages of the database.
+     */
+    public abstract void delete(String database);
+}
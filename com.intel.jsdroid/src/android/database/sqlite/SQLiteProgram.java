@@ -37,6 +37,9 @@ public abstract class SQLiteProgram extends SQLiteClosable {
     /** The SQL used to create this query */
     /* package */ final String mSql;
 
+    /** The values bound so far, mBoundValues[0] is parameter 1. Null until the first bind. */
+    private Object[] mBoundValues;
+
     /**
      * Native linkage, do not modify. This comes from the database and should not be modified
      * in here or in the native code.
@@ -66,56 +69,33 @@ public abstract class SQLiteProgram extends SQLiteClosable {
         this.nHandle = db.mNativeHandle;
 
         // only cache CRUD statements
-        String prefixSql = mSql.substring(0, 6);
+        String prefixSql = mSql.length() < 6 ? mSql : mSql.substring(0, 6);
         if (!prefixSql.equalsIgnoreCase("INSERT") && !prefixSql.equalsIgnoreCase("UPDATE") &&
                 !prefixSql.equalsIgnoreCase("REPLAC") &&
                 !prefixSql.equalsIgnoreCase("DELETE") && !prefixSql.equalsIgnoreCase("SELECT")) {
-//            mCompiledSql = new SQLiteCompiledSql(db, sql);
-//            nStatement = mCompiledSql.nStatement;
+            mCompiledSql = new SQLiteCompiledSql(db, sql);
+            nStatement = mCompiledSql.nStatement;
             // since it is not in the cache, no need to acquire() it.
             return;
         }
 
         // it is not pragma
-      //  mCompiledSql = db.getCompiledStatementForSql(sql);
+        mCompiledSql = db.getCompiledStatementForSql(sql);
         if (mCompiledSql == null) {
             // create a new compiled-sql obj
-            //mCompiledSql = new SQLiteCompiledSql(db, sql);
+            mCompiledSql = new SQLiteCompiledSql(db, sql);
 
             // add it to the cache of compiled-sqls
-            // but before adding it and thus making it available for anyone else to use it,
-            // make sure it is acquired by me.
-           // mCompiledSql.acquire();
-           // db.addToCompiledQueries(sql, mCompiledSql);
-//            if (SQLiteDebug.DEBUG_ACTIVE_CURSOR_FINALIZATION) {
-//                Log.v(TAG, "Created DbObj (id#" + mCompiledSql.nStatement +
-//                        ") for sql: " + sql);
-//            }
-        } else {
-            // it is already in compiled-sql cache.
-            // try to acquire the object.
-            //if (!mCompiledSql.acquire()) {
-               // int last = mCompiledSql.nStatement;
-                // the SQLiteCompiledSql in cache is in use by some other SQLiteProgram object.
-                // we can't have two different SQLiteProgam objects can't share the same
-                // CompiledSql object. create a new one.
-                // finalize it when I am done with it in "this" object.
-                //mCompiledSql = new SQLiteCompiledSql(db, sql);
-//                if (SQLiteDebug.DEBUG_ACTIVE_CURSOR_FINALIZATION) {
-//                    Log.v(TAG, "** possible bug ** Created NEW DbObj (id#" +
-//                            mCompiledSql.nStatement +
-//                            ") because the previously created DbObj (id#" + last +
-//                            ") was not released for sql:" + sql);
-//                }
-                // since it is not in the cache, no need to acquire() it.
-          //  }
+            db.addToCompiledQueries(sql, mCompiledSql);
         }
-       // nStatement = mCompiledSql.nStatement;
+        // MayLoon: the bind values live in the program rather than in the compiled
+        // statement, so programs share the cached one instead of acquiring it.
+        nStatement = mCompiledSql.nStatement;
     }
 
     @Override
     protected void onAllReferencesReleased() {
-//        releaseCompiledSqlIfNotInCache();
+        releaseCompiledSqlIfNotInCache();
 //        mDatabase.releaseReference();
 //        mDatabase.removeSQLiteClosable(this);
     }
@@ -131,7 +111,10 @@ public abstract class SQLiteProgram extends SQLiteClosable {
             return;
         }
         synchronized(mDatabase.mCompiledQueries) {
-            if (!mDatabase.mCompiledQueries.containsValue(mCompiledSql)) {
+            // MayLoon: a statement that went through the cache may still be shared by
+            // other programs after being evicted, only the cache releases it then.
+            if (!mCompiledSql.mShared
+                    && !mDatabase.mCompiledQueries.containsValue(mCompiledSql)) {
                 // it is NOT in compiled-sql cache. i.e., responsibility of
                 // releasing this statement is on me.
                 mCompiledSql.releaseSqlStatement();
@@ -157,6 +140,31 @@ public abstract class SQLiteProgram extends SQLiteClosable {
         return mSql;
     }
 
+    /**
+     * Runs the statement with the values bound through the bind methods.
+     *
+     * @return the result rows, see {@link SQLiteCompiledSql#execute}
+     */
+    /* package */ Object executeSql() {
+        return executeSql(mBoundValues);
+    }
+
+    /**
+     * Runs the statement with the given bind arguments.
+     *
+     * @return the result rows, see {@link SQLiteCompiledSql#execute}
+     */
+    /* package */ Object executeSql(Object[] bindArgs) {
+        if (mCompiledSql == null) {
+            throw new IllegalStateException("program already closed: " + mSql);
+        }
+        return mCompiledSql.execute(bindArgs);
+    }
+
+    /* package */ SQLiteCompiledSql getCompiledSql() {
+        return mCompiledSql;
+    }
+
     /**
      * @deprecated This method is deprecated and must not be used.
      *
@@ -241,9 +249,9 @@ public abstract class SQLiteProgram extends SQLiteClosable {
         }
         acquireReference();
         try {
-//            native_bind_string(index, value);
+            native_bind_string(index, value);
         } finally {
-//            releaseReference();
+            releaseReference();
         }
     }
 
@@ -315,11 +323,40 @@ public abstract class SQLiteProgram extends SQLiteClosable {
     @Deprecated
     protected final native void native_finalize();
 
-    protected final native void native_bind_null(int index);
-    protected final native void native_bind_long(int index, long value);
-    protected final native void native_bind_double(int index, double value);
-    protected final native void native_bind_string(int index, String value);
-    protected final native void native_bind_blob(int index, byte[] value);
-    private final native void native_clear_bindings();
+    protected final void native_bind_null(int index) {
+        bindValue(index, null);
+    }
+
+    protected final void native_bind_long(int index, long value) {
+        bindValue(index, Long.valueOf(value));
+    }
+
+    protected final void native_bind_double(int index, double value) {
+        bindValue(index, Double.valueOf(value));
+    }
+
+    protected final void native_bind_string(int index, String value) {
+        bindValue(index, value);
+    }
+
+    protected final void native_bind_blob(int index, byte[] value) {
+        bindValue(index, value);
+    }
+
+    private final void native_clear_bindings() {
+        mBoundValues = null;
+    }
+
+    private void bindValue(int index, Object value) {
+        int count = mCompiledSql == null ? 0 : mCompiledSql.getParameterCount();
+        if (index < 1 || index > count) {
+            throw new SQLiteException("bind or column index out of range: index " + index
+                    + " of " + count + " for: " + mSql);
+        }
+        if (mBoundValues == null) {
+            mBoundValues = new Object[count];
+        }
+        mBoundValues[index - 1] = value;
+    }
 }
 
@@ -18,7 +18,7 @@ package android.database.sqlite;
 
 import android.database.CursorWindow;
 import android.os.SystemClock;
-import android.util.Log;
+
 
 /**
  * A SQLite program that represents a query that reads the resulting rows into a CursorWindow.
@@ -38,21 +38,44 @@ public class SQLiteQuery extends SQLiteProgram {
 
     private boolean mClosed = false;
 
-    private static final int SQLITE_TEXT = 0;
-    private static final int SQLITE_INTEGER = 1;
-    private static final int SQLITE_FLOAT = 2;
-    private static final int SQLITE_BLOB = 3;
-    private static final int SQLITE_NULL = 4;
-
     private int column_count = 0;
 
+    /** Whether keys and column_count are set */
+    private boolean mColumnsKnown = false;
+
+    /**
+     * MayLoon: sql.js can't step through a result, so windows are filled from
+     * pages of rows fetched with LIMIT and OFFSET appended to the query. The
+     * page size adapts to how many rows fit in a window. Queries that set their
+     * own LIMIT are fetched whole.
+     */
+    private final boolean mPageable;
+
+    private static final int INITIAL_PAGE_SIZE = 256;
+    private static final int MAX_PAGE_SIZE = 8192;
+
+    /** The number of rows the next page asks for */
+    private int mPageSize = INITIAL_PAGE_SIZE;
+
+    /** The position of the first row in datas */
+    private int mPageStart = 0;
+
+    /** The number of rows in the whole result, -1 until known */
+    private int mTotalRows = -1;
+
     /**
      * @j2sNative
      * this.datas = null;
      * this.keys = null;
-     * this.types = null;
      */{}
 
+    // SQLite storage classes of the values in datas
+    private static final int TYPE_TEXT = 0;
+    private static final int TYPE_INTEGER = 1;
+    private static final int TYPE_FLOAT = 2;
+    private static final int TYPE_BLOB = 3;
+    private static final int TYPE_NULL = 4;
+
     /**
      * Create a persistent query object.
      * 
@@ -65,6 +88,8 @@ public class SQLiteQuery extends SQLiteProgram {
 
         mOffsetIndex = offsetIndex;
         mBindArgs = bindArgs;
+        String upper = mSql.toUpperCase();
+        mPageable = upper.startsWith("SELECT") && upper.indexOf("LIMIT") < 0;
     }
 
     /**
@@ -150,7 +175,6 @@ public class SQLiteQuery extends SQLiteProgram {
      * Called by SQLiteCursor when it is requeried.
      */
     /* package */ void requery() {
-        query();
         if (mBindArgs != null) {
             int len = mBindArgs.length;
             try {
@@ -169,6 +193,13 @@ public class SQLiteQuery extends SQLiteProgram {
                 throw leakProgram;                
             }
         }
+        /**
+         * @j2sNative
+         * this.datas = null;
+         */{}
+        mPageStart = 0;
+        mPageSize = INITIAL_PAGE_SIZE;
+        mTotalRows = -1;
     }
 
     @Override
@@ -209,332 +240,227 @@ public class SQLiteQuery extends SQLiteProgram {
 
     private final int native_fill_window(CursorWindow javaWindow,
             int startPos, int offsetParam, int maxRead, int lastPos) {
-        int err = 0;
-//      sqlite3_stmt * statement = GET_STATEMENT(env, object);
         int numRows = lastPos;
         maxRead += lastPos;
-        int numColumns;
-//        int retryCount;
-//        int boundParams;
-        CursorWindow window;
-
-        query();
-//            if (statement == NULL) {
-//                LOGE("Invalid statement in fillWindow()");
-//                jniThrowException(env, "java/lang/IllegalStateException",
-//                                  "Attempting to access a deactivated, closed, or empty cursor");
-//                return 0;
-//            }
-
-            // Only do the binding if there is a valid offsetParam. If no binding needs to be done
-            // offsetParam will be set to 0, an invliad value.
-//            if(offsetParam > 0) {
-//                // Bind the offset parameter, telling the program which row to start with
-//                err = sqlite3_bind_int(statement, offsetParam, startPos);
-//                if (err != SQLITE_OK) {
-//                    LOGE("Unable to bind offset position, offsetParam = %d", offsetParam);
-//                    jniThrowException(env, "java/lang/IllegalArgumentException",
-//                                      sqlite3_errmsg(GET_HANDLE(env, object)));
-//                    return 0;
-//                }
-//            } else {
-//            }
-
-            window = javaWindow;
+        CursorWindow window = javaWindow;
+
+        int numColumns = native_column_count();
+        if (!window.setNumColumns(numColumns)) {
+            return 0;
+        }
+
+        while (numRows < maxRead) {
+            int position = startPos + numRows;
+            // 1: the row is in datas, 2: there are no more rows
+            int err = 0;
             /**
              * @j2sNative
-             * if (this.datas) {
-             *     window.QueryResult = this.datas;
-             *     window.rowNum = this.datas.length;
+             * var index = position - this.mPageStart;
+             * if (this.datas != null && index >= 0 && index < this.datas.length) {
+             *     err = 1;
+             * } else if (this.datas != null && !this.mPageable) {
+             *     err = 2;
+             * } else if (this.datas != null && index == this.datas.length
+             *         && this.datas.length < this.mPageSize) {
+             *     // the last page ended short
+             *     err = 2;
              * }
              */{}
-            // Get the native window
-//            window = get_window_from_object(env, javaWindow);
-//            if (null == window) {
-//                return 0;
-//            }
-            numColumns = column_count;
-            if (!window.setNumColumns(numColumns)) {
-                return 0;
+            if (err == 0) {
+                if (mPageable && numRows > 0) {
+                    // the window takes more than a page, ask for more next time
+                    mPageSize = Math.min(mPageSize * 2, MAX_PAGE_SIZE);
+                }
+                fetchPage(position);
+                continue;
+            }
+            if (err == 2) {
+                // All rows processed, bail
+                break;
             }
-//            retryCount = 0;
-
-            if (startPos > 0) {
-//                int num = skip_rows(statement, startPos);
-//                if (num < 0) {
-//                    throw_sqlite3_exception(env, GET_HANDLE(env, object));
-//                    return 0;
-//                } else if (num < startPos) {
-//                    LOGE("startPos %d > actual rows %d", startPos, num);
-//                    return num;
-//                }
+
+            if (!window.allocRow()) {
+                // the window is full, make the pages fit it better
+                if (mPageable) {
+                    mPageSize = Math.max(numRows - lastPos, 1);
+                }
+                break;
             }
+            // Pack the row into the window
+            int i;
+            for (i = 0; i < numColumns; i++) {
+                // datas holds each value as its own storage class, numbers
+                // go to the window's Float64Array rather than as strings.
+                String value = null;
+                byte[] blob = null;
+                int type = TYPE_TEXT;
+                double number = 0;
+                /**
+                 * @j2sNative
+                 * var cell = this.datas[position - this.mPageStart][i].value;
+                 * if (cell == null) {
+                 *     type = android.database.sqlite.SQLiteQuery.TYPE_NULL;
+                 * } else if (typeof cell == "number") {
+                 *     number = cell;
+                 *     type = number % 1 == 0 && Math.abs(number) <= 9007199254740991
+                 *             ? android.database.sqlite.SQLiteQuery.TYPE_INTEGER
+                 *             : android.database.sqlite.SQLiteQuery.TYPE_FLOAT;
+                 * } else if (typeof cell == "string") {
+                 *     value = cell;
+                 * } else {
+                 *     // a Uint8Array, as a Java byte[]
+                 *     blob = new Array(cell.length);
+                 *     for (var k = 0; k < cell.length; k++) {
+                 *         blob[k] = (cell[k] << 24) >> 24;
+                 *     }
+                 *     type = android.database.sqlite.SQLiteQuery.TYPE_BLOB;
+                 * }
+                 */{}
+                boolean fits;
+                switch (type) {
+                    case TYPE_NULL:
+                        fits = window.putNull(position, i);
+                        break;
+                    case TYPE_INTEGER:
+                        fits = window.putLong((long) number, position, i);
+                        break;
+                    case TYPE_FLOAT:
+                        fits = window.putDouble(number, position, i);
+                        break;
+                    case TYPE_BLOB:
+                        fits = window.putBlob(blob, position, i);
+                        break;
+                    default:
+                        fits = window.putString(value, position, i);
+                        break;
+                }
+                if (!fits) {
+                    break;
+                }
+            }
+            if (i < numColumns) {
+                // Not all the fields fit in the window
+                window.freeLastRow();
+                if (mPageable) {
+                    mPageSize = Math.max(numRows - lastPos, 1);
+                }
+                break;
+            }
+
+            // Mark the row as complete in the window
+            numRows++;
+        }
+
+        return countRows();
+    }
 
-              while(startPos != 0 || numRows < maxRead) {
-//                  err = sqlite3_step(statement);
-                  /**
-                   * @j2sNative
-                   * if (this.datas && this.datas.length > 0) {
-                   *     if (numRows < this.datas.length) {
-                   *         err = 1;
-                   *     } else {
-                   *         err = 2;
-                   *     }
-                   * } else {
-                   *     err = 3;
-                   * }
-                   */{}
-                  if (err == 1) {//SQLITE_ROW
-                      // Log.i(TAG, "\nStepped statement %p to row %d", statement, startPos + numRows);
-//                      retryCount = 0;
-
-                      // Allocate a new field directory for the row. This pointer is not reused
-                      // since it mey be possible for it to be relocated on a call to alloc() when
-                      // the field data is being allocated.
-//                      {
-//                          field_slot_t * fieldDir = window->allocRow();
-//                          if (!fieldDir) {
-//                              LOGE("Failed allocating fieldDir at startPos %d row %d", startPos, numRows);
-//                              return startPos + numRows + finish_program_and_get_row_count(statement) + 1;
-//                          }
-//                      }
-
-                      // Pack the row into the window
-                      int i;
-                      /**
-                       * @j2sNative
-                       * if (this.types == null) {
-                       *     numRows++;
-                       *     continue;
-                       * }
-                       */{}
-                      for (i = 0; i < numColumns; i++) {
-//                          int type = sqlite3_column_type(statement, i);
-                          int type = -1;
-                          /**
-                           * @j2sNative
-                           * var type_value = this.types[numRows][i].value;
-                           * if (type_value == 'text') {
-                           *     type = 0;//TEXT
-                           * } else if (type_value == 'integer') {
-                           *     type = 1;//INTEGER
-                           * } else if (type_value == 'real') {
-                           *     type = 2;//FLOAT
-                           * } else if (type_value == 'blob') {
-                           *     type = 3;//BLOB
-                           * } else if (type_value == 'null') {
-                           *     type = 4;//NULL
-                           * }
-                           */{}
-
-                          if (type == SQLITE_TEXT) {
-                              // TEXT data
-//              #if WINDOW_STORAGE_UTF8
-//                              uint8_t const * text = (uint8_t const *)sqlite3_column_text(statement, i);
-                              // SQLite does not include the NULL terminator in size, but does
-                              // ensure all strings are NULL terminated, so increase size by
-                              // one to make sure we store the terminator.
-//                              size_t size = sqlite3_column_bytes(statement, i) + 1;
-//              #else
-//                              uint8_t const * text = (uint8_t const *)sqlite3_column_text16(statement, i);
-//                              size_t size = sqlite3_column_bytes16(statement, i);
-//              #endif
-//                              int offset = window->alloc(size);
-//                              if (!offset) {
-//                                  window->freeLastRow();
-//                                  return startPos + numRows + finish_program_and_get_row_count(statement) + 1;
-//                              }
-
-//                              window->copyIn(offset, text, size);
-
-                              // This must be updated after the call to alloc(), since that
-                              // may move the field around in the window
-//                              field_slot_t * fieldSlot = window->getFieldSlot(numRows, i);
-//                              fieldSlot->type = FIELD_TYPE_STRING;
-//                              fieldSlot->data.buffer.offset = offset;
-//                              fieldSlot->data.buffer.size = size;
-
-                              // Log.i(TAG,"%d,%d is TEXT with %u bytes", startPos + numRows, i, size);
-
-                              String value;
-                              /**
-                               * @j2sNative
-                               * value = this.datas[numRows][i].value;
-                               * window.putString(value, numRows, i);
-                               */{}
-                          } else if (type == SQLITE_INTEGER) {
-                              // INTEGER data
-//                              int64_t value = sqlite3_column_int64(statement, i);
-                              int value;
-                              /**
-                               * @j2sNative
-                               * value = this.datas[numRows][i].value;
-                               * window.putLong(value, numRows, i);
-                               */{}
-//                              if (!window.putLong(value, numRows, i)) {
-//                                  window.freeLastRow();
-//                                  return startPos + numRows + finish_program_and_get_row_count(statement) + 1;
-//                              }
-                          } else if (type == SQLITE_FLOAT) {
-                              // FLOAT data
-//                              double value = sqlite3_column_double(statement, i);
-                              double value;
-                              /**
-                               * @j2sNative
-                               * value = this.datas[numRows][i].value;
-                               * window.putDouble(value, numRows, i);
-                               */{}
-//                              if(!window.putDouble(value, numRows, i)) {
-//                                  window.freeLastRow();
-//                                  return startPos + numRows + finish_program_and_get_row_count(statement) + 1;
-//                              }
-                          } else if (type == SQLITE_BLOB) {
-                              // BLOB data
-//                              uint8_t const * blob = (uint8_t const *)sqlite3_column_blob(statement, i);
-//                              size_t size = sqlite3_column_bytes16(statement, i);
-//                              int offset = window->alloc(size);
-//                              if (!offset) {
-//                                  window->freeLastRow();
-//                                  return startPos + numRows + finish_program_and_get_row_count(statement) + 1;
-//                              }
-
-//                              window->copyIn(offset, blob, size);
-
-                              // This must be updated after the call to alloc(), since that
-                              // may move the field around in the window
-//                              field_slot_t * fieldSlot = window->getFieldSlot(numRows, i);
-//                              fieldSlot->type = FIELD_TYPE_BLOB;
-//                              fieldSlot->data.buffer.offset = offset;
-//                              fieldSlot->data.buffer.size = size;
-
-                              // Log.i(TAG, "%d,%d is Blob with %u bytes @ %d", startPos + numRows, i, size, offset);
-                          } else if (type == SQLITE_NULL) {
-                              // NULL field
-                              window.putNull(numRows, i);
-                          } else {
-                              // Unknown data
-                              //throw new SQLiteException("Unknown column type when filling window");
-                              break;
-                          }
-                      }
-
-                      if (i < numColumns) {
-                          // Not all the fields fit in the window
-                          // Unknown data error happened
-                          break;
-                      }
-
-                      // Mark the row as complete in the window
-                      numRows++;
-                  } else if (err == 2) {//SQLITE_DONE
-                      // All rows processed, bail
-                      Log.i(TAG, "Processed all rows");
-                      break;
-//                  } else if (err == SQLITE_LOCKED || err == SQLITE_BUSY) {
-                      // The table is locked, retry
-                      // Log.i(TAG, "Database locked, retrying");
-//                      if (retryCount > 50) {
-//                          LOGE("Bailing on database busy rety");
-//                          break;
-//                      }
-
-                      // Sleep to give the thread holding the lock a chance to finish
-//                      usleep(1000);
-
-//                      retryCount++;
-//                      continue;
-                  } else {
-//                      throw new SQLiteException(env, GET_HANDLE(env, object));
-                      break;
-                  }
-              }
-
-//        if (err == SQLITE_ROW) {
-//            return -1;
-//        } else {
-//            //sqlite3_reset(statement);
-//            return startPos + numRows;
-//        }
-
-        return startPos + numRows;
+    /**
+     * Fetches the rows from startPos on into datas.
+     */
+    private void fetchPage(int startPos) {
+        Object data;
+        if (mPageable) {
+            String limit = " LIMIT " + mPageSize + " OFFSET " + startPos;
+            data = getCompiledSql().executeQuery(getBindArgs(), limit);
+            mPageStart = startPos;
+        } else {
+            data = getCompiledSql().executeQuery(getBindArgs(), null);
+            mPageStart = 0;
+        }
+        int length = 0;
+        /**
+         * @j2sNative
+         * this.datas = data != null ? data : [];
+         * length = this.datas.length;
+         */{}
+        if (!mPageable) {
+            mTotalRows = length;
+        } else if (length < mPageSize && (length > 0 || startPos == 0)) {
+            // a short page is the end of the result
+            mTotalRows = startPos + length;
+        }
+        if (!mColumnsKnown) {
+            query();
+        }
+    }
+
+    /**
+     * Returns the number of rows in the whole result, counting them if no
+     * page has reached the end yet.
+     */
+    private int countRows() {
+        if (mTotalRows < 0) {
+            Object data = getCompiledSql().execute(getBindArgs(), "SELECT COUNT(*) FROM (", ")");
+            int count = 0;
+            /**
+             * @j2sNative
+             * count = parseInt(data[0][0].value);
+             */{}
+            mTotalRows = count;
+        }
+        return mTotalRows;
     }
 
+    /**
+     * Sets keys and column_count from the rows in datas, or when there are
+     * none, from an earlier run or the SQL itself.
+     */
     public void query () {
         String tableName = null;
         String sql = getmSql();
-        String[] BindArgs = getBindArgs();
-
-        if (BindArgs != null) {
-            for (int i=0; i<BindArgs.length; i++) {
-                sql = sql.replaceFirst("\\?", "'" + BindArgs[i] + "'");
-            }
-        }
+        SQLiteCompiledSql compiledSql = getCompiledSql();
         /**
          * @j2sNative
-         * try {
-         *     var key = new Array();
-         *     var db = this.mDatabase.getSQLDB();
-         *     var data = db.exec(sql);
-         *     if(!data||data.length==0) {
-         *         var DISTINCT_index = sql.indexOf("DISTINCT");
-         *         var FROM_index = sql.indexOf("FROM");
-         *         if(DISTINCT_index >= 0) {
-         *             var temp_columns = sql.substring(DISTINCT_index+8, FROM_index-1);
-         *             var sql_left = sql.slice(FROM_index+5);
-         *             if(sql_left.indexOf(" ")>=0) {
-         *                 var sql_left_parts = sql_left.split(" ");
-         *                 tableName = sql_left_parts[0];
-         *             } else {
-         *                 tableName = sql_left;
-         *             }
+         * var data = this.datas;
+         * if (data != null && data.length > 0) {
+         *     var key = new Array(data[0].length);
+         *     for (var i = 0; i < key.length; i++) {
+         *         key[i] = data[0][i].column;
+         *     }
+         *     this.column_count = key.length;
+         *     this.keys = key;
+         * } else if (compiledSql.mColumnNames != null) {
+         *     // an earlier run of this statement told us the columns
+         *     this.keys = compiledSql.mColumnNames;
+         *     this.column_count = this.keys.length;
+         * } else {
+         *     var DISTINCT_index = sql.indexOf("DISTINCT");
+         *     var FROM_index = sql.indexOf("FROM");
+         *     if(DISTINCT_index >= 0) {
+         *         var temp_columns = sql.substring(DISTINCT_index+8, FROM_index-1);
+         *         var sql_left = sql.slice(FROM_index+5);
+         *         if(sql_left.indexOf(" ")>=0) {
+         *             var sql_left_parts = sql_left.split(" ");
+         *             tableName = sql_left_parts[0];
          *         } else {
-         *             var temp_columns = sql.substring(7, FROM_index-1);
-         *             var sql_left = sql.slice(FROM_index+5);
-         *             if(sql_left.indexOf(" ")>=0) {
-         *                 var sql_left_parts = sql_left.split(" ");
-         *                 tableName = sql_left_parts[0];
-         *             } else {
-         *                 tableName = sql_left;
-         *             }
+         *             tableName = sql_left;
          *         }
-         *         if(temp_columns.indexOf("*")<0) {
-         *             this.keys = temp_columns.split(", ");
+         *     } else {
+         *         var temp_columns = sql.substring(7, FROM_index-1);
+         *         var sql_left = sql.slice(FROM_index+5);
+         *         if(sql_left.indexOf(" ")>=0) {
+         *             var sql_left_parts = sql_left.split(" ");
+         *             tableName = sql_left_parts[0];
          *         } else {
-         *             this.keys = this.getColumnFromTable(tableName);
+         *             tableName = sql_left;
          *         }
-         *         this.column_count = this.keys.length;
-         *         this.datas = null;
-         *         this.types = null;
+         *     }
+         *     if(temp_columns.indexOf("*")<0) {
+         *         this.keys = temp_columns.split(", ");
          *     } else {
-         *         var typeSql = "SELECT ";
-         *         for (var i=0;i<data[0].length;i++) {
-         *             key[i] = data[0][i].column;
-         *             if (i != data[0].length-1) {
-         *                 typeSql += " typeof(" + key[i] + "), ";
-         *             } else {
-         *                 typeSql += " typeof(" + key[i] + ") ";
-         *             }
-         *         }
-         *         var FROM_index = sql.indexOf("FROM");
-         *         typeSql += sql.substring(FROM_index);
-         *         try {
-         *             this.types = db.exec(typeSql);
-         *         } catch (e) {
-         *             this.types = null;
-         *         }
-         *         this.column_count = key.length;
-         *         this.datas = data;
-         *         this.keys = key;
+         *         this.keys = this.getColumnFromTable(tableName);
          *     }
-         * } catch (e) {
-         *     throw(e.message);
-         *     this.column_count = null;
+         *     this.column_count = this.keys.length;
          * }
          */{}
+        mColumnsKnown = true;
     }
 
     private final int native_column_count() {
-        query();
+        // the first page is kept for the first window
+        if (!mColumnsKnown) {
+            fetchPage(0);
+        }
         return column_count;
     }
 
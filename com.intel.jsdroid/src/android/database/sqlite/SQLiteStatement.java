@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2006 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+/**
+ * A pre-compiled statement against a {@link SQLiteDatabase} that can be reused.
+ * The statement cannot return multiple rows, but 1x1 result sets are allowed.
+ * Don't use SQLiteStatement constructor directly, please use
+ * {@link SQLiteDatabase#compileStatement(String)}
+ *<p>
+ * SQLiteStatement is not internally synchronized so code using a SQLiteStatement from multiple
+ * threads should perform its own synchronization when using the SQLiteStatement.
+ */
+public class SQLiteStatement extends SQLiteProgram
+{
+    /**
+     * Don't use SQLiteStatement constructor directly, please use
+     * {@link SQLiteDatabase#compileStatement(String)}
+     * @param db
+     * @param sql
+     */
+    /* package */ SQLiteStatement(SQLiteDatabase db, String sql) {
+        super(db, sql);
+    }
+
+    /**
+     * Execute this SQL statement, if it is not a query. For example,
+     * CREATE TABLE, DELTE, INSERT, etc.
+     *
+     * @throws android.database.SQLException If the SQL string is invalid for
+     *         some reason
+     */
+    public void execute() {
+        if (!mDatabase.isOpen()) {
+            throw new IllegalStateException("database " + mDatabase.getPath() + " already closed");
+        }
+        acquireReference();
+        try {
+            executeSql();
+            mDatabase.markDirty();
+        } finally {
+            releaseReference();
+        }
+    }
+
+    /**
+     * Execute this SQL statement and return the ID of the row inserted due to this call.
+     * The SQL statement should be an INSERT for this to be a useful call.
+     *
+     * @return the row ID of the last row inserted, if this insert is successful. -1 otherwise.
+     *
+     * @throws android.database.SQLException If the SQL string is invalid for
+     *         some reason
+     */
+    public long executeInsert() {
+        if (!mDatabase.isOpen()) {
+            throw new IllegalStateException("database " + mDatabase.getPath() + " already closed");
+        }
+        acquireReference();
+        try {
+            executeSql();
+            mDatabase.markDirty();
+            return lastInsertRowId();
+        } finally {
+            releaseReference();
+        }
+    }
+
+    /* package */ long executeInsert(Object[] bindArgs) {
+        executeSql(bindArgs);
+        mDatabase.markDirty();
+        return lastInsertRowId();
+    }
+
+    private long lastInsertRowId() {
+        Object db = mDatabase.getSQLDB();
+        long rowId = -1;
+        /**
+         * @j2sNative
+         * var data = db.exec("SELECT last_insert_rowid();");
+         * rowId = parseInt(data[0][0].value);
+         */{}
+        return rowId;
+    }
+
+    /**
+     * Execute a statement that returns a 1 by 1 table with a numeric value.
+     * For example, SELECT COUNT(*) FROM table;
+     *
+     * @return The result of the query.
+     *
+     * @throws android.database.sqlite.SQLiteDoneException if the query returns zero rows
+     */
+    public long simpleQueryForLong() {
+        String value = simpleQuery();
+        long result = 0;
+        /**
+         * @j2sNative
+         * result = parseInt(value);
+         */{}
+        return result;
+    }
+
+    /**
+     * Execute a statement that returns a 1 by 1 table with a text value.
+     * For example, SELECT COUNT(*) FROM table;
+     *
+     * @return The result of the query.
+     *
+     * @throws android.database.sqlite.SQLiteDoneException if the query returns zero rows
+     */
+    public String simpleQueryForString() {
+        return simpleQuery();
+    }
+
+    private String simpleQuery() {
+        if (!mDatabase.isOpen()) {
+            throw new IllegalStateException("database " + mDatabase.getPath() + " already closed");
+        }
+        acquireReference();
+        try {
+            Object rows = executeSql();
+            boolean done = true;
+            String value = null;
+            /**
+             * @j2sNative
+             * if (rows != null && rows.length > 0) {
+             *     done = false;
+             *     value = rows[0][0].value;
+             * }
+             */{}
+            if (done) {
+                throw new SQLiteDoneException("expected 1 row from this query but query returned no data. check the query: " + mSql);
+            }
+            return value;
+        } finally {
+            releaseReference();
+        }
+    }
+}
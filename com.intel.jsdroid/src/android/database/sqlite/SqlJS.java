@@ -27285,9 +27285,9 @@ se==0&&f2();
 
 
 var g2=Ic(4),h2,i2=Gd.length;
-Gd[i2]=(function(b,c,d,e){for(var b=[],f=0;
+Gd[i2]=(function(b,c,d,e){for(var b=[],v,f=0;
 f<c;
-f++){b.push({column:pd(yd(e+f*wc,"i32")),value:pd(yd(d+f*wc,"i32"))})}h2.push(b)});
+f++){b.push({column:pd(yd(e+f*wc,"i32")),value:(v=yd(d+f*wc,"i32"))?pd(v):null})}h2.push(b)});
 Gd.push(0,0);
 var j2=0;
 Module.open = (function (b) {
@@ -22,6 +22,7 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.ArrayList;
 
 import com.intel.mpt.annotation.MayloonStubAnnotation;
 
@@ -29,6 +30,7 @@ import android.graphics.BitmapFactory.Res_png_9patch;
 import android.util.Base64;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.LruCache;
 
 
 /**
@@ -59,10 +61,26 @@ public final class Bitmap  {
      * this.mCachedCanvas = null;    // save data into this canvas
      * this.mCachedImageData = null; // all setPixel/getPixel will get data from it as read from cached canvas
      *                               // may be too slow every time. 
+     * this.mPixels32 = null;        // a Uint32Array over the data of mCachedImageData, see getPixels32
      */{}
     private boolean mIsImageDataDirty = false;
     private boolean mNeedUpdateIntoCachedCanvas = false;
     private boolean mIsCachedCanvasDirty = false;
+    // The region of mCachedImageData written since it was last put into the
+    // cached canvas, when mIsImageDataDirty doesn't tell all of it was
+    private final Rect mDirtyPixels = new Rect();
+    // Whether mCachedImageData only holds what the cached canvas has inside
+    // mFreshPixels, the canvas having been drawn into since it was read
+    private boolean mImageDataStale = false;
+    private final Rect mFreshPixels = new Rect();
+    // Whether the cached canvas holds mRawData as decoded, and nothing else
+    private boolean mPixelsFromRaw = false;
+    // How many pixels of mRawData make one pixel of the bitmap in each direction
+    private int mSampleSize = 1;
+    // Whether mRawData is to be decoded by a worker, see decodeAsync
+    private boolean mDecodeAsync = false;
+    private boolean mDecodePending = false;
+    private ArrayList<Runnable> mDecodeCallbacks;
     public String mDataURL;
     private Config mConfig;
 
@@ -76,6 +94,210 @@ public final class Bitmap  {
         id = idCnt++;
         resID = -1;
     }
+
+    /**
+     * The default of {@link #setDecodedPixelsBudget(int)}, in bytes.
+     */
+    private static final int DEFAULT_DECODED_PIXELS_BUDGET = 24 * 1024 * 1024;
+
+    /**
+     * The immutable bitmaps whose pixels were decoded from their compressed
+     * data, by id, least recently drawn first.
+     *
+     * MayLoon: a decoded bitmap keeps a canvas element and an ImageData of
+     * width * height * 4 bytes alive next to its PNG data, for as long as
+     * the bitmap lives. Once the decoded pixels of all the bitmaps are over
+     * budget, those of the least recently drawn ones are dropped; the PNG
+     * data is kept and decoded again the next time the pixels are needed.
+     */
+    /*
+     * MayLoon: a pixel of an ImageData is the bytes R, G, B, A. Read as a
+     * little endian 32 bit integer that is ABGR, which is turned into a
+     * Color by swapping the red and blue bytes. Big endian platforms read
+     * and write the pixels byte by byte.
+     */
+    private static final boolean LITTLE_ENDIAN = isLittleEndian();
+
+    private static boolean isLittleEndian() {
+        boolean littleEndian = true;
+        /**
+         * @j2sNative
+         * littleEndian = new Uint8Array(new Uint32Array([1]).buffer)[0] == 1;
+         */{}
+        return littleEndian;
+    }
+
+    private static final LruCache<Integer, Bitmap> sDecodedBitmaps =
+            new LruCache<Integer, Bitmap>(DEFAULT_DECODED_PIXELS_BUDGET) {
+        @Override
+        protected int sizeOf(Integer id, Bitmap bitmap) {
+            return bitmap.getPixelsByteCount();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Integer id, Bitmap oldValue,
+                Bitmap newValue) {
+            if (evicted) {
+                oldValue.releaseDecodedPixels();
+            }
+        }
+    };
+
+    /**
+     * Set how many bytes of pixels decoded from compressed bitmaps are kept.
+     *
+     * @hide
+     */
+    public static void setDecodedPixelsBudget(int bytes) {
+        sDecodedBitmaps.resize(bytes);
+    }
+
+    /**
+     * Return an estimate of the memory this bitmap holds: its pixels, at 4
+     * bytes each, plus the compressed data it was decoded from, if any.
+     *
+     * @hide
+     */
+    public int getCacheByteCount() {
+        return getPixelsByteCount() + (mRawData != null ? mRawData.length : 0);
+    }
+
+    private int getPixelsByteCount() {
+        return mWidth > 0 && mHeight > 0 ? mWidth * mHeight * 4 : 0;
+    }
+
+    private void onPixelsDecoded() {
+        // A bitmap over the whole budget would be dropped as soon as it is
+        // decoded, before it could be drawn
+        if (!mIsMutable && getPixelsByteCount() <= sDecodedBitmaps.maxSize()) {
+            mPixelsFromRaw = true;
+            sDecodedBitmaps.put(id, this);
+        }
+    }
+
+    private void forgetDecodedPixels() {
+        if (mPixelsFromRaw) {
+            mPixelsFromRaw = false;
+            sDecodedBitmaps.remove(id);
+        }
+    }
+
+    /* package */ void setSampleSize(int sampleSize) {
+        mSampleSize = sampleSize;
+    }
+
+    /* package */ int getSampleSize() {
+        return mSampleSize;
+    }
+
+    /* package */ void setDecodeAsync(boolean decodeAsync) {
+        mDecodeAsync = decodeAsync;
+    }
+
+    /**
+     * Have the pixels of this bitmap decoded in the background, if it was
+     * decoded with {@link BitmapFactory.Options#inDecodeAsync} and they are
+     * not decoded yet.
+     *
+     * @param onDecoded Run once the pixels are decoded, if this returns true.
+     *        May be null.
+     * @return true if the pixels are being decoded, in which case the bitmap
+     *         is not worth drawing yet.
+     *
+     * @hide
+     */
+    public boolean decodeAsync(Runnable onDecoded) {
+        if (!mDecodeAsync || mRecycled || mRawData == null) {
+            return false;
+        }
+        boolean decoded = false;
+        /**
+         * @j2sNative
+         * decoded = this.mCachedCanvas != null;
+         */{}
+        if (decoded) {
+            return false;
+        }
+        if (!mDecodePending) {
+            if (!BitmapDecoder.decodeInWorker(this)) {
+                mDecodeAsync = false;
+                return false;
+            }
+            mDecodePending = true;
+        }
+        if (onDecoded != null) {
+            if (mDecodeCallbacks == null) {
+                mDecodeCallbacks = new ArrayList<Runnable>();
+            }
+            if (!mDecodeCallbacks.contains(onDecoded)) {
+                mDecodeCallbacks.add(onDecoded);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called with the RGBA pixels a worker decoded from mRawData, or null if
+     * it failed to.
+     */
+    /* package */ void onAsyncDecoded(Object pixels) {
+        mDecodePending = false;
+        boolean decoded = false;
+        boolean failed = pixels == null;
+        if (pixels != null && !mRecycled) {
+            /**
+             * @j2sNative
+             * // The pixels may have been decoded here in the meantime
+             * if (this.mCachedCanvas == null) {
+             *     var canvas = document.createElement('canvas');
+             *     canvas.width = this.getWidth();
+             *     canvas.height = this.getHeight();
+             *     var imageData = canvas.getContext('2d').createImageData(canvas.width, canvas.height);
+             *     var data = new Uint8ClampedArray(pixels);
+             *     if (data.length == imageData.data.length) {
+             *         imageData.data.set(data);
+             *         this.mCachedCanvas = canvas;
+             *         this.mCachedImageData = imageData;
+             *         this.mIsImageDataDirty = true;
+             *         decoded = true;
+             *     } else {
+             *         failed = true;
+             *     }
+             * }
+             */{}
+        }
+        if (failed) {
+            // Don't try again, decode on the UI thread from now on
+            mDecodeAsync = false;
+        }
+        if (decoded) {
+            onPixelsDecoded();
+        }
+        if (mDecodeCallbacks != null) {
+            ArrayList<Runnable> callbacks = mDecodeCallbacks;
+            mDecodeCallbacks = null;
+            for (int i = 0; i < callbacks.size(); i++) {
+                callbacks.get(i).run();
+            }
+        }
+    }
+
+    /**
+     * Drop the decoded pixels, to be decoded from mRawData again when needed.
+     */
+    private void releaseDecodedPixels() {
+        mPixelsFromRaw = false;
+        mIsImageDataDirty = false;
+        mIsCachedCanvasDirty = false;
+        mImageDataStale = false;
+        mDirtyPixels.setEmpty();
+        /**
+         * @j2sNative
+         * this.mCachedCanvas = null;
+         * this.mCachedImageData = null;
+         * this.mPixels32 = null;
+         */{}
+    }
     // Package-scoped for fast access.
     int mDensity = sDefaultDensity = getDefaultDensity();
 
@@ -165,6 +387,10 @@ public final class Bitmap  {
         if (!mRecycled) {
             mNinePatch = null;
             mRecycled = true;
+            if (mPixelsFromRaw) {
+                forgetDecodedPixels();
+                releaseDecodedPixels();
+            }
         }
     }
 
@@ -333,9 +559,6 @@ public final class Bitmap  {
     }
 
     private void nativeCopyPixelsFromBuffer(Buffer src, int shift) {
-        int[] pixels = (int[]) src.array();
-        if(null == pixels) return;
-        
         checkRecycled("Can't call setPixels() on a recycled bitmap");
         if (!isMutable()) {
             throw new IllegalStateException();
@@ -343,57 +566,90 @@ public final class Bitmap  {
         if (mWidth == 0 || mHeight == 0) {
             return; // nothing to do
         }
-        checkPixelsAccess(0, 0, mWidth, mHeight, 0, mWidth, pixels);
+        Object pixels = null;
+        int start = src.position();
+        if (shift == 0) {
+            // The bytes are those of an ARGB_8888 pixel in memory, R, G, B, A
+            if (mConfig != Config.ARGB_8888) {
+                return;
+            }
+            int byteCount = mWidth * mHeight * 4;
+            /**
+             * @j2sNative
+             * var view = src.backingArray;
+             * pixels = new Uint8Array(view.buffer, view.byteOffset + src.offset + start, byteCount);
+             */{}
+            start = 0;
+        } else if (src.hasArray()) {
+            pixels = src.array();
+            start += src.arrayOffset();
+        }
+        if (pixels == null) return;
         if (!ensureCachedCanvas(false, false)) return;
+        setPixelsFromBuffer(pixels, start, shift);
+        // All of the pixels were replaced
         mIsImageDataDirty = true;
-        setPixelsFromBuffer(pixels, shift);
-    }
-
-    private void setPixelsFromBuffer(int[] pixels, int shift) {
-        for (int i = 0; i < mHeight; i++) {
-            for (int j = 0; (j < mWidth)
-                    && (i * mHeight + j < pixels.length); j++) {
-                checkPixelAccess(j, i);
-                if (!ensureCachedCanvas(false, false))  return;
-
-                 /**
-                  * @j2sNative
-                  *  var data = this.mCachedImageData.data;
-                  *  var index = i * 4 * this.mWidth + j * 4;
-                  *  var color = pixels[i * this.mWidth + j];
-                  *  
-                  *  //shift stands for data buffer type,
-                  *  //as assigned in method "copyPixelsFromBuffer"
-                  *  //similar to the effect of mConfig
-                  *  switch(shift) {
-                  *      case 0:    //byte, not implemented
-                  *         break;
-                  *      case 1:    //short
-                  *         if(this.mConfig.nativeInt == 
-                  *             android.graphics.Bitmap.Config.CONFIG_RGB_565) {
-                  *             data[index] = ((color >> 11) & 0x1F) / 0x1F * 0xFF;
-                  *             data[index+1] = ((color >> 5) & 0x3F) / 0x3F * 0xFF;
-                  *             data[index+2] = (color & 0x1F) / 0x1F * 0xFF;
-                  *             data[index+3] = 0xFF;
-                  *         }
-                  *         else if(this.mConfig.nativeInt == 
-                  *             android.graphics.Bitmap.Config.CONFIG_ARGB_4444) {
-                  *             data[index] = ((color >> 12) & 0xF) / 16 * 256;
-                  *             data[index+1] = ((color >> 8) & 0xF) / 16 * 256;
-                  *             data[index+2] = ((color >> 4) & 0xF) / 16 * 256;
-                  *             data[index+3] = (color & 0xF) / 16 * 256;
-                  *         }
-                  *         break;
-                  *      case 2:    //int, the config is ARGB_8888
-                  *         data[index] = android.graphics.Color.red(color);;
-                  *         data[index+1] = android.graphics.Color.green(color);
-                  *         data[index+2] = android.graphics.Color.blue(color);
-                  *         data[index+3] = android.graphics.Color.alpha(color);;
-                  *         break;
-                  *  }
-                  */{}
-            }
+        mIsCachedCanvasDirty = false;
+        mImageDataStale = false;
+        mDirtyPixels.setEmpty();
+    }
+
+    private void setPixelsFromBuffer(Object pixels, int start, int shift) {
+        int count = mWidth * mHeight;
+        if (shift == 0) {
+            /**
+             * @j2sNative
+             * this.mCachedImageData.data.set(pixels);
+             */{}
+            return;
         }
+        if (shift == 2 && LITTLE_ENDIAN) {
+            Object data = getPixels32();
+            /**
+             * @j2sNative
+             * for (var i = 0; i < count; i++) {
+             *     var c = pixels[start + i];
+             *     data[i] = (c & 0xFF00FF00) | ((c >> 16) & 0xFF) | ((c & 0xFF) << 16);
+             * }
+             */{}
+            return;
+        }
+        /**
+         * @j2sNative
+         *  var data = this.mCachedImageData.data;
+         *  for (var i = 0; i < count; i++) {
+         *  var index = i * 4;
+         *  var color = pixels[start + i];
+         *  
+         *  //shift stands for data buffer type,
+         *  //as assigned in method "copyPixelsFromBuffer"
+         *  //similar to the effect of mConfig
+         *  switch(shift) {
+         *      case 1:    //short
+         *         if(this.mConfig.nativeInt == 
+         *             android.graphics.Bitmap.Config.CONFIG_RGB_565) {
+         *             data[index] = ((color >> 11) & 0x1F) / 0x1F * 0xFF;
+         *             data[index+1] = ((color >> 5) & 0x3F) / 0x3F * 0xFF;
+         *             data[index+2] = (color & 0x1F) / 0x1F * 0xFF;
+         *             data[index+3] = 0xFF;
+         *         }
+         *         else if(this.mConfig.nativeInt == 
+         *             android.graphics.Bitmap.Config.CONFIG_ARGB_4444) {
+         *             data[index] = ((color >> 12) & 0xF) / 16 * 256;
+         *             data[index+1] = ((color >> 8) & 0xF) / 16 * 256;
+         *             data[index+2] = ((color >> 4) & 0xF) / 16 * 256;
+         *             data[index+3] = (color & 0xF) / 16 * 256;
+         *         }
+         *         break;
+         *      case 2:    //int, the config is ARGB_8888
+         *         data[index] = android.graphics.Color.red(color);;
+         *         data[index+1] = android.graphics.Color.green(color);
+         *         data[index+2] = android.graphics.Color.blue(color);
+         *         data[index+3] = android.graphics.Color.alpha(color);;
+         *         break;
+         *  }
+         *  }
+         */{}
     }
 
     /**
@@ -437,6 +693,7 @@ public final class Bitmap  {
      * @return If fail to create cached canvas, return false
      */
     public Boolean ensureCachedCanvas(Boolean changeCachedCanvas, Boolean needUpdateIntoCachedCanvas) {
+         boolean decoded = false;
          /**
           * @j2sNative
           * if (this.mCachedCanvas == null) {
@@ -456,13 +713,16 @@ public final class Bitmap  {
           *        var png = new PNG(this.mRawData, false);
           *        // Decode the data from png into imageData
           *        var pixelBytes = png.pixelBitlength / 8;
-          *        if (pixelBytes >= 3 && !png.palette.length && png.colors != 1) { // go to fast path for RGBA mode
+          *        if (this.mSampleSize > 1) {
+          *            png.decodeRegion(0, 0, png.width, png.height, this.mSampleSize, imageData.data);
+          *        } else if (pixelBytes >= 3 && !png.palette.length && png.colors != 1) { // go to fast path for RGBA mode
           *            png.decodePixels(null, imageData.data); // directly decode the pixels into imageData, avoid copy
           *        } else {
           *            png.copyToImageData(imageData, png.decodePixels());
           *        }
           *        this.mIsImageDataDirty = true;
           *        needUpdateIntoCachedCanvas = true;
+          *        decoded = true;
           *        // this.mDataURL = this.mCachedCanvas.toDataURL(); // not needed, will remove it
           *        this.mCachedCanvas = canvas;
           *     } else {
@@ -471,9 +731,8 @@ public final class Bitmap  {
           * }
           * 
           * // update the ImageData into CachedCanvas if we need to update and data is dirty. 
-          * if (needUpdateIntoCachedCanvas == true && this.mIsImageDataDirty == true) {
-          *     this.mCachedCanvas.getContext("2d").putImageData(this.mCachedImageData,0,0);
-          *     this.mIsImageDataDirty = false;
+          * if (needUpdateIntoCachedCanvas == true) {
+          *     this.putDirtyPixels();
           * }
           * 
           * if (changeCachedCanvas == true) {
@@ -482,19 +741,122 @@ public final class Bitmap  {
           *     this.mIsCachedCanvasDirty = true;
           * }
           */{}
+         if (decoded) {
+             onPixelsDecoded();
+         } else if (mPixelsFromRaw) {
+             // Once the pixels may be written, they can't be decoded again
+             if (mIsMutable || changeCachedCanvas) {
+                 forgetDecodedPixels();
+             } else {
+                 sDecodedBitmaps.get(id);
+             }
+         }
          return true;
     }
     
     public void checkCachedCanvasDirty() {
         // If the cached canvas has been modified, we need to update the data into cached image data
         // as getPixel will read pixels from the cached image data.
-        if (this.mIsCachedCanvasDirty) {
+        syncPixels(0, 0, getWidth(), getHeight());
+    }
+
+    /**
+     * Make sure the given region of mCachedImageData holds what the cached
+     * canvas has. Only what the canvas may have changed since it was last
+     * read is read again.
+     */
+    private void syncPixels(int x, int y, int width, int height) {
+        if (mIsCachedCanvasDirty) {
+            mIsCachedCanvasDirty = false;
+            mImageDataStale = true;
+            mFreshPixels.setEmpty();
+        }
+        if (!mImageDataStale || mFreshPixels.contains(x, y, x + width, y + height)) {
+            return;
+        }
+        // Writes not put into the canvas yet would be read over
+        putDirtyPixels();
+        Rect fresh = mFreshPixels;
+        fresh.union(x, y, x + width, y + height);
+        if (fresh.width() * fresh.height() * 2 >= mWidth * mHeight) {
+            fresh.set(0, 0, mWidth, mHeight);
+        }
+        int left = fresh.left;
+        int top = fresh.top;
+        int freshWidth = fresh.width();
+        int freshHeight = fresh.height();
+        /**
+         * @j2sNative
+         * var region = this.mCachedCanvas.getContext("2d").getImageData(left, top, freshWidth, freshHeight);
+         * if (freshWidth == this.mWidth && freshHeight == this.mHeight) {
+         *     this.mCachedImageData = region;
+         * } else {
+         *     var data = this.mCachedImageData.data;
+         *     var rowBytes = freshWidth * 4;
+         *     for (var row = 0; row < freshHeight; row++) {
+         *         data.set(region.data.subarray(row * rowBytes, (row + 1) * rowBytes),
+         *                 ((top + row) * this.mWidth + left) * 4);
+         *     }
+         * }
+         */{}
+        mImageDataStale = freshWidth != mWidth || freshHeight != mHeight;
+    }
+
+    /**
+     * Put what was written to mCachedImageData into the cached canvas.
+     */
+    /* package */ void putDirtyPixels() {
+        if (mIsImageDataDirty) {
+            /**
+             * @j2sNative
+             * this.mCachedCanvas.getContext("2d").putImageData(this.mCachedImageData, 0, 0);
+             */{}
+        } else if (!mDirtyPixels.isEmpty()) {
+            int left = mDirtyPixels.left;
+            int top = mDirtyPixels.top;
+            int width = mDirtyPixels.width();
+            int height = mDirtyPixels.height();
             /**
              * @j2sNative
-             * this.mCachedImageData = this.mCachedCanvas.getContext("2d").getImageData(0, 0, this.getWidth(), this.getHeight());
-             * this.mIsCachedCanvasDirty = false;
+             * this.mCachedCanvas.getContext("2d").putImageData(this.mCachedImageData, 0, 0,
+             *         left, top, width, height);
              */{}
         }
+        mIsImageDataDirty = false;
+        mDirtyPixels.setEmpty();
+    }
+
+    /**
+     * Sync the region that is about to be written, and note it was.
+     */
+    private void writePixels(int x, int y, int width, int height) {
+        if (x == 0 && y == 0 && width == mWidth && height == mHeight) {
+            // Nothing of the canvas is left to read
+            mIsCachedCanvasDirty = false;
+            mImageDataStale = false;
+        } else {
+            syncPixels(x, y, width, height);
+        }
+        if (!mIsImageDataDirty) {
+            mDirtyPixels.union(x, y, x + width, y + height);
+        }
+    }
+
+    /**
+     * Return a Uint32Array over the data of mCachedImageData, one element
+     * per pixel, see LITTLE_ENDIAN.
+     */
+    private Object getPixels32() {
+        Object pixels = null;
+        /**
+         * @j2sNative
+         * var buffer = this.mCachedImageData.data.buffer;
+         * if (this.mPixels32 == null || this.mPixels32.buffer !== buffer) {
+         *     this.mPixels32 = new Uint32Array(buffer);
+         * }
+         * pixels = this.mPixels32;
+         */{}
+        return pixels;
     }
     
     /**
@@ -980,9 +1342,17 @@ public final class Bitmap  {
         if (!ensureCachedCanvas(false, false)) {
             return 0;
         }
+        syncPixels(x, y, 1, 1);
+        if (LITTLE_ENDIAN) {
+            Object pixels = getPixels32();
+            /**
+             * @j2sNative
+             * var c = pixels[y * this.mWidth + x];
+             * return (c & 0xFF00FF00) | ((c >> 16) & 0xFF) | ((c & 0xFF) << 16);
+             */{}
+        }
         /**
          * @j2sNative 
-         * this.checkCachedCanvasDirty();
          * var data = this.mCachedImageData.data; 
          * var index = y * 4 * this.mWidth + x * 4; 
          * return android.graphics.Color.argb(data[index+3], data[index], data[index+1], data[index+2]);
@@ -1100,6 +1470,15 @@ public final class Bitmap  {
         checkPixelAccess(x, y);
         if (!ensureCachedCanvas(false, false))
             return;
+        writePixels(x, y, 1, 1);
+        if (LITTLE_ENDIAN) {
+            Object pixels = getPixels32();
+            /**
+             * @j2sNative
+             * pixels[y * this.mWidth + x] = (color & 0xFF00FF00) | ((color >> 16) & 0xFF) | ((color & 0xFF) << 16);
+             */{}
+            return;
+        }
 
          /**
           * @j2sNative
@@ -1110,8 +1489,6 @@ public final class Bitmap  {
           *  data[index+2] = android.graphics.Color.blue(color);
           *  data[index+3] = android.graphics.Color.alpha(color);;
           */{}
-         mIsImageDataDirty = true;
-
     }
 
     /**
@@ -1148,7 +1525,6 @@ public final class Bitmap  {
         if (!ensureCachedCanvas(false, false))
             return;
         nativeSetPixels(pixels, offset, stride, x, y, width, height);
-        mIsImageDataDirty = true;
     }
 
     /**
@@ -1255,28 +1631,64 @@ public final class Bitmap  {
          * context.fillRect(0, 0, this.mCachedCanvas.width, this.mCachedCanvas.height);
          * context.restore();
          */{}
+         // Pixels written before are erased too
+         mIsImageDataDirty = false;
+         mDirtyPixels.setEmpty();
          this.mIsCachedCanvasDirty = true;
     }
 
     public void nativeSetPixels(int[] colors, int offset, int stride, int x,
             int y, int width, int height) {
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; (j < width)
-                    && (i * stride + j + offset < colors.length); j++) {
-                setPixel(x + j, y + i, colors[i * stride + j + offset]);
+        if (!LITTLE_ENDIAN) {
+            for (int i = 0; i < height; i++) {
+                for (int j = 0; (j < width)
+                        && (i * stride + j + offset < colors.length); j++) {
+                    setPixel(x + j, y + i, colors[i * stride + j + offset]);
+                }
             }
+            return;
         }
+        writePixels(x, y, width, height);
+        Object pixels = getPixels32();
+        int bitmapWidth = mWidth;
+        /**
+         * @j2sNative
+         * for (var i = 0; i < height; i++) {
+         *     var from = offset + i * stride;
+         *     var to = (y + i) * bitmapWidth + x;
+         *     for (var j = 0; j < width; j++) {
+         *         var c = colors[from + j];
+         *         pixels[to + j] = (c & 0xFF00FF00) | ((c >> 16) & 0xFF) | ((c & 0xFF) << 16);
+         *     }
+         * }
+         */{}
     }
 
     public void nativeGetPixels(int[] pixels, int offset, int stride, int x,
             int y, int width, int height) {
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; (j < width)
-                    && (i * stride + j + offset < pixels.length); j++) {
-                pixels[i * stride + j + offset] = getPixel(x + j, y + i);
+        if (!LITTLE_ENDIAN) {
+            for (int i = 0; i < height; i++) {
+                for (int j = 0; (j < width)
+                        && (i * stride + j + offset < pixels.length); j++) {
+                    pixels[i * stride + j + offset] = getPixel(x + j, y + i);
+                }
             }
+            return;
         }
-
+        syncPixels(x, y, width, height);
+        Object colors = getPixels32();
+        int bitmapWidth = mWidth;
+        /**
+         * @j2sNative
+         * for (var i = 0; i < height; i++) {
+         *     var from = (y + i) * bitmapWidth + x;
+         *     var to = offset + i * stride;
+         *     for (var j = 0; j < width; j++) {
+         *         var c = colors[from + j];
+         *         pixels[to + j] = (c & 0xFF00FF00) | ((c >> 16) & 0xFF) | ((c & 0xFF) << 16);
+         *     }
+         * }
+         */{}
     }
 
     /**
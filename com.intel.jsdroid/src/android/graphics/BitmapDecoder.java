@@ -3,6 +3,7 @@ package android.graphics;
 import java.io.ByteArrayOutputStream;
 import java.io.FileDescriptor;
 import java.io.InputStream;
+import java.util.HashMap;
 
 import android.content.res.Asset;
 import android.graphics.Bitmap.Config;
@@ -158,7 +159,8 @@ public class BitmapDecoder {
 	static {
 		/**
 		  @j2sNative
-(function() {
+// Kept as a function so that it can be run in the decode workers as well
+(window.MayLoonPNG = function(window) {
 
 
   var PNG;
@@ -541,11 +543,96 @@ public class BitmapDecoder {
       return ret;
     };
 
+    // Decode the pixels of the region [left, right) x [top, bottom) into the
+    // RGBA buffer out, keeping one pixel out of sample in each direction:
+    // out is floor(width / sample) x floor(height / sample) pixels, at least
+    // one. Scanlines are unfiltered two at a time, and nothing below the
+    // region is inflated.
+    PNG.prototype.decodeRegion = function(left, top, right, bottom, sample, out) {
+      var outWidth = Math.max(1, Math.floor((right - left) / sample));
+      var outHeight = Math.max(1, Math.floor((bottom - top) / sample));
+      // Sample the middle of each sample x sample block
+      var x0 = left + Math.min(sample >> 1, right - left - 1);
+      var y0 = top + Math.min(sample >> 1, bottom - top - 1);
+      if (this.bits != 8) {
+        // Packed or 16 bit samples: decode it all, then pick the pixels
+        var full = this.decode(), x, y, i, o;
+        for (y = 0; y < outHeight; y++) {
+          for (x = 0; x < outWidth; x++) {
+            i = ((y0 + y * sample) * this.width + x0 + x * sample) * 4;
+            o = (y * outWidth + x) * 4;
+            out[o] = full[i];
+            out[o + 1] = full[i + 1];
+            out[o + 2] = full[i + 2];
+            out[o + 3] = full[i + 3];
+          }
+        }
+        return;
+      }
+      var bpp = this.pixelBitlength / 8;
+      var rowLength = bpp * this.width;
+      var lastRow = y0 + (outHeight - 1) * sample;
+      var data = this.imgData.length ? new FlateStream(this.imgData).getBytes((rowLength + 1) * (lastRow + 1)) : [];
+      var palette = this.palette.length ? (this._decodedPalette || (this._decodedPalette = this.decodePalette())) : null;
+      var gray = this.colors == 1, alpha = this.hasAlphaChannel;
+      var prev = new Uint8Array(rowLength), row = new Uint8Array(rowLength), swap;
+      var pos = 0, length = data.length, y, i, a, b, c, p, pa, pb, pc, filter, x, k, o, next = y0;
+      for (y = 0; y <= lastRow && pos < length; y++) {
+        filter = data[pos++];
+        for (i = 0; i < rowLength; i++) {
+          a = i >= bpp ? row[i - bpp] : 0;
+          b = prev[i];
+          switch (filter) {
+            case 1: row[i] = data[pos++] + a; break;
+            case 2: row[i] = data[pos++] + b; break;
+            case 3: row[i] = data[pos++] + ((a + b) >> 1); break;
+            case 4:
+              c = i >= bpp ? prev[i - bpp] : 0;
+              p = a + b - c;
+              pa = Math.abs(p - a);
+              pb = Math.abs(p - b);
+              pc = Math.abs(p - c);
+              row[i] = data[pos++] + (pa <= pb && pa <= pc ? a : (pb <= pc ? b : c));
+              break;
+            default: row[i] = data[pos++];
+          }
+        }
+        if (y == next) {
+          o = (y - y0) / sample * outWidth * 4;
+          for (x = 0; x < outWidth; x++, o += 4) {
+            k = (x0 + x * sample) * bpp;
+            if (palette) {
+              k = row[k] * 4;
+              out[o] = palette[k];
+              out[o + 1] = palette[k + 1];
+              out[o + 2] = palette[k + 2];
+              out[o + 3] = palette[k + 3];
+            } else if (gray) {
+              out[o] = out[o + 1] = out[o + 2] = row[k];
+              out[o + 3] = alpha ? row[k + 1] : 255;
+            } else {
+              out[o] = row[k];
+              out[o + 1] = row[k + 1];
+              out[o + 2] = row[k + 2];
+              out[o + 3] = alpha ? row[k + 3] : 255;
+            }
+          }
+          next += sample;
+        }
+        swap = prev;
+        prev = row;
+        row = swap;
+      }
+    };
+
+    // There is no document in a worker
+    if (typeof document !== 'undefined') {
     scratchCanvas = document.createElement('canvas');
 
     scratchCtx = scratchCanvas.getContext('2d');
 	scratchCtx.globalCompositeOperation = 'destination-atop';
 	scratchCtx.fillStyle = 'rgba(255,255,255,1)';
+    }
     makeImage = function(imageData) {
       var img;
       scratchCtx.width = imageData.width;
@@ -634,7 +721,7 @@ public class BitmapDecoder {
 
   window.PNG = PNG;
 
-}).call(this);
+})(window);
 
 
 		 */ {}
@@ -643,6 +730,8 @@ public class BitmapDecoder {
 	static {
 		/**
 		  @j2sNative
+// Kept as a function so that it can be run in the decode workers as well
+window.MayLoonInflate = function(window) {
 var DecodeStream = (function() {
   function constructor() {
     this.pos = 0;
@@ -1075,12 +1164,188 @@ var FlateStream = (function() {
 
   return constructor;
 })();
+
+window.DecodeStream = DecodeStream;
+window.FlateStream = FlateStream;
+};
+window.MayLoonInflate(window);
 		 */
 		{
 		}
 
 	}
 
+    /*
+     * MayLoon: the pixels of a PNG are decoded on the UI thread the first time
+     * the bitmap is drawn, which stalls the frame that first shows a large
+     * image. The pixels of a bitmap decoded with
+     * BitmapFactory.Options.inDecodeAsync are decoded by a pool of Web Workers
+     * running the decoder above instead: a worker is handed a copy of the PNG
+     * data and hands back the RGBA pixels, both as transferred ArrayBuffers.
+     * Where workers can't be started, as when running headless, the pixels
+     * are decoded on the UI thread as before.
+     */
+    private static final int MAX_DECODE_WORKERS = 4;
+
+    // Smaller bitmaps take less time to decode than a trip to a worker
+    private static final int ASYNC_DECODE_MIN_PIXELS = 128 * 128;
+
+    // The decode workers, or null if they could not be started
+    private static Object sWorkers = null;
+    private static boolean sWorkersStarted = false;
+    private static int sNextWorker = 0;
+
+    // The bitmaps whose pixels a worker is decoding, by id
+    private static final HashMap<Integer, Bitmap> sPendingDecodes = new HashMap<Integer, Bitmap>();
+
+    private static void startWorkers() {
+        sWorkersStarted = true;
+        int maxWorkers = MAX_DECODE_WORKERS;
+        /**
+         * @j2sNative
+         * if (typeof Worker === "undefined" || typeof Blob === "undefined"
+         *         || typeof URL === "undefined" || !URL.createObjectURL
+         *         || !window.MayLoonPNG || !window.MayLoonInflate) {
+         *     return;
+         * }
+         * var main = function() {
+         *     self.onmessage = function(e) {
+         *         var pixels = null;
+         *         try {
+         *             var png = new PNG(new Uint8Array(e.data.data), false);
+         *             var sample = e.data.sampleSize;
+         *             if (sample > 1) {
+         *                 pixels = new Uint8ClampedArray(Math.max(1, Math.floor(png.width / sample))
+         *                         * Math.max(1, Math.floor(png.height / sample)) * 4);
+         *                 png.decodeRegion(0, 0, png.width, png.height, sample, pixels);
+         *                 self.postMessage({id: e.data.id, pixels: pixels.buffer}, [pixels.buffer]);
+         *                 return;
+         *             }
+         *             pixels = new Uint8ClampedArray(png.width * png.height * 4);
+         *             var pixelBytes = png.pixelBitlength / 8;
+         *             if (pixelBytes >= 3 && !png.palette.length && png.colors != 1) {
+         *                 png.decodePixels(null, pixels);
+         *             } else {
+         *                 png.copyToImageData(pixels, png.decodePixels());
+         *             }
+         *         } catch (err) {
+         *             pixels = null;
+         *         }
+         *         if (pixels != null) {
+         *             self.postMessage({id: e.data.id, pixels: pixels.buffer}, [pixels.buffer]);
+         *         } else {
+         *             self.postMessage({id: e.data.id, pixels: null});
+         *         }
+         *     };
+         * };
+         * var source = "(" + window.MayLoonInflate + ")(self);\n"
+         *         + "(" + window.MayLoonPNG + ")(self);\n"
+         *         + "(" + main + ")();\n";
+         * var count = navigator.hardwareConcurrency ? navigator.hardwareConcurrency - 1 : 2;
+         * count = Math.max(1, Math.min(count, maxWorkers));
+         * var workers = [];
+         * try {
+         *     var url = URL.createObjectURL(new Blob([source], {type: "application/javascript"}));
+         *     for (var i = 0; i < count; i++) {
+         *         var worker = new Worker(url);
+         *         worker.onmessage = function(e) {
+         *             android.graphics.BitmapDecoder.onWorkerDecoded(e.data.id, e.data.pixels);
+         *         };
+         *         workers.push(worker);
+         *     }
+         * } catch (e) {
+         *     console.warn("Decoding bitmaps on the UI thread: " + e);
+         *     for (var i = 0; i < workers.length; i++) {
+         *         workers[i].terminate();
+         *     }
+         *     return;
+         * }
+         * android.graphics.BitmapDecoder.sWorkers = workers;
+         */{}
+    }
+
+    /**
+     * Hand the PNG data of the given bitmap to a decode worker.
+     *
+     * @return false if there is no worker to decode it.
+     */
+    /* package */ static boolean decodeInWorker(Bitmap bitmap) {
+        if (!sWorkersStarted) {
+            startWorkers();
+        }
+        if (sWorkers == null) {
+            return false;
+        }
+        byte[] data = bitmap.mRawData;
+        int id = bitmap.id;
+        int sampleSize = bitmap.getSampleSize();
+        boolean posted = false;
+        /**
+         * @j2sNative
+         * var workers = android.graphics.BitmapDecoder.sWorkers;
+         * var worker = workers[android.graphics.BitmapDecoder.sNextWorker++ % workers.length];
+         * // The bitmap keeps its data to decode it again later, the worker gets a copy
+         * var copy = new Uint8Array(data);
+         * try {
+         *     worker.postMessage({id: id, data: copy.buffer, sampleSize: sampleSize}, [copy.buffer]);
+         *     posted = true;
+         * } catch (e) {
+         *     console.error("Fail to post bitmap " + id + " to a decode worker: " + e);
+         * }
+         */{}
+        if (posted) {
+            sPendingDecodes.put(id, bitmap);
+        }
+        return posted;
+    }
+
+    /* package */ static void onWorkerDecoded(int id, Object pixels) {
+        Bitmap bitmap = sPendingDecodes.remove(id);
+        if (bitmap != null) {
+            bitmap.onAsyncDecoded(pixels);
+        }
+    }
+
+    /**
+     * Return how many pixels of the source make one pixel of the bitmap in
+     * each direction. Nine-patches are not sampled: their chunk counts
+     * source pixels.
+     */
+    /* package */ static int getSampleSize(Options opts, byte[] ninePatchChunk) {
+        if (opts == null || opts.inSampleSize <= 1 || ninePatchChunk != null) {
+            return 1;
+        }
+        return opts.inSampleSize;
+    }
+
+    /**
+     * Return the size of the bitmap along an edge of the given size in the
+     * source, the way PNG.decodeRegion samples it.
+     */
+    /* package */ static int getSampledSize(int size, int sampleSize) {
+        return Math.max(1, size / sampleSize);
+    }
+
+    /**
+     * Report the size of the bitmap to be decoded in opts.
+     *
+     * @return true if only the size was asked for.
+     */
+    private static boolean setOutSize(Options opts, int width, int height, int sampleSize) {
+        if (opts == null) {
+            return false;
+        }
+        opts.outWidth = getSampledSize(width, sampleSize);
+        opts.outHeight = getSampledSize(height, sampleSize);
+        opts.outMimeType = "image/png";
+        return opts.inJustDecodeBounds;
+    }
+
+    private static boolean shouldDecodeAsync(Options opts, int width, int height) {
+        return opts != null && opts.inDecodeAsync
+                && width * height >= ASYNC_DECODE_MIN_PIXELS;
+    }
+
     private static Config getConfig(int colorType, int bits, int hasAlpha) {
         // FIXME: return bitmap config according to type, currently always return ARGB_8888 because
         // we will decode the data into a HTML5 canvas.
@@ -1130,19 +1395,25 @@ var FlateStream = (function() {
          * bits = png.bits;
          * hasAlpha = png.hasAlphaChannel;
          */{}
-        bm = android.graphics.Bitmap.nativeCreateBitmap(null, 0, width, width, height,
-                getConfig(colorType, bits, hasAlpha), false);
-        bm.resID = resId;
-        bm.fileName = fileName;
-        Log.d("BitmapDecoder", "Decode bitmap fileName: " + fileName + " resID:" + resId);
         byte[] np = null;
-        bm.mRawData = storage;
         /**
          * @j2sNative
          * if (png.ninePatchChunk) { // nine patch image
          *     np = png.ninePatchChunk; 
          * }
          */{}
+        int sampleSize = getSampleSize(opts, np);
+        if (setOutSize(opts, width, height, sampleSize)) {
+            return null;
+        }
+        bm = android.graphics.Bitmap.nativeCreateBitmap(null, 0,
+                getSampledSize(width, sampleSize), getSampledSize(width, sampleSize),
+                getSampledSize(height, sampleSize), getConfig(colorType, bits, hasAlpha), false);
+        bm.resID = resId;
+        bm.fileName = fileName;
+        Log.d("BitmapDecoder", "Decode bitmap fileName: " + fileName + " resID:" + resId);
+        bm.mRawData = storage;
+        bm.setSampleSize(sampleSize);
          if (np != null) {
              Res_png_9patch patch = Res_png_9patch.deserialize(np);
              bm.setNinePatch(patch);
@@ -1152,6 +1423,8 @@ var FlateStream = (function() {
                  padding.right = patch.paddingRight;
                  padding.bottom = patch.paddingBottom;
              }
+         } else if (shouldDecodeAsync(opts, width, height)) {
+             bm.setDecodeAsync(true);
          }
         return bm;
     }
@@ -1177,20 +1450,27 @@ var FlateStream = (function() {
          * bits = png.bits;
          * hasAlpha = png.hasAlphaChannel;
          */{}
-         
-        bm = android.graphics.Bitmap.createBitmap(width, height,
-                getConfig(colorType, bits, hasAlpha));
         byte[] np = null;
-        bm.mRawData = data;
         /**
          * @j2sNative 
          * if (png.ninePatchChunk) { // nine patch image
          *     np = png.ninePatchChunk; 
          * }
          */{}
+        int sampleSize = getSampleSize(opts, np);
+        if (setOutSize(opts, width, height, sampleSize)) {
+            return null;
+        }
+         
+        bm = android.graphics.Bitmap.createBitmap(getSampledSize(width, sampleSize),
+                getSampledSize(height, sampleSize), getConfig(colorType, bits, hasAlpha));
+        bm.mRawData = data;
+        bm.setSampleSize(sampleSize);
          if (np != null) {
              Res_png_9patch patch = Res_png_9patch.deserialize(np);
              bm.setNinePatch(patch);
+         } else if (shouldDecodeAsync(opts, width, height)) {
+             bm.setDecodeAsync(true);
          }
         return bm;
     }
@@ -207,6 +207,17 @@ public class BitmapFactory {
          */
         public boolean inNativeAlloc;
 
+        /**
+         * If set, the pixels of a large bitmap are decoded in the background
+         * the first time it is drawn by a
+         * {@link android.graphics.drawable.BitmapDrawable}, which draws
+         * nothing until they are. Drawing the bitmap any other way, or
+         * reading its pixels, decodes them right away as usual.
+         *
+         * @hide MayLoon only
+         */
+        public boolean inDecodeAsync;
+
         /**
          * The resulting width of the bitmap, set independent of the state of
          * inJustDecodeBounds. However, if there is an error trying to decode,
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.graphics.Bitmap.Config;
+
+/**
+ * BitmapRegionDecoder can be used to decode a rectangle region from an image.
+ * BitmapRegionDecoder is particularly useful when an original image is large and
+ * you only need parts of the image.
+ *
+ * <p>To create a BitmapRegionDecoder, call newInstance(...).
+ * Given a BitmapRegionDecoder, users can call decodeRegion() repeatedly
+ * to get a decoded Bitmap of the specified region.
+ *
+ * MayLoon: only PNG images are supported. The image is parsed once; each
+ * region is decoded from the top of the image down to its last row, and
+ * only its own pixels are kept.
+ */
+public final class BitmapRegionDecoder {
+    private static final int PNG_SIGNATURE_LENGTH = 8;
+
+    private final int mWidth;
+    private final int mHeight;
+    private boolean mRecycled;
+    /**
+     * @j2sNative
+     * this.mPng = null; // the parsed PNG
+     */{}
+
+    /**
+     * Create a BitmapRegionDecoder from the specified byte array.
+     * Currently only the PNG format is supported.
+     *
+     * @param data byte array of compressed image data.
+     * @param offset offset into data for where the decoder should begin
+     *               parsing.
+     * @param length the number of bytes, beginning at offset, to parse
+     * @param isShareable If this is true, then the BitmapRegionDecoder may keep a
+     *                    shallow reference to the input. If this is false,
+     *                    then the BitmapRegionDecoder will explicitly make a copy of the
+     *                    input data, and keep that. Even if sharing is allowed,
+     *                    the implementation may still decide to make a deep
+     *                    copy of the input data.
+     * @throws IOException if the image format is not supported or can not be decoded.
+     */
+    public static BitmapRegionDecoder newInstance(byte[] data,
+            int offset, int length, boolean isShareable) throws IOException {
+        if ((offset | length) < 0 || data.length < offset + length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        if (offset != 0 || length != data.length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            data = copy;
+        }
+        return new BitmapRegionDecoder(data);
+    }
+
+    /**
+     * Create a BitmapRegionDecoder from an input stream.
+     * The stream's position will be where ever it was after the encoded data
+     * was read.
+     * Currently only the PNG format is supported.
+     *
+     * @param is The input stream that holds the raw data to be decoded into a
+     *           BitmapRegionDecoder.
+     * @param isShareable If this is true, then the BitmapRegionDecoder may keep a
+     *                    shallow reference to the input. If this is false,
+     *                    then the BitmapRegionDecoder will explicitly make a copy of the
+     *                    input data, and keep that. Even if sharing is allowed,
+     *                    the implementation may still decide to make a deep
+     *                    copy of the input data.
+     * @return BitmapRegionDecoder, or null if the image data could not be decoded.
+     * @throws IOException if the image format is not supported or can not be decoded.
+     */
+    public static BitmapRegionDecoder newInstance(InputStream is,
+            boolean isShareable) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int length;
+        while ((length = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, length);
+        }
+        if (baos.size() == 0) {
+            return null;
+        }
+        return new BitmapRegionDecoder(baos.toByteArray());
+    }
+
+    /**
+     * Create a BitmapRegionDecoder from a file path.
+     * Currently only the PNG format is supported.
+     *
+     * @param pathName complete path name for the file to be decoded.
+     * @param isShareable If this is true, then the BitmapRegionDecoder may keep a
+     *                    shallow reference to the input. If this is false,
+     *                    then the BitmapRegionDecoder will explicitly make a copy of the
+     *                    input data, and keep that. Even if sharing is allowed,
+     *                    the implementation may still decide to make a deep
+     *                    copy of the input data.
+     * @throws IOException if the image format is not supported or can not be decoded.
+     */
+    public static BitmapRegionDecoder newInstance(String pathName,
+            boolean isShareable) throws IOException {
+        InputStream stream = null;
+        try {
+            stream = new FileInputStream(pathName);
+            return newInstance(stream, isShareable);
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // do nothing here
+                }
+            }
+        }
+    }
+
+    private BitmapRegionDecoder(byte[] data) throws IOException {
+        if (!isPng(data)) {
+            throw new IOException("Image format not supported");
+        }
+        int width = 0, height = 0;
+        /**
+         * @j2sNative
+         * var png = new PNG(data, false);
+         * width = png.width;
+         * height = png.height;
+         * this.mPng = png;
+         */{}
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Image can not be decoded");
+        }
+        mWidth = width;
+        mHeight = height;
+    }
+
+    private static boolean isPng(byte[] data) {
+        return data.length > PNG_SIGNATURE_LENGTH && (data[0] & 0xFF) == 0x89
+                && data[1] == 'P' && data[2] == 'N' && data[3] == 'G';
+    }
+
+    /**
+     * Decodes a rectangle region in the image specified by rect.
+     *
+     * @param rect The rectangle that specified the region to be decode.
+     * @param options null-ok; Options that control downsampling.
+     *             inPurgeable is not supported.
+     * @return The decoded bitmap, or null if the image data could not be
+     *         decoded.
+     */
+    public Bitmap decodeRegion(Rect rect, BitmapFactory.Options options) {
+        checkRecycled("decodeRegion called on recycled region decoder");
+        if (rect.right <= 0 || rect.bottom <= 0 || rect.left >= getWidth()
+                || rect.top >= getHeight())
+            throw new IllegalArgumentException("rectangle is outside the image");
+
+        int left = Math.max(rect.left, 0);
+        int top = Math.max(rect.top, 0);
+        int right = Math.min(rect.right, mWidth);
+        int bottom = Math.min(rect.bottom, mHeight);
+        if (left >= right || top >= bottom) {
+            return null;
+        }
+        int sampleSize = BitmapDecoder.getSampleSize(options, null);
+        int width = BitmapDecoder.getSampledSize(right - left, sampleSize);
+        int height = BitmapDecoder.getSampledSize(bottom - top, sampleSize);
+        if (options != null) {
+            options.outWidth = width;
+            options.outHeight = height;
+            options.outMimeType = "image/png";
+        }
+
+        Bitmap bm = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+        if (!bm.ensureCachedCanvas(false, false)) {
+            return null;
+        }
+        /**
+         * @j2sNative
+         * this.mPng.decodeRegion(left, top, right, bottom, sampleSize, bm.mCachedImageData.data);
+         * bm.mIsImageDataDirty = true;
+         */{}
+        return bm;
+    }
+
+    /** Returns the original image's width */
+    public int getWidth() {
+        checkRecycled("getWidth called on recycled region decoder");
+        return mWidth;
+    }
+
+    /** Returns the original image's height */
+    public int getHeight() {
+        checkRecycled("getHeight called on recycled region decoder");
+        return mHeight;
+    }
+
+    /**
+     * Frees up the memory associated with this region decoder, and mark the
+     * region decoder as "dead", meaning it will throw an exception if decodeRegion(),
+     * getWidth() or getHeight() is called.
+     *
+     * <p>This operation cannot be reversed, so it should only be called if you are
+     * sure there are no further uses for the region decoder. This is an advanced call,
+     * and normally need not be called, since the normal GC process will free up this
+     * memory when there are no more references to this region decoder.
+     */
+    public void recycle() {
+        if (!mRecycled) {
+            mRecycled = true;
+            /**
+             * @j2sNative
+             * this.mPng = null;
+             */{}
+        }
+    }
+
+    /**
+     * Returns true if this region decoder has been recycled.
+     * If so, then it is an error to try use its method.
+     *
+     * @return true if the region decoder has been recycled
+     */
+    public final boolean isRecycled() {
+        return mRecycled;
+    }
+
+    /**
+     * Called by methods that want to throw an exception if the region decoder
+     * has already been recycled.
+     */
+    private void checkRecycled(String errorMessage) {
+        if (mRecycled) {
+            throw new IllegalStateException(errorMessage);
+        }
+    }
+}
@@ -54,11 +54,17 @@ public class Canvas {
     int _height;
     Matrix ctm = null; // current transformation matrix
     Rect mClipBounds = new Rect(); // current clipBounds
+    // Current clip in device coordinates: the intersection of every
+    // clipRect() mapped through the matrix it was made with. null until the
+    // first clipRect(), when nothing is clipped out.
+    private RectF mDeviceClip = null;
+    private final RectF mTempRect = new RectF();
 
     private class CanvasState {
         public Rect _rect = null;
         public Rect _clipBounds = null;
         public Matrix _ctm = null; // save ctm
+        public RectF _deviceClip = null; // save device clip
     }
 
 	private Bitmap mBM;
@@ -79,6 +85,30 @@ public class Canvas {
 	private int canvasType = 0;
 	private String activeCanvas = null;
 	private boolean opaqueFlag = false;
+
+    // 2D context of the element we draw into, resolved by getContext2D()
+    private Object mContext = null;
+    private Object mContextElement = null;
+    private int mContextWidth;
+    private int mContextHeight;
+
+    // Paint state last written into mContext, so that setHTML5CanvasContext()
+    // only writes the properties that changed. See invalidatePaintState().
+    private boolean mColorValid = false;
+    private int mColor;
+    private float mLineWidth;
+    private String mLineCap;
+    private String mLineJoin;
+    private float mMiterLimit;
+    private String mFont;
+    private String mTextAlign;
+
+    // Display list the calls made on this canvas are recorded into, if any.
+    // See beginRecording().
+    private DisplayList mRecorder = null;
+    // Non-zero while a display list plays back into this canvas; the objects
+    // it passes were copied when it was recorded and need no copy again.
+    /* package */ int mReplaying = 0;
 	
     // the SAVE_FLAG constants must match their native equivalents
 
@@ -116,6 +146,7 @@ public class Canvas {
         state._rect = new Rect(_ddx, _ddy, _ddx + _width, _ddy + _height);
         state._clipBounds = new Rect(mClipBounds);
         state._ctm = new Matrix(this.ctm);
+        state._deviceClip = mDeviceClip != null ? new RectF(mDeviceClip) : null;
         transList.add(state);
     }
 
@@ -141,18 +172,129 @@ public class Canvas {
     }
 
     public void chooseCanvas(int _canvasType) {
+        if (mRecorder != null) {
+            mRecorder.record(DisplayList.OP_CHOOSE_CANVAS, _canvasType);
+        }
         canvasType = _canvasType;
+        String previous = activeCanvas;
         if (canvasType == APP_CANVAS) {
             activeCanvas = appCanvasID;
         } else if (canvasType == SURFACEVIEW_CANVAS) {
             activeCanvas = surfaceViewCanvasID;
         }
+        if (activeCanvas != previous) {
+            // look the element up again on the next draw
+            mContextElement = null;
+        }
+    }
+
+    /**
+     * Return the 2D context of the element this canvas draws into, or null if
+     * there is none. The element is looked up once and kept until
+     * chooseCanvas() or setBitmap() changes the target.
+     */
+    private Object getContext2D() {
+        Object element = mContextElement;
+        Object owner = null;
+        int width = 0;
+        int height = 0;
+        /**
+         * @j2sNative
+         * if (this.mBM != null) {
+         *     element = this.mBM.mCachedCanvas;
+         *     if (element != null) {
+         *         // Pixels set on the bitmap go under what is drawn now
+         *         this.mBM.putDirtyPixels();
+         *     }
+         * } else if (element == null && this.activeCanvas != null) {
+         *     element = document.getElementById(this.activeCanvas);
+         * }
+         * if (element != null) {
+         *     width = element.width;
+         *     height = element.height;
+         *     owner = element.mStateOwner;
+         *     element.mStateOwner = this;
+         * }
+         */{}
+        if (element == null) {
+            return null;
+        }
+        if (element != mContextElement) {
+            mContextElement = element;
+            /**
+             * @j2sNative
+             * this.mContext = element.getContext("2d");
+             */{}
+            invalidatePaintState();
+        } else if (owner != this || width != mContextWidth || height != mContextHeight) {
+            // Another Canvas drew into the element, or it was resized, which
+            // resets the context. Either way our view of its state is stale.
+            invalidatePaintState();
+        }
+        mContextWidth = width;
+        mContextHeight = height;
+        return mContext;
+    }
+
+    /**
+     * Forget the paint state last written into the context, so that the next
+     * setHTML5CanvasContext() writes every property again.
+     */
+    private void invalidatePaintState() {
+        mColorValid = false;
+        mLineWidth = -1;
+        mLineCap = null;
+        mLineJoin = null;
+        mMiterLimit = -1;
+        mFont = null;
+        mTextAlign = null;
     }
 
     public String getHTML5CanvasID() {
         return activeCanvas;
     }
 
+    /**
+     * Record the calls made on this canvas into the given display list, as
+     * well as drawing them, until the matching endRecording(). Whatever the
+     * list held before is dropped.
+     *
+     * @hide
+     */
+    public void beginRecording(DisplayList displayList) {
+        displayList.begin(alpha);
+        displayList.mOuter = mRecorder;
+        mRecorder = displayList;
+    }
+
+    /**
+     * Stop recording into the given display list, which must be the one the
+     * last beginRecording() started.
+     *
+     * @hide
+     */
+    public void endRecording(DisplayList displayList) {
+        if (mRecorder != displayList) {
+            throw new IllegalStateException("Unbalanced endRecording");
+        }
+        mRecorder = displayList.mOuter;
+        displayList.mOuter = null;
+    }
+
+    private void recordDraw(int op, float[] args, Object r0, Object r1, Object r2, Object r3,
+            int refCount) {
+        mRecorder.recordDraw(op, alpha, args, r0, r1, r2, r3, refCount);
+    }
+
+    private Paint copyForRecording(Paint paint) {
+        if (paint == null || mReplaying > 0) {
+            return paint;
+        }
+        Paint copy = new Paint();
+        copy.set(paint);
+        return copy;
+    }
+
     /**
      * Construct a canvas with the specified bitmap to draw into. The bitmap
      * must be mutable.
@@ -226,33 +368,47 @@ public class Canvas {
      * @param paint
      */
     private void setHTML5CanvasContext(Paint paint) {
-        // line style
-        String rgb = Color.toString(paint.getColor());
+        Object context = getContext2D();
+        if (context == null) {
+            return;
+        }
+
+        // line style, only the properties that differ from the context
+        String rgb = null;
+        int color = paint.getColor();
+        if (!mColorValid || color != mColor) {
+            rgb = Color.toString(color);
+            mColor = color;
+            mColorValid = true;
+        }
         float strokeWidth = paint.getStrokeWidth();
+        boolean lineWidthChanged = strokeWidth != mLineWidth;
+        mLineWidth = strokeWidth;
         String strokeCap = paintCapAndJoinMap.get(paint.getStrokeCap());
+        boolean lineCapChanged = strokeCap != null && !strokeCap.equals(mLineCap);
+        mLineCap = strokeCap;
         String strokeJoin = paintCapAndJoinMap.get(paint.getStrokeJoin());
+        boolean lineJoinChanged = strokeJoin != null && !strokeJoin.equals(mLineJoin);
+        mLineJoin = strokeJoin;
         float strokeMiter = paint.getStrokeMiter();
-        
-        // font style
-        Typeface typeface = paint.getTypeface();
+        boolean miterChanged = strokeMiter != mMiterLimit;
+        mMiterLimit = strokeMiter;
+
+        // font style, the font string is cached by the paint
+        String font = paint.setFontCanvasProperties();
+        boolean fontChanged = !font.equals(mFont);
+        mFont = font;
         String textAlign = paintCapAndJoinMap.get(paint.getTextAlign());
-        
-        String font = null;
-        if (typeface != null) {
-            // convert Typeface to HTML5 font string
-            font = typeface.getStyleName();
-            font += " ";
-            font += paint.getTextSize() + "px";
-            font += " ";
-            font += typeface.getFamilyName();
-        } else {
-            // Set the font property into paint's canvas
-            font = paint.setFontCanvasProperties();
-        }
+        boolean textAlignChanged = textAlign != null && !textAlign.equals(mTextAlign);
+        mTextAlign = textAlign;
 
         // get Paint's shader
         Shader  shader = paint.getShader();
         ShaderType shaderType = paint.getShaderType();
+        if (shader != null) {
+            // the shader replaces fillStyle and strokeStyle below
+            mColorValid = false;
+        }
         // get Paint's xfermode
         Xfermode xfermode = paint.getXfermode();
         if (xfermode != null && !(xfermode instanceof PorterDuffXfermode)) {
@@ -262,26 +418,18 @@ public class Canvas {
         
         /**
          * @j2sNative
-         * var canvas = null;
-         * if (this.mBM != null) {
-         *    canvas = this.mBM.mCachedCanvas;
-         * } else {
-         *    canvas  = document.getElementById(this.activeCanvas);
-         * }
-         * var context = canvas.getContext("2d");
-         * 
          * // line style setting
-         * context.fillStyle   = rgb;
-         * context.strokeStyle = rgb;
-         * context.lineWidth   = strokeWidth;
-         * context.lineCap     = strokeCap;
-         * context.lineJoin    = strokeJoin;
-         * context.miterLimit  = strokeMiter;
+         * if (rgb != null) {
+         *     context.fillStyle   = rgb;
+         *     context.strokeStyle = rgb;
+         * }
+         * if (lineWidthChanged) context.lineWidth  = strokeWidth;
+         * if (lineCapChanged)   context.lineCap    = strokeCap;
+         * if (lineJoinChanged)  context.lineJoin   = strokeJoin;
+         * if (miterChanged)     context.miterLimit = strokeMiter;
          * // font setting
-         * if (font != null) {
-         *    context.font = font;
-         * }  
-         * context.textAlign   = textAlign;
+         * if (fontChanged)      context.font       = font;
+         * if (textAlignChanged) context.textAlign  = textAlign;
          * 
          * // set Shader if we have.
          * var gradient = null;
@@ -426,23 +574,26 @@ public class Canvas {
      * @param b blue component (0..255) of the color to draw onto the canvas
      */
     public void drawARGB(int a, int r, int g, int b) {
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_ARGB, new float[] { a, r, g, b }, null, null, null,
+                    null, 0);
+        }
         Paint paint = new Paint();
         paint.setARGB(a, r, g, b);
         
+        Object _context = getContext2D();
+        if (_context == null) {
+            return;
+        }
         setHTML5CanvasContext(paint);
         
         /**
          * @j2sNative
-         * var _canvas = null;
          * if (this.mBM != null) {
-         *    _canvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _canvas = document.getElementById(this.activeCanvas);
          * }
-         * var _context = _canvas.getContext("2d");
-         * _context.fillRect(0, 0, _canvas.width, _canvas.height); 
+         * _context.fillRect(0, 0, this.mContextWidth, this.mContextHeight); 
          */
         {}
     }
@@ -483,6 +634,10 @@ public class Canvas {
         }
               
         String subText = text.substring(start, end);
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_TEXT, new float[] { x, y }, subText,
+                    copyForRecording(paint), null, null, 2);
+        }
         if (paint != null) {
             Xfermode xfermode = paint.getXfermode();
             if (xfermode != null && xfermode instanceof PorterDuffXfermode) {
@@ -494,18 +649,17 @@ public class Canvas {
             }
             setHTML5CanvasContext(paint);
         }
+        Object _context = getContext2D();
+        if (_context == null) {
+            return;
+        }
         
         /**
          * @j2sNative
-         * var _canvas = null;
          * if (this.mBM != null) {
-         *    _canvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _canvas = document.getElementById(this.activeCanvas);
          * }
-         * var _context = _canvas.getContext("2d");
          * _context.fillText(subText, x, y);
          */{}
     }
@@ -607,19 +761,24 @@ public class Canvas {
     }
     
 	public void drawGradient(int startColor, int endColor, int angle) {
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_GRADIENT, null,
+                    new int[] { startColor, endColor, angle }, null, null, null, 1);
+        }
 		String start = Color.toString(startColor);
 		String end = Color.toString(endColor);
+		Object _context = getContext2D();
+		if (_context == null) {
+		    return;
+		}
+		// the gradient replaces fillStyle
+		mColorValid = false;
 		/**
 		 * @j2sNative
-		 * var _canvas = null;
          * if (this.mBM != null) {
-         *    _canvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _canvas = document.getElementById(this.activeCanvas);
          * }
-		 * var _context = _canvas.getContext("2d");
 		 * var grad = _context.createLinearGradient(0, 0, 0, this._height);
 		 * grad.addColorStop(0, start);
 		 * grad.addColorStop(1, end);
@@ -641,18 +800,21 @@ public class Canvas {
      */
     public void drawLine(float startX, float startY, float stopX, float stopY,
             Paint paint) {
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_LINE, new float[] { startX, startY, stopX, stopY },
+                    copyForRecording(paint), null, null, null, 1);
+        }
+        Object _context = getContext2D();
+        if (_context == null) {
+            return;
+        }
         setHTML5CanvasContext(paint);
         /**
          * @j2sNative
-         * var _canvas = null;
          * if (this.mBM != null) {
-         *    _canvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _canvas = document.getElementById(this.activeCanvas);
          * }
-         * var _context = _canvas.getContext("2d");
          * _context.beginPath();
          * _context.moveTo(startX,startY);
          * _context.lineTo(stopX,stopY);
@@ -692,10 +854,22 @@ public class Canvas {
         // Compute the tranform matrix
         Matrix tmp = new Matrix();
         tmp.setConcat(this.ctm, matrix);
+
+        // Record this call rather than the drawBitmap() it is made of
+        DisplayList recorder = mRecorder;
+        if (recorder != null) {
+            recordDraw(DisplayList.OP_DRAW_BITMAP_MATRIX, null, bitmap,
+                    mReplaying > 0 ? matrix : new Matrix(matrix), copyForRecording(paint), null, 3);
+            mRecorder = null;
+        }
         
         // Draw bitmap 
         setHTML5CanvasMatrix(tmp);
-        drawBitmap(bitmap, 0, 0, paint);
+        try {
+            drawBitmap(bitmap, 0, 0, paint);
+        } finally {
+            mRecorder = recorder;
+        }
         
         // Restore the matrix
         setHTML5CanvasMatrix(this.ctm);
@@ -722,6 +896,10 @@ public class Canvas {
      */
     public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
         throwIfRecycled(bitmap);
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_BITMAP, new float[] { left, top }, bitmap,
+                    copyForRecording(paint), null, null, 2);
+        }
         if (this.activeCanvas == null && this.mBM == null) {
             return;
         }
@@ -737,20 +915,19 @@ public class Canvas {
             }
             setHTML5CanvasContext(paint);
         }
+        Object activeContext = getContext2D();
+        if (activeContext == null) {
+            return;
+        }
         
         /**
          * @j2sNative
          * if (!bitmap.ensureCachedCanvas(false, true)) return;
          * // draw offscreen canvas into onscreen canvas
-         * var _activeCanvas = null;
          * if (this.mBM != null) {
-         *    _activeCanvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _activeCanvas = document.getElementById(this.activeCanvas);
          * }
-         * var activeContext = _activeCanvas.getContext("2d");
          * activeContext.drawImage(bitmap.mCachedCanvas, left, top);
          */
         {}
@@ -792,6 +969,12 @@ public class Canvas {
             return;
         }
 
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_BITMAP_RECTF, null, bitmap,
+                    mReplaying > 0 ? src : new Rect(src), mReplaying > 0 ? dst : new RectF(dst),
+                    copyForRecording(paint), 4);
+        }
+
         if (this.activeCanvas == null && this.mBM == null) {
             return;
         }
@@ -807,20 +990,19 @@ public class Canvas {
             }
             setHTML5CanvasContext(paint);
         }
+        Object activeContext = getContext2D();
+        if (activeContext == null) {
+            return;
+        }
 
         /**
          * @j2sNative
          * if (!bitmap.ensureCachedCanvas(false, true)) return;
          * // draw offscreen canvas into onscreen canvas
-         * var _activeCanvas = null;
          * if (this.mBM != null) {
-         *    _activeCanvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _activeCanvas = document.getElementById(this.activeCanvas);
          * }
-         * var activeContext = _activeCanvas.getContext("2d");
          * activeContext.drawImage(bitmap.mCachedCanvas, src.left, src.top, src.width(), src.height(),
          *                                               dst.left, dst.top, dst.width(), dst.height());
          */{}
@@ -863,26 +1045,31 @@ public class Canvas {
             return;
         }
 
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_BITMAP_RECT, null, bitmap,
+                    mReplaying > 0 ? src : new Rect(src), mReplaying > 0 ? dst : new Rect(dst),
+                    copyForRecording(paint), 4);
+        }
+
         if (this.activeCanvas == null && this.mBM == null) {
             return;
         }
 
         if (paint != null)
             setHTML5CanvasContext(paint);
+        Object activeContext = getContext2D();
+        if (activeContext == null) {
+            return;
+        }
 
         /**
          * @j2sNative
          * if (!bitmap.ensureCachedCanvas(false, true)) return;
          * // draw offscreen canvas into onscreen canvas
-         * var _activeCanvas = null;
          * if (this.mBM != null) {
-         *    _activeCanvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _activeCanvas = document.getElementById(this.activeCanvas);
          * }
-         * var activeContext = _activeCanvas.getContext("2d");
          * activeContext.drawImage(bitmap.mCachedCanvas, src.left, src.top, src.width(), src.height(),
          *                                               dst.left, dst.top, dst.width(), dst.height());
          */{}
@@ -924,24 +1111,15 @@ public class Canvas {
 	}
 
 	public void translate(float dx, float dy) {
+		if (mRecorder != null) {
+		    mRecorder.record(DisplayList.OP_TRANSLATE, dx, dy);
+		}
 		_ddx += dx;
 		_ddy += dy;
-		if(this.mBM != null){
-			/**
-			 * @j2sNative
-			 * var context = this.mBM.mCachedCanvas.getContext("2d");
-		     * context.translate(dx, dy);
-			 */{}
-		     // track the transformation in ctm
-		    this.ctm.preTranslate(dx, dy);
-			return;
-		} 
-		
+		Object _context = getContext2D();
 		/**
 		  @j2sNative
-		  var _canvas = document.getElementById(this.activeCanvas);
-		  if (_canvas != null) {
-		     var _context = _canvas.getContext("2d");
+		  if (_context != null) {
 		     _context.translate(dx, dy);
 		  }
 		 */{}
@@ -957,22 +1135,15 @@ public class Canvas {
      * @param sy The amount to scale in Y
      */
     public void scale(float sx, float sy) {
-        if(this.mBM != null){
-            /**
-             * @j2sNative
-             * var context = this.mBM.mCachedCanvas.getContext("2d");
-             * context.scale(sx, sy);
-             */{}
-             // track the transformation in ctm
-            this.ctm.preScale(sx, sy);
-            return;
+        if (mRecorder != null) {
+            mRecorder.record(DisplayList.OP_SCALE, sx, sy);
         }
-        
+        Object _context = getContext2D();
         /**
           @j2sNative
-          var _canvas = document.getElementById(this.activeCanvas);
-          var _context = _canvas.getContext("2d");
-          _context.scale(sx, sy);
+          if (_context != null) {
+             _context.scale(sx, sy);
+          }
          */{}
 
         // track the transformation in ctm
@@ -994,26 +1165,25 @@ public class Canvas {
     }
 
 	public void clear(){
+		if (mRecorder != null) {
+		    mRecorder.record(DisplayList.OP_CLEAR);
+		}
+		Object _context = getContext2D();
 		/** 
 		 * @j2sNative
-		 * var _activeCanvas = null;
+		 * if(!_context){
+		 * 	return;
+		 * }
          * if (this.mBM != null) {
-         *    _activeCanvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _activeCanvas = document.getElementById(this.activeCanvas);
          * }
-		 * if(!_activeCanvas){
-		 * 	return;
-		 * }
 		  //MayLoon: Please refer to 
 		  //http://jsperf.com/ctx-clearrect-vs-canvas-width-canvas-width/2
 		  //http://www.html5rocks.com/en/tutorials/canvas/performance/
 		  //for more detail about redraw a canvas
 		  //_canvas.width = _canvas.width;
-		 * var _context = _activeCanvas.getContext("2d");
-		 * _context.clearRect(0,0,_activeCanvas.width,_activeCanvas.height);
+		 * _context.clearRect(0,0,this.mContextWidth,this.mContextHeight);
 		 */
 		{
 		}
@@ -1037,22 +1207,15 @@ public class Canvas {
      * @param degrees The amount to rotate, in degrees
      */
     public void rotate(float degrees) {
-        if(this.mBM != null){
-            /**
-             * @j2sNative
-             * var context = this.mBM.mCachedCanvas.getContext("2d");
-             * context.rotate(degrees * Math.PI / 180);
-             */{}
-             // track the transformation in ctm
-             this.ctm.preRotate(degrees);
-            return;
-        } 
-        
+        if (mRecorder != null) {
+            mRecorder.record(DisplayList.OP_ROTATE, degrees);
+        }
+        Object _context = getContext2D();
         /**
          * @j2sNative 
-         * var _canvas = document.getElementById(this.activeCanvas); 
-         * var _context = _canvas.getContext("2d");
-         * _context.rotate(degrees * Math.PI / 180); 
+         * if (_context != null) {
+         *     _context.rotate(degrees * Math.PI / 180); 
+         * }
          */{}
 
         // track the transformation in ctm
@@ -1074,26 +1237,20 @@ public class Canvas {
         float MTRANS_X = mt[Matrix.MTRANS_X];
         float MTRANS_Y = mt[Matrix.MTRANS_Y];
         
-        if(this.mBM != null){
-            /**
-             * @j2sNative
-             * var context = this.mBM.mCachedCanvas.getContext("2d");
-             * context.setTransform(MSCALE_X, MSKEW_Y, MSKEW_X, 
-             *                      MSCALE_Y, MTRANS_X, MTRANS_Y);
-             */{}
-             return;
-        }
-
+        Object _context = getContext2D();
         /**
          * @j2sNative
-         *  var _canvas = document.getElementById(this.activeCanvas);
-         *  var _context = _canvas.getContext("2d");
-         *  _context.setTransform(MSCALE_X, MSKEW_Y, MSKEW_X, 
-         *                          MSCALE_Y, MTRANS_X, MTRANS_Y);
+         *  if (_context != null) {
+         *      _context.setTransform(MSCALE_X, MSKEW_Y, MSKEW_X, 
+         *                            MSCALE_Y, MTRANS_X, MTRANS_Y);
+         *  }
          */{}
     }
     
     public void skew(float sx, float sy) {
+        if (mRecorder != null) {
+            mRecorder.record(DisplayList.OP_SKEW, sx, sy);
+        }
         // track the transformation in ctm
         this.ctm.preSkew(sx, sy);
 
@@ -1106,6 +1263,10 @@ public class Canvas {
      * @param matrix The matrix to preconcatenate with the current matrix
      */
     public void concat(Matrix matrix) {
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_CONCAT, null,
+                    mReplaying > 0 ? matrix : new Matrix(matrix), null, null, null, 1);
+        }
         // track the transformation in ctm
         this.ctm.preConcat(matrix);
 
@@ -1120,6 +1281,11 @@ public class Canvas {
      *               null, set the current matrix to identity.
      */
     public void setMatrix(Matrix matrix) {
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_SET_MATRIX, null,
+                    matrix == null || mReplaying > 0 ? matrix : new Matrix(matrix),
+                    null, null, null, 1);
+        }
         // track the transformation in ctm
         if (matrix == null) {
             this.ctm.reset();
@@ -1149,16 +1315,13 @@ public class Canvas {
     }
     
     public int save() {
+        if (mRecorder != null) {
+            mRecorder.record(DisplayList.OP_SAVE);
+        }
+        Object context = getContext2D();
         /**
          * @j2sNative 
-         * var canvas = null;
-         * if (this.mBM != null) { 
-         *     canvas = this.mBM.mCachedCanvas;
-         * } else {
-         *     canvas = document.getElementById(this.activeCanvas);
-         * } 
-         * if (canvas != null) {
-         *    var context = canvas.getContext("2d");
+         * if (context != null) {
          *    context.save();
          * }
          */{}
@@ -1168,6 +1331,7 @@ public class Canvas {
         state._rect = new Rect(_ddx, _ddy, _ddx + _width, _ddy + _height);
         state._clipBounds = new Rect(mClipBounds);
         state._ctm = new Matrix(this.ctm);
+        state._deviceClip = mDeviceClip != null ? new RectF(mDeviceClip) : null;
         transList.add(state);
         return saveCount;
     }
@@ -1205,19 +1369,18 @@ public class Canvas {
         if (saveCount <= 1) {
             throw new IllegalStateException("Underflow in restore");
         }
+        if (mRecorder != null) {
+            mRecorder.record(DisplayList.OP_RESTORE);
+        }
+        Object context = getContext2D();
         /**
          * @j2sNative
-         * var canvas = null;
-         * if (this.mBM != null) {
-         *     canvas = this.mBM.mCachedCanvas;
-         * } else {
-         *     canvas = document.getElementById(this.activeCanvas);
-         * }
-         * if (canvas != null) {
-         *    var context = canvas.getContext("2d");
+         * if (context != null) {
          *    context.restore();
          * }
          */{}
+        // restore() brings back the paint state of the matching save()
+        invalidatePaintState();
          
         Rect cache = ((CanvasState) transList.get(saveCount - 1))._rect;
         _ddx = cache.left;
@@ -1228,6 +1391,7 @@ public class Canvas {
         this.mClipBounds.copyFrom(clip);
         Matrix mt = ((CanvasState) transList.get(saveCount - 1))._ctm;
         this.ctm.set(mt);
+        mDeviceClip = ((CanvasState) transList.get(saveCount - 1))._deviceClip;
 
         transList.remove(saveCount - 1);
         saveCount--;
@@ -1248,16 +1412,13 @@ public class Canvas {
 
     public boolean clipRect(float left, float top,
                             float right, float bottom) {
+        if (mRecorder != null) {
+            mRecorder.record(DisplayList.OP_CLIP_RECT, left, top, right, bottom);
+        }
+        Object _context = getContext2D();
         /**
          * @j2sNative 
-         * var canvas = null;
-         * if (this.mBM != null) { 
-         *     canvas = this.mBM.mCachedCanvas;
-         * } else { 
-         *     canvas = document.getElementById(this.activeCanvas);
-         * } 
-         * if (canvas != null) {
-         *    var _context = canvas.getContext("2d");
+         * if (_context != null) {
          *    _context.beginPath();
          *    _context.rect(left,top,right-left,bottom-top);
          *    _context.closePath();
@@ -1266,7 +1427,91 @@ public class Canvas {
          */{}
 
         mClipBounds.set((int)left, (int)top, (int)right, (int)bottom);
-        return true;
+
+        final RectF bounds = mTempRect;
+        bounds.set(left, top, right, bottom);
+        this.ctm.mapRect(bounds);
+        if (mDeviceClip == null) {
+            mDeviceClip = new RectF(bounds);
+        } else if (!mDeviceClip.intersect(bounds)) {
+            mDeviceClip.setEmpty();
+        }
+        return !mDeviceClip.isEmpty();
+    }
+
+    /**
+     * Return true if the specified rectangle, after being transformed by the
+     * current matrix, would lie completely outside of the current clip. Call
+     * this to check if an area you intend to draw into is clipped out (and
+     * therefore you can skip making the draw calls).
+     *
+     * <p>MayLoon: nothing is rejected while a display list records, since the
+     * list may be played back later under a different clip.</p>
+     *
+     * @param left   The left side of the rectangle to compare with the
+     *               current clip
+     * @param top    The top of the rectangle to compare with the current
+     *               clip
+     * @param right  The right side of the rectangle to compare with the
+     *               current clip
+     * @param bottom The bottom of the rectangle to compare with the
+     *               current clip
+     * @param type   true if the rect should be considered antialiased,
+     *               since that means it may affect a larger area (more
+     *               pixels) than non-antialiased ({@link EdgeType#BW}).
+     * @return       true if the rect (transformed by the canvas' matrix)
+     *               does not intersect with the canvas' clip
+     */
+    public boolean quickReject(float left, float top, float right, float bottom,
+            EdgeType type) {
+        final RectF clip = mDeviceClip;
+        if (clip == null || mRecorder != null) {
+            return false;
+        }
+        final RectF bounds = mTempRect;
+        bounds.set(left, top, right, bottom);
+        this.ctm.mapRect(bounds);
+        if (type == EdgeType.AA) {
+            // antialiased edges may touch the pixel around the bounds
+            bounds.inset(-1, -1);
+        }
+        return !RectF.intersects(clip, bounds);
+    }
+
+    /**
+     * Return true if the specified rectangle, after being transformed by the
+     * current matrix, would lie completely outside of the current clip. Call
+     * this to check if an area you intend to draw into is clipped out (and
+     * therefore you can skip making the draw calls).
+     *
+     * @param rect  the rect to compare with the current clip
+     * @param type  specifies how to treat the edges (BW or antialiased)
+     * @return      true if the rect (transformed by the canvas' matrix)
+     *              does not intersect with the canvas' clip
+     */
+    public boolean quickReject(RectF rect, EdgeType type) {
+        return quickReject(rect.left, rect.top, rect.right, rect.bottom, type);
+    }
+
+    /**
+     * Return true if the specified path, after being transformed by the
+     * current matrix, would lie completely outside of the current clip. Call
+     * this to check if an area you intend to draw into is clipped out (and
+     * therefore you can skip making the draw calls). Note: for speed it may
+     * return false even if the path itself might not intersect the clip
+     * (i.e. the bounds of the path intersects, but the path does not).
+     *
+     * @param path        The path to compare with the current clip
+     * @param type        true if the path should be considered antialiased,
+     *                    since that means it may affect a larger area (more
+     *                    pixels) than non-antialiased ({@link EdgeType#BW}).
+     * @return            true if the path (transformed by the canvas' matrix)
+     *                    does not intersect with the canvas' clip
+     */
+    public boolean quickReject(Path path, EdgeType type) {
+        final RectF bounds = new RectF();
+        path.computeBounds(bounds, false);
+        return quickReject(bounds.left, bounds.top, bounds.right, bounds.bottom, type);
     }
     
     /**
@@ -1426,6 +1671,10 @@ public class Canvas {
      * @param paint The paint used to draw the path
      */
     public void drawPath(Path path, Paint paint) {
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_PATH, null, mReplaying > 0 ? path : new Path(path),
+                    copyForRecording(paint), null, null, 2);
+        }
         if (paint != null) {
             Xfermode xfermode = paint.getXfermode();
             if (xfermode != null && xfermode instanceof PorterDuffXfermode) {
@@ -1510,38 +1759,12 @@ public class Canvas {
     }
 
     public int getWidth() {
-        /**
-         * @j2sNative
-         * var _canvas = null;
-         * if (this.mBM != null) {
-         *    _canvas = this.mBM.mCachedCanvas;
-         * } else {
-         *    _canvas = document.getElementById(this.activeCanvas);
-         * }
-         * if (_canvas != null) {
-         *     this._width = _canvas.width;
-         * } else {
-         *     this._width = 0;
-         * }
-         */{}
+        _width = getContext2D() != null ? mContextWidth : 0;
         return _width;
     }
 
     public int getHeight() {
-        /**
-         * @j2sNative
-         * var _canvas = null;
-         * if (this.mBM != null) {
-         *    _canvas = this.mBM.mCachedCanvas;
-         * } else {
-         *    _canvas = document.getElementById(this.activeCanvas);
-         * }
-         * if (_canvas != null) {
-         *     this._height = _canvas.width;
-         * } else {
-         *     this._height = 0;
-         * }
-         */{}
+        _height = getContext2D() != null ? mContextHeight : 0;
         return _height;
     }
 
@@ -1562,6 +1785,9 @@ public class Canvas {
 	
 	public void setBitmap(Bitmap bm){
 		mBM = bm;
+		mContextElement = null;
+		// the clip of the previous target doesn't apply to the new one
+		mDeviceClip = null;
 		if(mBM!=null){
 	        // Ensure Cached Canvas is created for this bitmap
 	        this.mBM.ensureCachedCanvas(false, false);
@@ -1649,19 +1875,22 @@ public class Canvas {
     
     public void drawPaint(Paint paint) {
         //System.out.println("Stub" + " Function : drawPaint");
+        if (mRecorder != null) {
+            recordDraw(DisplayList.OP_DRAW_PAINT, null, copyForRecording(paint), null, null,
+                    null, 1);
+        }
+        Object _context = getContext2D();
+        if (_context == null) {
+            return;
+        }
     	setHTML5CanvasContext(paint);
     	/**
          * @j2sNative
-         * var _canvas = null;
          * if (this.mBM != null) {
-         *    _canvas = this.mBM.mCachedCanvas;
          *    // Update the bitmap cached canvas dirty flag
          *    this.mBM.mIsCachedCanvasDirty = true;
-         * } else {
-         *    _canvas = document.getElementById(this.activeCanvas);
          * }
-         * var _context = _canvas.getContext("2d");
-         * _context.fillRect(0, 0, _canvas.width, _canvas.height); 
+         * _context.fillRect(0, 0, this.mContextWidth, this.mContextHeight); 
          */
         {}
         return;
@@ -1729,16 +1958,13 @@ public class Canvas {
     }
 
     public int saveLayerAlpha(int left, int top, int right, int bottom, int Alpha, int saveFlags) {
+        if (mRecorder != null) {
+            mRecorder.recordSaveLayerAlpha(left, top, right, bottom, Alpha, saveFlags);
+        }
+        Object context = getContext2D();
         /**
          * @j2sNative 
-         * var canvas = null;
-         * if (this.mBM != null) { 
-         *     canvas = this.mBM.mCachedCanvas;
-         * } else {
-         *     canvas = document.getElementById(this.activeCanvas);
-         * } 
-         * if (canvas != null) {
-         *    var context = canvas.getContext("2d");
+         * if (context != null) {
          *    var alpha = (Alpha & 0xFF) / 255;
          *    context.globalAlpha = alpha;
          *    context.save();
@@ -1754,6 +1980,7 @@ public class Canvas {
         state._rect = new Rect(_ddx, _ddy, _ddx + _width, _ddy + _height);
         state._clipBounds = new Rect(mClipBounds);
         state._ctm = new Matrix(this.ctm);
+        state._deviceClip = mDeviceClip != null ? new RectF(mDeviceClip) : null;
         transList.add(state);
         return saveCount;
     }
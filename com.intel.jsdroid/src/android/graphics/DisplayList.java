@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * A display list records the calls made on a {@link Canvas} so that they can
+ * be played back later into the same or another canvas, without running the
+ * code that issued them again.
+ *
+ * MayLoon: the commands are kept in typed arrays: one opcode per call in a
+ * Uint8Array, the numeric arguments in a Float32Array, and the objects a call
+ * refers to (paints, paths, bitmaps, text) in a plain array. Paints, paths
+ * and rects are copied when recorded, since callers are free to change them
+ * once the call returns. Bitmaps are referenced, so a replay draws their
+ * current pixels.
+ *
+ * Lists nest: a list that begins recording while another one is recording
+ * on the same canvas gets its commands appended to the outer list as well.
+ *
+ * @hide
+ */
+public final class DisplayList {
+
+    static final int OP_SAVE = 1;
+    static final int OP_SAVE_LAYER_ALPHA = 2;
+    static final int OP_RESTORE = 3;
+    static final int OP_TRANSLATE = 4;
+    static final int OP_SCALE = 5;
+    static final int OP_ROTATE = 6;
+    static final int OP_SKEW = 7;
+    static final int OP_CONCAT = 8;
+    static final int OP_SET_MATRIX = 9;
+    static final int OP_CLIP_RECT = 10;
+    static final int OP_CHOOSE_CANVAS = 11;
+    static final int OP_SET_ALPHA = 12;
+    static final int OP_CLEAR = 13;
+    static final int OP_DRAW_ARGB = 14;
+    static final int OP_DRAW_GRADIENT = 15;
+    static final int OP_DRAW_PAINT = 16;
+    static final int OP_DRAW_LINE = 17;
+    static final int OP_DRAW_PATH = 18;
+    static final int OP_DRAW_TEXT = 19;
+    static final int OP_DRAW_BITMAP = 20;
+    static final int OP_DRAW_BITMAP_MATRIX = 21;
+    static final int OP_DRAW_BITMAP_RECT = 22;
+    static final int OP_DRAW_BITMAP_RECTF = 23;
+
+    private static final int INITIAL_OPS = 64;
+    private static final int INITIAL_ARGS = 256;
+    private static final int INITIAL_REFS = 32;
+
+    /** A Uint8Array of OP_*, one per recorded call */
+    private Object mOps;
+    private int mOpCount;
+
+    /** A Float32Array with the numeric arguments of the calls, in order */
+    private Object mArgs;
+    private int mArgCount;
+
+    /** The objects the calls refer to, in order */
+    private Object[] mRefs;
+    private int mRefCount;
+
+    /** The list that was recording on the canvas when this one began */
+    DisplayList mOuter;
+
+    /** The canvas alpha the recorded calls were last made with */
+    private float mAlpha;
+
+    public DisplayList() {
+        mRefs = new Object[INITIAL_REFS];
+        int ops = INITIAL_OPS;
+        int args = INITIAL_ARGS;
+        /**
+         * @j2sNative
+         * this.mOps = new Uint8Array(ops);
+         * this.mArgs = new Float32Array(args);
+         */{}
+    }
+
+    /**
+     * Drop the recorded calls, keeping the storage for the next recording.
+     */
+    public void reset() {
+        for (int i = 0; i < mRefCount; i++) {
+            mRefs[i] = null;
+        }
+        mOpCount = 0;
+        mArgCount = 0;
+        mRefCount = 0;
+    }
+
+    /**
+     * Return true if nothing was recorded into this list.
+     */
+    public boolean isEmpty() {
+        return mOpCount == 0;
+    }
+
+    /**
+     * Play the recorded calls back into the given canvas, as if they were
+     * made on it at its current matrix and clip.
+     */
+    public void replay(Canvas canvas) {
+        final int count = mOpCount;
+        final Object[] refs = mRefs;
+        int a = 0;
+        int r = 0;
+        canvas.mReplaying++;
+        try {
+            for (int i = 0; i < count; i++) {
+                switch (op(i)) {
+                case OP_SAVE:
+                    canvas.save();
+                    break;
+                case OP_SAVE_LAYER_ALPHA:
+                    canvas.saveLayerAlpha((int) arg(a), (int) arg(a + 1), (int) arg(a + 2),
+                            (int) arg(a + 3), (int) arg(a + 4), (int) arg(a + 5));
+                    a += 6;
+                    break;
+                case OP_RESTORE:
+                    canvas.restore();
+                    break;
+                case OP_TRANSLATE:
+                    canvas.translate(arg(a), arg(a + 1));
+                    a += 2;
+                    break;
+                case OP_SCALE:
+                    canvas.scale(arg(a), arg(a + 1));
+                    a += 2;
+                    break;
+                case OP_ROTATE:
+                    canvas.rotate(arg(a));
+                    a += 1;
+                    break;
+                case OP_SKEW:
+                    canvas.skew(arg(a), arg(a + 1));
+                    a += 2;
+                    break;
+                case OP_CONCAT:
+                    canvas.concat((Matrix) refs[r++]);
+                    break;
+                case OP_SET_MATRIX:
+                    canvas.setMatrix((Matrix) refs[r++]);
+                    break;
+                case OP_CLIP_RECT:
+                    canvas.clipRect(arg(a), arg(a + 1), arg(a + 2), arg(a + 3));
+                    a += 4;
+                    break;
+                case OP_CHOOSE_CANVAS:
+                    canvas.chooseCanvas((int) arg(a));
+                    a += 1;
+                    break;
+                case OP_SET_ALPHA:
+                    canvas.alpha = arg(a);
+                    a += 1;
+                    break;
+                case OP_CLEAR:
+                    canvas.clear();
+                    break;
+                case OP_DRAW_ARGB:
+                    canvas.drawARGB((int) arg(a), (int) arg(a + 1), (int) arg(a + 2),
+                            (int) arg(a + 3));
+                    a += 4;
+                    break;
+                case OP_DRAW_GRADIENT: {
+                    int[] gradient = (int[]) refs[r++];
+                    canvas.drawGradient(gradient[0], gradient[1], gradient[2]);
+                    break;
+                }
+                case OP_DRAW_PAINT:
+                    canvas.drawPaint((Paint) refs[r++]);
+                    break;
+                case OP_DRAW_LINE:
+                    canvas.drawLine(arg(a), arg(a + 1), arg(a + 2), arg(a + 3),
+                            (Paint) refs[r++]);
+                    a += 4;
+                    break;
+                case OP_DRAW_PATH:
+                    canvas.drawPath((Path) refs[r], (Paint) refs[r + 1]);
+                    r += 2;
+                    break;
+                case OP_DRAW_TEXT: {
+                    String text = (String) refs[r];
+                    canvas.drawText(text, 0, text.length(), arg(a), arg(a + 1),
+                            (Paint) refs[r + 1]);
+                    a += 2;
+                    r += 2;
+                    break;
+                }
+                case OP_DRAW_BITMAP:
+                    canvas.drawBitmap((Bitmap) refs[r], arg(a), arg(a + 1), (Paint) refs[r + 1]);
+                    a += 2;
+                    r += 2;
+                    break;
+                case OP_DRAW_BITMAP_MATRIX:
+                    canvas.drawBitmap((Bitmap) refs[r], (Matrix) refs[r + 1], (Paint) refs[r + 2]);
+                    r += 3;
+                    break;
+                case OP_DRAW_BITMAP_RECT:
+                    canvas.drawBitmap((Bitmap) refs[r], (Rect) refs[r + 1], (Rect) refs[r + 2],
+                            (Paint) refs[r + 3]);
+                    r += 4;
+                    break;
+                case OP_DRAW_BITMAP_RECTF:
+                    canvas.drawBitmap((Bitmap) refs[r], (Rect) refs[r + 1], (RectF) refs[r + 2],
+                            (Paint) refs[r + 3]);
+                    r += 4;
+                    break;
+                }
+            }
+        } finally {
+            canvas.mReplaying--;
+        }
+    }
+
+    // Recording, called by Canvas for each list in the chain of recorders.
+
+    /* package */ void begin(float alpha) {
+        reset();
+        mAlpha = alpha;
+        addOp(OP_SET_ALPHA);
+        addArg(alpha);
+    }
+
+    /* package */ void record(int op) {
+        for (DisplayList dl = this; dl != null; dl = dl.mOuter) {
+            dl.addOp(op);
+        }
+    }
+
+    /* package */ void record(int op, float a0) {
+        for (DisplayList dl = this; dl != null; dl = dl.mOuter) {
+            dl.addOp(op);
+            dl.addArg(a0);
+        }
+    }
+
+    /* package */ void record(int op, float a0, float a1) {
+        for (DisplayList dl = this; dl != null; dl = dl.mOuter) {
+            dl.addOp(op);
+            dl.addArg(a0);
+            dl.addArg(a1);
+        }
+    }
+
+    /* package */ void record(int op, float a0, float a1, float a2, float a3) {
+        for (DisplayList dl = this; dl != null; dl = dl.mOuter) {
+            dl.addOp(op);
+            dl.addArg(a0);
+            dl.addArg(a1);
+            dl.addArg(a2);
+            dl.addArg(a3);
+        }
+    }
+
+    /* package */ void recordSaveLayerAlpha(int left, int top, int right, int bottom,
+            int alpha, int saveFlags) {
+        for (DisplayList dl = this; dl != null; dl = dl.mOuter) {
+            dl.addOp(OP_SAVE_LAYER_ALPHA);
+            dl.addArg(left);
+            dl.addArg(top);
+            dl.addArg(right);
+            dl.addArg(bottom);
+            dl.addArg(alpha);
+            dl.addArg(saveFlags);
+        }
+    }
+
+    /**
+     * Record a call that takes up to four objects and the given float
+     * arguments, after bringing the recorded canvas alpha up to date since
+     * every call that takes objects draws.
+     */
+    /* package */ void recordDraw(int op, float alpha, float[] args, Object r0, Object r1,
+            Object r2, Object r3, int refCount) {
+        for (DisplayList dl = this; dl != null; dl = dl.mOuter) {
+            if (dl.mAlpha != alpha) {
+                dl.mAlpha = alpha;
+                dl.addOp(OP_SET_ALPHA);
+                dl.addArg(alpha);
+            }
+            dl.addOp(op);
+            if (args != null) {
+                for (int i = 0; i < args.length; i++) {
+                    dl.addArg(args[i]);
+                }
+            }
+            if (refCount > 0) dl.addRef(r0);
+            if (refCount > 1) dl.addRef(r1);
+            if (refCount > 2) dl.addRef(r2);
+            if (refCount > 3) dl.addRef(r3);
+        }
+    }
+
+    private int op(int index) {
+        int op = 0;
+        /**
+         * @j2sNative
+         * op = this.mOps[index];
+         */{}
+        return op;
+    }
+
+    private float arg(int index) {
+        float arg = 0;
+        /**
+         * @j2sNative
+         * arg = this.mArgs[index];
+         */{}
+        return arg;
+    }
+
+    private void addOp(int op) {
+        int count = mOpCount;
+        /**
+         * @j2sNative
+         * if (count == this.mOps.length) {
+         *     var ops = new Uint8Array(count * 2);
+         *     ops.set(this.mOps);
+         *     this.mOps = ops;
+         * }
+         * this.mOps[count] = op;
+         */{}
+        mOpCount = count + 1;
+    }
+
+    private void addArg(float arg) {
+        int count = mArgCount;
+        /**
+         * @j2sNative
+         * if (count == this.mArgs.length) {
+         *     var args = new Float32Array(count * 2);
+         *     args.set(this.mArgs);
+         *     this.mArgs = args;
+         * }
+         * this.mArgs[count] = arg;
+         */{}
+        mArgCount = count + 1;
+    }
+
+    private void addRef(Object ref) {
+        if (mRefCount == mRefs.length) {
+            Object[] refs = new Object[mRefCount * 2];
+            System.arraycopy(mRefs, 0, refs, 0, mRefCount);
+            mRefs = refs;
+        }
+        mRefs[mRefCount++] = ref;
+    }
+}
@@ -18,6 +18,7 @@ package android.graphics;
 
 import android.graphics.BitmapFactory.Res_png_9patch;
 import android.util.Log;
+import android.util.LruCache;
 
 
 /**
@@ -38,7 +39,65 @@ import android.util.Log;
  * </p>
  */
 public class NinePatch {
-    public static final boolean debug = true;
+    public static final boolean debug = false;
+
+    /*
+     * MayLoon: the stretch geometry of a destination size is worked out once
+     * into a table of slices. A size that is drawn again is rasterized into
+     * an offscreen bitmap, and the patch then costs a single drawImage until
+     * it is drawn at another size.
+     */
+    private static final int MAX_CACHED_SIZES = 4;
+    private static final int MAX_CACHED_PIXELS = 256 * 256;
+
+    private static final int SLICE_BITMAP = 0;
+    private static final int SLICE_HINT = 1;
+    private static final int SLICE_PIXEL = 2;
+
+    // matches default dither in NinePatchDrawable.java.
+    private static final Paint sDefaultPaint = new Paint(Paint.DITHER_FLAG);
+
+    /**
+     * The slices of the patch drawn at one size, relative to the top left
+     * corner of the destination.
+     */
+    private static class Rendering {
+        final Res_png_9patch chunk;
+        int count;
+        int[] kinds = new int[9];
+        int[] colors = new int[9];
+        Rect[] srcs = new Rect[9];
+        RectF[] dsts = new RectF[9];
+        Bitmap cache;
+
+        Rendering(Res_png_9patch chunk) {
+            this.chunk = chunk;
+        }
+
+        void add(int kind, int color, RectF src, RectF dst) {
+            if (count == kinds.length) {
+                int size = count * 2;
+                int[] newKinds = new int[size];
+                int[] newColors = new int[size];
+                Rect[] newSrcs = new Rect[size];
+                RectF[] newDsts = new RectF[size];
+                System.arraycopy(kinds, 0, newKinds, 0, count);
+                System.arraycopy(colors, 0, newColors, 0, count);
+                System.arraycopy(srcs, 0, newSrcs, 0, count);
+                System.arraycopy(dsts, 0, newDsts, 0, count);
+                kinds = newKinds;
+                colors = newColors;
+                srcs = newSrcs;
+                dsts = newDsts;
+            }
+            kinds[count] = kind;
+            colors[count] = color;
+            srcs[count] = new Rect((int) src.left, (int) src.top, (int) src.right, (int) src.bottom);
+            dsts[count] = new RectF(dst);
+            count++;
+        }
+    }
+
     /** 
      * Create a drawable projection from a bitmap to nine patches.
      *
@@ -103,7 +162,8 @@ public class NinePatch {
      * @param location  Where to draw the bitmap.
      */
     public void draw(Canvas canvas, Rect location) {
-        draw(canvas, new RectF(location), mPaint, canvas.mDensity, mBitmap.getDensity());
+        mTmpLocation.set(location);
+        draw(canvas, mTmpLocation, mPaint, canvas.mDensity, mBitmap.getDensity());
     }
 
     /** 
@@ -114,7 +174,8 @@ public class NinePatch {
      * @param paint     The Paint to draw through.
      */
     public void draw(Canvas canvas, Rect location, Paint paint) {
-        draw(canvas, new RectF(location), paint, canvas.mDensity, mBitmap.getDensity());
+        mTmpLocation.set(location);
+        draw(canvas, mTmpLocation, paint, canvas.mDensity, mBitmap.getDensity());
     }
     
     private void draw(Canvas canvas, RectF location, Paint paint, int destDensity, int srcDensity) {
@@ -122,7 +183,7 @@ public class NinePatch {
 
         if (destDensity == srcDensity || destDensity == 0
                 || srcDensity == 0) {
-            Log.v("NinePatch", "Drawing unscaled 9-patch: (" + location.left + "," + location.top
+            if (debug) Log.v("NinePatch", "Drawing unscaled 9-patch: (" + location.left + "," + location.top
                     + ")-(" + location.right + "," + location.bottom + ")");
             NinePatch_Draw(canvas, location, mBitmap, chunk, paint);
         } else {
@@ -135,7 +196,7 @@ public class NinePatch {
             location.right = (location.right - location.left) / scale;
             location.bottom = (location.bottom - location.top) / scale;
             location.left = location.top = 0;
-            Log.v("NinePatch", "Drawing unscaled 9-patch: (" + location.left + "," + location.top
+            if (debug) Log.v("NinePatch", "Drawing unscaled 9-patch: (" + location.left + "," + location.top
                     + ")-(" + location.right + "," + location.bottom + ")" + " " + "srcDensity="
                     + srcDensity + " destDensity=" + destDensity);
 
@@ -150,11 +211,8 @@ public class NinePatch {
     
     private void NinePatch_Draw(Canvas canvas, RectF location, Bitmap bitmap, Res_png_9patch chunk,
             Paint paint) {
-        Paint defaultPaint = new Paint();
         if (null == paint) {
-            // matches default dither in NinePatchDrawable.java.
-            defaultPaint.setDither(true);
-            paint = defaultPaint;
+            paint = sDefaultPaint;
         }
 
         if (debug) {
@@ -186,14 +244,43 @@ public class NinePatch {
             return;
         }
 
-        // boolean hasXfer = paint.getXfermode() != null;
-        boolean hasXfer = false; // MayLoon does not support xfermode now
+        float width = location.width();
+        float height = location.height();
+        String key = width + "x" + height;
+        Rendering rendering = mRenderings.get(key);
+        if (rendering == null || rendering.chunk != chunk) {
+            rendering = computeSlices(width, height, bitmap, chunk);
+            mRenderings.put(key, rendering);
+        } else if (rendering.cache == null && canRasterize(width, height, paint)) {
+            // Drawn at this size before, it is likely to be again
+            Bitmap cache = Bitmap.createBitmap((int) width, (int) height, Bitmap.Config.ARGB_8888);
+            drawSlices(new Canvas(cache), rendering, 0, 0, bitmap, sDefaultPaint);
+            rendering.cache = cache;
+        }
+
+        if (rendering.cache != null && canRasterize(width, height, paint)) {
+            canvas.drawBitmap(rendering.cache, location.left, location.top, paint);
+        } else {
+            drawSlices(canvas, rendering, location.left, location.top, bitmap, paint);
+        }
+    }
+
+    private static boolean canRasterize(float width, float height, Paint paint) {
+        // The cache is drawn through the paint as a whole, not slice by slice
+        return width == (int) width && height == (int) height
+                && width * height <= MAX_CACHED_PIXELS
+                && paint.getShader() == null && paint.getXfermode() == null;
+    }
+
+    private Rendering computeSlices(float width, float height, Bitmap bitmap,
+            Res_png_9patch chunk) {
+        Rendering rendering = new Rendering(chunk);
+        RectF location = new RectF(0, 0, width, height);
         RectF dst = new RectF();
         RectF src = new RectF();
 
         int x0 = chunk.xDivs[0];
         int y0 = chunk.yDivs[0];
-        int initColor = paint.getColor();
         byte numXDivs = chunk.numXDivs;
         byte numYDivs = chunk.numYDivs;
         int i;
@@ -313,10 +400,7 @@ public class NinePatch {
                     // }
                     // goto nextDiv;
                     // }
-                    if (canvas != null) {
-                        drawStretchyPatch(canvas, src, dst, bitmap, paint, initColor,
-                                color, hasXfer);
-                    }
+                    addStretchyPatch(rendering, src, dst, bitmap, color);
                 }
 
                 src.left = src.right;
@@ -326,6 +410,7 @@ public class NinePatch {
             dst.top = dst.bottom;
             dstRightsHaveBeenCached = true;
         }
+        return rendering;
     }
 
     private float calculateStretch(float boundsLimit, float startingPoint,
@@ -338,30 +423,60 @@ public class NinePatch {
                 numStrechyPixelsRemaining;
     }
     
-    private void drawStretchyPatch(Canvas canvas, RectF src, RectF dst,
-            Bitmap bitmap, Paint paint,
-            int initColor, int colorHint,
-            boolean hasXfer) {
+    private void addStretchyPatch(Rendering rendering, RectF src, RectF dst,
+            Bitmap bitmap, int colorHint) {
+        // boolean hasXfer = paint.getXfermode() != null;
+        boolean hasXfer = false; // MayLoon does not support xfermode now
         if (colorHint != Res_png_9patch.NO_COLOR) {
-            int modAlpha = (int) (Color.alpha(colorHint) * paint.getAlpha() / 256.0f);
-            int color = Color.argb(modAlpha, Color.red(colorHint), Color.green(colorHint), Color.blue(colorHint));
-            paint.setColor(color);
-            canvas.drawRect(dst, paint);
-            paint.setColor(initColor);
+            rendering.add(SLICE_HINT, colorHint, src, dst);
         } else if (src.width() == 1 && src.height() == 1) {
             int c = bitmap.getPixel((int)src.left, (int)src.top);
             if (0 != c || hasXfer) {
-                int prev = paint.getColor();
-                paint.setColor(c);
-                canvas.drawRect(dst, paint);
-                paint.setColor(prev);
+                rendering.add(SLICE_PIXEL, c, src, dst);
             }
         } else {
-            Rect tmpSrc = new Rect((int) src.left, (int) src.top, (int) src.right, (int) src.bottom);
-            canvas.drawBitmap(bitmap, tmpSrc, dst, paint);
+            rendering.add(SLICE_BITMAP, 0, src, dst);
+        }
+    }
+
+    private void drawSlices(Canvas canvas, Rendering rendering, float left, float top,
+            Bitmap bitmap, Paint paint) {
+        int initColor = paint.getColor();
+        RectF dst = mTmpDst;
+        for (int i = 0; i < rendering.count; i++) {
+            dst.set(rendering.dsts[i]);
+            dst.offset(left, top);
+            int color = rendering.colors[i];
+            switch (rendering.kinds[i]) {
+                case SLICE_HINT:
+                    int modAlpha = (int) (Color.alpha(color) * paint.getAlpha() / 256.0f);
+                    paint.setColor(Color.argb(modAlpha, Color.red(color), Color.green(color),
+                            Color.blue(color)));
+                    canvas.drawRect(dst, paint);
+                    paint.setColor(initColor);
+                    break;
+                case SLICE_PIXEL:
+                    paint.setColor(color);
+                    canvas.drawRect(dst, paint);
+                    paint.setColor(initColor);
+                    break;
+                default:
+                    canvas.drawBitmap(bitmap, rendering.srcs[i], dst, paint);
+                    break;
+            }
         }
     }
     
+    /**
+     * Return an estimate of the memory the underlying bitmap holds, as per
+     * {@link Bitmap#getCacheByteCount() Bitmap.getCacheByteCount()}.
+     *
+     * @hide
+     */
+    public int getCacheByteCount() {
+        return mBitmap.getCacheByteCount();
+    }
+
     /**
      * Return the underlying bitmap's density, as per
      * {@link Bitmap#getDensity() Bitmap.getDensity()}.
@@ -409,6 +524,10 @@ public class NinePatch {
     private final Res_png_9patch mChunk;
     private Paint        mPaint;
     private String       mSrcName;  // Useful for debugging
+    private final LruCache<String, Rendering> mRenderings =
+            new LruCache<String, Rendering>(MAX_CACHED_SIZES);
+    private final RectF  mTmpLocation = new RectF();
+    private final RectF  mTmpDst = new RectF();
 
     private static void validateNinePatchChunk(Bitmap bitmap, Res_png_9patch chunk) {
 //        if (chunk.length < 32) {
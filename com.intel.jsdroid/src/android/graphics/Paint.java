@@ -1,8 +1,7 @@
 package android.graphics;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import android.graphics.TextMeasurer.FontAdvances;
 import android.text.GraphicsOperations;
 import android.text.SpannableString;
 import android.text.SpannedString;
@@ -38,6 +37,16 @@ public class Paint {
 
 	private int mFlags;
 	private Typeface mTypeface;
+	// HTML5 font string for mTypeface and mTextSize, null when it must be rebuilt
+	private String mHtml5Font;
+
+	/**
+	 * MayLoon: The font family text is measured and drawn with when there is
+	 * no typeface, or its family isn't one the browser has.
+	 *
+	 * @hide
+	 */
+	public static final String DEFAULT_FONT_FAMILY = "serif";
 
 	/** bit mask for the flag enabling antialiasing */
 	public static final int ANTI_ALIAS_FLAG = 0x01;
@@ -235,21 +244,6 @@ public class Paint {
 	public Paint(int flags) {
 		setFlags(flags | DEFAULT_PAINT_FLAGS);
 		mCompatScaling = mInvCompatScaling = 1;
-		
-        String hashCode = String.valueOf(hashCode());
-
-        /**
-         * @j2sNative
-         * var _canvas = document.getElementById(hashCode);
-         * if (_canvas == null) {
-         *   _canvas = document.createElement("canvas");
-         *   _canvas.id = hashCode;
-         *   document.body.appendChild(_canvas);
-         * }
-         */
-        {
-        }
-        
 		init();
 	}
 
@@ -287,6 +281,7 @@ public class Paint {
 			mCompatScaling = src.mCompatScaling;
 			mInvCompatScaling = src.mInvCompatScaling;
 			mTypeface = src.mTypeface;
+			mHtml5Font = src.mHtml5Font;
 			
 	        mTextSize = src.mTextSize;
 	        // call this function to calc the HTML5 font
@@ -311,6 +306,7 @@ public class Paint {
 	private void init() {
         // default set for Android
         mTextSize = 12;
+        mHtml5Font = null;
         // call this function to calc the HTML5 font
         setTextSize(mTextSize);
         mTextAlign = Align.LEFT;
@@ -883,7 +879,10 @@ public class Paint {
      * @param textSize set the paint's text size.
      */
     public void setTextSize(float textSize) {
-        mTextSize = textSize;
+        if (mTextSize != textSize) {
+            mTextSize = textSize;
+            mHtml5Font = null;
+        }
     }
 
 	/**
@@ -979,7 +978,10 @@ public class Paint {
 	 * @return         typeface
 	 */
 	public Typeface setTypeface(Typeface typeface) {
-		mTypeface = typeface;
+		if (mTypeface != typeface) {
+			mTypeface = typeface;
+			mHtml5Font = null;
+		}
 		return typeface;
 	}
 
@@ -1111,7 +1113,7 @@ public class Paint {
             throw new ArrayIndexOutOfBoundsException();
         }
         float textSize = 0;
-        textSize = measureText(text.toString(), null, start, end);
+        textSize = measureText(new String(text), null, start, end);
 
         return textSize;
     }
@@ -1131,50 +1133,27 @@ public class Paint {
         return w*mInvCompatScaling;
     }
 
+    /**
+     * Return the font string Canvas draws this paint's text with. It is the
+     * one text is measured with, so that measurements match what is drawn.
+     */
     public String setFontCanvasProperties() {
-        // use the font of the paint.
-        String hashCode = String.valueOf(this.hashCode());
-        String font = null;
-        /**
-         * @j2sNative 
-         * var _canvas = document.getElementById(hashCode); 
-         * if (_canvas == null) console.e("Cant't get Paint's font canvas!");
-         * var _context = _canvas.getContext("2d"); 
-         * font = _context.font; 
-         */{}
-
-        // the default font string looks like bold 10px sans-serif, so we
-        // need to extract the size
-        Pattern p = Pattern.compile("\\d+\\.?\\d*");
-        Matcher m = p.matcher(font);
-        String result = null;
-        if (m.find()) {
-            result = font.substring(0, m.start() - 1);
-            result += this.getTextSize();
-            result += font.substring(m.end());
-        }
-        
-        /**
-         * @j2sNative 
-         * if (result != null) { 
-         *     _context.font = result; 
-         * }
-         * return _context.font;
-         */{}
-         return font;
+        return getHtml5Font();
     }
 
-    private float measureText(String string, Rect bounds, int start, int end) {
-        float width = 10f;
-        float height = 0f;
-        String hashCode = String.valueOf(this.hashCode());
-        if ((start | end | (end - start) | (string.length() - end)) < 0) {
-            throw new IndexOutOfBoundsException();
+    /**
+     * Return the HTML5 font string matching this paint's typeface and text
+     * size, e.g. "italic bold 12px serif". Without a typeface the
+     * {@link #DEFAULT_FONT_FAMILY} is used. The string is cached until the
+     * typeface or text size changes.
+     */
+    /* package */ String getHtml5Font() {
+        if (mHtml5Font != null) {
+            return mHtml5Font;
         }
-        string = string.substring(start, end);
         String fontStyle = "normal";
         String fontWeight = "normal";
-        String fontFamily = "serif";
+        String fontFamily = DEFAULT_FONT_FAMILY;
         Typeface tf = getTypeface();
         if (tf != null) {
             switch (tf.getStyle()) {
@@ -1202,41 +1181,27 @@ public class Paint {
                 //console.loge("We don't support this font: " + tf.getFamilyName());
             }
         }
-        /**
-         * @j2sNative
-         * var div = document.createElement("div");
-         * div.innerText = string;
-         * div.style.whiteSpace = "pre";
-         * div.id = "measure_div";
-         * document.body.appendChild(div);
-         * div.style.visibility = "hidden";
-         * div.style.position = "absolute";
-         * div.style.overflow = "hidden";
-         * div.style.border = "none";
-         * div.style.padding = "0px";
-         * div.style.margin = "0px";
-         * div.style.fontSize = this.mTextSize + "px";
-         * div.style.fontStyle = fontStyle;
-         * div.style.fontWeight = fontWeight;
-         * div.style.fontFamily = fontFamily;
-         * div.style.width = "auto";
-         * div.style.height = "auto";
-         * width = div.offsetWidth;
-         * height = div.clientHeight;
-         * div.parentNode.removeChild(div);
-         * var adjustConstant = this.mTextSize * (-3) / 4;
-         * if(bounds != null) {
-         *     bounds.left = 0;
-         *     bounds.top = adjustConstant;
-         *     bounds.right = width;
-         *     bounds.bottom = height + adjustConstant;
-         * } else {
-         *     this.left = 0;
-         *     this.top = 0;
-         *     this.right = width;
-         *     this.bottom = height;
-         * }
-         */{}
+        mHtml5Font = fontStyle + " " + fontWeight + " " + mTextSize + "px " + fontFamily;
+        return mHtml5Font;
+    }
+
+    private float measureText(String string, Rect bounds, int start, int end) {
+        if ((start | end | (end - start) | (string.length() - end)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        String font = getHtml5Font();
+        float width = TextMeasurer.measure(font, string, start, end);
+        int height = TextMeasurer.lineHeight(font);
+        if (bounds != null) {
+            int adjustConstant = (int) (mTextSize * (-3) / 4);
+            bounds.left = 0;
+            bounds.top = adjustConstant;
+            bounds.right = (int) Math.ceil(width);
+            bounds.bottom = height + adjustConstant;
+        } else {
+            this.top = 0;
+            this.bottom = height;
+        }
         return width;
     }
 
@@ -1287,14 +1252,7 @@ public class Paint {
             throw new ArrayIndexOutOfBoundsException();
         }
 
-        final float oldSize = getTextSize();
-        setTextSize(oldSize * mCompatScaling);
-        int res = count;
-        setTextSize(oldSize);
-        for (int i = 0; i < res; i++) {
-            widths[i] = measureText(text.toString(), null, i, i + 1);
-        }
-        return res;
+        return getTextWidths(new String(text, index, count), 0, count, widths);
     }
 
     /**
@@ -1315,12 +1273,15 @@ public class Paint {
             throw new ArrayIndexOutOfBoundsException();
         }
 
+        if (!mHasCompatScaling) {
+            return TextMeasurer.getAdvances(getHtml5Font(), text, start, end, widths);
+        }
         final float oldSize = getTextSize();
         setTextSize(oldSize * mCompatScaling);
-        int res = end - start;
+        int res = TextMeasurer.getAdvances(getHtml5Font(), text, start, end, widths);
         setTextSize(oldSize);
         for (int i = 0; i < res; i++) {
-            widths[i] = measureText(text, null, i, i + 1);
+            widths[i] *= mInvCompatScaling;
         }
         return res;
     }
@@ -1337,6 +1298,122 @@ public class Paint {
 		return getTextWidths(text, 0, text.length(), widths);
 	}
 
+    /**
+     * Measure the text, stopping early if the measured width exceeds maxWidth.
+     * Return the number of chars that were measured, and if measuredWidth is
+     * not null, return in it the actual width measured.
+     *
+     * @param text  The text to measure
+     * @param index The offset into text to begin measuring at
+     * @param count The number of maximum number of entries to measure. If count
+     *              is negative, then the characters before index are measured
+     *              in reverse order. This allows for measuring the end of
+     *              string.
+     * @param maxWidth The maximum width to accumulate.
+     * @param measuredWidth Optional. If not null, returns the actual width
+     *                     measured.
+     * @return The number of chars that were measured. Will always be <=
+     *         abs(count).
+     */
+    public int breakText(char[] text, int index, int count,
+            float maxWidth, float[] measuredWidth) {
+        if ((index | count) == 0) {
+            return 0;
+        }
+        if (count >= 0) {
+            return breakText(new String(text), index, index + count, true,
+                    maxWidth, measuredWidth);
+        }
+        return breakText(new String(text), index + count, index, false,
+                maxWidth, measuredWidth);
+    }
+
+    /**
+     * Measure the text, stopping early if the measured width exceeds maxWidth.
+     * Return the number of chars that were measured, and if measuredWidth is
+     * not null, return in it the actual width measured.
+     *
+     * @param text  The text to measure
+     * @param start The offset into text to begin measuring at
+     * @param end   The end of the text slice to measure.
+     * @param measureForwards If true, measure forwards, starting at start.
+     *                        Otherwise, measure backwards, starting with end.
+     * @param maxWidth The maximum width to accumulate.
+     * @param measuredWidth Optional. If not null, returns the actual width
+     *                     measured.
+     * @return The number of chars that were measured. Will always be <=
+     *         abs(end - start).
+     */
+    public int breakText(CharSequence text, int start, int end,
+            boolean measureForwards, float maxWidth, float[] measuredWidth) {
+        if ((start | end | (end - start) | (text.length() - end)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (start == end) {
+            if (measuredWidth != null) {
+                measuredWidth[0] = 0;
+            }
+            return 0;
+        }
+
+        String string = text.toString();
+        FontAdvances fa = TextMeasurer.obtain(getHtml5Font());
+        float width = 0;
+        int count = 0;
+        int len = end - start;
+        while (count < len) {
+            int i = measureForwards ? start + count : end - 1 - count;
+            char c = string.charAt(i);
+            int step = 1;
+            int codePoint = c;
+            if (measureForwards) {
+                if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, string.charAt(i + 1));
+                    step = 2;
+                }
+            } else if (Character.isLowSurrogate(c) && i - 1 >= start
+                    && Character.isHighSurrogate(string.charAt(i - 1))) {
+                codePoint = Character.toCodePoint(string.charAt(i - 1), c);
+                step = 2;
+            }
+            float w = TextMeasurer.advance(fa, codePoint);
+            if (mHasCompatScaling) {
+                w *= mInvCompatScaling;
+            }
+            if (width + w > maxWidth) {
+                break;
+            }
+            width += w;
+            count += step;
+        }
+        if (measuredWidth != null) {
+            measuredWidth[0] = width;
+        }
+        return count;
+    }
+
+    /**
+     * Measure the text, stopping early if the measured width exceeds maxWidth.
+     * Return the number of chars that were measured, and if measuredWidth is
+     * not null, return in it the actual width measured.
+     *
+     * @param text  The text to measure
+     * @param measureForwards If true, measure forwards, starting at index.
+     *                        Otherwise, measure backwards, starting with the
+     *                        last character in the string.
+     * @param maxWidth The maximum width to accumulate.
+     * @param measuredWidth Optional. If not null, returns the actual width
+     *                     measured.
+     * @return The number of chars that were measured. Will always be <=
+     *         abs(count).
+     */
+    public int breakText(String text, boolean measureForwards, float maxWidth,
+            float[] measuredWidth) {
+        return breakText(text, 0, text.length(), measureForwards, maxWidth,
+                measuredWidth);
+    }
+
     /**
      * Return in bounds (allocated by the caller) the smallest rectangle that
      * encloses all of the characters, with an implied origin at (0,0).
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+import java.util.HashMap;
+
+/**
+ * Text measurement engine behind Paint. All measuring goes through one shared
+ * offscreen 2D context, which never touches the document, so it does not force
+ * a layout pass the way a hidden measuring element does.
+ *
+ * Results are cached per HTML5 font string (style, weight, size and family):
+ * advance widths are kept in a table keyed by code point and short runs are
+ * kept by their text. The per-font tables are held in an LRU list of at most
+ * MAX_FONTS entries.
+ */
+/* package */ final class TextMeasurer {
+
+    private static final int MAX_FONTS = 32;
+    private static final int MAX_RUNS = 256;
+    private static final int MAX_RUN_LENGTH = 16;
+    private static final int DIRECT_TABLE_SIZE = 256;
+
+    /* package */ static final class FontAdvances {
+        final String font;
+        // advances of code points below DIRECT_TABLE_SIZE, -1 if not measured yet
+        final float[] direct = new float[DIRECT_TABLE_SIZE];
+        HashMap<Integer, Float> extended;
+        HashMap<String, Float> runs;
+        int runCount;
+        int lineHeight = -1;
+        FontAdvances prev;
+        FontAdvances next;
+
+        FontAdvances(String font) {
+            this.font = font;
+            for (int i = 0; i < DIRECT_TABLE_SIZE; i++) {
+                direct[i] = -1;
+            }
+        }
+    }
+
+    private static final HashMap<String, FontAdvances> sFonts = new HashMap<String, FontAdvances>();
+    private static FontAdvances sHead;
+    private static FontAdvances sTail;
+    private static int sFontCount;
+
+    private static Object sContext;
+    private static String sContextFont;
+
+    private TextMeasurer() {
+    }
+
+    /**
+     * Return the cached tables for the given font, creating them if needed
+     * and marking them as most recently used.
+     */
+    /* package */ static FontAdvances obtain(String font) {
+        FontAdvances fa = sFonts.get(font);
+        if (fa == null) {
+            fa = new FontAdvances(font);
+            sFonts.put(font, fa);
+            sFontCount++;
+            if (sFontCount > MAX_FONTS) {
+                FontAdvances eldest = sTail;
+                unlink(eldest);
+                sFonts.remove(eldest.font);
+                sFontCount--;
+            }
+        } else if (fa == sHead) {
+            return fa;
+        } else {
+            unlink(fa);
+        }
+        fa.next = sHead;
+        if (sHead != null) {
+            sHead.prev = fa;
+        }
+        sHead = fa;
+        if (sTail == null) {
+            sTail = fa;
+        }
+        return fa;
+    }
+
+    private static void unlink(FontAdvances fa) {
+        if (fa.prev != null) {
+            fa.prev.next = fa.next;
+        } else {
+            sHead = fa.next;
+        }
+        if (fa.next != null) {
+            fa.next.prev = fa.prev;
+        } else {
+            sTail = fa.prev;
+        }
+        fa.prev = fa.next = null;
+    }
+
+    /**
+     * Return the width of text[start, end) in the given font. Short runs are
+     * answered from the run cache, longer ones are measured in a single call
+     * so kerning across the whole run is preserved.
+     */
+    /* package */ static float measure(String font, String text, int start, int end) {
+        int len = end - start;
+        if (len <= 0) {
+            return 0;
+        }
+        FontAdvances fa = obtain(font);
+        if (len == 1) {
+            return advance(fa, text.charAt(start));
+        }
+        String run = text.substring(start, end);
+        if (len > MAX_RUN_LENGTH) {
+            return measureNative(font, run);
+        }
+        if (fa.runs == null) {
+            fa.runs = new HashMap<String, Float>();
+        }
+        Float cached = fa.runs.get(run);
+        if (cached != null) {
+            return cached.floatValue();
+        }
+        float width = measureNative(font, run);
+        if (fa.runCount >= MAX_RUNS) {
+            fa.runs.clear();
+            fa.runCount = 0;
+        }
+        fa.runs.put(run, new Float(width));
+        fa.runCount++;
+        return width;
+    }
+
+    /**
+     * Fill widths[0, end - start) with the advance of each char of
+     * text[start, end). The trailing half of a surrogate pair gets 0, like
+     * on the device.
+     */
+    /* package */ static int getAdvances(String font, String text, int start, int end,
+            float[] widths) {
+        FontAdvances fa = obtain(font);
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                widths[i - start] = advance(fa, Character.toCodePoint(c, text.charAt(i + 1)));
+                widths[i + 1 - start] = 0;
+                i += 2;
+            } else {
+                widths[i - start] = advance(fa, c);
+                i++;
+            }
+        }
+        return end - start;
+    }
+
+    /* package */ static float advance(FontAdvances fa, int codePoint) {
+        if (codePoint < DIRECT_TABLE_SIZE) {
+            float w = fa.direct[codePoint];
+            if (w < 0) {
+                w = measureNative(fa.font, String.valueOf((char) codePoint));
+                fa.direct[codePoint] = w;
+            }
+            return w;
+        }
+        if (fa.extended == null) {
+            fa.extended = new HashMap<Integer, Float>();
+        }
+        Integer key = Integer.valueOf(codePoint);
+        Float cached = fa.extended.get(key);
+        if (cached != null) {
+            return cached.floatValue();
+        }
+        float w = measureNative(fa.font, new String(Character.toChars(codePoint)));
+        fa.extended.put(key, new Float(w));
+        return w;
+    }
+
+    /**
+     * Return the height of one line of text in the given font. The offscreen
+     * context can't report it, so it is measured once per font with a hidden
+     * element and cached.
+     */
+    /* package */ static int lineHeight(String font) {
+        FontAdvances fa = obtain(font);
+        if (fa.lineHeight < 0) {
+            int height = 0;
+            /**
+             * @j2sNative
+             * var div = document.createElement("div");
+             * div.innerText = "0";
+             * div.style.visibility = "hidden";
+             * div.style.position = "absolute";
+             * div.style.whiteSpace = "pre";
+             * div.style.border = "none";
+             * div.style.padding = "0px";
+             * div.style.margin = "0px";
+             * div.style.font = font;
+             * document.body.appendChild(div);
+             * height = div.clientHeight;
+             * div.parentNode.removeChild(div);
+             */{}
+            fa.lineHeight = height;
+        }
+        return fa.lineHeight;
+    }
+
+    private static float measureNative(String font, String text) {
+        if (sContext == null) {
+            Object context = null;
+            /**
+             * @j2sNative
+             * context = document.createElement("canvas").getContext("2d");
+             */{}
+            sContext = context;
+        }
+        Object context = sContext;
+        boolean fontChanged = !font.equals(sContextFont);
+        sContextFont = font;
+        float width = 0;
+        /**
+         * @j2sNative
+         * if (fontChanged) {
+         *     context.font = font;
+         * }
+         * width = context.measureText(text).width;
+         */{}
+        return width;
+    }
+}
@@ -75,6 +75,13 @@ public class BitmapDrawable extends Drawable {
      // These are scaled to match the target density.
     private int mBitmapWidth;
     private int mBitmapHeight;
+
+    // Redraws once the pixels of the bitmap are decoded in the background
+    private final Runnable mInvalidateSelf = new Runnable() {
+        public void run() {
+            invalidateSelf();
+        }
+    };
     
     /**
      * Create an empty drawable, not dealing with density.
@@ -251,6 +258,10 @@ public class BitmapDrawable extends Drawable {
     public void draw(Canvas canvas) {
         Bitmap bitmap = mBitmap;
         if (bitmap != null) {
+            if (bitmap.decodeAsync(mInvalidateSelf)) {
+                // Nothing to draw until the pixels are decoded
+                return;
+            }
             final BitmapState state = mBitmapState;
             if (mRebuildShader) {
                 Shader.TileMode tmx = state.mTileModeX;
@@ -375,6 +386,11 @@ public class BitmapDrawable extends Drawable {
         public int getChangingConfigurations() {
             return mChangingConfigurations;
         }
+
+        @Override
+        public int getCacheByteCount() {
+            return mBitmap != null ? mBitmap.getCacheByteCount() : super.getCacheByteCount();
+        }
     }
         
     private BitmapDrawable(BitmapState state, Resources res) {
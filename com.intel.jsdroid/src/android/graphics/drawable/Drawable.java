@@ -668,7 +668,11 @@ public class Drawable {
         // an application in compatibility mode, without scaling those down
         // to the compatibility density only to have them scaled back up when
         // drawn to the screen.
-        if (opts == null) opts = new BitmapFactory.Options();
+        if (opts == null) {
+            opts = new BitmapFactory.Options();
+            // MayLoon: the drawable is drawn once the pixels are decoded
+            opts.inDecodeAsync = true;
+        }
         opts.inScreenDensity = DisplayMetrics.DENSITY_DEVICE;
         Bitmap  bm = BitmapFactory.decodeResourceStream(res, value, is, pad, opts, srcName);
         if (bm != null) {
@@ -777,6 +781,19 @@ public class Drawable {
 		 * this drawable (and thus require completely reloading it).
 		 */
 		public abstract int getChangingConfigurations();
+
+		/**
+		 * Return an estimate of the memory this state holds, in bytes, for
+		 * caches to weigh it by.
+		 *
+		 * @hide
+		 */
+		public int getCacheByteCount() {
+			return DEFAULT_STATE_BYTE_COUNT;
+		}
+
+		// A guess for states that hold no pixels
+		private static final int DEFAULT_STATE_BYTE_COUNT = 1024;
 	}
 
 	public ConstantState getConstantState() {
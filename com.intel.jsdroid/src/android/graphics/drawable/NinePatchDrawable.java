@@ -384,6 +384,11 @@ public class NinePatchDrawable extends Drawable {
         public int getChangingConfigurations() {
             return mChangingConfigurations;
         }
+
+        @Override
+        public int getCacheByteCount() {
+            return mNinePatch.getCacheByteCount();
+        }
     }
 
     private NinePatchDrawable(NinePatchState state, Resources res) {
@@ -337,7 +337,10 @@ public class GLES20 {
     public static void classInit() {
         /**
          * @j2sNative
-         * android.opengl.GLES20.prototype.mCachedBuffer = null;
+         * android.opengl.GLES20.prototype.mClientArrays = new Array();
+         * android.opengl.GLES20.prototype.mEnabledAttribs = new Array();
+         * android.opengl.GLES20.prototype.mBoundBuffers = {};
+         * android.opengl.GLES20.prototype.mStreamBuffers = {};
          * var shaderArray = new Array();
          * // In OpenGLES2.0, 0 is invalid id for shader, so we begin at index 1;
          * shaderArray.push(-1);
@@ -369,7 +372,16 @@ public class GLES20 {
         // Do clean-up
         /**
          * @j2sNative
-         * android.opengl.GLES20.prototype.mCachedBuffer = null;
+         * var streams = android.opengl.GLES20.prototype.mStreamBuffers;
+         * if (streams && android.opengl.GLES20.prototype.mContext) {
+         *     for (var target in streams) {
+         *         android.opengl.GLES20.prototype.mContext.deleteBuffer(streams[target].buffer);
+         *     }
+         * }
+         * android.opengl.GLES20.prototype.mClientArrays = null;
+         * android.opengl.GLES20.prototype.mEnabledAttribs = null;
+         * android.opengl.GLES20.prototype.mBoundBuffers = null;
+         * android.opengl.GLES20.prototype.mStreamBuffers = null;
          * android.opengl.GLES20.prototype.mShaderArray = null;
          * android.opengl.GLES20.prototype.mProgramArray = null;
          * android.opengl.GLES20.prototype.mUniformLocationArray = null;
@@ -395,6 +407,222 @@ public class GLES20 {
              }
          }
     }
+
+    /*
+     * MayLoon: WebGL has no client side arrays. The vertex arrays and indices
+     * an application keeps in client memory are streamed at draw time into
+     * one buffer object per target, each draw taking the next bytes of it.
+     * When the buffer is full its storage is orphaned with bufferData, so
+     * the GPU never waits on data a previous draw may still be reading, and
+     * the draws start over from its beginning. Only the vertices and indices
+     * a draw references are uploaded.
+     */
+    private static final int MIN_STREAM_BUFFER_SIZE = 256 * 1024;
+
+    private static int getTypeSize(int type) {
+        switch (type) {
+            case GL_BYTE:
+            case GL_UNSIGNED_BYTE:
+                return 1;
+            case GL_SHORT:
+            case GL_UNSIGNED_SHORT:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    /*
+     * MayLoon: client memory is handed to WebGL as a typed array over the
+     * ArrayBuffer of the java.nio buffer, so that WebGL reads it in place
+     * instead of from a copy. The last view made for a buffer is kept on it
+     * in Buffer._glView and handed out again while it still covers the same
+     * bytes, so uploading the same buffer again allocates nothing.
+     */
+    private static final int VIEW_UNSIGNED_BYTE = 0;
+    private static final int VIEW_UNSIGNED_SHORT = 1;
+    private static final int VIEW_FLOAT = 2;
+
+    /**
+     * Return the number of bytes from the position to the limit of the given
+     * buffer.
+     */
+    private static int getRemainingBytes(java.nio.Buffer data) {
+        int byteCount = 0;
+        /**
+         * @j2sNative
+         * byteCount = data.remaining() << data._elementSizeShift;
+         */{}
+        return byteCount;
+    }
+
+    /**
+     * Return byteCount bytes of the given buffer from its position as a typed
+     * array of the given kind. The array shares the memory of the buffer
+     * unless the bytes are not aligned on the element size of the kind.
+     */
+    private static Object getClientView(java.nio.Buffer data, int byteCount, int kind) {
+        Object view = null;
+        /**
+         * @j2sNative
+         * var byteBuffer = data instanceof java.nio.ByteBuffer ? data : data.byteBuffer;
+         * var buffer = byteBuffer.backingArray.buffer;
+         * var start = byteBuffer.backingArray.byteOffset + byteBuffer.offset
+         *         + (data.position() << data._elementSizeShift);
+         * var type = kind == android.opengl.GLES20.VIEW_FLOAT ? Float32Array
+         *         : kind == android.opengl.GLES20.VIEW_UNSIGNED_SHORT ? Uint16Array : Uint8Array;
+         * var length = Math.floor(byteCount / type.BYTES_PER_ELEMENT);
+         * view = data._glView;
+         * if (!(view instanceof type) || view.buffer !== buffer
+         *         || view.byteOffset != start || view.length != length) {
+         *     if (start % type.BYTES_PER_ELEMENT == 0) {
+         *         view = new type(buffer, start, length);
+         *         data._glView = view;
+         *     } else {
+         *         view = new type(buffer.slice(start, start + length * type.BYTES_PER_ELEMENT));
+         *     }
+         * }
+         */{}
+        return view;
+    }
+
+    /**
+     * Return the remaining bytes of the given buffer as a Uint8Array that
+     * shares its memory.
+     */
+    private static Object getClientBytes(java.nio.Buffer data) {
+        return getClientView(data, getRemainingBytes(data), VIEW_UNSIGNED_BYTE);
+    }
+
+    /**
+     * Bind the stream buffer of the given target, making room for byteCount
+     * more bytes in it.
+     */
+    /* package */ static void reserveStreamBuffer(int target, int byteCount) {
+        int minSize = MIN_STREAM_BUFFER_SIZE;
+        /**
+         * @j2sNative
+         * var gl = android.opengl.GLES20.prototype.mContext;
+         * var streams = android.opengl.GLES20.prototype.mStreamBuffers;
+         * var stream = streams[target];
+         * if (stream == null) {
+         *     stream = streams[target] = {buffer: gl.createBuffer(), size: 0, offset: 0};
+         * }
+         * gl.bindBuffer(target, stream.buffer);
+         * if (stream.offset + byteCount > stream.size) {
+         *     var size = Math.max(stream.size, minSize);
+         *     while (size < byteCount) {
+         *         size *= 2;
+         *     }
+         *     gl.bufferData(target, size, gl.STREAM_DRAW);
+         *     stream.size = size;
+         *     stream.offset = 0;
+         * }
+         */{}
+    }
+
+    /**
+     * Copy bytes to the bound stream buffer of the given target, after room
+     * was made for them, and return where they were put.
+     */
+    /* package */ static int streamBytes(int target, Object bytes) {
+        int offset = 0;
+        /**
+         * @j2sNative
+         * var gl = android.opengl.GLES20.prototype.mContext;
+         * var stream = android.opengl.GLES20.prototype.mStreamBuffers[target];
+         * offset = stream.offset;
+         * gl.bufferSubData(target, offset, bytes);
+         * // Keep every upload aligned for any attribute type
+         * stream.offset += (bytes.byteLength + 3) & ~3;
+         */{}
+        return offset;
+    }
+
+    /**
+     * Stream the enabled client side vertex arrays and point their
+     * attributes at the copies.
+     *
+     * @param vertexCount The number of vertices the draw reads, or -1 if
+     *        unknown, in which case the arrays are uploaded whole.
+     */
+    private static void uploadClientArrays(int vertexCount) {
+        int arrayBuffer = GL_ARRAY_BUFFER;
+        /**
+         * @j2sNative
+         * var proto = android.opengl.GLES20.prototype;
+         * var arrays = proto.mClientArrays;
+         * var uploads = null;
+         * var total = 0;
+         * for (var i = 0; i < arrays.length; i++) {
+         *     var array = arrays[i];
+         *     if (array == null || !proto.mEnabledAttribs[i]) {
+         *         continue;
+         *     }
+         *     var length = array.bytes.byteLength;
+         *     if (vertexCount >= 0) {
+         *         length = Math.min(length, vertexCount > 0
+         *                 ? (vertexCount - 1) * array.stride + array.elementSize : 0);
+         *     }
+         *     if (length > 0) {
+         *         (uploads || (uploads = [])).push(i, length);
+         *         total += (length + 3) & ~3;
+         *     }
+         * }
+         * if (uploads == null) {
+         *     return;
+         * }
+         * android.opengl.GLES20.reserveStreamBuffer(arrayBuffer, total);
+         * for (var j = 0; j < uploads.length; j += 2) {
+         *     var array = arrays[uploads[j]];
+         *     var offset = android.opengl.GLES20.streamBytes(arrayBuffer,
+         *             array.bytes.subarray(0, uploads[j + 1]));
+         *     proto.mContext.vertexAttribPointer(uploads[j], array.size, array.type,
+         *             array.normalized, array.stride, offset);
+         * }
+         * proto.mContext.bindBuffer(arrayBuffer, proto.mBoundBuffers[arrayBuffer] || null);
+         */{}
+    }
+
+    private static boolean hasClientArrays() {
+        /**
+         * @j2sNative
+         * var proto = android.opengl.GLES20.prototype;
+         * for (var i = 0; i < proto.mClientArrays.length; i++) {
+         *     if (proto.mClientArrays[i] != null && proto.mEnabledAttribs[i]) {
+         *         return true;
+         *     }
+         * }
+         */{}
+        return false;
+    }
+
+    /**
+     * Return the number of vertices the given client side indices reference.
+     */
+    private static int getVertexCount(Object bytes, int count, int type) {
+        int vertexCount = 0;
+        /**
+         * @j2sNative
+         * var indices = bytes;
+         * if (type == android.opengl.GLES20.GL_UNSIGNED_SHORT) {
+         *     count = Math.min(count, bytes.byteLength >> 1);
+         *     indices = (bytes.byteOffset & 1) == 0
+         *             ? new Uint16Array(bytes.buffer, bytes.byteOffset, count)
+         *             : new Uint16Array(bytes.slice(0, count << 1).buffer);
+         * } else {
+         *     count = Math.min(count, bytes.byteLength);
+         * }
+         * var max = -1;
+         * for (var i = 0; i < count; i++) {
+         *     if (indices[i] > max) {
+         *         max = indices[i];
+         *     }
+         * }
+         * vertexCount = max + 1;
+         */{}
+        return vertexCount;
+    }
     
     // C function void glActiveTexture ( GLenum texture )
 
@@ -448,6 +676,7 @@ public class GLES20 {
         /**
          * @j2sNative
          * var _buffer = android.opengl.GLES20.prototype.mBufferArray[buffer];
+         * android.opengl.GLES20.prototype.mBoundBuffers[target] = _buffer;
          * android.opengl.GLES20.prototype.mContext.bindBuffer(target, _buffer);
          */{}
     }
@@ -571,17 +800,20 @@ public class GLES20 {
         int usage
     ) {
         checkWebGLContext();
+        if (data == null) {
+            /**
+             * @j2sNative
+             * android.opengl.GLES20.prototype.mContext.bufferData(target, size, usage);
+             */{}
+            return;
+        }
+        if (getRemainingBytes(data) < size) {
+            throw new IllegalArgumentException("remaining() < size");
+        }
+        Object bytes = getClientView(data, size, VIEW_UNSIGNED_BYTE);
         /**
          * @j2sNative
-         * var arraybuffer = null;
-         * if (data instanceof java.nio.ByteBuffer) {
-         *     arraybuffer = data.backingArray;
-         * } else {
-         *     arraybuffer = data.byteBuffer.backingArray;
-         * }
-         * var offset = data.position() * Math.pow(2, data._elementSizeShift);
-         * arraybuffer = arraybuffer.buffer.slice(offset);
-         * android.opengl.GLES20.prototype.mContext.bufferData(target, arraybuffer, usage);
+         * android.opengl.GLES20.prototype.mContext.bufferData(target, bytes, usage);
          */{}
     }
 
@@ -594,16 +826,13 @@ public class GLES20 {
         java.nio.Buffer data
     ) {
         checkWebGLContext();
+        if (getRemainingBytes(data) < size) {
+            throw new IllegalArgumentException("remaining() < size");
+        }
+        Object bytes = getClientView(data, size, VIEW_UNSIGNED_BYTE);
         /**
          * @j2sNative
-         * var arraybuffer = null;
-         * if (data instanceof java.nio.ByteBuffer) {
-         *     arraybuffer = data.backingArray;
-         * } else {
-         *     arraybuffer = data.byteBuffer.backingArray;
-         * }
-         * var _offset = data.position() * Math.pow(2, data._elementSizeShift);
-         * android.opengl.GLES20.prototype.mContext.bufferSubData(target, offset, arraybuffer.buffer.slice(_offset));
+         * android.opengl.GLES20.prototype.mContext.bufferSubData(target, offset, bytes);
          */{}
     }
 
@@ -826,6 +1055,12 @@ public class GLES20 {
          * @j2sNative
          * for (var i = 0; i < n; i++) {
          *     var buffer = android.opengl.GLES20.prototype.mBufferArray[buffers[offset + i]];
+         *     var bound = android.opengl.GLES20.prototype.mBoundBuffers;
+         *     for (var target in bound) {
+         *         if (bound[target] === buffer) {
+         *             bound[target] = null;
+         *         }
+         *     }
          *     android.opengl.GLES20.prototype.mContext.deleteBuffer(buffer);
          * }
          */{}
@@ -1010,6 +1245,7 @@ public class GLES20 {
         checkWebGLContext();
         /**
          * @j2sNative
+         * android.opengl.GLES20.prototype.mEnabledAttribs[index] = false;
          * android.opengl.GLES20.prototype.mContext.disableVertexAttribArray(index);
          */{} 
     }
@@ -1022,6 +1258,9 @@ public class GLES20 {
         int count
     ) {
         checkWebGLContext();
+        if (hasClientArrays()) {
+            uploadClientArrays(first + count);
+        }
         /**
          * @j2sNative
          * android.opengl.GLES20.prototype.mContext.drawArrays(mode, first, count);
@@ -1037,6 +1276,9 @@ public class GLES20 {
         int offset
     ) {
         checkWebGLContext();
+        if (hasClientArrays()) {
+            uploadClientArrays(-1);
+        }
         /**
          * @j2sNative
          * android.opengl.GLES20.prototype.mContext.drawElements(mode, count, type, offset);
@@ -1052,19 +1294,21 @@ public class GLES20 {
         java.nio.Buffer indices
     ) {
         checkWebGLContext();
+        Object bytes = getClientBytes(indices);
+        if (hasClientArrays()) {
+            uploadClientArrays(getVertexCount(bytes, count, type));
+        }
+        int elementArrayBuffer = GL_ELEMENT_ARRAY_BUFFER;
+        int byteCount = count * getTypeSize(type);
+        reserveStreamBuffer(elementArrayBuffer, byteCount);
         /**
          * @j2sNative
-         * // WebGL does not support client side arrays, we need to gen
-         * // a buffer object and upload the data into buffer object, then
-         * // bind the buffer object and call vertexAttribPointer.
-         * var buffer = android.opengl.GLES20.prototype.mContext.createBuffer();
-         * android.opengl.GLES20.prototype.mContext.bindBuffer(android.opengl.GLES20.prototype.mContext.ELEMENT_ARRAY_BUFFER, buffer);
-         * var arraybuffer = indices.byteBuffer.backingArray;
-         * var offset = indices.position() * Math.pow(2, indices._elementSizeShift);
-         * android.opengl.GLES20.prototype.mContext.bufferData(android.opengl.GLES20.prototype.mContext.ELEMENT_ARRAY_BUFFER, arraybuffer,
-         *                                                     android.opengl.GLES20.prototype.mContext.STATIC_DRAW);
-         * android.opengl.GLES20.prototype.mContext.drawElements(mode, count, type, offset);                                                   
-         * 
+         * var gl = android.opengl.GLES20.prototype.mContext;
+         * var offset = android.opengl.GLES20.streamBytes(elementArrayBuffer,
+         *         bytes.subarray(0, byteCount));
+         * gl.drawElements(mode, count, type, offset);
+         * gl.bindBuffer(elementArrayBuffer,
+         *         android.opengl.GLES20.prototype.mBoundBuffers[elementArrayBuffer] || null);
          */{}
     }
 
@@ -1088,6 +1332,7 @@ public class GLES20 {
         checkWebGLContext();
         /**
          * @j2sNative
+         * android.opengl.GLES20.prototype.mEnabledAttribs[index] = true;
          * android.opengl.GLES20.prototype.mContext.enableVertexAttribArray(index);
          */{}
     }
@@ -2408,31 +2653,24 @@ public class GLES20 {
         java.nio.Buffer pixels
     ) {
         checkWebGLContext();
+        Object view = null;
+        if (pixels != null) {
+            switch (type) {
+                case GL_UNSIGNED_SHORT_5_6_5:
+                case GL_UNSIGNED_SHORT_4_4_4_4:
+                case GL_UNSIGNED_SHORT_5_5_5_1:
+                    view = getClientView(pixels, getRemainingBytes(pixels), VIEW_UNSIGNED_SHORT);
+                    break;
+                default:
+                    view = getClientView(pixels, getRemainingBytes(pixels), VIEW_UNSIGNED_BYTE);
+                    break;
+            }
+        }
         /**
          * @j2sNative
-         * var arraybuffer = null;
-         * if (pixels instanceof java.nio.ByteBuffer) {
-         *     arraybuffer = pixels.backingArray;
-         * } else {
-         *     arraybuffer = pixels.byteBuffer.backingArray;
-         * }
-         * var offset = pixels.position() * Math.pow(2, pixels._elementSizeShift);
-         * switch (type) {
-         *     case android.opengl.GLES20.GL_UNSIGNED_BYTE:
-         *         arraybuffer = new Uint8Array(arraybuffer.buffer, offset);
-         *         break;
-         *     case android.opengl.GLES20.GL_UNSIGNED_SHORT_5_6_5:
-         *     case android.opengl.GLES20.GL_UNSIGNED_SHORT_4_4_4_4:
-         *     case android.opengl.GLES20.GL_UNSIGNED_SHORT_5_5_5_1:
-         *         arraybuffer = new Uint16Array(arraybuffer.buffer, offset);
-         *         break;
-         *     default:
-         *         arraybuffer = new Uint8Array(arraybuffer.buffer, offset);
-         *         break;   
-         * }
          * android.opengl.GLES20.prototype.mContext.texImage2D(target, level, internalformat, width, height, border,
-         *                                                     format, type, arraybuffer);
-         */{} 
+         *                                                     format, type, view);
+         */{}
     }
 
     // C function void glTexParameterf ( GLenum target, GLenum pname, GLfloat param )
@@ -2916,13 +3154,11 @@ public class GLES20 {
         java.nio.FloatBuffer value
     ) {
         checkWebGLContext();
+        Object floats = getClientView(value, count * 16 * 4, VIEW_FLOAT);
         /**
          * @j2sNative
          * var _location = android.opengl.GLES20.prototype.mUniformLocationArray[location];
-         * var arraybuffer = value.byteBuffer.backingArray;
-         * var offset = value.position() * Math.pow(2, value._elementSizeShift);
-         * var floatarray = new Float32Array(arraybuffer.buffer, offset, count * 16);
-         * android.opengl.GLES20.prototype.mContext.uniformMatrix4fv(_location, transpose, floatarray);
+         * android.opengl.GLES20.prototype.mContext.uniformMatrix4fv(_location, transpose, floats);
          */{}
     }
 
@@ -3111,6 +3347,7 @@ public class GLES20 {
         checkWebGLContext();
         /**
          * @j2sNative
+         * android.opengl.GLES20.prototype.mClientArrays[indx] = null;
          * android.opengl.GLES20.prototype.mContext.vertexAttribPointer(indx, size, type, normalized, stride, offset);
          */{}
     }
@@ -3127,22 +3364,19 @@ public class GLES20 {
         int remaining
     ) {
         checkWebGLContext();
+        // The array is read when a draw uses it, see uploadClientArrays
+        int elementSize = size * getTypeSize(type);
+        Object bytes = getClientBytes(ptr);
         /**
          * @j2sNative
-         * // WebGL does not support client side arrays, we need to gen
-         * // a buffer object and upload the data into buffer object, then
-         * // bind the buffer object and call vertexAttribPointer.
-         * if (android.opengl.GLES20.prototype.mCachedBuffer == null) {
-         *     android.opengl.GLES20.prototype.mCachedBuffer = android.opengl.GLES20.prototype.mContext.createBuffer();
-         * }
-         * var buffer = android.opengl.GLES20.prototype.mCachedBuffer;
-         * android.opengl.GLES20.prototype.mContext.bindBuffer(android.opengl.GLES20.prototype.mContext.ARRAY_BUFFER, buffer);
-         * var arraybuffer = ptr.byteBuffer.backingArray;
-         * var offset = ptr.position() * Math.pow(2, ptr._elementSizeShift);
-         * android.opengl.GLES20.prototype.mContext.bufferData(android.opengl.GLES20.prototype.mContext.ARRAY_BUFFER, arraybuffer,
-         *                                                     android.opengl.GLES20.prototype.mContext.DYNAMIC_DRAW);
-         * android.opengl.GLES20.prototype.mContext.vertexAttribPointer(indx, size, type, normalized, stride, offset);                                                   
-         * 
+         * android.opengl.GLES20.prototype.mClientArrays[indx] = {
+         *     bytes: bytes,
+         *     size: size,
+         *     type: type,
+         *     normalized: normalized,
+         *     stride: stride != 0 ? stride : elementSize,
+         *     elementSize: elementSize
+         * };
          */{}
     }
 
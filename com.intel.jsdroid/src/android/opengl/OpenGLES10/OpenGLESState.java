@@ -11,11 +11,16 @@ import java.util.Arrays;
 public class OpenGLESState
 {
     private static final String TAG = "OpenGLESState";
+    private static final boolean DEBUG = false;
 
     private UniformBase[] uniforms = new UniformBase[UniformId.COUNT];
     private Attribute[] attributes = new Attribute[AttributeId.COUNT];
     private ShaderFile[] shaders = new ShaderFile[ShaderId.COUNT];
     private java.util.ArrayList<StateShaderProgram > stateShaderPrograms = new java.util.ArrayList<StateShaderProgram >();
+    // The programs by the hash of their state, see StateShaderProgram.next
+    private java.util.HashMap<Integer, StateShaderProgram> stateShaderProgramsByHash = new java.util.HashMap<Integer, StateShaderProgram>();
+    // Whether a state uniform changed since currentState was packed
+    private boolean stateDirty = true;
     private StateShaderProgram currentStateShaderProgram;
     private int stateSize;
     private int stateSizeBool;
@@ -1237,6 +1242,16 @@ public class OpenGLESState
 		uniforms[UniformId.TEXTURE0_MATRIX] = new Uniform<Matrix4x4f>();
 		uniforms[UniformId.TEXTURE1_MATRIX] = new Uniform<Matrix4x4f>();
 		uniforms[UniformId.TEXTURE2_MATRIX] = new Uniform<Matrix4x4f>();
+
+		for (int i = UniformId.FIRST_STATE_UNIFORM_BOOL; i <= UniformId.LAST_STATE_UNIFORM_INT; i++)
+		{
+			((UniformState<?>)(uniforms[i])).setOwner(this);
+		}
+	}
+
+	/* package */ void onStateChanged()
+	{
+		stateDirty = true;
 	}
 	private boolean setCurrentProgram_uberShaderCompiled = false;
 	public void setCurrentProgram()
@@ -1276,6 +1291,30 @@ public class OpenGLESState
 
 		StateShaderProgram oldStateShaderProgram = currentStateShaderProgram;
 
+		// The program only changes with the state uniforms
+		if (stateDirty || currentStateShaderProgram == null)
+		{
+			currentStateShaderProgram = getStateShaderProgram();
+			stateDirty = false;
+		}
+
+		if (currentStateShaderProgram != oldStateShaderProgram)
+		{
+			currentStateShaderProgram.shaderProgram.use();
+			setActiveUniformLocations(currentStateShaderProgram.shaderProgram.getActiveUniforms());
+			setActiveAttributeLocations(currentStateShaderProgram.shaderProgram.getActiveAttributes());
+		}
+
+		uploadAttributes();
+		uploadUniforms();
+	}
+
+	/**
+	 * Pack the state uniforms into currentState and return the program
+	 * compiled for that state, compiling it if there is none yet.
+	 */
+	private StateShaderProgram getStateShaderProgram()
+	{
 		// Set current state to faster array
 		int currentBit = 0;
 		for (int i = UniformId.FIRST_STATE_UNIFORM_BOOL; i <= UniformId.LAST_STATE_UNIFORM_BOOL; i++)
@@ -1302,31 +1341,17 @@ public class OpenGLESState
 		}
 
 		// Check if it matches to any existing state
-		int stateIndex = -1;
-		for (int i = 0; i < stateShaderPrograms.size(); i++)
+		int hash = Arrays.hashCode(currentState);
+		StateShaderProgram first = stateShaderProgramsByHash.get(hash);
+		for (StateShaderProgram program = first; program != null; program = program.next)
 		{
-			boolean stateFound = true;
-			for (int j = 0; j < stateSize; j++)
-			{
-				if (currentState[j] != stateShaderPrograms.get(i).state[j])
-				{
-					stateFound = false;
-					break;
-				}
-			}
-			if (stateFound)
+			if (program.matches(currentState, hash))
 			{
-				stateIndex = i;
-				break;
+				return program;
 			}
 		}
 
-		// If matched, fetch shader program from cache
-		if (stateIndex >= 0)
-		{
-			currentStateShaderProgram = stateShaderPrograms.get(stateIndex);
-		}
-		else
+		if (DEBUG)
 		{
 			Log.d(TAG, "State binary presentation:");
 			Log.d(TAG, "Bool states: ");
@@ -1339,44 +1364,37 @@ public class OpenGLESState
 			{
 			    Log.d(TAG, Integer.toHexString(currentState[i]));
 			}
+		}
 
-			java.util.ArrayList<ShaderSource > vertexShaderSources = new java.util.ArrayList<ShaderSource >();
-			java.util.ArrayList<ShaderSource  > fragmentShaderSources = new java.util.ArrayList<ShaderSource  >();
+		java.util.ArrayList<ShaderSource > vertexShaderSources = new java.util.ArrayList<ShaderSource >();
+		java.util.ArrayList<ShaderSource  > fragmentShaderSources = new java.util.ArrayList<ShaderSource  >();
 
-			addRequiredShaderSources(vertexShaderSources, fragmentShaderSources);
+		addRequiredShaderSources(vertexShaderSources, fragmentShaderSources);
 
-			addDefinesToShaderSources(vertexShaderSources, fragmentShaderSources);
+		addDefinesToShaderSources(vertexShaderSources, fragmentShaderSources);
 
-			if (true)
+		if (DEBUG)
+		{
+			Log.d(TAG, "Using shader files:");
+			for (int i = 0; i < vertexShaderSources.size(); i++)
 			{
-				Log.d(TAG, "Using shader files:");
-				for (int i = 0; i < vertexShaderSources.size(); i++)
-				{
-					Log.d(TAG, vertexShaderSources.get(i).getFile().getName());
-				}
-
-				for (int i = 0; i < fragmentShaderSources.size(); i++)
-				{
-				    Log.d(TAG, fragmentShaderSources.get(i).getFile().getName());
-				}
+				Log.d(TAG, vertexShaderSources.get(i).getFile().getName());
 			}
 
-			Shader vertexShader = new Shader(GLES20.GL_VERTEX_SHADER, vertexShaderSources);
-			Shader fragmentShader = new Shader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderSources);
-
-			currentStateShaderProgram = new StateShaderProgram(getCopyOfCurrentState(), new ShaderProgram("Optimized Shader " + (stateShaderPrograms.size() + 1), vertexShader, fragmentShader));
-			stateShaderPrograms.add(currentStateShaderProgram);
+			for (int i = 0; i < fragmentShaderSources.size(); i++)
+			{
+			    Log.d(TAG, fragmentShaderSources.get(i).getFile().getName());
+			}
 		}
 
-		if (currentStateShaderProgram != oldStateShaderProgram)
-		{
-			currentStateShaderProgram.shaderProgram.use();
-			setActiveUniformLocations(currentStateShaderProgram.shaderProgram.getActiveUniforms());
-			setActiveAttributeLocations(currentStateShaderProgram.shaderProgram.getActiveAttributes());
-		}
+		Shader vertexShader = new Shader(GLES20.GL_VERTEX_SHADER, vertexShaderSources);
+		Shader fragmentShader = new Shader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderSources);
 
-		uploadAttributes();
-		uploadUniforms();
+		StateShaderProgram program = new StateShaderProgram(getCopyOfCurrentState(), new ShaderProgram("Optimized Shader " + (stateShaderPrograms.size() + 1), vertexShader, fragmentShader));
+		program.next = first;
+		stateShaderProgramsByHash.put(hash, program);
+		stateShaderPrograms.add(program);
+		return program;
 	}
 
 	public void setActiveTexture(int a)
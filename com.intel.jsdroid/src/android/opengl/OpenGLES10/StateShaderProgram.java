@@ -4,11 +4,20 @@ public class StateShaderProgram
 {
     public int[] state = null;
     public ShaderProgram shaderProgram;
+    public final int hash;
+    // The next program whose state has the same hash
+    public StateShaderProgram next;
     
 	public StateShaderProgram(int[] state, ShaderProgram program)
 	{
 		this.state = state;
 		this.shaderProgram = program;
+		this.hash = java.util.Arrays.hashCode(state);
+	}
+
+	public boolean matches(int[] state, int hash)
+	{
+		return this.hash == hash && java.util.Arrays.equals(this.state, state);
 	}
 
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ public class UniformState<T> extends Uniform<T>
 {
     private String defineName;
     private ArrayList<ShaderFile > defineShaderFiles = new ArrayList<ShaderFile >();
+    private OpenGLESState owner;
     
 	public UniformState(ShaderFile defineShaderFile, String defineName, T value)
 	{
@@ -15,6 +16,21 @@ public class UniformState<T> extends Uniform<T>
 		defineShaderFiles.add(defineShaderFile);
 	}
 
+	public void setOwner(OpenGLESState owner)
+	{
+		this.owner = owner;
+	}
+
+	@Override
+	public void setValue(T val)
+	{
+		if (owner != null && (val == null ? value != null : !val.equals(value)))
+		{
+			owner.onStateChanged();
+		}
+		super.setValue(val);
+	}
+
 	public void addDefineShaderFile(ShaderFile defineShaderFile)
 	{
 		defineShaderFiles.add(defineShaderFile);
@@ -417,23 +417,9 @@ public class Handler {
 			delayMillis = 0;
 		}
 		
-		boolean result = true;
-		if (delayMillis > 0) {
-			/**
-		  	@j2sNative
-	  		window.setTimeout((function(handler, m) {
-				return function() {
-					//window.log("timeout: sendMessage");
-					handler.sendMessageAtTime(m, android.os.SystemClock.uptimeMillis());
-				};
-			})(this,msg), delayMillis);
-			 */
-			{
-			}
-		} else 
-            result = sendMessageAtTime(msg, SystemClock.uptimeMillis());
-        return result;
-
+		// MayLoon: delayed messages wait in the queue, which keeps one timer
+		// for all of them
+		return sendMessageAtTime(msg, SystemClock.uptimeMillis() + delayMillis);
 	}
 
 	/**
@@ -469,6 +455,29 @@ public class Handler {
 		return sent;
 	}
 
+	/**
+	 * Enqueue a message to be processed right before the next animation frame
+	 * is painted, ahead of the other messages due by then.
+	 *
+	 * @return Returns true if the message was successfully placed in to the 
+	 *         message queue.  Returns false on failure, usually because the
+	 *         looper processing the message queue is exiting.
+	 * @hide
+	 */
+	public final boolean sendMessageAtFrame(Message msg) {
+		boolean sent = false;
+		MessageQueue queue = mQueue;
+		if (queue != null) {
+			msg.target = this;
+			sent = queue.enqueueMessageAtFrame(msg);
+		} else {
+			RuntimeException e = new RuntimeException(this
+					+ " sendMessageAtFrame() called with no mQueue");
+			Log.w("Looper", e.getMessage(), e);
+		}
+		return sent;
+	}
+
 	/**
 	 * Enqueue a message at the front of the message queue, to be processed on
 	 * the next iteration of the message loop.  You will receive it in
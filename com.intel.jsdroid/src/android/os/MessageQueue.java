@@ -44,6 +44,33 @@ public class MessageQueue {
     private static int mId = -1; // debug id
     private int mPtr; // used by native code
     
+    /**
+     * MayLoon: there is no thread to block in next(), so the browser drives the
+     * queue instead. Due messages are dispatched in slices of at most
+     * SLICE_MILLIS, yielding to the browser between slices so input and
+     * painting get a turn. Future messages share one timer, armed for the
+     * earliest of them. Idle handlers run whenever a slice leaves nothing due.
+     */
+    private static final int SLICE_MILLIS = 8;
+
+    /** Set while a slice is dispatching */
+    private boolean mDispatching;
+
+    /** Set while a slice is scheduled to run as soon as the browser yields */
+    private boolean mSliceScheduled;
+
+    /** The id of the armed timer, -1 if none */
+    private int mTimer = -1;
+
+    /** When the armed timer fires */
+    private long mTimerWhen;
+
+    /** Messages waiting for the next animation frame, see enqueueMessageAtFrame */
+    private Message mFrameMessages;
+
+    /** Set while an animation frame is requested */
+    private boolean mFrameRequested;
+
     private void nativeInit() {mPtr = mId++;};
     private void nativeDestroy() {};
     private void nativePollOnce(int ptr, int timeoutMillis) {};
@@ -80,6 +107,8 @@ public class MessageQueue {
         }
         synchronized (this) {
             mIdleHandlers.add(handler);
+            // MayLoon: give it a chance to run even if no message comes
+            requestSliceLocked();
         }
     }
 
@@ -205,70 +234,284 @@ public class MessageQueue {
 
             msg.when = when;
             //Log.d("MessageQueue", "Enqueing: " + msg);
-            Message p = mMessages;
-            if (p == null || when == 0 || when < p.when) {
-                msg.next = p;
-                mMessages = msg;
-                needWake = mBlocked; // new head, might need to wake up
-                if (p == null) {
-                    // MayLoon: If it is the first message, trigger the timer to processQueue, else
-                    // just queue the message.
-                    this.processQueue();
-                }
+            needWake = insertLocked(msg, when);
+            // MayLoon: make sure a slice or the timer picks the message up.
+            scheduleLocked();
+        }
+        if (needWake) {
+            nativeWake(mPtr);
+        }
+
+        return true;
+    }
+
+    /**
+     * Inserts msg in when order. Returns true if it is the new head.
+     */
+    private boolean insertLocked(Message msg, long when) {
+        Message p = mMessages;
+        if (p == null || when == 0 || when < p.when) {
+            msg.next = p;
+            mMessages = msg;
+            return mBlocked; // new head, might need to wake up
+        }
+        Message prev = null;
+        while (p != null && p.when <= when) {
+            prev = p;
+            p = p.next;
+        }
+        msg.next = prev.next;
+        prev.next = msg;
+        return false; // still waiting on head, no need to wake up
+    }
+
+    /**
+     * MayLoon: enqueue a message to be dispatched right before the browser
+     * paints the next frame, ahead of the messages due by then. Used for
+     * traversals, so that layout and drawing happen once per frame.
+     */
+    final boolean enqueueMessageAtFrame(Message msg) {
+        if (msg.when != 0) {
+            throw new AndroidRuntimeException(msg
+                    + " This message is already in use.");
+        }
+        synchronized (this) {
+            if (mQuiting) {
+                RuntimeException e = new RuntimeException(
+                    msg.target + " sending message to a Handler on a dead thread");
+                Log.w("MessageQueue", e.getMessage(), e);
+                return false;
+            }
+            // mark it in use, it is given its real time when the frame comes
+            msg.when = Long.MAX_VALUE;
+            if (mFrameMessages == null) {
+                mFrameMessages = msg;
             } else {
-                Message prev = null;
-                while (p != null && p.when <= when) {
-                    prev = p;
+                Message p = mFrameMessages;
+                while (p.next != null) {
                     p = p.next;
                 }
-                msg.next = prev.next;
-                prev.next = msg;
-                needWake = false; // still waiting on head, no need to wake up
+                p.next = msg;
+            }
+            msg.next = null;
+            if (!mFrameRequested) {
+                mFrameRequested = true;
+                /**
+                 * @j2sNative
+                 * var self = this;
+                 * var raf = window.requestAnimationFrame || window.webkitRequestAnimationFrame
+                 *         || window.mozRequestAnimationFrame
+                 *         || function (callback) { return window.setTimeout(callback, 16); };
+                 * raf.call(window, function () {
+                 *     self.onFrame();
+                 * });
+                 */{}
             }
         }
-        if (needWake) {
-            nativeWake(mPtr);
+        return true;
+    }
+
+    /* package */ void onFrame() {
+        synchronized (this) {
+            mFrameRequested = false;
+            Message frameMessages = mFrameMessages;
+            mFrameMessages = null;
+            if (frameMessages == null) {
+                return;
+            }
+            // put them at the front, keeping their order
+            long now = SystemClock.uptimeMillis();
+            Message last = frameMessages;
+            last.when = now;
+            while (last.next != null) {
+                last = last.next;
+                last.when = now;
+            }
+            last.next = mMessages;
+            mMessages = frameMessages;
         }
+        // run the traversal before the browser paints
+        runSlice();
+    }
 
-        return true;
+    /**
+     * Makes sure the head of the queue gets dispatched: by a slice as soon as
+     * the browser yields if it is due, otherwise by the timer.
+     */
+    private void scheduleLocked() {
+        if (mDispatching) {
+            // the running slice schedules what is left when it is done
+            return;
+        }
+        Message head = mMessages;
+        if (head == null) {
+            cancelTimerLocked();
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (head.when <= now) {
+            cancelTimerLocked();
+            requestSliceLocked();
+        } else if (mTimer == -1 || mTimerWhen != head.when) {
+            cancelTimerLocked();
+            mTimerWhen = head.when;
+            int delay = (int) Math.min(head.when - now, Integer.MAX_VALUE);
+            int timer = -1;
+            /**
+             * @j2sNative
+             * var self = this;
+             * timer = window.setTimeout(function () {
+             *     self.mTimer = -1;
+             *     self.runSlice();
+             * }, delay);
+             */{}
+            mTimer = timer;
+        }
+    }
+
+    /**
+     * Runs a slice as soon as the browser yields.
+     */
+    private void requestSliceLocked() {
+        if (mDispatching || mSliceScheduled) {
+            return;
+        }
+        mSliceScheduled = true;
+        /**
+         * @j2sNative
+         * var self = this;
+         * window.setTimeout(function () {
+         *     self.runSlice();
+         * }, 0);
+         */{}
     }
 
-    private void processQueue() {
+    private void cancelTimerLocked() {
+        if (mTimer != -1) {
+            int timer = mTimer;
+            /**
+             * @j2sNative
+             * window.clearTimeout(timer);
+             */{}
+            mTimer = -1;
+        }
+    }
 
-        while (true) {
-            Message msg = this.mMessages; // get the head
-            if (msg != null) {
+    /**
+     * Dispatches due messages until there are none left or the slice is used
+     * up, then runs the idle handlers if nothing is due and schedules the rest.
+     */
+    /* package */ void runSlice() {
+        mSliceScheduled = false;
+        if (mDispatching) {
+            // a nested run, e.g. from a synchronous dialog; the outer slice goes on
+            return;
+        }
+        mDispatching = true;
+        boolean idle = false;
+        try {
+            final long start = SystemClock.uptimeMillis();
+            for (;;) {
+                Message msg;
+                synchronized (this) {
+                    msg = mMessages;
+                    if (msg == null || msg.when > SystemClock.uptimeMillis()) {
+                        idle = true;
+                        break;
+                    }
+                    mMessages = msg.next;
+                    msg.next = null;
+                }
                 if (msg.target == null) {
+                    // the quit message
                     continue;
                 }
-                
-                if (false)
-                    Log.e("MessageQueue", ">>>>> Dispatching to "
-                            + msg.target.getClass().getName()
-                            + " "
-                            + (msg.callback == null ? "null" : msg.callback
-                                    .getClass().getName()) + ": " + msg.what);
-                msg.dispatching = true;
+                if (Config.LOGV) Log.v("MessageQueue", "Dispatching message: " + msg);
                 msg.target.dispatchMessage(msg);
-                msg.dispatching = false;
-                if (false)
-                    Log.e("MessageQueue", "<<<<< Finished to    "
-                            + msg.target.getClass().getName()
-                            + " "
-                            + (msg.callback == null ? "null" : msg.callback
-                                    .getClass().getName()));
-                msg = this.next(); // consume a message in the queue.
-            } else {
+                msg.recycle();
+                if (SystemClock.uptimeMillis() - start >= SLICE_MILLIS) {
+                    break;
+                }
+            }
+        } finally {
+            mDispatching = false;
+            if (idle) {
+                runIdleHandlers();
+            }
+            synchronized (this) {
+                scheduleLocked();
+            }
+        }
+    }
+
+    private void runIdleHandlers() {
+        int pendingIdleHandlerCount;
+        synchronized (this) {
+            pendingIdleHandlerCount = mIdleHandlers.size();
+            if (pendingIdleHandlerCount == 0) {
                 return;
             }
+            if (mPendingIdleHandlers == null) {
+                mPendingIdleHandlers = new IdleHandler[Math.max(pendingIdleHandlerCount, 4)];
+            }
+            mPendingIdleHandlers = mIdleHandlers.toArray(mPendingIdleHandlers);
+        }
+
+        for (int i = 0; i < pendingIdleHandlerCount; i++) {
+            final IdleHandler idler = mPendingIdleHandlers[i];
+            mPendingIdleHandlers[i] = null; // release the reference to the handler
+
+            boolean keep = false;
+            try {
+                keep = idler.queueIdle();
+            } catch (Throwable t) {
+                Log.wtf("MessageQueue", "IdleHandler threw exception", t);
+            }
+
+            if (!keep) {
+                synchronized (this) {
+                    mIdleHandlers.remove(idler);
+                }
+            }
         }
     }
-    
+
+    /**
+     * MayLoon: removes the messages waiting for a frame that belong to h and
+     * carry object, if given, and match what or r when asked to.
+     */
+    private boolean removeFrameMessagesLocked(Handler h, boolean matchWhat, int what,
+            Runnable r, Object object, boolean doRemove) {
+        boolean found = false;
+        Message prev = null;
+        Message p = mFrameMessages;
+        while (p != null) {
+            Message n = p.next;
+            if (p.target == h && (object == null || p.obj == object)
+                    && (!matchWhat || p.what == what)
+                    && (r == null || p.callback == r)) {
+                if (!doRemove) return true;
+                found = true;
+                if (prev == null) {
+                    mFrameMessages = n;
+                } else {
+                    prev.next = n;
+                }
+                p.recycle();
+            } else {
+                prev = p;
+            }
+            p = n;
+        }
+        return found;
+    }
+
     final boolean removeMessages(Handler h, int what, Object object,
             boolean doRemove) {
         synchronized (this) {
             Message p = mMessages;
-            boolean found = false;
+            boolean found = removeFrameMessagesLocked(h, true, what, null, object, doRemove);
+            if (found && !doRemove) return true;
 
             // Remove all messages at front.
             while (p != null && p.target == h && p.what == what
@@ -314,6 +557,7 @@ public class MessageQueue {
         }
 
         synchronized (this) {
+            removeFrameMessagesLocked(h, false, 0, r, object, true);
             Message p = mMessages;
 
             // Remove all messages at front.
@@ -350,6 +594,7 @@ public class MessageQueue {
 
     final void removeCallbacksAndMessages(Handler h, Object object) {
         synchronized (this) {
+            removeFrameMessagesLocked(h, false, 0, null, object, true);
             Message p = mMessages;
 
             // Remove all messages at front.
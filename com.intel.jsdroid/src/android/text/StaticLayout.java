@@ -121,7 +121,7 @@ public class StaticLayout extends Layout {
         
         String fontStyle = "normal";
         String fontWeight = "normal";
-        String fontFamily = "serif";
+        String fontFamily = Paint.DEFAULT_FONT_FAMILY;
         Typeface tf = paint.getTypeface();
         if (tf != null) {
             switch (tf.getStyle()) {
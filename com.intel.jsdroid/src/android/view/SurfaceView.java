@@ -23,6 +23,7 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 //import android.content.res.CompatibilityInfo.Translator;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.PixelFormat;
 import android.graphics.PorterDuff;
@@ -167,6 +168,27 @@ public class SurfaceView extends View {
     boolean mReportDrawNeeded;
     //private Translator mTranslator;
 
+    /*
+     * MayLoon: lockCanvas() hands out a Canvas over an offscreen back buffer,
+     * and unlockCanvasAndPost() makes that buffer the pending frame, drawn
+     * onto the <canvas> element of the surface with a single drawImage in the
+     * next animation frame. The pending frame is never drawn into: the two
+     * buffers are swapped at each post. A frame posted while another one is
+     * still pending replaces it, and the replaced frame is dropped. Only the
+     * area locked since the last presentation is copied to the screen.
+     */
+    private Bitmap mBackBuffer;
+    private Bitmap mFrontBuffer;
+    private Canvas mBackCanvas;
+    private Canvas mFrontCanvas;
+    private int mLockSaveCount;
+    private final Rect mLockedRect = new Rect();
+    // The area of the posted frames not presented yet
+    private final Rect mPostedRect = new Rect();
+    private boolean mFramePending;
+    private boolean mFrameRequested;
+    private String mScreenCanvasId;
+
     public SurfaceView(Context context) {
         super(context);
         init();
@@ -283,10 +305,119 @@ public class SurfaceView extends View {
         }
         //mSession = null;
         mLayout.token = null;
+        releaseBuffers();
 
         super.onDetachedFromWindow();
     }
 
+    /**
+     * Return the back buffer as a Canvas clipped to the dirty rectangle, or
+     * to the whole surface if dirty is null.
+     */
+    private Canvas lockBackBuffer(Rect dirty, int width, int height) {
+        if (mBackBuffer == null || mBackBuffer.getWidth() != width
+                || mBackBuffer.getHeight() != height) {
+            releaseBuffers();
+            mBackBuffer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mFrontBuffer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mBackCanvas = new Canvas(mBackBuffer);
+            mFrontCanvas = new Canvas(mFrontBuffer);
+        }
+        mLockedRect.set(0, 0, width, height);
+        if (dirty != null) {
+            if (!mLockedRect.intersect(dirty)) {
+                mLockedRect.setEmpty();
+            }
+            dirty.set(mLockedRect);
+        }
+        if (mLockedRect.width() != width || mLockedRect.height() != height) {
+            // What is outside the dirty rectangle shows the last posted frame
+            Object back = mBackBuffer;
+            Object front = mFrontBuffer;
+            /**
+             * @j2sNative
+             * var context = back.mCachedCanvas.getContext("2d");
+             * context.save();
+             * context.setTransform(1, 0, 0, 1, 0, 0);
+             * context.globalAlpha = 1;
+             * context.globalCompositeOperation = "copy";
+             * context.drawImage(front.mCachedCanvas, 0, 0);
+             * context.restore();
+             */{}
+        }
+        mLockSaveCount = mBackCanvas.save();
+        mBackCanvas.clipRect(mLockedRect);
+        return mBackCanvas;
+    }
+
+    /**
+     * Make the back buffer the pending frame, and have it presented in the
+     * next animation frame.
+     */
+    private void postBackBuffer() {
+        mBackCanvas.restoreToCount(mLockSaveCount);
+        Bitmap buffer = mFrontBuffer;
+        mFrontBuffer = mBackBuffer;
+        mBackBuffer = buffer;
+        Canvas canvas = mFrontCanvas;
+        mFrontCanvas = mBackCanvas;
+        mBackCanvas = canvas;
+        mPostedRect.union(mLockedRect);
+        mFramePending = true;
+        if (!mFrameRequested) {
+            mFrameRequested = true;
+            /**
+             * @j2sNative
+             * var self = this;
+             * var raf = window.requestAnimationFrame || window.webkitRequestAnimationFrame
+             *         || window.mozRequestAnimationFrame
+             *         || function (callback) { return window.setTimeout(callback, 16); };
+             * raf.call(window, function () {
+             *     self.onAnimationFrame();
+             * });
+             */{}
+        }
+    }
+
+    /* package */ void onAnimationFrame() {
+        mFrameRequested = false;
+        if (!mFramePending || mFrontBuffer == null) {
+            return;
+        }
+        mFramePending = false;
+        Rect r = mPostedRect;
+        String id = mScreenCanvasId;
+        Object front = mFrontBuffer;
+        if (!r.isEmpty()) {
+            /**
+             * @j2sNative
+             * var element = document.getElementById(id);
+             * if (element != null) {
+             *     var context = element.getContext("2d");
+             *     var width = r.right - r.left;
+             *     var height = r.bottom - r.top;
+             *     context.clearRect(r.left, r.top, width, height);
+             *     context.drawImage(front.mCachedCanvas, r.left, r.top, width, height,
+             *             r.left, r.top, width, height);
+             * }
+             */{}
+        }
+        r.setEmpty();
+    }
+
+    private void releaseBuffers() {
+        if (mBackBuffer != null) {
+            mBackBuffer.recycle();
+            mFrontBuffer.recycle();
+        }
+        mBackBuffer = null;
+        mFrontBuffer = null;
+        mBackCanvas = null;
+        mFrontCanvas = null;
+        mFramePending = false;
+        mPostedRect.setEmpty();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         int width = getDefaultSize(mRequestedWidth, widthMeasureSpec);
@@ -765,63 +896,56 @@ public class SurfaceView extends View {
         }
 
         public Canvas lockCanvas() {
-        	return lockCanvas(new Rect(0, 0, getRight() - getLeft(), getBottom() - getTop()));
-
-        	//ViewRoot viewRoot = (ViewRoot) getRootView().getParent();
-        	/**
-        	 * @j2sNative
-        	 * //alert("ViewRootID is " + viewRoot.getFgCanvasId());
-        	 */ //{}
-        	//Canvas c = new Canvas(viewRoot.getBgCanvasId(), viewRoot.getFgCanvasId());
-        	//c.chooseCanvas(Canvas.FOREGROUND_CANVAS);
-        	//return c;
-
-            //return internalLockCanvas(null);
+            return lockCanvas(null);
         }
 
         public Canvas lockCanvas(Rect dirty) {
-        	try{
-        		ViewRoot viewRoot = (ViewRoot) getRootView().getParent();
-        		if(viewRoot==null){
-        			return null;
-        		}
-                String surfaceViewCanvasID = viewRoot.getCanvasId() + "-SurfaceView";
-                int zInx= SurfaceView.this.getZIndex()+1;
-            	/**
-            	 * @j2sNative
-            	 * var canvas = document.getElementById(surfaceViewCanvasID);
-            	 * if (canvas == null) {
-            	 * 	canvas = document.createElement('canvas');
-            	 * 	canvas.id = surfaceViewCanvasID;
-            	 * 	canvas.style.zIndex = zInx;//2147483647; // Maximum z-index value of most browsers
-            	 * 	canvas.style.position = 'absolute';
-            	 * }
-            	 * if(dirty != null) {
-            	 * canvas.style.left = this.b$["android.view.SurfaceView"].getLeft() + dirty.left + 'px';
-            	 * canvas.style.top = this.b$["android.view.SurfaceView"].getTop() + dirty.top + 'px';
-            	 * canvas.width = dirty.width();
-            	 * canvas.height = dirty.height();
-            	 * }
-            	 * else {
-            	 * canvas.style.left = this.b$["android.view.SurfaceView"].getLeft() + 'px';
-            	 * canvas.style.top = this.b$["android.view.SurfaceView"].getTop()  + 'px';
-            	 * canvas.width = this.b$["android.view.SurfaceView"].getWidth();
-            	 * canvas.height = this.b$["android.view.SurfaceView"].getHeight();
-            	 * }
-            	 *
-            	 * try{
-            	 * document.getElementById(viewRoot.getCanvasId()).parentNode.appendChild(canvas);
-            	 * }catch(e){
-            	 *    return null;
-            	 * }
-            	 */ {}
-            	Canvas c = new Canvas(null, surfaceViewCanvasID);
-            	c.chooseCanvas(Canvas.SURFACEVIEW_CANVAS);
-            	return c;
-        	}catch(Exception e){
-        		return null;
-        	}
-            //return internalLockCanvas(dirty);
+            ViewRoot viewRoot = (ViewRoot) getRootView().getParent();
+            if (viewRoot == null) {
+                return null;
+            }
+            int width = getWidth();
+            int height = getHeight();
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            String surfaceViewCanvasID = viewRoot.getCanvasId() + "-SurfaceView";
+            String rootCanvasID = viewRoot.getCanvasId();
+            int zInx = SurfaceView.this.getZIndex() + 1;
+            String left = getLeft() + "px";
+            String top = getTop() + "px";
+            boolean attached = false;
+            /**
+             * @j2sNative
+             * var canvas = document.getElementById(surfaceViewCanvasID);
+             * if (canvas == null) {
+             *     var root = document.getElementById(rootCanvasID);
+             *     if (root != null) {
+             *         canvas = document.createElement('canvas');
+             *         canvas.id = surfaceViewCanvasID;
+             *         canvas.style.position = 'absolute';
+             *         canvas.style.zIndex = zInx;
+             *         root.parentNode.appendChild(canvas);
+             *     }
+             * }
+             * if (canvas != null) {
+             *     // Only touch what changed, setting the size clears the element
+             *     if (canvas.width != width || canvas.height != height) {
+             *         canvas.width = width;
+             *         canvas.height = height;
+             *     }
+             *     if (canvas.style.left != left || canvas.style.top != top) {
+             *         canvas.style.left = left;
+             *         canvas.style.top = top;
+             *     }
+             *     attached = true;
+             * }
+             */{}
+            if (!attached) {
+                return null;
+            }
+            mScreenCanvasId = surfaceViewCanvasID;
+            return lockBackBuffer(dirty, width, height);
         }
 
         private final Canvas internalLockCanvas(Rect dirty) {
@@ -871,11 +995,10 @@ public class SurfaceView extends View {
         public void unlockCanvasAndPost(Canvas canvas) {
             //mSurface.unlockCanvasAndPost(canvas);
             //mSurfaceLock.unlock();
-
-        	ViewRoot viewRoot = (ViewRoot) getRootView().getParent();
-        	if(viewRoot==null){
-        		return;
-        	}
+            if (canvas == null || canvas != mBackCanvas) {
+                return;
+            }
+            postBackBuffer();
         }
 
         public Surface getSurface() {
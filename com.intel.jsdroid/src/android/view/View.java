@@ -24,6 +24,7 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
+import android.graphics.DisplayList;
 import android.graphics.Interpolator;
 import android.graphics.LinearGradient;
 import android.graphics.Matrix;
@@ -1337,6 +1338,13 @@ public class View implements Drawable.Callback, KeyEvent.Callback {
 	 */
 	private int mDrawingCacheBackgroundColor = 0;
 
+	/**
+	 * MayLoon: the drawing cache is a display list of the canvas calls made by
+	 * draw(), played back while DRAWING_CACHE_VALID is set instead of running
+	 * the drawing code of this view and its children again.
+	 */
+	private DisplayList mDisplayList;
+
     /**
      * The delegate to handle touch events that are physically in this view
      * but should be handled by another view.
@@ -3935,11 +3943,12 @@ public class View implements Drawable.Callback, KeyEvent.Callback {
 		}
 
 		if ((changed & DRAWING_CACHE_ENABLED) != 0) {
+			destroyDrawingCache();
 			mPrivateFlags &= ~DRAWING_CACHE_VALID;
 		}
 
 		if ((changed & DRAWING_CACHE_QUALITY_MASK) != 0) {
-			//destroyDrawingCache();
+			destroyDrawingCache();
 			mPrivateFlags &= ~DRAWING_CACHE_VALID;
 		}
 
@@ -5184,6 +5193,39 @@ public class View implements Drawable.Callback, KeyEvent.Callback {
 	protected void onDraw(Canvas canvas) {
 	}
 
+	/**
+	 * MayLoon: The number of DOM elements this view and the views below it
+	 * place over the canvas. Views count their own element when they are
+	 * created, and view groups add and subtract their children's counts as
+	 * children come and go.
+	 */
+	int mDomElementCount;
+
+	/**
+	 * MayLoon: Returns whether this view, or a view below it, places a DOM
+	 * element of its own over the canvas. Such an element is only moved when
+	 * its view draws, so these views can't be skipped by a partial redraw.
+	 *
+	 * @hide
+	 */
+	public final boolean hasDomElements() {
+		return mDomElementCount > 0;
+	}
+
+	/**
+	 * MayLoon: Adds to the DOM elements counted for this view and its
+	 * ancestors.
+	 *
+	 * @hide
+	 */
+	protected final void addDomElements(int count) {
+		View view = this;
+		while (view != null) {
+			view.mDomElementCount += count;
+			view = view.mParent instanceof View ? (View) view.mParent : null;
+		}
+	}
+
 	public void assignParent(ViewParent parent, boolean modifyDom) {
 		if (modifyDom == true) {
 			if (mParent == null) {
@@ -5298,6 +5340,7 @@ public class View implements Drawable.Callback, KeyEvent.Callback {
 	 */
 	protected void onDetachedFromWindow() {
 		mPrivateFlags &= ~CANCEL_NEXT_UP_EVENT;
+		destroyDrawingCache();
 	}
 
 	/**
@@ -8423,13 +8466,67 @@ public class View implements Drawable.Callback, KeyEvent.Callback {
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: destroyDrawingCache");
+     * <p>Frees the resources used by the drawing cache. If you call
+     * {@link #buildDrawingCache()} manually without calling
+     * {@link #setDrawingCacheEnabled(boolean) setDrawingCacheEnabled(true)}, you
+     * should cleanup the cache with this method afterwards.</p>
+     *
+     * @see #setDrawingCacheEnabled(boolean)
+     * @see #buildDrawingCache()
      */
-    @MayloonStubAnnotation()
     public void destroyDrawingCache() {
-        System.out.println("Stub" + " Function : destroyDrawingCache");
-        return;
+        if (mDisplayList != null) {
+            mDisplayList.reset();
+            mDisplayList = null;
+        }
+        mPrivateFlags &= ~DRAWING_CACHE_VALID;
+    }
+
+    /**
+     * Draw this view from its drawing cache. The cache is recorded while the
+     * view draws if it was invalidated since the last time, and played back
+     * otherwise.
+     *
+     * @param canvas The canvas to which the view is rendered, translated and
+     *        clipped to the view like for {@link #draw(Canvas)}.
+     */
+    /* package */ void drawFromDrawingCache(Canvas canvas) {
+        if ((mPrivateFlags & DRAWING_CACHE_VALID) == DRAWING_CACHE_VALID
+                && mDisplayList != null) {
+            mPrivateFlags = (mPrivateFlags & ~DIRTY_MASK) | DRAWN;
+            mDisplayList.replay(canvas);
+            return;
+        }
+
+        if (mDisplayList == null) {
+            mDisplayList = new DisplayList();
+        }
+        // Set before drawing, so that an invalidate() issued while drawing
+        // throws the recording away
+        mPrivateFlags |= DRAWING_CACHE_VALID;
+
+        // The list must hold everything the view draws, not just what a
+        // partial redraw of an opaque area would
+        final AttachInfo attachInfo = mAttachInfo;
+        final boolean ignoreDirtyState = attachInfo != null && attachInfo.mIgnoreDirtyState;
+        if (attachInfo != null) {
+            attachInfo.mIgnoreDirtyState = true;
+        }
+        canvas.beginRecording(mDisplayList);
+        try {
+            // Fast path for layouts with no backgrounds
+            if ((mPrivateFlags & SKIP_DRAW) == SKIP_DRAW) {
+                mPrivateFlags &= ~DIRTY_MASK;
+                dispatchDraw(canvas);
+            } else {
+                draw(canvas);
+            }
+        } finally {
+            canvas.endRecording(mDisplayList);
+            if (attachInfo != null) {
+                attachInfo.mIgnoreDirtyState = ignoreDirtyState;
+            }
+        }
     }
 
     /**
@@ -8523,13 +8620,12 @@ public class View implements Drawable.Callback, KeyEvent.Callback {
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: buildDrawingCache");
+     * <p>Calling this method is equivalent to calling <code>buildDrawingCache(false)</code>.</p>
+     *
+     * @see #buildDrawingCache(boolean)
      */
-    @MayloonStubAnnotation()
     public void buildDrawingCache() {
-        System.out.println("Stub" + " Function : buildDrawingCache");
-        return;
+        buildDrawingCache(false);
     }
 
     /**
@@ -8553,12 +8649,19 @@ public class View implements Drawable.Callback, KeyEvent.Callback {
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: buildDrawingCache");
+     * <p>Forces the drawing cache to be built if the drawing cache is invalid.</p>
+     *
+     * <p>MayLoon: the cache is a display list, which can only be recorded
+     * while the view draws into the window canvas. An invalid cache is
+     * dropped here and recorded again by the next draw.</p>
+     *
+     * @param autoScale Ignored, the display list is resolution independent.
+     *
+     * @see #destroyDrawingCache()
      */
-    @MayloonStubAnnotation()
     public void buildDrawingCache(boolean autoScale) {
-        System.out.println("Stub" + " Function : buildDrawingCache");
-        return;
+        if ((mPrivateFlags & DRAWING_CACHE_VALID) == 0 && mDisplayList != null) {
+            mDisplayList.reset();
+        }
     }
 }
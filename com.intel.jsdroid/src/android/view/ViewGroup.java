@@ -1022,10 +1022,12 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
         // to call invalidate() successfully when doing animations
         child.mPrivateFlags |= DRAWN;
         
-//        if (!concatMatrix && canvas.quickReject(cl, ct, cr, cb, Canvas.EdgeType.BW) &&
-//                (child.mPrivateFlags & DRAW_ANIMATION) == 0) {
-//            return more;
-//        }
+        // Skip children that lie outside of the area being redrawn. Children
+        // with DOM elements still draw, so the elements follow them out of view
+        if (!concatMatrix && canvas.quickReject(cl, ct, cr, cb, Canvas.EdgeType.BW) &&
+                (child.mPrivateFlags & DRAW_ANIMATION) == 0 && !child.hasDomElements()) {
+            return more;
+        }
 
         child.computeScroll();
 
@@ -1042,6 +1044,17 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 
         final boolean hasNoCache = true;
 
+        // MayLoon: the drawing cache is a display list that plays back at the
+        // place the child draws, so it needs the same translation and clip as
+        // drawing the child without a cache. Playing it back doesn't run
+        // onDraw(), which is what moves DOM elements, so a child that has
+        // any draws directly.
+        final boolean drawWithCache = ((flags & FLAG_CHILDREN_DRAWN_WITH_CACHE) ==
+                FLAG_CHILDREN_DRAWN_WITH_CACHE ||
+                (flags & FLAG_ALWAYS_DRAWN_WITH_CACHE) == FLAG_ALWAYS_DRAWN_WITH_CACHE) &&
+                child.isDrawingCacheEnabled() && !child.willNotCacheDrawing() &&
+                !child.hasDomElements();
+
         final int restoreTo = canvas.save();
         if (hasNoCache) {
             canvas.translate(cl - sx, ct - sy);
@@ -1103,8 +1116,12 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
         }
 
         if (hasNoCache) {
-            // Fast path for layouts with no backgrounds
-            if ((child.mPrivateFlags & SKIP_DRAW) == SKIP_DRAW) {
+            if (drawWithCache && (child.mPrivateFlags & ALPHA_SET) == 0) {
+                // A child that applies an animation alpha itself draws
+                // differently from what its cache holds
+                child.drawFromDrawingCache(canvas);
+            } else if ((child.mPrivateFlags & SKIP_DRAW) == SKIP_DRAW) {
+                // Fast path for layouts with no backgrounds
                 child.mPrivateFlags &= ~DIRTY_MASK;
                 child.dispatchDraw(canvas);
             } else {
@@ -1564,10 +1581,19 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 			throw new IndexOutOfBoundsException("index=" + index + " count="
 					+ count);
 		}
+		if (child.mDomElementCount != 0) {
+			addDomElements(child.mDomElementCount);
+		}
 	}
 
     // This method also sets the child's mParent to null
     private void removeFromArray(int index) {
+        removeFromArray(index, false);
+    }
+
+    // This method also sets the child's mParent to null. A detached child
+    // keeps its DOM elements if keepDetachedElements() says so.
+    private void removeFromArray(int index, boolean detach) {
         final View[] children = mChildren;
         final int count = mChildrenCount;
 
@@ -1577,15 +1603,22 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 
         View view = children[index];
         view.mParent = null;
-        /**
-         * @j2sNative 
-         * var child = document.getElementById(view.mUIElementID);
-         * if (child != null) {
-         *     child.parentNode.removeChild(child);
-         * } else {
-         *     this.removeChildren(view);
-         * }
-         */{}
+        if (view.mDomElementCount != 0) {
+            addDomElements(-view.mDomElementCount);
+        }
+        if (detach && keepDetachedElements()) {
+            hideElements(view);
+        } else {
+            /**
+             * @j2sNative
+             * var child = document.getElementById(view.mUIElementID);
+             * if (child != null) {
+             *     child.parentNode.removeChild(child);
+             * } else {
+             *     this.removeChildren(view);
+             * }
+             */{}
+        }
 
         if (index < count - 1) {
             System.arraycopy(children, index + 1, children, index, mChildrenCount - 1 - index);
@@ -1595,6 +1628,12 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 
     // This method also sets the children's mParent to null
     private void removeFromArray(int start, int count) {
+        removeFromArray(start, count, false);
+    }
+
+    // This method also sets the children's mParent to null. Detached children
+    // keep their DOM elements if keepDetachedElements() says so.
+    private void removeFromArray(int start, int count, boolean detach) {
         final View[] children = mChildren;
         final int childrenCount = mChildrenCount;
 
@@ -1605,14 +1644,26 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
             return;
         }
 
+        final boolean removeElements = !(detach && keepDetachedElements());
+        int domElements = 0;
+        for (int i = start; i < end; i++) {
+            domElements += children[i].mDomElementCount;
+            if (!removeElements) {
+                hideElements(children[i]);
+            }
+        }
+        if (domElements != 0) {
+            addDomElements(-domElements);
+        }
+
         if (end == childrenCount) {
             for (int i = start; i < end; i++) {
                 /**
                  * @j2sNative 
-                 * var child = document.getElementById(children[i].mUIElementID);
+                 * var child = removeElements ? document.getElementById(children[i].mUIElementID) : null;
                  * if (child != null) {
                  *     child.parentNode.removeChild(child);
-                 * } else {
+                 * } else if (removeElements) {
                  *     this.removeChildren(children[i]);
                  * }
                  */{}
@@ -1624,10 +1675,10 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
             for (int i = start; i < end; i++) {
                 /**
                  * @j2sNative 
-                 * var child = document.getElementById(children[i].mUIElementID);
+                 * var child = removeElements ? document.getElementById(children[i].mUIElementID) : null;
                  * if (child != null) {
                  *     child.parentNode.removeChild(child);
-                 * } else {
+                 * } else if (removeElements) {
                  *    this.removeChildren(children[i]);
                  * }
                  */{}
@@ -1647,6 +1698,40 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 
         mChildrenCount -= (end - start);
     }
+    /**
+     * MayLoon: Whether detached children keep their DOM elements in the
+     * document, hidden, rather than losing them. The elements are shown again
+     * when their views draw, and removed by {@link #removeDetachedView}.
+     * Groups that detach children to reuse them, like the recycling lists,
+     * return true so the elements needn't be built again.
+     *
+     * @hide
+     */
+    protected boolean keepDetachedElements() {
+        return false;
+    }
+
+    /**
+     * MayLoon: Hides the DOM element of a detached view, or those of its
+     * descendants if it has none, remembering the visibility to restore.
+     */
+    public void hideElements(View view) {
+        /**
+         * @j2sNative
+         * var element = document.getElementById(view.mUIElementID);
+         * if (element != null) {
+         *     if (element.detachedVisibility == null) {
+         *         element.detachedVisibility = element.style.visibility;
+         *         element.style.visibility = "hidden";
+         *     }
+         * } else if (view.mChildrenCount != null) {
+         *     for (var i = 0; i < view.mChildrenCount; i++) {
+         *         this.hideElements(view.mChildren[i]);
+         *     }
+         * }
+         */{}
+    }
+
     public void removeChildren(View parent) {
         /**
          * @j2sNative
@@ -1838,6 +1923,13 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 
         final View[] children = mChildren;
         mChildrenCount = 0;
+        if (mDomElementCount != 0) {
+            int domElements = 0;
+            for (int i = 0; i < count; i++) {
+                domElements += children[i].mDomElementCount;
+            }
+            addDomElements(-domElements);
+        }
 
         final OnHierarchyChangeListener listener = mOnHierarchyChangeListener;
         final boolean notify = listener != null;
@@ -1902,6 +1994,18 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 			child.clearFocus();
 		}
 
+		if (keepDetachedElements()) {
+			/**
+			 * @j2sNative
+			 * var element = document.getElementById(child.mUIElementID);
+			 * if (element != null) {
+			 *     element.parentNode.removeChild(element);
+			 * } else {
+			 *     this.removeChildren(child);
+			 * }
+			 */{}
+		}
+
 		if (child.mAttachInfo != null) {
 			child.dispatchDetachedFromWindow();
 		}
@@ -1960,7 +2064,7 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 	 * @see #removeDetachedView(View, boolean)
 	 */
 	protected void detachViewFromParent(View child) {
-		removeFromArray(indexOfChild(child));
+		removeFromArray(indexOfChild(child), true);
 	}
 
 	/**
@@ -1978,7 +2082,7 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 	 * @see #removeDetachedView(View, boolean)
 	 */
 	protected void detachViewFromParent(int index) {
-		removeFromArray(index);
+		removeFromArray(index, true);
 	}
 
 	/**
@@ -1997,7 +2101,7 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
 	 * @see #removeDetachedView(View, boolean)
 	 */
 	protected void detachViewsFromParent(int start, int count) {
-		removeFromArray(start, count);
+		removeFromArray(start, count, true);
 	}
 
     /**
@@ -2022,18 +2126,30 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
         }
 
         final View[] children = mChildren;
+        final boolean keepElements = keepDetachedElements();
         mChildrenCount = 0;
+        if (mDomElementCount != 0) {
+            int domElements = 0;
+            for (int i = 0; i < count; i++) {
+                domElements += children[i].mDomElementCount;
+            }
+            addDomElements(-domElements);
+        }
 
         for (int i = count - 1; i >= 0; i--) {
-            /**
-             * @j2sNative 
-             * var child = document.getElementById(children[i].mUIElementID);
-             * if (child != null) {
-             *    child.parentNode.removeChild(child);
-             * } else {
-             *     this.removeChildren(children[i]);
-             * }
-             */{}
+            if (keepElements) {
+                hideElements(children[i]);
+            } else {
+                /**
+                 * @j2sNative
+                 * var child = document.getElementById(children[i].mUIElementID);
+                 * if (child != null) {
+                 *    child.parentNode.removeChild(child);
+                 * } else {
+                 *     this.removeChildren(children[i]);
+                 * }
+                 */{}
+            }
             children[i].mParent = null;
             children[i] = null;
         }
@@ -3258,13 +3374,17 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: setChildrenDrawnWithCacheEnabled");
+     * Tells the ViewGroup to draw its children using their drawing cache. This property
+     * is ignored when {@link #isAlwaysDrawnWithCacheEnabled()} is true. A child's drawing cache
+     * will be used only if it has been enabled.
+     *
+     * @param enabled true if children should be drawn with their cache, false otherwise
+     *
+     * @see #setAlwaysDrawnWithCacheEnabled(boolean)
+     * @see #isChildrenDrawnWithCacheEnabled()
      */
-    @MayloonStubAnnotation()
     protected void setChildrenDrawnWithCacheEnabled(boolean enabled) {
-        System.out.println("Stub" + " Function : setChildrenDrawnWithCacheEnabled");
-        return;
+        setBooleanFlag(FLAG_CHILDREN_DRAWN_WITH_CACHE, enabled);
     }
 
     /**
@@ -3308,13 +3428,16 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: isChildrenDrawnWithCacheEnabled");
+     * Indicates whether the ViewGroup is currently drawing its children using
+     * their drawing cache.
+     *
+     * @return true if children should be drawn with their cache, false otherwise
+     *
+     * @see #setAlwaysDrawnWithCacheEnabled(boolean)
+     * @see #setChildrenDrawnWithCacheEnabled(boolean)
      */
-    @MayloonStubAnnotation()
     protected boolean isChildrenDrawnWithCacheEnabled() {
-        System.out.println("Stub" + " Function : isChildrenDrawnWithCacheEnabled");
-        return true;
+        return (mGroupFlags & FLAG_CHILDREN_DRAWN_WITH_CACHE) == FLAG_CHILDREN_DRAWN_WITH_CACHE;
     }
 
     /**
@@ -3328,33 +3451,50 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: isAlwaysDrawnWithCacheEnabled");
+     * Indicates whether this ViewGroup will always try to draw its children using their
+     * drawing cache. By default this property is enabled.
+     *
+     * @return true if the animation cache is enabled, false otherwise
+     *
+     * @see #setAlwaysDrawnWithCacheEnabled(boolean)
+     * @see #setChildrenDrawnWithCacheEnabled(boolean)
+     * @see View#setDrawingCacheEnabled(boolean)
      */
-    @MayloonStubAnnotation()
     public boolean isAlwaysDrawnWithCacheEnabled() {
-        System.out.println("Stub" + " Function : isAlwaysDrawnWithCacheEnabled");
-        return true;
+        return (mGroupFlags & FLAG_ALWAYS_DRAWN_WITH_CACHE) == FLAG_ALWAYS_DRAWN_WITH_CACHE;
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: setChildrenDrawingCacheEnabled");
+     * Enables or disables the drawing cache for each child of this view group.
+     *
+     * @param enabled true to enable the cache, false to dispose of it
      */
-    @MayloonStubAnnotation()
     protected void setChildrenDrawingCacheEnabled(boolean enabled) {
-        System.out.println("Stub" + " Function : setChildrenDrawingCacheEnabled");
-        return;
+        final View[] children = mChildren;
+        final int count = mChildrenCount;
+        for (int i = 0; i < count; i++) {
+            children[i].setDrawingCacheEnabled(enabled);
+        }
     }
 
     /**
-     * @j2sNative
-     * console.log("Missing method: setAlwaysDrawnWithCacheEnabled");
+     * Indicates whether this ViewGroup will always try to draw its children using their
+     * drawing cache. This property can be set to true when the cache rendering is
+     * slightly different from the children's normal rendering. Renderings can be different,
+     * for instance, when the cache's quality is set to low.
+     *
+     * When this property is disabled, the ViewGroup will use the drawing cache of its
+     * children only when asked to. It's usually the task of subclasses to tell ViewGroup
+     * when to start using the drawing cache and when to stop using it.
+     *
+     * @param always true to always draw with the drawing cache, false otherwise
+     *
+     * @see #isAlwaysDrawnWithCacheEnabled()
+     * @see #setChildrenDrawnWithCacheEnabled(boolean)
+     * @see View#setDrawingCacheEnabled(boolean)
      */
-    @MayloonStubAnnotation()
     public void setAlwaysDrawnWithCacheEnabled(boolean always) {
-        System.out.println("Stub" + " Function : setAlwaysDrawnWithCacheEnabled");
-        return;
+        setBooleanFlag(FLAG_ALWAYS_DRAWN_WITH_CACHE, always);
     }
 
     /**
@@ -591,7 +591,8 @@ public final class ViewRoot extends Handler implements ViewParent, View.AttachIn
     public void scheduleTraversals() {
         if (!mTraversalScheduled) {
             mTraversalScheduled = true;
-            sendEmptyMessage(DO_TRAVERSAL);
+            // MayLoon: traverse once per animation frame, right before it is painted
+            sendMessageAtFrame(obtainMessage(DO_TRAVERSAL));
         }
     }
 
@@ -1629,12 +1630,28 @@ public final class ViewRoot extends Handler implements ViewParent, View.AttachIn
             mAttachInfo.mTreeObserver.dispatchOnScrollChanged();
         }
         int yoff = mScrollY;
+        float appScale = mAttachInfo.mApplicationScale;
+        Rect dirty = mDirty;
         if (mCurScrollY != yoff) {
+            final int dy = (int) ((mCurScrollY - yoff) * appScale);
+            final int height = (int) (mHeight * appScale);
             mCurScrollY = yoff;
-            fullRedrawNeeded = true;
+            if (!fullRedrawNeeded && Math.abs(dy) < height) {
+                // Move what is already on the surface along with the scroll,
+                // then only the strip the scroll exposed needs to be drawn.
+                // DOM elements aren't part of the surface, but their views
+                // are never culled, so they still draw and move them
+                scrollSurface(dy);
+                dirty.offset(0, dy);
+                if (dy > 0) {
+                    dirty.union(0, 0, (int) (mWidth * appScale), dy);
+                } else {
+                    dirty.union(0, height + dy, (int) (mWidth * appScale), height);
+                }
+            } else {
+                fullRedrawNeeded = true;
+            }
         }
-        float appScale = mAttachInfo.mApplicationScale;
-        Rect dirty = mDirty;
 
         if (fullRedrawNeeded) {
             mAttachInfo.mIgnoreDirtyState = true;
@@ -1698,6 +1715,28 @@ public final class ViewRoot extends Handler implements ViewParent, View.AttachIn
         }
     }
 
+    /**
+     * Move the pixels of the surface by dy vertically. The rows moved in from
+     * outside the surface are left cleared.
+     */
+    private void scrollSurface(int dy) {
+        String canvasId = getCanvasId();
+        /**
+         * @j2sNative
+         * var canvas = document.getElementById(canvasId);
+         * if (canvas != null && canvas.width > 0 && canvas.height > 0) {
+         *     var context = canvas.getContext("2d");
+         *     context.save();
+         *     context.setTransform(1, 0, 0, 1, 0, 0);
+         *     context.globalAlpha = 1;
+         *     context.globalCompositeOperation = "copy";
+         *     // the canvas is copied before it is drawn onto itself
+         *     context.drawImage(canvas, 0, dy);
+         *     context.restore();
+         * }
+         */{}
+    }
+
     public final static int DO_TRAVERSAL = 1000;
     public final static int DIE = 1001;
     public final static int RESIZED = 1002;
@@ -331,6 +331,17 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
 
     private ContextMenuInfo mContextMenuInfo = null;
 
+    /**
+     * The data set used to store unused views that should be reused during the next layout
+     * to avoid creating new ones
+     */
+    final RecycleBin mRecycler = new RecycleBin();
+
+    /**
+     * Passed to obtainView() to learn whether the returned view came from the scrap heap
+     */
+    final boolean[] mIsScrap = new boolean[1];
+
 	/**
 	 * Interface definition for a callback to be invoked when the list or grid
 	 * has been scrolled.
@@ -702,6 +713,7 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
 			for (int i = 0; i < childCount; i++) {
 				getChildAt(i).forceLayout();
 			}
+			mRecycler.markChildrenDirty();
 		}
 
 		layoutChildren();
@@ -780,11 +792,36 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
 	 * converting an old view or making a new one.
 	 *
 	 * @param position The position to display
+	 * @param isScrap Array of at least 1 boolean, the first entry will become true if
+	 *                the returned view was taken from the scrap heap, false if otherwise.
 	 * 
 	 * @return A view displaying the data associated with the specified position
 	 */
-	View obtainView(int position) {
-		return mAdapter.getView(position, null, this);
+	View obtainView(int position, boolean[] isScrap) {
+		isScrap[0] = false;
+		View scrapView = mRecycler.getScrapView(position);
+
+		View child;
+		if (scrapView != null) {
+			child = mAdapter.getView(position, scrapView, this);
+
+			if (child != scrapView) {
+				mRecycler.addScrapView(scrapView);
+				if (mCacheColorHint != 0) {
+					child.setDrawingCacheBackgroundColor(mCacheColorHint);
+				}
+			} else {
+				isScrap[0] = true;
+				child.dispatchFinishTemporaryDetach();
+			}
+		} else {
+			child = mAdapter.getView(position, null, this);
+			if (mCacheColorHint != 0) {
+				child.setDrawingCacheBackgroundColor(mCacheColorHint);
+			}
+		}
+
+		return child;
 	}
 
     void positionSelector(View sel) {
@@ -837,6 +874,27 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
         }
     }
     
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+
+		// Detach any view left in the scrap heap
+		mRecycler.clear();
+	}
+
+	/**
+	 * MayLoon: Scrapped children keep their DOM elements, hidden, so a
+	 * recycled TextView reuses its element instead of building a new one.
+	 * Elements of views dropped from the scrap heap are removed by
+	 * removeDetachedView().
+	 *
+	 * @hide
+	 */
+	@Override
+	protected boolean keepDetachedElements() {
+		return true;
+	}
+
 	@Override
 	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
 		if (getChildCount() > 0) {
@@ -1275,7 +1333,7 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
             for (int i = 0; i < count; i++) {
                 getChildAt(i).setDrawingCacheBackgroundColor(color);
             }
-            //mRecycler.setCacheColorHint(color);
+            mRecycler.setCacheColorHint(color);
         }
     }
 
@@ -1305,10 +1363,11 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
 			AbsListView.LayoutParams lp = (AbsListView.LayoutParams) child
 					.getLayoutParams();
 			// Don't reclaim header or footer views, or views that should be ignored
-			if (lp != null) {
+			if (lp != null && mRecycler.shouldRecycleViewType(lp.viewType)) {
 				views.add(child);
 			}
 		}
+		mRecycler.reclaimScrapViews(views);
 		removeAllViewsInLayout();
 	}
 
@@ -2048,13 +2107,7 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
                     count++;
                     int position = firstPosition + i;
                     if (position >= headerViewsCount && position < footerViewsStart) {
-//                        mRecycler.addScrapView(child);
-
-//                        if (ViewDebug.TRACE_RECYCLER) {
-//                            ViewDebug.trace(child,
-//                                    ViewDebug.RecyclerTraceType.MOVE_TO_SCRAP_HEAP,
-//                                    firstPosition + i, -1);
-//                        }
+                        mRecycler.addScrapView(child);
                     }
                 }
             }
@@ -2069,13 +2122,7 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
                     count++;
                     int position = firstPosition + i;
                     if (position >= headerViewsCount && position < footerViewsStart) {
-//                        mRecycler.addScrapView(child);
-//
-//                        if (ViewDebug.TRACE_RECYCLER) {
-//                            ViewDebug.trace(child,
-//                                    ViewDebug.RecyclerTraceType.MOVE_TO_SCRAP_HEAP,
-//                                    firstPosition + i, -1);
-//                        }
+                        mRecycler.addScrapView(child);
                     }
                 }
             }
@@ -2380,4 +2427,300 @@ public abstract class AbsListView extends AdapterView<ListAdapter> {
             }
         }
     }
+
+    /**
+     * The RecycleBin facilitates reuse of views across layouts. The RecycleBin has two levels of
+     * storage: ActiveViews and ScrapViews. ActiveViews are those views which were onscreen at the
+     * start of a layout. By construction, they are displaying current information. At the end of
+     * layout, all views in ActiveViews are demoted to ScrapViews. ScrapViews are old views that
+     * could potentially be used by the adapter to avoid allocating views unnecessarily.
+     *
+     * Scrapped views have already been detached from this list, which also takes their elements
+     * out of the document. A reused view is attached again through attachViewToParent, so the
+     * view tree the adapter inflated is kept instead of being inflated again.
+     */
+    class RecycleBin {
+        /**
+         * The position of the first view stored in mActiveViews.
+         */
+        private int mFirstActivePosition;
+
+        /**
+         * Views that were on screen at the start of layout. This array is populated at the start of
+         * layout, and at the end of layout all view in mActiveViews are moved to mScrapViews.
+         * Views in mActiveViews represent a contiguous range of Views, with position of the first
+         * view store in mFirstActivePosition.
+         */
+        private View[] mActiveViews = new View[0];
+
+        /**
+         * Unsorted views that can be used by the adapter as a convert view.
+         */
+        private ArrayList<View>[] mScrapViews;
+
+        private int mViewTypeCount;
+
+        private ArrayList<View> mCurrentScrap;
+
+        RecycleBin() {
+            setViewTypeCount(1);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void setViewTypeCount(int viewTypeCount) {
+            if (viewTypeCount < 1) {
+                throw new IllegalArgumentException("Can't have a viewTypeCount < 1");
+            }
+            //noinspection unchecked
+            ArrayList<View>[] scrapViews = new ArrayList[viewTypeCount];
+            for (int i = 0; i < viewTypeCount; i++) {
+                scrapViews[i] = new ArrayList<View>();
+            }
+            mViewTypeCount = viewTypeCount;
+            mCurrentScrap = scrapViews[0];
+            mScrapViews = scrapViews;
+        }
+
+        public void markChildrenDirty() {
+            if (mViewTypeCount == 1) {
+                final ArrayList<View> scrap = mCurrentScrap;
+                final int scrapCount = scrap.size();
+                for (int i = 0; i < scrapCount; i++) {
+                    scrap.get(i).forceLayout();
+                }
+            } else {
+                final int typeCount = mViewTypeCount;
+                for (int i = 0; i < typeCount; i++) {
+                    final ArrayList<View> scrap = mScrapViews[i];
+                    final int scrapCount = scrap.size();
+                    for (int j = 0; j < scrapCount; j++) {
+                        scrap.get(j).forceLayout();
+                    }
+                }
+            }
+        }
+
+        public boolean shouldRecycleViewType(int viewType) {
+            return viewType >= 0;
+        }
+
+        /**
+         * Clears the scrap heap.
+         */
+        void clear() {
+            if (mViewTypeCount == 1) {
+                final ArrayList<View> scrap = mCurrentScrap;
+                final int scrapCount = scrap.size();
+                for (int i = 0; i < scrapCount; i++) {
+                    removeDetachedView(scrap.remove(scrapCount - 1 - i), false);
+                }
+            } else {
+                final int typeCount = mViewTypeCount;
+                for (int i = 0; i < typeCount; i++) {
+                    final ArrayList<View> scrap = mScrapViews[i];
+                    final int scrapCount = scrap.size();
+                    for (int j = 0; j < scrapCount; j++) {
+                        removeDetachedView(scrap.remove(scrapCount - 1 - j), false);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fill ActiveViews with all of the children of the AbsListView.
+         *
+         * @param childCount The minimum number of views mActiveViews should hold
+         * @param firstActivePosition The position of the first view that will be stored in
+         *        mActiveViews
+         */
+        void fillActiveViews(int childCount, int firstActivePosition) {
+            if (mActiveViews.length < childCount) {
+                mActiveViews = new View[childCount];
+            }
+            mFirstActivePosition = firstActivePosition;
+
+            final View[] activeViews = mActiveViews;
+            for (int i = 0; i < childCount; i++) {
+                View child = getChildAt(i);
+                AbsListView.LayoutParams lp = (AbsListView.LayoutParams) child.getLayoutParams();
+                // Don't put header or footer views into the scrap heap
+                if (lp != null && lp.viewType != AdapterView.ITEM_VIEW_TYPE_HEADER_OR_FOOTER) {
+                    // Note:  We do place AdapterView.ITEM_VIEW_TYPE_IGNORE in active views.
+                    //        However, we will NOT place them into scrap views.
+                    activeViews[i] = child;
+                }
+            }
+        }
+
+        /**
+         * Get the view corresponding to the specified position. The view will be removed from
+         * mActiveViews if it is found.
+         *
+         * @param position The position to look up in mActiveViews
+         * @return The view if it is found, null otherwise
+         */
+        View getActiveView(int position) {
+            int index = position - mFirstActivePosition;
+            final View[] activeViews = mActiveViews;
+            if (index >= 0 && index < activeViews.length) {
+                final View match = activeViews[index];
+                activeViews[index] = null;
+                return match;
+            }
+            return null;
+        }
+
+        /**
+         * @return A view from the ScrapViews collection. These are unordered.
+         */
+        View getScrapView(int position) {
+            ArrayList<View> scrapViews;
+            if (mViewTypeCount == 1) {
+                scrapViews = mCurrentScrap;
+            } else {
+                int whichScrap = mAdapter.getItemViewType(position);
+                if (whichScrap < 0 || whichScrap >= mScrapViews.length) {
+                    return null;
+                }
+                scrapViews = mScrapViews[whichScrap];
+            }
+            int size = scrapViews.size();
+            if (size > 0) {
+                return scrapViews.remove(size - 1);
+            }
+            return null;
+        }
+
+        /**
+         * Put a view into the ScapViews list. These views are unordered.
+         *
+         * @param scrap The view to add
+         */
+        void addScrapView(View scrap) {
+            AbsListView.LayoutParams lp = (AbsListView.LayoutParams) scrap.getLayoutParams();
+            if (lp == null) {
+                return;
+            }
+
+            // Don't put header or footer views or views that should be ignored
+            // into the scrap heap
+            int viewType = lp.viewType;
+            if (!shouldRecycleViewType(viewType)) {
+                if (viewType != AdapterView.ITEM_VIEW_TYPE_HEADER_OR_FOOTER) {
+                    removeDetachedView(scrap, false);
+                }
+                return;
+            }
+
+            scrap.dispatchStartTemporaryDetach();
+            if (mViewTypeCount == 1) {
+                mCurrentScrap.add(scrap);
+            } else {
+                mScrapViews[viewType].add(scrap);
+            }
+        }
+
+        /**
+         * Move all views remaining in mActiveViews to mScrapViews.
+         */
+        void scrapActiveViews() {
+            final View[] activeViews = mActiveViews;
+            final boolean multipleScraps = mViewTypeCount > 1;
+
+            ArrayList<View> scrapViews = mCurrentScrap;
+            final int count = activeViews.length;
+            for (int i = count - 1; i >= 0; i--) {
+                final View victim = activeViews[i];
+                if (victim != null) {
+                    int whichScrap = ((AbsListView.LayoutParams) victim.getLayoutParams()).viewType;
+
+                    activeViews[i] = null;
+
+                    if (!shouldRecycleViewType(whichScrap)) {
+                        // Do not move views that should be ignored
+                        if (whichScrap != AdapterView.ITEM_VIEW_TYPE_HEADER_OR_FOOTER) {
+                            removeDetachedView(victim, false);
+                        }
+                        continue;
+                    }
+
+                    if (multipleScraps) {
+                        scrapViews = mScrapViews[whichScrap];
+                    }
+                    victim.dispatchStartTemporaryDetach();
+                    scrapViews.add(victim);
+                }
+            }
+
+            pruneScrapViews();
+        }
+
+        /**
+         * Makes sure that the size of mScrapViews does not exceed the size of mActiveViews.
+         * (This can happen if an adapter does not recycle its views).
+         */
+        private void pruneScrapViews() {
+            final int maxViews = mActiveViews.length;
+            final int viewTypeCount = mViewTypeCount;
+            final ArrayList<View>[] scrapViews = mScrapViews;
+            for (int i = 0; i < viewTypeCount; ++i) {
+                final ArrayList<View> scrapPile = scrapViews[i];
+                int size = scrapPile.size();
+                final int extras = size - maxViews;
+                size--;
+                for (int j = 0; j < extras; j++) {
+                    removeDetachedView(scrapPile.remove(size--), false);
+                }
+            }
+        }
+
+        /**
+         * Puts all views in the scrap heap into the supplied list.
+         */
+        void reclaimScrapViews(List<View> views) {
+            if (mViewTypeCount == 1) {
+                views.addAll(mCurrentScrap);
+            } else {
+                final int viewTypeCount = mViewTypeCount;
+                final ArrayList<View>[] scrapViews = mScrapViews;
+                for (int i = 0; i < viewTypeCount; ++i) {
+                    final ArrayList<View> scrapPile = scrapViews[i];
+                    views.addAll(scrapPile);
+                }
+            }
+        }
+
+        /**
+         * Updates the cache color hint of all known views.
+         *
+         * @param color The new cache color hint.
+         */
+        void setCacheColorHint(int color) {
+            if (mViewTypeCount == 1) {
+                final ArrayList<View> scrap = mCurrentScrap;
+                final int scrapCount = scrap.size();
+                for (int i = 0; i < scrapCount; i++) {
+                    scrap.get(i).setDrawingCacheBackgroundColor(color);
+                }
+            } else {
+                final int typeCount = mViewTypeCount;
+                for (int i = 0; i < typeCount; i++) {
+                    final ArrayList<View> scrap = mScrapViews[i];
+                    final int scrapCount = scrap.size();
+                    for (int j = 0; j < scrapCount; j++) {
+                        scrap.get(j).setDrawingCacheBackgroundColor(color);
+                    }
+                }
+            }
+            // Just in case this is called during a layout pass
+            final View[] activeViews = mActiveViews;
+            final int count = activeViews.length;
+            for (int i = 0; i < count; ++i) {
+                final View victim = activeViews[i];
+                if (victim != null) {
+                    victim.setDrawingCacheBackgroundColor(color);
+                }
+            }
+        }
+    }
 }
@@ -121,7 +121,7 @@ public class GridView extends AbsListView {
         }
 
         resetList();
-        //mRecycler.clear();        
+        mRecycler.clear();
         mAdapter = adapter;
 
         mOldSelectedPosition = INVALID_POSITION;
@@ -136,7 +136,7 @@ public class GridView extends AbsListView {
             mDataSetObserver = new AdapterDataSetObserver();
             mAdapter.registerDataSetObserver(mDataSetObserver);
 
-            //mRecycler.setViewTypeCount(mAdapter.getViewTypeCount());
+            mRecycler.setViewTypeCount(mAdapter.getViewTypeCount());
 
             int position;
             if (mStackFromBottom) {
@@ -933,7 +933,7 @@ public class GridView extends AbsListView {
         mItemCount = mAdapter == null ? 0 : mAdapter.getCount();
         final int count = mItemCount;
         if (count > 0) {
-            final View child = obtainView(0);
+            final View child = obtainView(0, mIsScrap);
 
             AbsListView.LayoutParams p = (AbsListView.LayoutParams)child.getLayoutParams();
             if (p == null) {
@@ -951,6 +951,10 @@ public class GridView extends AbsListView {
             child.measure(childWidthSpec, childHeightSpec);
 
             childHeight = child.getMeasuredHeight();
+
+            if (mRecycler.shouldRecycleViewType(p.viewType)) {
+                mRecycler.addScrapView(child);
+            }
         }
         
         if (heightMode == MeasureSpec.UNSPECIFIED) {
@@ -1081,6 +1085,19 @@ public class GridView extends AbsListView {
 
             setSelectedPositionInt(mNextSelectedPosition);
 
+            // Pull all children into the RecycleBin.
+            // These views will be reused if possible
+            final int firstPosition = mFirstPosition;
+            final RecycleBin recycleBin = mRecycler;
+
+            if (dataChanged) {
+                for (int i = 0; i < childCount; i++) {
+                    recycleBin.addScrapView(getChildAt(i));
+                }
+            } else {
+                recycleBin.fillActiveViews(childCount, firstPosition);
+            }
+
             // Clear out old views
             //removeAllViewsInLayout();
             detachAllViewsFromParent();
@@ -1138,6 +1155,9 @@ public class GridView extends AbsListView {
                 break;
             }
 
+            // Flush any cached views that did not get reused above
+            recycleBin.scrapActiveViews();
+
 /**
             if (sel != null) {
                positionSelector(sel);
@@ -1188,12 +1208,23 @@ public class GridView extends AbsListView {
             boolean selected, int where) {
         View child;
 
+        if (!mDataChanged) {
+            // Try to use an existing view for this position
+            child = mRecycler.getActiveView(position);
+            if (child != null) {
+                // Found it -- we're using an existing child
+                // This just needs to be positioned
+                setupChild(child, position, y, flow, childrenLeft, selected, true, where);
+                return child;
+            }
+        }
+
         // Make a new view for this position, or convert an unused view if
         // possible
-        child = obtainView(position);
+        child = obtainView(position, mIsScrap);
 
         // This needs to be positioned and measured
-        setupChild(child, position, y, flow, childrenLeft, selected, false, where);
+        setupChild(child, position, y, flow, childrenLeft, selected, mIsScrap[0], where);
 
         return child;
     }
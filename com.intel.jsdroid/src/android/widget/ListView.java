@@ -280,6 +280,7 @@ public class ListView extends AbsListView {
 		}
 
 		resetList();
+		mRecycler.clear();
 
         if (mHeaderViewInfos.size() > 0 || mFooterViewInfos.size() > 0) {
             mAdapter = new HeaderViewListAdapter(mHeaderViewInfos,
@@ -299,6 +300,8 @@ public class ListView extends AbsListView {
 			mDataSetObserver = new AdapterDataSetObserver();
 			mAdapter.registerDataSetObserver(mDataSetObserver);
 
+			mRecycler.setViewTypeCount(mAdapter.getViewTypeCount());
+
 			int position;
 			if (mStackFromBottom) {
 				position = lookForSelectablePosition(mItemCount - 1, false);
@@ -908,11 +911,16 @@ public class ListView extends AbsListView {
 		//		System.out.println("mItemCount: " + mItemCount);
 		if (mItemCount > 0
 				&& (widthMode == MeasureSpec.UNSPECIFIED || heightMode == MeasureSpec.UNSPECIFIED)) {
-			final View child = obtainView(0);
+			final View child = obtainView(0, mIsScrap);
 			measureScrapChild(child, 0, widthMeasureSpec);
 
 			childWidth = child.getMeasuredWidth();
 			childHeight = child.getMeasuredHeight();
+
+			if (recycleOnMeasure() && mRecycler.shouldRecycleViewType(
+					((LayoutParams) child.getLayoutParams()).viewType)) {
+				mRecycler.addScrapView(child);
+			}
 		}
 
 		if (widthMode == MeasureSpec.UNSPECIFIED) {
@@ -1013,12 +1021,12 @@ public class ListView extends AbsListView {
 		// mItemCount - 1 since endPosition parameter is inclusive
 		endPosition = (endPosition == NO_POSITION) ? adapter.getCount() - 1
 				: endPosition;
-		//		final AbsListView.RecycleBin recycleBin = mRecycler;
-		//		final boolean recyle = recycleOnMeasure();
-		//		final boolean[] isScrap = mIsScrap;
+		final AbsListView.RecycleBin recycleBin = mRecycler;
+		final boolean recyle = recycleOnMeasure();
+		final boolean[] isScrap = mIsScrap;
 
 		for (i = startPosition; i <= endPosition; ++i) {
-			child = obtainView(i);
+			child = obtainView(i, isScrap);
 
 			measureScrapChild(child, i, widthMeasureSpec);
 
@@ -1028,11 +1036,11 @@ public class ListView extends AbsListView {
 			}
 
 			// Recycle the view before we possibly return from the method
-			//			if (recyle
-			//					&& recycleBin.shouldRecycleViewType(((LayoutParams) child
-			//							.getLayoutParams()).viewType)) {
-			//				recycleBin.addScrapView(child);
-			//			}
+			if (recyle
+					&& recycleBin.shouldRecycleViewType(((LayoutParams) child
+							.getLayoutParams()).viewType)) {
+				recycleBin.addScrapView(child);
+			}
 
 			returnedHeight += child.getMeasuredHeight();
 
@@ -1334,22 +1342,22 @@ public class ListView extends AbsListView {
 
 			// Pull all children into the RecycleBin.
 			// These views will be reused if possible
-			//			final int firstPosition = mFirstPosition;
-			//			final RecycleBin recycleBin = mRecycler;
-			//
+			final int firstPosition = mFirstPosition;
+			final RecycleBin recycleBin = mRecycler;
+
 						// reset the focus restoration
 						View focusLayoutRestoreDirectChild = null;
-			//
-			//			// Don't put header or footer views into the Recycler. Those are
-			//			// already cached in mHeaderViews;
-			//			if (dataChanged) {
-			//				for (int i = 0; i < childCount; i++) {
-			//					recycleBin.addScrapView(getChildAt(i));
-			//				}
-			//			} else {
-			//				recycleBin.fillActiveViews(childCount, firstPosition);
-			//			}
-			//
+
+			// Don't put header or footer views into the Recycler. Those are
+			// already cached in mHeaderViews;
+			if (dataChanged) {
+				for (int i = 0; i < childCount; i++) {
+					recycleBin.addScrapView(getChildAt(i));
+				}
+			} else {
+				recycleBin.fillActiveViews(childCount, firstPosition);
+			}
+
 						// take focus back to us temporarily to avoid the eventual
 						// call to clear focus when removing the focused child below
 						// from messing things up when ViewRoot assigns focus back
@@ -1433,7 +1441,7 @@ public class ListView extends AbsListView {
 			}
 
 			// Flush any cached views that did not get reused above
-			//			recycleBin.scrapActiveViews();
+			recycleBin.scrapActiveViews();
 
 			if (sel != null) {
 				// the current selected item should get focus if items
@@ -1545,27 +1553,25 @@ public class ListView extends AbsListView {
 	 */
 	private View makeAndAddView(int position, int y, boolean flow,
 			int childrenLeft, boolean selected) {
-		View child = null;
-
-		//		if (!mDataChanged) {
-		//			// Try to use an exsiting view for this position
-		//			//			child = mRecycler.getActiveView(position);
-		//			System.out.println("ListView>>>makeAndAddView "
-		//					+ "mDataChanged == false");
-		//			if (child != null) {
-		//				// Found it -- we're using an existing child
-		//				// This just needs to be positioned
-		//				setupChild(child, position, y, flow, childrenLeft, selected);
-		//
-		//				return child;
-		//			}
-		//		}
+		View child;
+
+		if (!mDataChanged) {
+			// Try to use an exsiting view for this position
+			child = mRecycler.getActiveView(position);
+			if (child != null) {
+				// Found it -- we're using an existing child
+				// This just needs to be positioned
+				setupChild(child, position, y, flow, childrenLeft, selected, true);
+
+				return child;
+			}
+		}
 
 		// Make a new view for this position, or convert an unused view if possible
-		child = obtainView(position);
+		child = obtainView(position, mIsScrap);
 
 		// This needs to be positioned and measured
-		setupChild(child, position, y, flow, childrenLeft, selected);
+		setupChild(child, position, y, flow, childrenLeft, selected, mIsScrap[0]);
 
 		return child;
 	}
@@ -1585,16 +1591,15 @@ public class ListView extends AbsListView {
 	 *        does not need to be remeasured.
 	 */
 	private void setupChild(View child, int position, int y, boolean flowDown,
-			int childrenLeft, boolean selected) {
+			int childrenLeft, boolean selected, boolean recycled) {
 		final boolean isSelected = selected;
 		final boolean updateChildSelected = isSelected != child.isSelected();
 		//		final int mode = mTouchMode;
 		//		final boolean isPressed = mode > TOUCH_MODE_DOWN
 		//				&& mode < TOUCH_MODE_SCROLL && mMotionPosition == position;
 		//		final boolean updateChildPressed = isPressed != child.isPressed();
-		//		final boolean needToMeasure = !recycled || updateChildSelected
-		//				|| child.isLayoutRequested();
-		final boolean needToMeasure = child.isLayoutRequested();
+		final boolean needToMeasure = !recycled || updateChildSelected
+				|| child.isLayoutRequested();
 
 		// Respect layout params that are already in the view. Otherwise make some up...
 		// noinspection unchecked
@@ -1607,16 +1612,15 @@ public class ListView extends AbsListView {
 		}
 		p.viewType = mAdapter.getItemViewType(position);
 
-		//		if ((recycled && !p.forceAdd)
-		//				|| (p.recycledHeaderFooter && p.viewType == AdapterView.ITEM_VIEW_TYPE_HEADER_OR_FOOTER)) {
-		//			attachViewToParent(child, flowDown ? -1 : 0, p);
-		//		} else {
-		p.forceAdd = false;
-		if (p.viewType == AdapterView.ITEM_VIEW_TYPE_HEADER_OR_FOOTER) {
-			p.recycledHeaderFooter = true;
+		if (recycled && !p.forceAdd) {
+			attachViewToParent(child, flowDown ? -1 : 0, p);
+		} else {
+			p.forceAdd = false;
+			if (p.viewType == AdapterView.ITEM_VIEW_TYPE_HEADER_OR_FOOTER) {
+				p.recycledHeaderFooter = true;
+			}
+			addViewInLayout(child, flowDown ? -1 : 0, p, true);
 		}
-		addViewInLayout(child, flowDown ? -1 : 0, p, true);
-		//		}
 
 		if (updateChildSelected) {
 			child.setSelected(isSelected);
@@ -2467,21 +2471,21 @@ public class ListView extends AbsListView {
 
 	private View addViewAbove(View theView, int position) {
 		int abovePosition = position - 1;
-		View view = obtainView(abovePosition);
+		View view = obtainView(abovePosition, mIsScrap);
 		//		int edgeOfNewChild = theView.getTop() - mDividerHeight;
 		int edgeOfNewChild = theView.getTop();
 		setupChild(view, abovePosition, edgeOfNewChild, false,
-				mListPadding.left, false);
+				mListPadding.left, false, mIsScrap[0]);
 		return view;
 	}
 
 	private View addViewBelow(View theView, int position) {
 		int belowPosition = position + 1;
-		View view = obtainView(belowPosition);
+		View view = obtainView(belowPosition, mIsScrap);
 		//		int edgeOfNewChild = theView.getBottom() + mDividerHeight;
 		int edgeOfNewChild = theView.getBottom();
 		setupChild(view, belowPosition, edgeOfNewChild, true,
-				mListPadding.left, false);
+				mListPadding.left, false, mIsScrap[0]);
 		return view;
 	}
 
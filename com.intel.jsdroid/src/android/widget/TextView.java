@@ -281,6 +281,8 @@ public class TextView extends View {
 
 	public TextView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        // MayLoon: the text is a DOM element positioned by onDraw()
+        addDomElements(1);
 
         mText = "";
 
@@ -780,7 +782,14 @@ public class TextView extends View {
         /**
          * @j2sNative
          * var thisView = document.getElementById(thisViewId);
-         * if (thisView != null) thisView.style.visibility = visible;
+         * if (thisView != null) {
+         *     // a detached element is shown with this visibility once drawn
+         *     if (thisView.detachedVisibility != null) {
+         *         thisView.detachedVisibility = visible;
+         *     } else {
+         *         thisView.style.visibility = visible;
+         *     }
+         * }
          */{}
     }
 
@@ -2103,12 +2112,15 @@ public class TextView extends View {
          * if (tf != null) {
          *     switch (tf.getStyle()) {
          *         case 0:
+         *             thisText.style.fontWeight = "normal";
          *             thisText.style.fontStyle = "normal";
          *             break;
          *         case 1:
          *             thisText.style.fontWeight = "bold";
+         *             thisText.style.fontStyle = "normal";
          *             break;
          *         case 2:
+         *             thisText.style.fontWeight = "normal";
          *             thisText.style.fontStyle = "italic";
          *             break;
          *         case 3:
@@ -2124,14 +2136,14 @@ public class TextView extends View {
          *     if (tf.getFamilyName() == "sans-serif" || tf.getFamilyName() == "serif" || tf.getFamilyName() == "monospace") {
          *         thisText.style.fontFamily = tf.getFamilyName();
          *     } else if (tf.getFamilyName()) {
-         *         thisText.style.fontFamily = "sans-serif";
+         *         thisText.style.fontFamily = android.graphics.Paint.DEFAULT_FONT_FAMILY;
          *       //   console.loge("We don't support this font: " + tf.getFamilyName());
          *     }
          * } else {
          *     // if tf is null thus set font default
          *     thisText.style.fontWeight = "normal";
          *     thisText.style.fontStyle = "normal";
-         *     thisText.style.fontFamily = "serif";
+         *     thisText.style.fontFamily = android.graphics.Paint.DEFAULT_FONT_FAMILY;
          * }
          * // set font color and size
          * thisText.style.fontSize = this.mTextPaint.getTextSize() + "px";
@@ -2156,21 +2168,28 @@ public class TextView extends View {
         /**
          * @j2sNative
          * var thisText = document.getElementById(this.getUIElementID());
-         * if (thisText == null || thisText.tagName == "SPAN" || thisText.tagName == "DIV") {
+         * var text = thisText;
+         * // a div is updated in place, so a recycled view keeps its element
+         * if (thisText == null || thisText.tagName == "SPAN"
+         *         || (thisText.tagName == "DIV" && this.mEditable)) {
          *     if (this.mEditable) {
-         *         var text = document.createElement("textarea");
+         *         text = document.createElement("textarea");
          *         text.value = this.mText.toString();
          *     } else {
-         *         var text = document.createElement("div");
-         *         if (repText.length > cNum) {
-         *             text.style.wordWrap = "break-word";
-         *         }
-         *         if (repText.isHtml) {
-         *             text.innerHTML = repText;
-         *         } else {
-         *             text.innerText = repText;
-         *         }
+         *         text = document.createElement("div");
+         *     }
+         * }
+         * if (text.tagName == "DIV") {
+         *     text.style.wordWrap = repText.length > cNum ? "break-word" : "";
+         *     if (repText.isHtml) {
+         *         text.innerHTML = repText;
+         *     } else {
+         *         text.innerText = repText;
          *     }
+         * }
+         * if (text != thisText || text.tagName == "DIV") {
+         *     var parentId = this.getParent().getUIElementID();
+         *     var curView = document.getElementById(parentId);
          *     if (this.mSingleLine) {
          *         text.style.whiteSpace = "nowrap";
          *     } else {
@@ -2186,9 +2205,10 @@ public class TextView extends View {
          *     text.style.cursor = "default";
          *     text.style.padding = "0px";
          *     text.style.margin = "0px";
+         *     text.style.clip = "";
+         * }
+         * if (text != thisText) {
          *     text.id = this.getUIElementID();
-         *     var parentId = this.getParent().getUIElementID();
-         *     var curView = document.getElementById(parentId);
          *     if (thisText == null) {
          *        var viewRootId = this.getRootView().getParent().getViewRootID();
          *        var viewRoot = document.getElementById(viewRootId);
@@ -2206,6 +2226,11 @@ public class TextView extends View {
          *     }
          *     thisText = text;
          * }
+         * // hidden while the view was detached to be recycled
+         * if (thisText.detachedVisibility != null) {
+         *     thisText.style.visibility = thisText.detachedVisibility;
+         *     thisText.detachedVisibility = null;
+         * }
          * if (!android.util.DebugUtils.DEBUG_VIEW_IN_BROWSER) {
          *    thisText.style.left = this.getAbsoluteLeft() + "px";
          *    thisText.style.top = this.getAbsoluteTop() + "px";
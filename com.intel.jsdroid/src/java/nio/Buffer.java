@@ -95,6 +95,12 @@ public abstract class Buffer {
     int effectiveDirectAddress = 0;
     // END android-added
 
+    /**
+     * MayLoon: the typed array over this buffer that android.opengl.GLES20
+     * last handed to WebGL, kept to be handed out again.
+     */
+    Object _glView;
+
     /**
      * Construct a buffer with the specified capacity.
      *
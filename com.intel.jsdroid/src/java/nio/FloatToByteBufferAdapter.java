@@ -199,16 +199,52 @@ final class FloatToByteBufferAdapter extends FloatBuffer /*implements
 
     // BEGIN android-added
     @Override
-    public FloatBuffer put(float[] c, int off, int len) {
-//        if (byteBuffer instanceof ReadWriteDirectByteBuffer) {
-//            byteBuffer.limit(limit << 2);
-//            byteBuffer.position(position << 2);
-//            ((ReadWriteDirectByteBuffer) byteBuffer).put(c, off, len);
-//            this.position += len;
-//            return this;
-//        } else {
-            return super.put(c, off, len);
-//        }
+    public FloatBuffer get(float[] dst, int off, int len) {
+        if (off < 0 || len < 0 || (long) off + (long) len > dst.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len > remaining()) {
+            throw new BufferUnderflowException();
+        }
+        Object elements = getTypedArray(len);
+        if (elements == null) {
+            return super.get(dst, off, len);
+        }
+        HeapByteBuffer.copyFromArray(elements, dst, off, len);
+        position += len;
+        return this;
+    }
+
+    @Override
+    public FloatBuffer put(float[] src, int off, int len) {
+        if (off < 0 || len < 0 || (long) off + (long) len > src.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len > remaining()) {
+            throw new BufferOverflowException();
+        }
+        if (byteBuffer.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        Object elements = getTypedArray(len);
+        if (elements == null) {
+            return super.put(src, off, len);
+        }
+        HeapByteBuffer.copyToArray(src, off, elements, len);
+        position += len;
+        return this;
+    }
+
+    /**
+     * Return a typed array over len elements of the byte buffer from the
+     * position, or null if elements have to be moved one at a time.
+     */
+    private Object getTypedArray(int len) {
+        if (!(byteBuffer instanceof HeapByteBuffer)) {
+            return null;
+        }
+        return ((HeapByteBuffer) byteBuffer).getTypedArray(
+                HeapByteBuffer.TYPE_FLOAT, position << 2, len);
     }
     // END android-added
 
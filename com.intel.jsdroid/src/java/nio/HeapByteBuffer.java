@@ -53,10 +53,7 @@ abstract class HeapByteBuffer extends BaseByteBuffer {
         /**
          * @j2sNative
          * this.backingArray = new DataView(new ArrayBuffer(backingArray.length));
-         * for (var i = 0; i < backingArray.length; i++) {
-         *     var value = backingArray[i];
-         *     this.backingArray.setInt8(i, value);
-         * }
+         * new Int8Array(this.backingArray.buffer).set(backingArray);
          */{}
 
         this.offset = offset;
@@ -98,15 +95,91 @@ abstract class HeapByteBuffer extends BaseByteBuffer {
             throw new BufferUnderflowException();
         }
 
+        copyFromArray(getByteArray(position, len), dst, off, len);
+        position += len;
+        return this;
+    }
+
+    /*
+     * MayLoon: backingArray is a DataView, and moving data through it costs a
+     * call per element. Bulk transfers go through typed arrays over its
+     * ArrayBuffer instead. Typed arrays of elements wider than a byte are in
+     * the platform's byte order and must be aligned on their element size,
+     * getTypedArray returns null when the buffer doesn't allow either.
+     */
+    static final int TYPE_SHORT = 1;
+    static final int TYPE_INT = 2;
+    static final int TYPE_FLOAT = 3;
+
+    /**
+     * Return an Int8Array over length bytes of this buffer from index,
+     * sharing its memory.
+     */
+    final Object getByteArray(int index, int length) {
+        Object bytes = null;
+        /**
+         * @j2sNative
+         * bytes = new Int8Array(this.backingArray.buffer,
+         *         this.backingArray.byteOffset + this.offset + index, length);
+         */{}
+        return bytes;
+    }
+
+    /**
+     * Return a typed array of the given type over length elements of this
+     * buffer from byte index, sharing its memory, or null if the elements
+     * are not in the platform's byte order or not aligned.
+     */
+    final Object getTypedArray(int type, int index, int length) {
+        if (order != ByteOrder.nativeOrder()) {
+            return null;
+        }
+        Object elements = null;
+        /**
+         * @j2sNative
+         * var start = this.backingArray.byteOffset + this.offset + index;
+         * var buffer = this.backingArray.buffer;
+         * if (type == java.nio.HeapByteBuffer.TYPE_SHORT) {
+         *     if ((start & 1) == 0) elements = new Int16Array(buffer, start, length);
+         * } else if ((start & 3) == 0) {
+         *     elements = type == java.nio.HeapByteBuffer.TYPE_INT
+         *             ? new Int32Array(buffer, start, length)
+         *             : new Float32Array(buffer, start, length);
+         * }
+         */{}
+        return elements;
+    }
+
+    /**
+     * Copy length elements of the typed array src to dst from off.
+     */
+    static void copyFromArray(Object src, Object dst, int off, int length) {
         /**
          * @j2sNative
-         * for (var i = 0; i < len; i++) {
-         *     dst[off + i] = this.backingArray.getInt8(this.offset + this.position() + i);
+         * if (dst.set) {
+         *     dst.set(src, off);
+         * } else {
+         *     for (var i = 0; i < length; i++) {
+         *         dst[off + i] = src[i];
+         *     }
          * }
          */{}
+    }
 
-        position += len;
-        return this;
+    /**
+     * Copy length elements of src from off to the typed array dst.
+     */
+    static void copyToArray(Object src, int off, Object dst, int length) {
+        /**
+         * @j2sNative
+         * if (src.subarray) {
+         *     dst.set(src.subarray(off, off + length));
+         * } else {
+         *     for (var i = 0; i < length; i++) {
+         *         dst[i] = src[off + i];
+         *     }
+         * }
+         */{}
     }
 
     @Override
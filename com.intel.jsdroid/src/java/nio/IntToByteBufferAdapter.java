@@ -199,16 +199,52 @@ final class IntToByteBufferAdapter extends IntBuffer /*implements DirectBuffer *
 
     // BEGIN android-added
     @Override
-    public IntBuffer put(int[] i, int off, int len) {
-/*        if (byteBuffer instanceof ReadWriteDirectByteBuffer) {
-            byteBuffer.limit(limit << 2);
-            byteBuffer.position(position << 2);
-            ((ReadWriteDirectByteBuffer) byteBuffer).put(i, off, len);
-            this.position += len;
-            return this;
-        } else*/ {
-            return super.put(i, off, len);
+    public IntBuffer get(int[] dst, int off, int len) {
+        if (off < 0 || len < 0 || (long) off + (long) len > dst.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len > remaining()) {
+            throw new BufferUnderflowException();
+        }
+        Object elements = getTypedArray(len);
+        if (elements == null) {
+            return super.get(dst, off, len);
+        }
+        HeapByteBuffer.copyFromArray(elements, dst, off, len);
+        position += len;
+        return this;
+    }
+
+    @Override
+    public IntBuffer put(int[] src, int off, int len) {
+        if (off < 0 || len < 0 || (long) off + (long) len > src.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len > remaining()) {
+            throw new BufferOverflowException();
+        }
+        if (byteBuffer.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        Object elements = getTypedArray(len);
+        if (elements == null) {
+            return super.put(src, off, len);
+        }
+        HeapByteBuffer.copyToArray(src, off, elements, len);
+        position += len;
+        return this;
+    }
+
+    /**
+     * Return a typed array over len elements of the byte buffer from the
+     * position, or null if elements have to be moved one at a time.
+     */
+    private Object getTypedArray(int len) {
+        if (!(byteBuffer instanceof HeapByteBuffer)) {
+            return null;
         }
+        return ((HeapByteBuffer) byteBuffer).getTypedArray(
+                HeapByteBuffer.TYPE_INT, position << 2, len);
     }
     // END android-added
 
@@ -59,13 +59,12 @@ final class ReadWriteHeapByteBuffer extends HeapByteBuffer {
 
     @Override
     public ByteBuffer compact() {
+        Object bytes = getByteArray(0, capacity);
+        int from = position;
+        int to = limit;
         /**
          * @j2sNative
-         * var len = remaining();
-         * for (var i = 0; i < len; i++) {
-         *     var value = this.backingArray.getInt8(this.position() + this.offset + i);
-         *     this.backingArray.setInt8(this.offset + i, value);
-         * }
+         * bytes.copyWithin(0, from, to);
          */{}
 
         position = limit - position;
@@ -87,12 +86,7 @@ final class ReadWriteHeapByteBuffer extends HeapByteBuffer {
     @Override
     protected byte[] protectedArray() {
         byte[] byteArray = new byte[this.capacity];
-        /**
-         * @j2sNative
-         * for (var i = 0; i < this.capacity; i++) {
-         *     byteArray[i] = this.backingArray.getInt8(i);
-         * }
-         */{}
+        copyFromArray(getByteArray(-offset, capacity), byteArray, 0, capacity);
         return byteArray;
     }
 
@@ -152,13 +146,38 @@ final class ReadWriteHeapByteBuffer extends HeapByteBuffer {
             throw new ReadOnlyBufferException();
         }
 
+        copyToArray(src, off, getByteArray(position, len), len);
+        position += len;
+        return this;
+    }
+
+    /*
+     * Override ByteBuffer.put(ByteBuffer) to copy between heap buffers
+     * without an intermediate array.
+     *
+     * (non-Javadoc)
+     *
+     * @see java.nio.ByteBuffer#put(java.nio.ByteBuffer)
+     */
+    @Override
+    public ByteBuffer put(ByteBuffer src) {
+        if (!(src instanceof HeapByteBuffer)) {
+            return super.put(src);
+        }
+        if (src == this) {
+            throw new IllegalArgumentException();
+        }
+        int len = src.remaining();
+        if (len > remaining()) {
+            throw new BufferOverflowException();
+        }
+        Object bytes = getByteArray(position, len);
+        Object srcBytes = ((HeapByteBuffer) src).getByteArray(src.position, len);
         /**
          * @j2sNative
-         * for (var i = 0; i < len; i++) {
-         *     this.backingArray.setInt8(this.offset + this.position() + i, src[off + i]);
-         * }
+         * bytes.set(srcBytes);
          */{}
-         
+        src.position += len;
         position += len;
         return this;
     }